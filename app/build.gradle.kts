@@ -77,6 +77,11 @@ android {
         buildConfig = true
     }
 
+    testOptions {
+        // Pruebas JVM de utils: android.util.Log y similares devuelven valores por defecto
+        unitTests.isReturnDefaultValues = true
+    }
+
     externalNativeBuild {
         cmake {
             path = file("src/main/cpp/CMakeLists.txt")
@@ -107,4 +112,6 @@ dependencies {
     // implementation("androidx.media3:media3-exoplayer:1.2.1")
     // implementation("androidx.media3:media3-ui:1.2.1")
     // implementation("androidx.media3:media3-common:1.2.1")
+
+    testImplementation("junit:junit:4.13.2")
 }
\ No newline at end of file
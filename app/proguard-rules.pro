@@ -18,4 +18,14 @@
 
 # If you keep the line number information, uncomment this to
 # hide the original source file name.
-#-renamesourcefileattribute SourceFile
\ No newline at end of file
+#-renamesourcefileattribute SourceFile
+
+# Campos de FrameDescriptor escritos desde JNI (ndi_wrapper_optimized.cpp, JNI_OnLoad)
+-keep class ndiplayer.oto.service.FrameDescriptor {
+    int width;
+    int height;
+    int stride;
+    int fourCC;
+    long timecode;
+    long timestamp;
+}
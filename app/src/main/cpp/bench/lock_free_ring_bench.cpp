@@ -0,0 +1,378 @@
+// Pruebas de estrés de lock_free_ring.h en host Linux
+// 1. BoundedRing: llena/vacía, y MPMC con 4 productores y 4 consumidores sin perder ni duplicar valores
+// 2. Préstamos como en nativeCaptureLease: un thread de captura reserva un índice libre (esperando
+//    en un WakeEvent si hay lease_cap fuera), lo pasa a los workers por una cola de listos y
+//    cada worker lo "convierte" y lo devuelve. Nunca debe haber dos dueños del mismo índice ni
+//    más de lease_cap fuera
+// 3. Throughput y latencia de paso (listo -> worker ocioso, devolución -> captura bloqueada)
+//    frente a la versión con std::queue, dos mutex y condition_variable
+//    Las latencias solo son representativas con al menos kWorkers + 1 CPUs libres
+//
+// Compilación directa sin CMake:
+//   g++ -std=c++17 -O3 -pthread -I.. lock_free_ring_bench.cpp -o lock_free_ring_bench
+
+#include "lock_free_ring.h"
+
+#include <algorithm>
+#include <atomic>
+#include <chrono>
+#include <condition_variable>
+#include <cstdio>
+#include <mutex>
+#include <queue>
+#include <thread>
+#include <vector>
+
+using lock_free::BoundedRing;
+using lock_free::WakeEvent;
+using Clock = std::chrono::steady_clock;
+
+namespace {
+
+constexpr int kLeases = 16;
+constexpr int kLeaseCap = 11; // DIRECT_BUFFER_COUNT + jitterCapacity por defecto
+constexpr int kWorkers = 3;
+constexpr auto kTimeout = std::chrono::milliseconds(33);
+
+int64_t now_ns() {
+    return std::chrono::duration_cast<std::chrono::nanoseconds>(Clock::now().time_since_epoch()).count();
+}
+
+bool check_ring_basics() {
+    BoundedRing<int, 8> ring;
+    int value = -1;
+    bool ok = !ring.pop(value);
+    for (int i = 0; i < 8; i++) {
+        ok = ok && ring.push(i);
+    }
+    ok = ok && !ring.push(8) && ring.size() == 8;
+    for (int i = 0; i < 8; i++) {
+        ok = ok && ring.pop(value) && value == i;
+    }
+    ok = ok && !ring.pop(value) && ring.size() == 0;
+    if (!ok) {
+        std::printf("FAIL BoundedRing: orden o límites incorrectos\n");
+    }
+    return ok;
+}
+
+bool check_ring_mpmc() {
+    constexpr int kThreads = 4;
+    constexpr int kPerProducer = 500000;
+    BoundedRing<int, 64> ring;
+    std::vector<std::atomic<uint8_t>> seen(kThreads * kPerProducer);
+    std::atomic<int> consumed{0};
+    std::vector<std::thread> threads;
+
+    for (int p = 0; p < kThreads; p++) {
+        threads.emplace_back([&, p] {
+            for (int i = 0; i < kPerProducer; i++) {
+                while (!ring.push(p * kPerProducer + i)) {
+                    std::this_thread::yield();
+                }
+            }
+        });
+    }
+    for (int c = 0; c < kThreads; c++) {
+        threads.emplace_back([&] {
+            int value;
+            while (consumed.load(std::memory_order_relaxed) < kThreads * kPerProducer) {
+                if (ring.pop(value)) {
+                    seen[value].fetch_add(1, std::memory_order_relaxed);
+                    consumed.fetch_add(1, std::memory_order_relaxed);
+                } else {
+                    std::this_thread::yield();
+                }
+            }
+        });
+    }
+    for (auto& t : threads) {
+        t.join();
+    }
+
+    for (size_t i = 0; i < seen.size(); i++) {
+        if (seen[i].load() != 1) {
+            std::printf("FAIL BoundedRing MPMC: el valor %zu salió %d veces\n", i, seen[i].load());
+            return false;
+        }
+    }
+    return true;
+}
+
+// Lista libre + cola de listos como en ndi_wrapper_optimized.cpp, sin locks
+class LockFreeLeases {
+public:
+    LockFreeLeases() {
+        for (int i = 0; i < kLeases; i++) {
+            free_.push(i);
+        }
+    }
+
+    int acquire() {
+        auto deadline = Clock::now() + kTimeout;
+        while (true) {
+            uint32_t epoch = released_.prepare();
+            int count = count_.load(std::memory_order_acquire);
+            bool reserved = false;
+            while (count < kLeaseCap) {
+                if (count_.compare_exchange_weak(count, count + 1, std::memory_order_acq_rel)) {
+                    reserved = true;
+                    break;
+                }
+            }
+            if (reserved) {
+                int index;
+                while (!free_.pop(index)) {
+                    std::this_thread::yield();
+                }
+                return index;
+            }
+            auto remaining = deadline - Clock::now();
+            if (remaining.count() <= 0) {
+                return -1;
+            }
+            released_.wait(epoch, std::chrono::duration_cast<std::chrono::nanoseconds>(remaining));
+        }
+    }
+
+    void release(int index) {
+        free_.push(index);
+        count_.fetch_sub(1, std::memory_order_acq_rel);
+        released_.notify();
+    }
+
+    void push_ready(int index) {
+        ready_.push(index);
+        ready_event_.notify_one();
+    }
+
+    int pop_ready() {
+        auto deadline = Clock::now() + kTimeout;
+        int index;
+        while (true) {
+            uint32_t epoch = ready_event_.prepare();
+            if (ready_.pop(index)) {
+                return index;
+            }
+            auto remaining = deadline - Clock::now();
+            if (remaining.count() <= 0) {
+                return -1;
+            }
+            ready_event_.wait(epoch, std::chrono::duration_cast<std::chrono::nanoseconds>(remaining));
+        }
+    }
+
+    void wake_all() {
+        ready_event_.notify();
+        released_.notify();
+    }
+
+    int outstanding() const {
+        return count_.load();
+    }
+
+private:
+    BoundedRing<int, kLeases> free_;
+    BoundedRing<int, kLeases> ready_;
+    WakeEvent released_;
+    WakeEvent ready_event_;
+    std::atomic<int> count_{0};
+};
+
+// La versión anterior: dos std::queue, dos mutex y el de libres anidado dentro del de listos
+class MutexLeases {
+public:
+    MutexLeases() {
+        for (int i = 0; i < kLeases; i++) {
+            available_.push(i);
+        }
+    }
+
+    int acquire() {
+        std::unique_lock<std::mutex> lock(available_mutex_);
+        if (!available_cv_.wait_for(lock, kTimeout, [this] { return outstanding_ < kLeaseCap; })) {
+            return -1;
+        }
+        int index = available_.front();
+        available_.pop();
+        outstanding_++;
+        return index;
+    }
+
+    void release(int index) {
+        {
+            std::lock_guard<std::mutex> lock(available_mutex_);
+            available_.push(index);
+            outstanding_--;
+        }
+        available_cv_.notify_one();
+    }
+
+    void push_ready(int index) {
+        {
+            std::lock_guard<std::mutex> ready_lock(ready_mutex_);
+            std::lock_guard<std::mutex> available_lock(available_mutex_); // Anidado, como pushReadyFrame
+            ready_.push(index);
+        }
+        ready_cv_.notify_one();
+    }
+
+    int pop_ready() {
+        std::unique_lock<std::mutex> lock(ready_mutex_);
+        if (!ready_cv_.wait_for(lock, kTimeout, [this] { return !ready_.empty(); })) {
+            return -1;
+        }
+        int index = ready_.front();
+        ready_.pop();
+        return index;
+    }
+
+    void wake_all() {
+        ready_cv_.notify_all();
+        available_cv_.notify_all();
+    }
+
+    int outstanding() {
+        std::lock_guard<std::mutex> lock(available_mutex_);
+        return outstanding_;
+    }
+
+private:
+    std::mutex ready_mutex_;
+    std::mutex available_mutex_;
+    std::condition_variable ready_cv_;
+    std::condition_variable available_cv_;
+    std::queue<int> ready_;
+    std::queue<int> available_;
+    int outstanding_ = 0;
+};
+
+struct Latencies {
+    std::vector<int64_t> samples;
+
+    void add(int64_t ns) {
+        samples.push_back(ns);
+    }
+
+    void merge(const Latencies& other) {
+        samples.insert(samples.end(), other.samples.begin(), other.samples.end());
+    }
+
+    void print(const char* name) {
+        if (samples.empty()) {
+            std::printf("    %-22s sin muestras\n", name);
+            return;
+        }
+        std::sort(samples.begin(), samples.end());
+        auto at = [this](double q) { return samples[static_cast<size_t>(q * (samples.size() - 1))] / 1000.0; };
+        std::printf("    %-22s p50 %7.1f us  p99 %7.1f us  p99.9 %8.1f us  peor %8.1f us  (%zu)\n",
+                    name, at(0.5), at(0.99), at(0.999), samples.back() / 1000.0, samples.size());
+    }
+};
+
+void spin_for(int64_t ns) {
+    int64_t until = now_ns() + ns;
+    while (now_ns() < until) {
+    }
+}
+
+// La captura produce lo más rápido que le dejan los préstamos; cada worker tarda workNs por frame
+template <typename Leases>
+bool run_handoff(const char* name, int64_t work_ns, std::chrono::milliseconds duration) {
+    Leases leases;
+    std::atomic<bool> running{true};
+    std::atomic<int64_t> ready_stamp[kLeases];
+    std::atomic<int64_t> last_release{0};
+    std::atomic<uint8_t> owned[kLeases];
+    for (int i = 0; i < kLeases; i++) {
+        ready_stamp[i] = 0;
+        owned[i] = 0;
+    }
+    std::atomic<bool> failed{false};
+    std::atomic<int64_t> completed{0};
+    int64_t stalls = 0;
+    Latencies handoff;
+    Latencies wake;
+    std::vector<Latencies> worker_handoff(kWorkers);
+
+    std::vector<std::thread> workers;
+    for (int w = 0; w < kWorkers; w++) {
+        workers.emplace_back([&, w] {
+            while (running.load(std::memory_order_relaxed)) {
+                int64_t idle_since = now_ns();
+                int index = leases.pop_ready();
+                if (index < 0) {
+                    continue;
+                }
+                int64_t stamp = ready_stamp[index].load(std::memory_order_relaxed);
+                if (stamp >= idle_since) {
+                    worker_handoff[w].add(now_ns() - stamp); // Worker ocioso: solo el paso, sin cola
+                }
+                spin_for(work_ns);
+                if (owned[index].exchange(0) != 1) {
+                    failed = true;
+                }
+                last_release.store(now_ns(), std::memory_order_relaxed);
+                leases.release(index);
+                completed.fetch_add(1, std::memory_order_relaxed);
+            }
+        });
+    }
+
+    auto start = Clock::now();
+    while (Clock::now() - start < duration) {
+        int64_t before = now_ns();
+        int index = leases.acquire();
+        if (index < 0) {
+            stalls++;
+            continue;
+        }
+        int64_t after = now_ns();
+        int64_t released = last_release.load(std::memory_order_relaxed);
+        if (after - before > 2000 && released > before) {
+            wake.add(after - released); // Estuvo bloqueada: del último release a despertar
+        }
+        if (owned[index].exchange(1) != 0 || leases.outstanding() > kLeaseCap) {
+            failed = true;
+        }
+        ready_stamp[index].store(now_ns(), std::memory_order_relaxed);
+        leases.push_ready(index);
+    }
+    double seconds = std::chrono::duration<double>(Clock::now() - start).count();
+    running = false;
+    leases.wake_all();
+    for (auto& t : workers) {
+        t.join();
+    }
+    for (auto& w : worker_handoff) {
+        handoff.merge(w);
+    }
+
+    std::printf("  %-10s trabajo %5.1f us: %9.0f frames/s, %lld esperas agotadas\n",
+                name, work_ns / 1000.0, completed.load() / seconds, static_cast<long long>(stalls));
+    handoff.print("listo -> worker");
+    wake.print("devolución -> captura");
+    if (failed) {
+        std::printf("FAIL %s: índice con dos dueños o más de %d préstamos fuera\n", name, kLeaseCap);
+    }
+    return !failed;
+}
+
+} // namespace
+
+int main() {
+    bool ok = check_ring_basics() && check_ring_mpmc();
+    if (!ok) {
+        return 1;
+    }
+
+    std::printf("Préstamos: %d índices, tope %d, %d workers\n", kLeases, kLeaseCap, kWorkers);
+    for (int64_t work_ns : {0LL, 20000LL, 2000000LL}) {
+        auto duration = std::chrono::milliseconds(1500);
+        ok = run_handoff<LockFreeLeases>("sin locks", work_ns, duration) && ok;
+        ok = run_handoff<MutexLeases>("mutex+cv", work_ns, duration) && ok;
+    }
+
+    std::printf("Pruebas de estrés: %s\n", ok ? "OK" : "FALLO");
+    return ok ? 0 : 1;
+}
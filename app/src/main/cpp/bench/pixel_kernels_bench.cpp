@@ -0,0 +1,354 @@
+// Pruebas y benchmark de pixel_kernels.h en host
+// 1. Cada kernel vectorial debe producir los mismos bytes que la referencia escalar,
+//    también hacia filas destino con padding (Bitmap bloqueado)
+// 2. La referencia escalar debe quedar a +-1 de la fórmula en coma flotante
+// 3. convert_rows_argb por bandas (mismo tamaño, caja 2x2 + vecino más próximo a la mitad o menos,
+//    vecino más próximo en el resto) debe coincidir con promediar y convertir el frame completo y escalar después
+// 4. Con la caja, un patrón de rayas de 1 píxel reducido a 854x480 debe quedar gris uniforme
+//    (el vecino más próximo lo convierte en bandas blancas y negras)
+// 5. Throughput en Mpx/s a 1080p y 2160p por conjunto de instrucciones
+// 6. Coste de escalar 1080p con caja frente a vecino más próximo desde la fila completa
+//
+// Compilación directa sin CMake:
+//   g++ -std=c++17 -O3 -I.. pixel_kernels_bench.cpp -o pixel_kernels_bench
+
+#include "pixel_kernels.h"
+
+#include <chrono>
+#include <cmath>
+#include <cstdio>
+#include <algorithm>
+#include <random>
+#include <vector>
+
+using namespace pixel_kernels;
+
+namespace {
+
+struct Format {
+    const char* name;
+    bool uyvy;
+    const uint8_t* mask;
+    uint32_t alpha;
+    const YuvMatrix* matrix;
+    PixelOrder order; // Solo UYVY: en los formatos de 4 bytes el orden lo fija la máscara
+};
+
+const Format kFormats[] = {
+    {"BGRA", false, kShuffleBGRA, kAlphaFromSource, nullptr, PixelOrder::Argb},
+    {"BGRX", false, kShuffleBGRA, kAlphaOpaque, nullptr, PixelOrder::Argb},
+    {"RGBA", false, kShuffleRGBA, kAlphaFromSource, nullptr, PixelOrder::Argb},
+    {"RGBX", false, kShuffleRGBA, kAlphaOpaque, nullptr, PixelOrder::Argb},
+    {"UYVY full", true, nullptr, 0, &kBt601Full, PixelOrder::Argb},
+    {"UYVY limited", true, nullptr, 0, &kBt601Limited, PixelOrder::Argb},
+    {"BGRA bitmap", false, kBitmapShuffleBGRA, kAlphaFromSource, nullptr, PixelOrder::Rgba},
+    {"UYVY bitmap", true, nullptr, 0, &kBt601Limited, PixelOrder::Rgba},
+};
+
+std::vector<Isa> available_isas() {
+    std::vector<Isa> isas = {Isa::Scalar};
+#if defined(PIXEL_KERNELS_NEON)
+    isas.push_back(Isa::Neon);
+#elif defined(PIXEL_KERNELS_X86)
+    if (__builtin_cpu_supports("ssse3")) isas.push_back(Isa::Ssse3);
+    if (__builtin_cpu_supports("avx2")) isas.push_back(Isa::Avx2);
+#endif
+    return isas;
+}
+
+// dst_pixels: píxeles por fila destino, mayor que width para simular el stride de un Bitmap
+void convert(const Format& format, const uint8_t* src, int stride, uint32_t* dst, int dst_pixels,
+             int width, int height, Isa isa) {
+    uint8_t* out = reinterpret_cast<uint8_t*>(dst);
+    if (format.uyvy) {
+        uyvy_frame(src, stride, out, dst_pixels * 4, width, height, format.order, *format.matrix, isa);
+    } else {
+        swizzle_frame(src, stride, out, dst_pixels * 4, width, height, format.mask, format.alpha, isa);
+    }
+}
+
+int bytes_per_pixel(const Format& format) {
+    return format.uyvy ? 2 : 4;
+}
+
+// Fórmula directa en coma flotante para validar la referencia escalar
+uint32_t float_reference(const Format& format, const uint8_t* row, int x) {
+    if (!format.uyvy) {
+        const uint8_t* p = row + x * 4;
+        uint32_t b = p[format.mask[0]], g = p[format.mask[1]], r = p[format.mask[2]], a = p[format.mask[3]];
+        return format.alpha | (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    const uint8_t* pair = row + (x & ~1) * 2;
+    double y = pair[(x & 1) ? 3 : 1];
+    double u = pair[0] - 128.0;
+    double v = pair[2] - 128.0;
+    bool limited = format.matrix == &kBt601Limited;
+    double luma = limited ? (y - 16.0) * 1.164 : y;
+    double r = luma + (limited ? 1.596 : 1.402) * v;
+    double g = luma - (limited ? 0.392 : 0.344) * u - (limited ? 0.813 : 0.714) * v;
+    double b = luma + (limited ? 2.017 : 1.772) * u;
+    auto clamp = [](double c) { return static_cast<uint32_t>(c < 0 ? 0 : (c > 255 ? 255 : std::lround(c))); };
+    if (format.order == PixelOrder::Rgba) {
+        std::swap(r, b);
+    }
+    return 0xFF000000u | (clamp(r) << 16) | (clamp(g) << 8) | clamp(b);
+}
+
+int channel_distance(uint32_t a, uint32_t b) {
+    int worst = 0;
+    for (int shift = 0; shift < 32; shift += 8) {
+        int d = std::abs(static_cast<int>((a >> shift) & 0xFF) - static_cast<int>((b >> shift) & 0xFF));
+        worst = d > worst ? d : worst;
+    }
+    return worst;
+}
+
+bool check_correctness(std::mt19937& rng) {
+    const int widths[] = {1, 2, 3, 4, 7, 8, 15, 16, 17, 30, 33, 63, 64, 65, 1918, 1920};
+    const int height = 5;
+    bool ok = true;
+
+    for (const Format& format : kFormats) {
+        for (int width : widths) {
+            int stride = width * bytes_per_pixel(format) + 12; // Padding al final de cada fila
+            std::vector<uint8_t> src(static_cast<size_t>(stride) * height);
+            for (auto& byte : src) byte = static_cast<uint8_t>(rng());
+
+            int dst_pixels = width + 3; // Padding al final de cada fila destino
+            std::vector<uint32_t> reference(static_cast<size_t>(dst_pixels) * height, 0xDEADBEEF);
+            convert(format, src.data(), stride, reference.data(), dst_pixels, width, height, Isa::Scalar);
+
+            // Escalar contra la fórmula en coma flotante
+            int worst = 0;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int d = channel_distance(reference[y * dst_pixels + x], float_reference(format, src.data() + y * stride, x));
+                    worst = d > worst ? d : worst;
+                }
+            }
+            if (worst > 1) {
+                std::printf("FAIL %-12s width=%d: escalar a %d de la fórmula\n", format.name, width, worst);
+                ok = false;
+            }
+
+            // Cada ISA contra la referencia escalar, byte a byte
+            for (Isa isa : available_isas()) {
+                std::vector<uint32_t> out(reference.size(), 0xDEADBEEF);
+                convert(format, src.data(), stride, out.data(), dst_pixels, width, height, isa);
+                if (out != reference) {
+                    std::printf("FAIL %-12s width=%d: %s difiere de la referencia escalar\n",
+                                format.name, width, isa_name(isa));
+                    ok = false;
+                }
+            }
+        }
+    }
+    return ok;
+}
+
+// Formatos de kFormats con su SourceFormat equivalente para convert_rows_argb
+const std::pair<SourceFormat, int> kScaledFormats[] = {
+    {SourceFormat::Bgra, 0}, {SourceFormat::Bgrx, 1}, {SourceFormat::Rgba, 2},
+    {SourceFormat::Rgbx, 3}, {SourceFormat::Uyvy, 4},
+};
+
+// Caja 2x2 de referencia sobre los bytes de origen, sin stride en la salida
+// 4 bytes: cada canal de 2x2 píxeles. UYVY: cada par de salida sale de dos pares de dos filas;
+// U y V de los cuatro, la luma de cada píxel de salida de los dos Y de uno de los pares
+std::vector<uint8_t> box2_reference(const uint8_t* src, int stride, int width, int height, bool uyvy,
+                                    int* out_width, int* out_height) {
+    static const int kPairs4[4][2] = {{0, 4}, {1, 5}, {2, 6}, {3, 7}};
+    static const int kPairsUyvy[4][2] = {{0, 4}, {1, 3}, {2, 6}, {5, 7}};
+    const int (*pairs)[2] = uyvy ? kPairsUyvy : kPairs4;
+    int bpp = uyvy ? 2 : 4;
+    *out_width = uyvy ? (width / 4) * 2 : width / 2;
+    *out_height = height / 2;
+    int groups = *out_width * bpp / 4;
+    std::vector<uint8_t> out(static_cast<size_t>(*out_width) * bpp * *out_height);
+    for (int y = 0; y < *out_height; y++) {
+        const uint8_t* r0 = src + static_cast<size_t>(y * 2) * stride;
+        const uint8_t* r1 = r0 + stride;
+        for (int k = 0; k < groups; k++) {
+            for (int j = 0; j < 4; j++) {
+                int a = k * 8 + pairs[j][0], b = k * 8 + pairs[j][1];
+                out[(static_cast<size_t>(y) * groups + k) * 4 + j] =
+                    static_cast<uint8_t>((r0[a] + r0[b] + r1[a] + r1[b] + 2) / 4);
+            }
+        }
+    }
+    return out;
+}
+
+bool check_scaled_rows(std::mt19937& rng) {
+    const int sizes[][2] = {{64, 36}, {70, 38}};
+    const int targets[][2] = {{64, 36}, {32, 18}, {16, 9}, {30, 17}, {24, 12}, {17, 9}, {40, 24}, {100, 50}};
+    bool ok = true;
+
+    for (const auto& size : sizes) {
+        int width = size[0], height = size[1];
+        for (const auto& entry : kScaledFormats) {
+            const Format& format = kFormats[entry.second];
+            int stride = width * bytes_per_pixel(format) + 12;
+            std::vector<uint8_t> src(static_cast<size_t>(stride) * height);
+            for (auto& byte : src) byte = static_cast<uint8_t>(rng());
+
+            for (const auto& target : targets) {
+                int dst_width = target[0], dst_height = target[1];
+
+                // Promediar 2x2 una vez si el resultado sigue cubriendo el destino
+                std::vector<uint8_t> boxed(src);
+                int boxed_stride = stride, boxed_width = width, boxed_height = height;
+                if (!(dst_width == width && dst_height == height)) {
+                    int w, h;
+                    std::vector<uint8_t> next = box2_reference(src.data(), stride, width, height, format.uyvy, &w, &h);
+                    if (w >= dst_width && h >= dst_height) {
+                        boxed.swap(next);
+                        boxed_stride = w * bytes_per_pixel(format);
+                        boxed_width = w;
+                        boxed_height = h;
+                    }
+                }
+                std::vector<uint32_t> full(static_cast<size_t>(boxed_width) * boxed_height);
+                convert(format, boxed.data(), boxed_stride, full.data(), boxed_width, boxed_width, boxed_height, Isa::Scalar);
+
+                std::vector<uint32_t> expected(static_cast<size_t>(dst_width) * dst_height);
+                for (int y = 0; y < dst_height; y++) {
+                    for (int x = 0; x < dst_width; x++) {
+                        int sy = static_cast<int>(static_cast<int64_t>(y) * boxed_height / dst_height);
+                        int sx = static_cast<int>(static_cast<int64_t>(x) * boxed_width / dst_width);
+                        expected[y * dst_width + x] = full[sy * boxed_width + sx];
+                    }
+                }
+
+                for (Isa isa : available_isas()) {
+                    std::vector<uint32_t> out(expected.size(), 0xDEADBEEF);
+                    std::vector<uint32_t> scratch;
+                    int band = (dst_height + 2) / 3; // Tres bandas, como ParallelPixelConverter
+                    for (int start = 0; start < dst_height; start += band) {
+                        convert_rows_argb(src.data(), stride, width, height, entry.first, out.data(),
+                                          dst_width, dst_height, start, std::min(dst_height, start + band), scratch, isa);
+                    }
+                    if (out != expected) {
+                        std::printf("FAIL %-12s %dx%d -> %dx%d: %s difiere por bandas\n",
+                                    format.name, width, height, dst_width, dst_height, isa_name(isa));
+                        ok = false;
+                    }
+                }
+            }
+        }
+    }
+    return ok;
+}
+
+bool check_box_aliasing() {
+    // Rayas verticales de 1 píxel en BGRA: columnas pares negras, impares blancas
+    const int width = 1920, height = 1080, dst_width = 854, dst_height = 480;
+    std::vector<uint8_t> src(static_cast<size_t>(width) * 4 * height);
+    for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+            uint8_t value = (x & 1) ? 255 : 0;
+            uint8_t* pixel = &src[(static_cast<size_t>(y) * width + x) * 4];
+            pixel[0] = pixel[1] = pixel[2] = value;
+            pixel[3] = 255;
+        }
+    }
+    std::vector<uint32_t> dst(static_cast<size_t>(dst_width) * dst_height);
+    std::vector<uint32_t> scratch;
+    convert_rows_argb(src.data(), width * 4, width, height, SourceFormat::Bgra, dst.data(),
+                      dst_width, dst_height, 0, dst_height, scratch);
+    int lo = 255, hi = 0;
+    for (uint32_t pixel : dst) {
+        int green = (pixel >> 8) & 0xFF;
+        lo = std::min(lo, green);
+        hi = std::max(hi, green);
+    }
+    if (hi - lo > 1) {
+        std::printf("FAIL caja 1920x1080 -> 854x480: rayas de 1 píxel dan %d..%d, se esperaba gris uniforme\n", lo, hi);
+        return false;
+    }
+    return true;
+}
+
+void benchmark(std::mt19937& rng, int width, int height, int frames) {
+    for (const Format& format : kFormats) {
+        int stride = width * bytes_per_pixel(format);
+        std::vector<uint8_t> src(static_cast<size_t>(stride) * height);
+        for (auto& byte : src) byte = static_cast<uint8_t>(rng());
+        std::vector<uint32_t> dst(static_cast<size_t>(width) * height);
+
+        std::printf("%-12s %dx%d:", format.name, width, height);
+        for (Isa isa : available_isas()) {
+            convert(format, src.data(), stride, dst.data(), width, width, height, isa); // Calentamiento
+
+            auto start = std::chrono::steady_clock::now();
+            for (int i = 0; i < frames; i++) {
+                convert(format, src.data(), stride, dst.data(), width, width, height, isa);
+            }
+            double seconds = std::chrono::duration<double>(std::chrono::steady_clock::now() - start).count();
+            double ms_per_frame = seconds * 1000.0 / frames;
+            double mpix = static_cast<double>(width) * height * frames / seconds / 1e6;
+            std::printf("  %s %.2f ms (%.0f Mpx/s)", isa_name(isa), ms_per_frame, mpix);
+        }
+        std::printf("\n");
+    }
+}
+
+void benchmark_scaled(std::mt19937& rng, int width, int height, int frames) {
+    const int targets[][2] = {{960, 540}, {854, 480}, {480, 270}};
+    for (const auto& entry : kScaledFormats) {
+        if (entry.first != SourceFormat::Bgra && entry.first != SourceFormat::Uyvy) {
+            continue;
+        }
+        const Format& format = kFormats[entry.second];
+        int stride = width * bytes_per_pixel(format);
+        std::vector<uint8_t> src(static_cast<size_t>(stride) * height);
+        for (auto& byte : src) byte = static_cast<uint8_t>(rng());
+        std::vector<uint32_t> scratch;
+
+        for (const auto& target : targets) {
+            int dst_width = target[0], dst_height = target[1];
+            std::vector<uint32_t> dst(static_cast<size_t>(dst_width) * dst_height);
+            auto measure = [&](bool nearest) {
+                auto run = [&] {
+                    if (nearest) {
+                        nearest_rows_argb(src.data(), stride, width, height, entry.first, dst.data(),
+                                          dst_width, dst_height, 0, dst_height, scratch);
+                    } else {
+                        convert_rows_argb(src.data(), stride, width, height, entry.first, dst.data(),
+                                          dst_width, dst_height, 0, dst_height, scratch);
+                    }
+                };
+                run(); // Calentamiento
+                auto start = std::chrono::steady_clock::now();
+                for (int i = 0; i < frames; i++) {
+                    run();
+                }
+                return std::chrono::duration<double>(std::chrono::steady_clock::now() - start).count() * 1000.0 / frames;
+            };
+            double nearest_ms = measure(true);
+            double box_ms = measure(false);
+            std::printf("%-12s %dx%d -> %dx%d (%s): vecino %.2f ms, caja %.2f ms (%.2fx)\n",
+                        format.name, width, height, dst_width, dst_height, isa_name(best_isa()),
+                        nearest_ms, box_ms, box_ms > 0 ? nearest_ms / box_ms : 0.0);
+        }
+    }
+}
+
+} // namespace
+
+int main() {
+    std::mt19937 rng(12345);
+
+    std::printf("ISA preferida: %s\n", isa_name(best_isa()));
+    if (!check_correctness(rng) || !check_scaled_rows(rng) || !check_box_aliasing()) {
+        std::printf("Pruebas de corrección: FALLO\n");
+        return 1;
+    }
+    std::printf("Pruebas de corrección: OK\n");
+
+    benchmark(rng, 1920, 1080, 60);
+    benchmark(rng, 3840, 2160, 20);
+    benchmark_scaled(rng, 1920, 1080, 60);
+    return 0;
+}
@@ -0,0 +1,180 @@
+#ifndef NDIPLAYER_LOCK_FREE_RING_H
+#define NDIPLAYER_LOCK_FREE_RING_H
+
+// Colas sin locks para el paso de frames entre threads nativos, sin dependencias de JNI
+// BoundedRing: cola MPMC de capacidad fija (esquema de Vyukov, un número de secuencia por celda)
+// WakeEvent: espera con timeout sobre un futex; notify() no entra al kernel si nadie espera
+// El thread de captura nunca bloquea en un mutex que tenga tomado un worker de menor prioridad
+
+#include <atomic>
+#include <chrono>
+#include <climits>
+#include <cstddef>
+#include <cstdint>
+#include <thread>
+
+#if defined(__linux__)
+#include <cerrno>
+#include <ctime>
+#include <linux/futex.h>
+#include <sys/syscall.h>
+#include <unistd.h>
+#endif
+
+namespace lock_free {
+
+// Capacity potencia de 2; T trivialmente copiable
+template <typename T, size_t Capacity>
+class BoundedRing {
+    static_assert(Capacity >= 2 && (Capacity & (Capacity - 1)) == 0, "Capacity debe ser potencia de 2");
+
+public:
+    BoundedRing() {
+        for (size_t i = 0; i < Capacity; i++) {
+            cells_[i].sequence.store(i, std::memory_order_relaxed);
+        }
+    }
+
+    BoundedRing(const BoundedRing&) = delete;
+    BoundedRing& operator=(const BoundedRing&) = delete;
+
+    // false si está llena
+    bool push(const T& value) {
+        size_t position = tail_.load(std::memory_order_relaxed);
+        while (true) {
+            Cell& cell = cells_[position & (Capacity - 1)];
+            size_t sequence = cell.sequence.load(std::memory_order_acquire);
+            intptr_t diff = static_cast<intptr_t>(sequence) - static_cast<intptr_t>(position);
+            if (diff == 0) {
+                if (tail_.compare_exchange_weak(position, position + 1, std::memory_order_relaxed)) {
+                    cell.value = value;
+                    cell.sequence.store(position + 1, std::memory_order_release);
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            } else {
+                position = tail_.load(std::memory_order_relaxed);
+            }
+        }
+    }
+
+    // false si está vacía, o si el push que ocupa la cabeza aún no ha publicado su valor
+    bool pop(T& value) {
+        size_t position = head_.load(std::memory_order_relaxed);
+        while (true) {
+            Cell& cell = cells_[position & (Capacity - 1)];
+            size_t sequence = cell.sequence.load(std::memory_order_acquire);
+            intptr_t diff = static_cast<intptr_t>(sequence) - static_cast<intptr_t>(position + 1);
+            if (diff == 0) {
+                if (head_.compare_exchange_weak(position, position + 1, std::memory_order_relaxed)) {
+                    value = cell.value;
+                    cell.sequence.store(position + Capacity, std::memory_order_release);
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            } else {
+                position = head_.load(std::memory_order_relaxed);
+            }
+        }
+    }
+
+    // Aproximado con productores o consumidores en marcha
+    size_t size() const {
+        size_t tail = tail_.load(std::memory_order_acquire);
+        size_t head = head_.load(std::memory_order_acquire);
+        return tail >= head ? tail - head : 0;
+    }
+
+    static constexpr size_t capacity() {
+        return Capacity;
+    }
+
+private:
+    struct Cell {
+        std::atomic<size_t> sequence;
+        T value;
+    };
+
+    // Cabeza y cola en líneas de caché distintas: productores y consumidores no se pisan
+    alignas(64) Cell cells_[Capacity];
+    alignas(64) std::atomic<size_t> head_{0};
+    alignas(64) std::atomic<size_t> tail_{0};
+};
+
+// Aviso de "hay algo nuevo" para consumidores que esperan con timeout:
+//   uint32_t epoch = event.prepare();
+//   if (!intentar()) event.wait(epoch, timeout);
+// Un notify() entre prepare() y wait() hace que wait() vuelva enseguida: no se pierden avisos
+class WakeEvent {
+public:
+    uint32_t prepare() const {
+        return epoch_.load(std::memory_order_acquire);
+    }
+
+    // false solo si venció el timeout; true con aviso o despertar espurio (volver a comprobar)
+    bool wait(uint32_t epoch, std::chrono::nanoseconds timeout) {
+        if (timeout.count() <= 0) {
+            return epoch_.load(std::memory_order_acquire) != epoch;
+        }
+        waiters_.fetch_add(1, std::memory_order_seq_cst);
+        bool woken = true;
+        if (epoch_.load(std::memory_order_seq_cst) == epoch) {
+#if defined(__linux__)
+            timespec relative;
+            relative.tv_sec = static_cast<time_t>(timeout.count() / 1000000000);
+            relative.tv_nsec = static_cast<long>(timeout.count() % 1000000000);
+            long result = syscall(SYS_futex, futexWord(), FUTEX_WAIT_PRIVATE, epoch, &relative, nullptr, 0);
+            woken = !(result == -1 && errno == ETIMEDOUT);
+#else
+            // Sin futex: sondeo corto hasta el timeout
+            auto deadline = std::chrono::steady_clock::now() + timeout;
+            while (epoch_.load(std::memory_order_acquire) == epoch) {
+                if (std::chrono::steady_clock::now() >= deadline) {
+                    woken = false;
+                    break;
+                }
+                std::this_thread::sleep_for(std::chrono::microseconds(50));
+            }
+#endif
+        }
+        waiters_.fetch_sub(1, std::memory_order_relaxed);
+        return woken;
+    }
+
+    // Despierta a todos los que esperan; sin syscall si no hay ninguno
+    void notify() {
+        wake(INT_MAX);
+    }
+
+    // Un elemento nuevo para varios consumidores: despertar a uno evita la estampida
+    void notify_one() {
+        wake(1);
+    }
+
+private:
+    void wake(int count) {
+        epoch_.fetch_add(1, std::memory_order_seq_cst);
+        if (waiters_.load(std::memory_order_seq_cst) > 0) {
+#if defined(__linux__)
+            syscall(SYS_futex, futexWord(), FUTEX_WAKE_PRIVATE, count, nullptr, nullptr, 0);
+#endif
+        }
+    }
+
+#if defined(__linux__)
+    static_assert(sizeof(std::atomic<uint32_t>) == sizeof(uint32_t), "El futex necesita una palabra de 32 bits");
+
+    uint32_t* futexWord() {
+        return reinterpret_cast<uint32_t*>(&epoch_);
+    }
+#endif
+
+    std::atomic<uint32_t> epoch_{0};
+    std::atomic<uint32_t> waiters_{0};
+};
+
+} // namespace lock_free
+
+#endif // NDIPLAYER_LOCK_FREE_RING_H
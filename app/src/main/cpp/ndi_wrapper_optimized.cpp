@@ -1,14 +1,16 @@
 #include <jni.h>
 #include <string>
+#include <android/bitmap.h>
 #include <android/log.h>
 #include <cstring>
 #include <memory>
 #include <atomic>
 #include <thread>
 #include <mutex>
-#include <condition_variable>
-#include <queue>
+#include <shared_mutex>
+#include <algorithm>
 #include <chrono>
+#include <vector>
 
 // NDI SDK Headers
 #include "ndi/include/Processing.NDI.Lib.h"
@@ -17,141 +19,272 @@
 #include "ndi/include/Processing.NDI.Find.h"
 #include "ndi/include/Processing.NDI.structs.h"
 
+#include "pixel_kernels.h"
+#include "lock_free_ring.h"
+
 #define LOG_TAG "NDI_Optimized"
 #define LOGI(...) __android_log_print(ANDROID_LOG_INFO, LOG_TAG, __VA_ARGS__)
 #define LOGE(...) __android_log_print(ANDROID_LOG_ERROR, LOG_TAG, __VA_ARGS__)
 #define LOGD(...) __android_log_print(ANDROID_LOG_DEBUG, LOG_TAG, __VA_ARGS__)
 
 // Configuración de rendimiento
-#define MAX_FRAME_CACHE 3
-#define FRAME_TIMEOUT_MS 33  // ~30 FPS
 #define CONNECTION_RETRY_COUNT 3
 
 // Estado global optimizado con atomic operations
 static std::atomic<NDIlib_find_instance_t> ndi_find{nullptr};
 static std::atomic<NDIlib_recv_instance_t> ndi_recv{nullptr};
+// Modo pull: FrameSync sobre ndi_recv, creado con el receiver si la conexión lo pide
+static std::atomic<NDIlib_framesync_instance_t> ndi_framesync{nullptr};
 static std::atomic<const NDIlib_source_t*> current_sources{nullptr};
 static uint32_t num_sources = 0;  // Sin atomic para compatibilidad con NDI API
 
-// Variables adicionales para MainActivity compatibility
+// Vida del receiver: las capturas lo usan en modo compartido y destruirlo
+// requiere modo exclusivo, que espera como mucho el timeout de una captura
+static std::shared_mutex recv_lifetime_mutex;
+
+// Ancho de banda en caliente: el SDK lo fija al crear el receiver, así que cambiarlo es crear otro
+// hacia la misma fuente, esperar a que conecte y sustituir el actual (antes de soltarlo)
+// Serializa conectar, desconectar y cambiar de ancho de banda; nunca se toma dentro de recv_lifetime_mutex
+static std::mutex receiver_config_mutex;
+static std::string connected_ndi_name;    // Copias: la lista de find cambia mientras dura la conexión
+static std::string connected_url_address;
+static NDIlib_recv_bandwidth_e recv_bandwidth = NDIlib_recv_bandwidth_highest;
+#define BANDWIDTH_SWITCH_TIMEOUT_MS 2000
+#define BANDWIDTH_LEASE_GRACE_MS 200
+
+// Préstamos de frames del SDK: el NDIlib_video_frame_v2_t se retiene sin copiarlo, la conversión
+// lee de él y NDIlib_recv_free_video_v2 solo se llama al soltar el préstamo
+// El SDK recicla un número limitado de buffers por receiver: con lease_cap préstamos
+// pendientes la captura espera a que se suelte uno en lugar de dejar su cola sin frames
+// Sin mutex: los workers que sueltan préstamos nunca retienen un lock que espere la captura
+#define MAX_FRAME_LEASES 16
+
+struct FrameLease {
+    NDIlib_video_frame_v2_t frame;
+    std::atomic<NDIlib_recv_instance_t> recv; // Atómico: el cambio de ancho de banda lo mira sin lock
+    NDIlib_framesync_instance_t framesync; // Frame sacado de FrameSync: se devuelve a él y no al receiver
+    uint32_t sequence;          // Cambia con cada préstamo: un handle ya soltado no alcanza al siguiente
+    std::atomic<jlong> handle;  // 0 libre o reservado por la captura; publicado tras rellenar frame y recv
+};
+
+static FrameLease frame_leases[MAX_FRAME_LEASES];
+static lock_free::BoundedRing<int, MAX_FRAME_LEASES> free_leases; // Índices libres, rellenado en JNI_OnLoad
+static lock_free::WakeEvent lease_released;
+static std::atomic<int> lease_cap{4};
+static std::atomic<int> lease_count{0}; // Reservados: la captura solo saca índices por debajo del tope
+static uint32_t lease_sequence = 0;     // Solo el thread de captura
+// Último frame sacado de FrameSync: lo repite hasta que llega otro y no se vuelve a convertir
+static int64_t last_pulled_timestamp = 0;
+static int64_t last_pulled_timecode = 0;
+
+// Último frame de captureFrameToBitmap (MainActivity); se devuelve al receiver que lo entregó
 static NDIlib_video_frame_v2_t current_video_frame;
+static NDIlib_recv_instance_t current_video_recv = nullptr;
 static std::atomic<bool> has_video_frame{false};
 
-// Forward declaration
-jobject createBitmapFromVideoFrame(JNIEnv *env, NDIlib_video_frame_v2_t* frame);
-
-// Frame cache thread-safe
-struct FrameData {
-    std::unique_ptr<uint8_t[]> data;
-    size_t size;
-    int width;
-    int height;
-    NDIlib_FourCC_video_type_e fourCC;
-    std::chrono::steady_clock::time_point timestamp;
-    
-    FrameData() : data(nullptr), size(0), width(0), height(0), 
-                  fourCC(NDIlib_FourCC_video_type_UYVY), 
-                  timestamp(std::chrono::steady_clock::now()) {}
-    
-    void reset() {
-        data.reset();
-        size = 0;
-        width = height = 0;
-        timestamp = std::chrono::steady_clock::now();
+static struct {
+    std::atomic<int64_t> outstanding{0};
+    std::atomic<int64_t> leased{0}; // Frames prestados desde el arranque
+    std::atomic<int64_t> stalls{0}; // Capturas que no esperaron lo bastante a un préstamo libre
+} lease_stats;
+
+// Vuelve a la lista libre antes de bajar la cuenta: quien reserve después siempre encuentra índice
+static void returnLease(int index) {
+    while (!free_leases.push(index)) {
+        std::this_thread::yield(); // No pasa: hay tantas celdas como préstamos
     }
-};
+    lease_stats.outstanding = lease_count.fetch_sub(1, std::memory_order_acq_rel) - 1;
+    lease_released.notify();
+}
 
-// Thread-safe frame cache
-class OptimizedFrameCache {
-private:
-    std::queue<std::unique_ptr<FrameData>> available_frames;
-    std::queue<std::unique_ptr<FrameData>> ready_frames;
-    std::mutex available_mutex;
-    std::mutex ready_mutex;
-    std::condition_variable frame_ready_cv;
-    std::atomic<bool> shutdown{false};
-    
-public:
-    OptimizedFrameCache() {
-        // Pre-allocate frame objects
-        for (int i = 0; i < MAX_FRAME_CACHE; i++) {
-            available_frames.push(std::make_unique<FrameData>());
+// Quien gane el intercambio del handle a 0 devuelve el frame al SDK; el resto no hace nada
+static bool freeLease(int index, jlong handle) {
+    FrameLease& lease = frame_leases[index];
+    if (!lease.handle.compare_exchange_strong(handle, 0, std::memory_order_acq_rel)) {
+        return false;
+    }
+    if (lease.framesync) {
+        NDIlib_framesync_free_video(lease.framesync, &lease.frame);
+    } else {
+        NDIlib_recv_free_video_v2(lease.recv, &lease.frame);
+    }
+    lease.recv = nullptr;
+    lease.framesync = nullptr;
+    returnLease(index);
+    return true;
+}
+
+// Con recv_lifetime_mutex exclusivo: no hay capturas ni liberaciones a medias
+static void destroyReceiverLocked(NDIlib_recv_instance_t recv, NDIlib_framesync_instance_t framesync) {
+    // Los frames prestados pertenecen al receiver: se devuelven antes de destruirlo
+    for (int i = 0; i < MAX_FRAME_LEASES; i++) {
+        jlong handle = frame_leases[i].handle.load(std::memory_order_acquire);
+        if (handle != 0 && frame_leases[i].recv.load(std::memory_order_relaxed) == recv) {
+            freeLease(i, handle);
         }
     }
-    
-    ~OptimizedFrameCache() {
-        shutdown = true;
-        frame_ready_cv.notify_all();
+    if (has_video_frame && current_video_recv == recv) {
+        NDIlib_recv_free_video_v2(recv, &current_video_frame);
+        has_video_frame = false;
+        current_video_recv = nullptr;
     }
-    
-    std::unique_ptr<FrameData> getAvailableFrame() {
-        std::lock_guard<std::mutex> lock(available_mutex);
-        if (!available_frames.empty()) {
-            auto frame = std::move(available_frames.front());
-            available_frames.pop();
-            return frame;
+    if (framesync) {
+        NDIlib_framesync_destroy(framesync); // Antes que el receiver del que lee
+    }
+    NDIlib_recv_destroy(recv);
+}
+
+static void destroyReceiver() {
+    std::unique_lock<std::shared_mutex> lock(recv_lifetime_mutex);
+    NDIlib_recv_instance_t recv = ndi_recv.exchange(nullptr);
+    NDIlib_framesync_instance_t framesync = ndi_framesync.exchange(nullptr);
+    if (recv) {
+        destroyReceiverLocked(recv, framesync);
+    }
+}
+
+// Préstamos aún sacados de recv (de la captura o de su FrameSync)
+static int leasesFrom(NDIlib_recv_instance_t recv) {
+    int count = 0;
+    for (int i = 0; i < MAX_FRAME_LEASES; i++) {
+        if (frame_leases[i].handle.load(std::memory_order_acquire) != 0
+            && frame_leases[i].recv.load(std::memory_order_relaxed) == recv) {
+            count++;
         }
-        return std::make_unique<FrameData>();
+    }
+    return count;
+}
+
+static NDIlib_recv_instance_t createReceiver(const NDIlib_source_t& source, NDIlib_recv_bandwidth_e bandwidth) {
+    NDIlib_recv_create_v3_t recv_desc;
+    memset(&recv_desc, 0, sizeof(recv_desc));
+    recv_desc.source_to_connect_to = source;
+    recv_desc.p_ndi_recv_name = "NDI Android Player Optimized";
+    // Solo audio, proxy del emisor o stream completo: menos red y menos decodificación
+    recv_desc.bandwidth = bandwidth;
+    recv_desc.allow_video_fields = false; // Desactivar fields para rendimiento
+    recv_desc.color_format = NDIlib_recv_color_format_BGRX_BGRA; // Formato consistente
+    
+    NDIlib_recv_instance_t recv = NDIlib_recv_create_v3(&recv_desc);
+    if (recv) {
+        NDIlib_recv_set_tally(recv, nullptr); // Sin tally para rendimiento
+    }
+    return recv;
+}
+
+static NDIlib_recv_bandwidth_e toBandwidth(jint value) {
+    switch (value) {
+        case NDIlib_recv_bandwidth_audio_only:
+        case NDIlib_recv_bandwidth_lowest:
+        case NDIlib_recv_bandwidth_highest:
+            return static_cast<NDIlib_recv_bandwidth_e>(value);
+        default:
+            return NDIlib_recv_bandwidth_highest;
+    }
+}
+
+// IDs de FrameDescriptor resueltos una vez en JNI_OnLoad
+static struct {
+    jfieldID width;
+    jfieldID height;
+    jfieldID stride;
+    jfieldID fourCC;
+    jfieldID timecode;
+    jfieldID timestamp;
+} frame_descriptor_fields;
+
+// Bitmap.createBitmap(int, int, Config) y Config.ARGB_8888, resueltos una vez en JNI_OnLoad
+static struct {
+    jclass bitmap_class;
+    jmethodID create_bitmap;
+    jobject argb_8888;
+} bitmap_ids;
+
+static bool cacheBitmapIds(JNIEnv *env) {
+    jclass bitmap = env->FindClass("android/graphics/Bitmap");
+    jclass config = env->FindClass("android/graphics/Bitmap$Config");
+    if (!bitmap || !config) {
+        return false;
     }
     
-    void pushReadyFrame(std::unique_ptr<FrameData> frame) {
-        std::lock_guard<std::mutex> lock(ready_mutex);
-        
-        // Mantener solo los frames más recientes
-        while (ready_frames.size() >= MAX_FRAME_CACHE - 1) {
-            auto old_frame = std::move(ready_frames.front());
-            ready_frames.pop();
-            
-            // Reciclar frame
-            old_frame->reset();
-            std::lock_guard<std::mutex> av_lock(available_mutex);
-            available_frames.push(std::move(old_frame));
-        }
-        
-        ready_frames.push(std::move(frame));
-        frame_ready_cv.notify_one();
+    bitmap_ids.create_bitmap = env->GetStaticMethodID(bitmap, "createBitmap",
+        "(IILandroid/graphics/Bitmap$Config;)Landroid/graphics/Bitmap;");
+    jfieldID argb_field = env->GetStaticFieldID(config, "ARGB_8888", "Landroid/graphics/Bitmap$Config;");
+    jobject argb = argb_field ? env->GetStaticObjectField(config, argb_field) : nullptr;
+    if (!bitmap_ids.create_bitmap || !argb) {
+        return false;
     }
     
-    std::unique_ptr<FrameData> popReadyFrame(int timeout_ms = 0) {
-        std::unique_lock<std::mutex> lock(ready_mutex);
-        
-        if (timeout_ms > 0) {
-            frame_ready_cv.wait_for(lock, std::chrono::milliseconds(timeout_ms), 
-                [this] { return !ready_frames.empty() || shutdown; });
-        }
-        
-        if (!ready_frames.empty()) {
-            auto frame = std::move(ready_frames.front());
-            ready_frames.pop();
-            return frame;
-        }
-        
-        return nullptr;
+    bitmap_ids.bitmap_class = static_cast<jclass>(env->NewGlobalRef(bitmap));
+    bitmap_ids.argb_8888 = env->NewGlobalRef(argb);
+    env->DeleteLocalRef(argb);
+    env->DeleteLocalRef(config);
+    env->DeleteLocalRef(bitmap);
+    return true;
+}
+
+// ByteBuffer.allocateDirect(int), resuelto una vez en JNI_OnLoad para los bloques del arena
+static struct {
+    jclass byte_buffer_class;
+    jmethodID allocate_direct;
+} byte_buffer_ids;
+
+static bool cacheByteBufferIds(JNIEnv *env) {
+    jclass byte_buffer = env->FindClass("java/nio/ByteBuffer");
+    if (!byte_buffer) {
+        return false;
+    }
+    byte_buffer_ids.allocate_direct = env->GetStaticMethodID(byte_buffer, "allocateDirect", "(I)Ljava/nio/ByteBuffer;");
+    if (!byte_buffer_ids.allocate_direct) {
+        return false;
+    }
+    byte_buffer_ids.byte_buffer_class = static_cast<jclass>(env->NewGlobalRef(byte_buffer));
+    env->DeleteLocalRef(byte_buffer);
+    return true;
+}
+
+extern "C" JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *reserved) {
+    JNIEnv *env = nullptr;
+    if (vm->GetEnv(reinterpret_cast<void**>(&env), JNI_VERSION_1_6) != JNI_OK) {
+        return JNI_ERR;
+    }
+    
+    jclass descriptor = env->FindClass("ndiplayer/oto/service/FrameDescriptor");
+    if (!descriptor) {
+        LOGE("No se encontró FrameDescriptor");
+        return JNI_ERR;
+    }
+    frame_descriptor_fields.width = env->GetFieldID(descriptor, "width", "I");
+    frame_descriptor_fields.height = env->GetFieldID(descriptor, "height", "I");
+    frame_descriptor_fields.stride = env->GetFieldID(descriptor, "stride", "I");
+    frame_descriptor_fields.fourCC = env->GetFieldID(descriptor, "fourCC", "I");
+    frame_descriptor_fields.timecode = env->GetFieldID(descriptor, "timecode", "J");
+    frame_descriptor_fields.timestamp = env->GetFieldID(descriptor, "timestamp", "J");
+    env->DeleteLocalRef(descriptor);
+    
+    if (env->ExceptionCheck()) {
+        LOGE("FrameDescriptor no tiene los campos esperados");
+        return JNI_ERR;
     }
     
-    void recycleFrame(std::unique_ptr<FrameData> frame) {
-        frame->reset();
-        std::lock_guard<std::mutex> lock(available_mutex);
-        available_frames.push(std::move(frame));
+    if (!cacheBitmapIds(env)) {
+        LOGE("No se pudieron resolver Bitmap.createBitmap / ARGB_8888");
+        return JNI_ERR;
+    }
+    if (!cacheByteBufferIds(env)) {
+        LOGE("No se pudo resolver ByteBuffer.allocateDirect");
+        return JNI_ERR;
     }
     
-    void clear() {
-        std::lock_guard<std::mutex> ready_lock(ready_mutex);
-        std::lock_guard<std::mutex> av_lock(available_mutex);
-        
-        // Mover todos los frames ready a available
-        while (!ready_frames.empty()) {
-            auto frame = std::move(ready_frames.front());
-            ready_frames.pop();
-            frame->reset();
-            available_frames.push(std::move(frame));
-        }
+    for (int i = 0; i < MAX_FRAME_LEASES; i++) {
+        free_leases.push(i);
     }
-};
+    return JNI_VERSION_1_6;
+}
 
-static OptimizedFrameCache frame_cache;
-static std::atomic<bool> capture_running{false};
-static std::thread capture_thread;
+// Variables adicionales para MainActivity compatibility
+// Forward declaration
+jobject createBitmapFromVideoFrame(JNIEnv *env, NDIlib_video_frame_v2_t* frame, jobject reuse);
 
 // Optimized NDI initialization
 extern "C" JNIEXPORT jboolean JNICALL
@@ -180,16 +313,10 @@ extern "C" JNIEXPORT void JNICALL
 Java_ndiplayer_oto_service_NDIDiscoveryService_nativeDestroyNDI(JNIEnv *env, jobject thiz) {
     LOGI("Destruyendo recursos NDI optimizados");
     
-    // Detener captura
-    capture_running = false;
-    if (capture_thread.joinable()) {
-        capture_thread.join();
-    }
-    
-    // Limpiar receiver
-    NDIlib_recv_instance_t recv = ndi_recv.exchange(nullptr);
-    if (recv) {
-        NDIlib_recv_destroy(recv);
+    // Limpiar receiver, esperando a las capturas en curso y a un cambio de ancho de banda
+    {
+        std::lock_guard<std::mutex> config_lock(receiver_config_mutex);
+        destroyReceiver();
     }
     
     // Limpiar finder
@@ -198,9 +325,6 @@ Java_ndiplayer_oto_service_NDIDiscoveryService_nativeDestroyNDI(JNIEnv *env, job
         NDIlib_find_destroy(find);
     }
     
-    // Limpiar cache
-    frame_cache.clear();
-    
     current_sources = nullptr;
     num_sources = 0;
     
@@ -312,26 +436,18 @@ Java_ndiplayer_oto_service_NDIDiscoveryService_nativeGetSources(JNIEnv *env, job
 
 // Optimized connection with retry logic
 extern "C" JNIEXPORT jboolean JNICALL
-Java_ndiplayer_oto_service_NDIRenderService_nativeConnectToSource(JNIEnv *env, jobject thiz, jstring sourceName, jstring sourceUrl) {
+Java_ndiplayer_oto_service_NDIRenderService_nativeConnectToSource(JNIEnv *env, jobject thiz, jstring sourceName, jstring sourceUrl,
+                                                                  jint bandwidth, jboolean pullMode) {
     const char* source_name_cstr = env->GetStringUTFChars(sourceName, 0);
     
     LOGI("=== CONEXIÓN NDI OPTIMIZADA ===");
     LOGI("Conectando a fuente: %s", source_name_cstr);
     
     try {
-        // Limpiar receiver anterior
-        NDIlib_recv_instance_t old_recv = ndi_recv.exchange(nullptr);
-        if (old_recv) {
-            LOGD("Limpiando receiver anterior");
-            NDIlib_recv_destroy(old_recv);
-        }
+        std::lock_guard<std::mutex> config_lock(receiver_config_mutex);
         
-        // Detener captura anterior
-        capture_running = false;
-        if (capture_thread.joinable()) {
-            capture_thread.join();
-        }
-        frame_cache.clear();
+        // Limpiar receiver anterior
+        destroyReceiver();
         
         // Buscar fuente específica con reintentos
         const NDIlib_source_t* target_source = nullptr;
@@ -374,26 +490,35 @@ Java_ndiplayer_oto_service_NDIRenderService_nativeConnectToSource(JNIEnv *env, j
             return JNI_FALSE;
         }
         
-        // Crear receiver con configuración optimizada para bajo rendimiento
-        NDIlib_recv_create_v3_t recv_desc;
-        memset(&recv_desc, 0, sizeof(recv_desc));
-        recv_desc.source_to_connect_to = *target_source;
-        recv_desc.p_ndi_recv_name = "NDI Android Player Optimized";
-        recv_desc.bandwidth = NDIlib_recv_bandwidth_audio_only; // Iniciar con audio solo para conexión rápida
-        recv_desc.allow_video_fields = false; // Desactivar fields para rendimiento
-        recv_desc.color_format = NDIlib_recv_color_format_BGRX_BGRA; // Formato consistente
-        
-        NDIlib_recv_instance_t new_recv = NDIlib_recv_create_v3(&recv_desc);
+        // Crear receiver con el ancho de banda elegido por el servicio
+        NDIlib_recv_bandwidth_e new_bandwidth = toBandwidth(bandwidth);
+        NDIlib_recv_instance_t new_recv = createReceiver(*target_source, new_bandwidth);
         if (!new_recv) {
             LOGE("Error creando receiver NDI");
             env->ReleaseStringUTFChars(sourceName, source_name_cstr);
             return JNI_FALSE;
         }
+        connected_ndi_name = target_source->p_ndi_name ? target_source->p_ndi_name : "";
+        connected_url_address = target_source->p_url_address ? target_source->p_url_address : "";
+        recv_bandwidth = new_bandwidth;
+        
+        // Modo pull: FrameSync recibe por su cuenta y entrega video y audio retemporizados al pedirlos
+        NDIlib_framesync_instance_t new_framesync = nullptr;
+        if (pullMode) {
+            new_framesync = NDIlib_framesync_create(new_recv);
+            if (!new_framesync) {
+                LOGE("Error creando FrameSync, se sigue en modo push");
+            }
+        }
         
-        // Actualizar configuración para incluir video después de conexión
-        NDIlib_recv_set_tally(new_recv, nullptr); // Sin tally para rendimiento
-        
-        ndi_recv = new_recv;
+        {
+            std::unique_lock<std::shared_mutex> lock(recv_lifetime_mutex);
+            ndi_framesync = new_framesync;
+            ndi_recv = new_recv;
+            last_pulled_timestamp = 0;
+            last_pulled_timecode = 0;
+        }
+        LOGI("Captura en modo %s, ancho de banda %d", new_framesync ? "pull (FrameSync)" : "push", new_bandwidth);
         
         LOGI("=== CONEXIÓN NDI COMPLETADA EXITOSAMENTE ===");
         
@@ -411,337 +536,616 @@ Java_ndiplayer_oto_service_NDIRenderService_nativeConnectToSource(JNIEnv *env, j
     }
 }
 
-// High-performance frame capture function
-void optimized_capture_loop() {
-    LOGI("Iniciando loop de captura optimizado");
+// Arena de buffers de frame por clase de tamaño: resolución, stride y FourCC
+// Los bloques sobreviven a desconexiones y cambios de resolución: volver a una clase ya vista
+// (p. ej. proxy <-> resolución completa) no reserva memoria, y la captura en régimen estable nunca lo hace
+// Cada bloque es un ByteBuffer.allocateDirect y no memoria nativa: ART lo respalda con un array
+// no movible y Java convierte desde él sin copiarlo
+#define ARENA_RETAINED_CLASSES 3 // La clase activa y las dos usadas más recientemente
+
+struct ArenaBlock {
+    jobject ref;       // Referencia global: el bloque no se libera mientras está en el arena
+    uint8_t* address;
+    size_t capacity;
+};
+
+struct ArenaClass {
+    jint width;
+    jint height;
+    jint stride;
+    jint fourcc;
+    size_t bytes;
+    std::vector<ArenaBlock> blocks;
+    uint64_t last_use;
+};
+
+static std::mutex arena_mutex; // También protege los bloques de la clase activa durante la copia
+static std::vector<ArenaClass> arena_classes;
+static int arena_active = -1;  // Clase cuyos bloques recibe nativeCaptureFrame por índice de slot
+static uint64_t arena_tick = 0;
+
+static struct {
+    std::atomic<int64_t> bytes_reserved{0};
+    std::atomic<int64_t> bytes_active{0};
+    std::atomic<int64_t> allocations{0};   // Bloques creados
+    std::atomic<int64_t> reuses{0};        // Reservas servidas sin crear ningún bloque
+    std::atomic<int64_t> trimmed_bytes{0}; // Soltado por exceso de clases retenidas
+    std::atomic<int64_t> classes{0};
+} arena_stats;
+
+static void releaseArenaClass(JNIEnv *env, ArenaClass& size_class) {
+    for (auto& block : size_class.blocks) {
+        env->DeleteGlobalRef(block.ref);
+        arena_stats.bytes_reserved -= static_cast<int64_t>(block.capacity);
+    }
+    size_class.blocks.clear();
+}
+
+// Suelta las clases menos usadas por encima de ARENA_RETAINED_CLASSES; nunca la activa
+static void trimArena(JNIEnv *env) {
+    while (arena_classes.size() > ARENA_RETAINED_CLASSES) {
+        int oldest = -1;
+        for (int i = 0; i < static_cast<int>(arena_classes.size()); i++) {
+            if (i != arena_active && (oldest < 0 || arena_classes[i].last_use < arena_classes[oldest].last_use)) {
+                oldest = i;
+            }
+        }
+        ArenaClass& victim = arena_classes[oldest];
+        int64_t bytes = static_cast<int64_t>(victim.bytes * victim.blocks.size());
+        LOGI("Arena: se suelta la clase %dx%d (%lld bytes)", victim.width, victim.height, (long long)bytes);
+        releaseArenaClass(env, victim);
+        arena_stats.trimmed_bytes += bytes;
+        arena_classes.erase(arena_classes.begin() + oldest);
+        if (arena_active > oldest) {
+            arena_active--;
+        }
+    }
+    arena_stats.classes = static_cast<int64_t>(arena_classes.size());
+}
+
+static bool allocateArenaBlock(JNIEnv *env, ArenaClass& size_class) {
+    jobject buffer = env->CallStaticObjectMethod(byte_buffer_ids.byte_buffer_class, byte_buffer_ids.allocate_direct,
+                                                 static_cast<jint>(size_class.bytes));
+    if (!buffer || env->ExceptionCheck()) {
+        env->ExceptionClear(); // OutOfMemoryError: la reserva falla sin tumbar la captura
+        return false;
+    }
+    void* address = env->GetDirectBufferAddress(buffer);
+    if (!address) {
+        env->DeleteLocalRef(buffer);
+        return false;
+    }
+    size_class.blocks.push_back({env->NewGlobalRef(buffer), static_cast<uint8_t*>(address), size_class.bytes});
+    env->DeleteLocalRef(buffer);
+    arena_stats.bytes_reserved += static_cast<int64_t>(size_class.bytes);
+    arena_stats.allocations++;
+    return true;
+}
+
+// Activa la clase del frame negociado con al menos count bloques y los devuelve en orden de slot
+// Solo crea los bloques que faltan; null si no hay memoria
+extern "C" JNIEXPORT jobjectArray JNICALL
+Java_ndiplayer_oto_service_NDIRenderService_nativeReserveFrameBuffers(JNIEnv *env, jobject thiz, jint width, jint height,
+                                                                       jint stride, jint fourcc, jint count) {
+    if (width <= 0 || height <= 0 || stride <= 0 || count <= 0) {
+        return nullptr;
+    }
     
-    NDIlib_recv_instance_t recv = ndi_recv.load();
-    if (!recv) {
-        LOGE("No hay receiver disponible para captura");
-        return;
+    std::lock_guard<std::mutex> lock(arena_mutex);
+    int index = -1;
+    for (int i = 0; i < static_cast<int>(arena_classes.size()); i++) {
+        const ArenaClass& c = arena_classes[i];
+        if (c.width == width && c.height == height && c.stride == stride && c.fourcc == fourcc) {
+            index = i;
+            break;
+        }
+    }
+    if (index < 0) {
+        arena_classes.push_back({width, height, stride, fourcc, static_cast<size_t>(stride) * height, {}, 0});
+        index = static_cast<int>(arena_classes.size()) - 1;
     }
     
-    // Configurar prioridad de thread
-    struct sched_param param;
-    param.sched_priority = sched_get_priority_max(SCHED_FIFO) - 1;
-    pthread_setschedparam(pthread_self(), SCHED_FIFO, &param);
+    ArenaClass& size_class = arena_classes[index];
+    size_class.last_use = ++arena_tick;
+    size_t created = 0;
+    while (size_class.blocks.size() < static_cast<size_t>(count)) {
+        if (!allocateArenaBlock(env, size_class)) {
+            LOGE("Arena: sin memoria para %d bloques de %zu bytes", count, size_class.bytes);
+            return nullptr;
+        }
+        created++;
+    }
+    if (created == 0) {
+        arena_stats.reuses++;
+    }
     
-    int frame_count = 0;
-    auto last_stats = std::chrono::steady_clock::now();
+    arena_active = index;
+    arena_stats.bytes_active = static_cast<int64_t>(size_class.bytes) * count;
+    trimArena(env);
     
-    while (capture_running.load()) {
-        try {
-            auto frame = frame_cache.getAvailableFrame();
-            if (!frame) continue;
-            
-            // Estructuras para captura
-            NDIlib_video_frame_v2_t video_frame;
-            NDIlib_audio_frame_v2_t audio_frame;
-            NDIlib_metadata_frame_t metadata_frame;
-            
-            memset(&video_frame, 0, sizeof(video_frame));
-            memset(&audio_frame, 0, sizeof(audio_frame));
-            memset(&metadata_frame, 0, sizeof(metadata_frame));
-            
-            // Capturar con timeout corto para responsividad
-            NDIlib_frame_type_e frame_type = NDIlib_recv_capture_v2(
-                recv, &video_frame, &audio_frame, &metadata_frame, FRAME_TIMEOUT_MS);
-            
-            switch (frame_type) {
-                case NDIlib_frame_type_video: {
-                    frame_count++;
-                    
-                    // Copiar datos de frame de manera eficiente
-                    size_t frame_size = video_frame.yres * video_frame.line_stride_in_bytes;
-                    
-                    if (frame_size > 0 && video_frame.p_data) {
-                        frame->width = video_frame.xres;
-                        frame->height = video_frame.yres;
-                        frame->fourCC = video_frame.FourCC;
-                        frame->size = frame_size;
-                        
-                        // Allocar memoria solo si es necesario
-                        if (!frame->data || frame_size > frame->size) {
-                            frame->data = std::make_unique<uint8_t[]>(frame_size);
-                        }
-                        
-                        // Copia optimizada
-                        std::memcpy(frame->data.get(), video_frame.p_data, frame_size);
-                        
-                        // Liberar frame NDI inmediatamente
-                        NDIlib_recv_free_video_v2(recv, &video_frame);
-                        
-                        // Agregar frame al cache listo
-                        frame_cache.pushReadyFrame(std::move(frame));
-                        
-                        // Estadísticas cada 5 segundos
-                        auto now = std::chrono::steady_clock::now();
-                        if (std::chrono::duration_cast<std::chrono::seconds>(now - last_stats).count() >= 5) {
-                            LOGD("Captura: %d frames en 5s (%dx%d)", frame_count, 
-                                video_frame.xres, video_frame.yres);
-                            frame_count = 0;
-                            last_stats = now;
-                        }
-                    } else {
-                        NDIlib_recv_free_video_v2(recv, &video_frame);
-                        frame_cache.recycleFrame(std::move(frame));
-                    }
-                    break;
-                }
-                
-                case NDIlib_frame_type_audio:
-                    NDIlib_recv_free_audio_v2(recv, &audio_frame);
-                    frame_cache.recycleFrame(std::move(frame));
-                    break;
-                    
-                case NDIlib_frame_type_none:
-                    frame_cache.recycleFrame(std::move(frame));
-                    std::this_thread::sleep_for(std::chrono::milliseconds(1));
-                    break;
-                    
-                default:
-                    frame_cache.recycleFrame(std::move(frame));
-                    std::this_thread::sleep_for(std::chrono::milliseconds(5));
-                    break;
-            }
-            
-        } catch (const std::exception& e) {
-            LOGE("Excepción en loop de captura: %s", e.what());
-            std::this_thread::sleep_for(std::chrono::milliseconds(100));
-        } catch (...) {
-            LOGE("Excepción desconocida en loop de captura");
-            std::this_thread::sleep_for(std::chrono::milliseconds(100));
-        }
+    // trimArena puede mover la clase activa dentro del vector
+    ArenaClass& active = arena_classes[arena_active];
+    jobjectArray buffers = env->NewObjectArray(count, byte_buffer_ids.byte_buffer_class, nullptr);
+    if (!buffers) {
+        env->ExceptionClear();
+        return nullptr;
+    }
+    for (jint i = 0; i < count; i++) {
+        env->SetObjectArrayElement(buffers, i, active.blocks[i].ref);
     }
     
-    LOGI("Loop de captura optimizado terminado");
+    LOGI("Arena: clase %dx%d stride %d FourCC=0x%08X, %d bloques (%zu nuevos), %lld bytes reservados",
+         width, height, stride, fourcc, count, created, (long long)arena_stats.bytes_reserved.load());
+    return buffers;
+}
+
+// Suelta todos los bloques; los ByteBuffer que Java aún retenga siguen siendo válidos
+extern "C" JNIEXPORT void JNICALL
+Java_ndiplayer_oto_service_NDIRenderService_nativeReleaseFrameBuffers(JNIEnv *env, jobject thiz) {
+    std::lock_guard<std::mutex> lock(arena_mutex);
+    for (auto& size_class : arena_classes) {
+        releaseArenaClass(env, size_class);
+    }
+    arena_classes.clear();
+    arena_active = -1;
+    arena_stats.bytes_active = 0;
+    arena_stats.classes = 0;
 }
 
+// Contadores en out: reservados, activos, bloques creados, reservas sin crear, soltados, clases,
+// y de los préstamos sin copia: pendientes, prestados y capturas sin préstamo libre
+extern "C" JNIEXPORT void JNICALL
+Java_ndiplayer_oto_service_NDIRenderService_nativeGetArenaStats(JNIEnv *env, jobject thiz, jlongArray out) {
+    if (!out || env->GetArrayLength(out) < 9) {
+        return;
+    }
+    jlong values[9] = {
+        arena_stats.bytes_reserved.load(),
+        arena_stats.bytes_active.load(),
+        arena_stats.allocations.load(),
+        arena_stats.reuses.load(),
+        arena_stats.trimmed_bytes.load(),
+        arena_stats.classes.load(),
+        lease_stats.outstanding.load(),
+        lease_stats.leased.load(),
+        lease_stats.stalls.load()
+    };
+    env->SetLongArrayRegion(out, 0, 9, values);
+}
+
+// Captura completa en una sola llamada JNI: rellena el FrameDescriptor reutilizable de Java
+// (tamaño, stride, FourCC, timecode, timestamp) y copia el frame una sola vez al buffer
+// registrado en la posición slot. Sin estado por thread: se puede llamar desde cualquier worker
+// Devuelve 1 si se copió, 2 si llegó video pero no había slot o no cabía, 0 sin frame, -1 error
 extern "C" JNIEXPORT jint JNICALL
-Java_ndiplayer_oto_service_NDIRenderService_nativeCaptureFrame(JNIEnv *env, jobject thiz, jintArray widthHeight, jint timeoutMs) {
+Java_ndiplayer_oto_service_NDIRenderService_nativeCaptureFrame(JNIEnv *env, jobject thiz, jobject descriptor,
+                                                                jint slot, jint timeoutMs) {
+    if (!descriptor) {
+        return -1;
+    }
+    
+    std::shared_lock<std::shared_mutex> recv_lock(recv_lifetime_mutex);
     NDIlib_recv_instance_t recv = ndi_recv.load();
     if (!recv) {
-        return -1; // Error
+        return -1;
     }
     
-    // Iniciar thread de captura si no está corriendo
-    if (!capture_running.load()) {
-        capture_running = true;
-        if (capture_thread.joinable()) {
-            capture_thread.join();
-        }
-        capture_thread = std::thread(optimized_capture_loop);
-    }
+    // Sin audio ni metadata: el SDK los descarta sin entregarlos
+    NDIlib_video_frame_v2_t video_frame;
+    NDIlib_frame_type_e frame_type = NDIlib_recv_capture_v2(recv, &video_frame, nullptr, nullptr, timeoutMs);
     
-    // Obtener frame del cache
-    auto frame = frame_cache.popReadyFrame(timeoutMs);
-    if (!frame) {
-        return 0; // No frame
+    if (frame_type == NDIlib_frame_type_error) {
+        return -1;
+    }
+    if (frame_type != NDIlib_frame_type_video) {
+        return 0;
     }
     
-    // Establecer dimensiones
-    if (widthHeight) {
-        jint* dimensions = env->GetIntArrayElements(widthHeight, nullptr);
-        if (dimensions) {
-            dimensions[0] = frame->width;
-            dimensions[1] = frame->height;
-            env->ReleaseIntArrayElements(widthHeight, dimensions, 0);
+    jint result = 2;
+    size_t frame_size = static_cast<size_t>(video_frame.yres) * video_frame.line_stride_in_bytes;
+    if (video_frame.p_data && frame_size > 0 && slot >= 0) {
+        std::lock_guard<std::mutex> lock(arena_mutex);
+        if (arena_active >= 0) {
+            // Solo si el frame es de la clase activa: otra resolución o FourCC pide reservar
+            const ArenaClass& active = arena_classes[arena_active];
+            if (slot < static_cast<jint>(active.blocks.size()) && active.width == video_frame.xres
+                    && active.height == video_frame.yres && active.stride == video_frame.line_stride_in_bytes
+                    && active.fourcc == static_cast<jint>(video_frame.FourCC)) {
+                // Única copia del frame, conservando el padding de cada fila
+                std::memcpy(active.blocks[slot].address, video_frame.p_data, frame_size);
+                result = 1;
+            }
         }
     }
     
-    // Mantener frame para GetFrameData
-    static thread_local std::unique_ptr<FrameData> current_frame;
-    current_frame = std::move(frame);
+    env->SetIntField(descriptor, frame_descriptor_fields.width, video_frame.xres);
+    env->SetIntField(descriptor, frame_descriptor_fields.height, video_frame.yres);
+    env->SetIntField(descriptor, frame_descriptor_fields.stride, video_frame.line_stride_in_bytes);
+    env->SetIntField(descriptor, frame_descriptor_fields.fourCC, static_cast<jint>(video_frame.FourCC));
+    env->SetLongField(descriptor, frame_descriptor_fields.timecode, video_frame.timecode);
+    env->SetLongField(descriptor, frame_descriptor_fields.timestamp, video_frame.timestamp);
     
-    return 1; // Video frame
+    NDIlib_recv_free_video_v2(recv, &video_frame);
+    return result;
 }
 
-extern "C" JNIEXPORT jbyteArray JNICALL
-Java_ndiplayer_oto_service_NDIRenderService_nativeGetFrameData(JNIEnv *env, jobject thiz) {
-    static thread_local std::unique_ptr<FrameData> current_frame;
+// Handle de préstamo: secuencia en los bits altos e índice + 1 en el byte bajo, siempre > 0
+static jlong leaseHandle(int index, uint32_t sequence) {
+    return (static_cast<jlong>(sequence) << 8) | (index + 1);
+}
+
+// -1 si el handle no puede ser de ningún préstamo
+static int leaseIndex(jlong handle) {
+    int index = static_cast<int>(handle & 0xFF) - 1;
+    return handle > 0 && index >= 0 && index < MAX_FRAME_LEASES ? index : -1;
+}
+
+// Reserva un índice si hay menos de lease_cap préstamos fuera; -1 si no
+static int tryReserveLease() {
+    int count = lease_count.load(std::memory_order_acquire);
+    do {
+        if (count >= lease_cap.load(std::memory_order_relaxed)) {
+            return -1;
+        }
+    } while (!lease_count.compare_exchange_weak(count, count + 1, std::memory_order_acq_rel));
     
-    if (!current_frame || !current_frame->data) {
-        return nullptr;
+    int index;
+    while (!free_leases.pop(index)) {
+        std::this_thread::yield(); // Una devolución a medio publicar: su índice llega enseguida
+    }
+    lease_stats.outstanding = count + 1;
+    return index;
+}
+
+// Espera hasta timeoutMs a que se suelte un préstamo; -1 si no llega a tiempo
+static int reserveLease(jint timeoutMs) {
+    auto deadline = std::chrono::steady_clock::now() + std::chrono::milliseconds(timeoutMs);
+    while (true) {
+        uint32_t epoch = lease_released.prepare();
+        int index = tryReserveLease();
+        if (index >= 0) {
+            return index;
+        }
+        auto remaining = deadline - std::chrono::steady_clock::now();
+        if (remaining.count() <= 0) {
+            return -1;
+        }
+        lease_released.wait(epoch, std::chrono::duration_cast<std::chrono::nanoseconds>(remaining));
+    }
+}
+
+// Captura sin copia: rellena el FrameDescriptor y retiene el frame del SDK hasta nativeReleaseLease
+// Devuelve el handle (> 0), 0 sin frame, -1 error o -2 si no se liberó ningún préstamo en timeoutMs
+extern "C" JNIEXPORT jlong JNICALL
+Java_ndiplayer_oto_service_NDIRenderService_nativeCaptureLease(JNIEnv *env, jobject thiz, jobject descriptor,
+                                                                jint timeoutMs) {
+    if (!descriptor) {
+        return -1;
     }
     
-    jbyteArray result = env->NewByteArray(current_frame->size);
-    if (!result) {
-        LOGE("Error creando array Java para frame data");
-        return nullptr;
+    std::shared_lock<std::shared_mutex> recv_lock(recv_lifetime_mutex);
+    NDIlib_recv_instance_t recv = ndi_recv.load();
+    if (!recv) {
+        return -1;
     }
     
-    env->SetByteArrayRegion(result, 0, current_frame->size, 
-                           reinterpret_cast<const jbyte*>(current_frame->data.get()));
+    // Reservar el préstamo antes de capturar: con el tope alcanzado el frame se queda en el SDK
+    int index = reserveLease(timeoutMs);
+    if (index < 0) {
+        lease_stats.stalls++;
+        return -2;
+    }
     
-    // Reciclar frame después de usar los datos
-    frame_cache.recycleFrame(std::move(current_frame));
+    NDIlib_video_frame_v2_t video_frame;
+    NDIlib_frame_type_e frame_type = NDIlib_recv_capture_v2(recv, &video_frame, nullptr, nullptr, timeoutMs);
+    bool has_data = frame_type == NDIlib_frame_type_video && video_frame.p_data
+                    && video_frame.xres > 0 && video_frame.yres > 0;
+    if (!has_data) {
+        if (frame_type == NDIlib_frame_type_video) {
+            NDIlib_recv_free_video_v2(recv, &video_frame);
+        }
+        returnLease(index);
+        return frame_type == NDIlib_frame_type_error ? -1 : 0;
+    }
     
-    return result;
+    FrameLease& lease = frame_leases[index];
+    lease.frame = video_frame;
+    lease.recv = recv;
+    lease.framesync = nullptr;
+    lease.sequence = ++lease_sequence & 0x7FFFFFFF;
+    jlong handle = leaseHandle(index, lease.sequence);
+    lease.handle.store(handle, std::memory_order_release);
+    lease_stats.leased++;
+    
+    env->SetIntField(descriptor, frame_descriptor_fields.width, video_frame.xres);
+    env->SetIntField(descriptor, frame_descriptor_fields.height, video_frame.yres);
+    env->SetIntField(descriptor, frame_descriptor_fields.stride, video_frame.line_stride_in_bytes);
+    env->SetIntField(descriptor, frame_descriptor_fields.fourCC, static_cast<jint>(video_frame.FourCC));
+    env->SetLongField(descriptor, frame_descriptor_fields.timecode, video_frame.timecode);
+    env->SetLongField(descriptor, frame_descriptor_fields.timestamp, video_frame.timestamp);
+    return handle;
 }
 
-extern "C" JNIEXPORT jint JNICALL
-Java_ndiplayer_oto_service_NDIRenderService_nativeGetFrameFourCC(JNIEnv *env, jobject thiz) {
-    static thread_local std::unique_ptr<FrameData> current_frame;
+extern "C" JNIEXPORT jboolean JNICALL
+Java_ndiplayer_oto_service_NDIRenderService_nativeHasFrameSync(JNIEnv *env, jobject thiz) {
+    return ndi_framesync.load() ? JNI_TRUE : JNI_FALSE;
+}
+
+// Modo pull: pide a FrameSync el frame que toca ahora, sin esperar; corrige la deriva de reloj del emisor
+// repitiendo o saltando frames. Devuelve el handle del préstamo (> 0), 0 si aún no hay video o el frame
+// es el mismo que en la llamada anterior, -1 sin FrameSync o -2 si todos los préstamos están fuera
+extern "C" JNIEXPORT jlong JNICALL
+Java_ndiplayer_oto_service_NDIRenderService_nativePullLease(JNIEnv *env, jobject thiz, jobject descriptor) {
+    if (!descriptor) {
+        return -1;
+    }
     
-    if (!current_frame) {
-        return 0;
+    std::shared_lock<std::shared_mutex> recv_lock(recv_lifetime_mutex);
+    NDIlib_recv_instance_t recv = ndi_recv.load();
+    NDIlib_framesync_instance_t framesync = ndi_framesync.load();
+    if (!recv || !framesync) {
+        return -1;
     }
     
-    return static_cast<jint>(current_frame->fourCC);
-}
-
-extern "C" JNIEXPORT jint JNICALL
-Java_ndiplayer_oto_service_NDIRenderService_nativeGetFrameWidth(JNIEnv *env, jobject thiz) {
-    static thread_local std::unique_ptr<FrameData> current_frame;
+    int index = reserveLease(0);
+    if (index < 0) {
+        lease_stats.stalls++;
+        return -2;
+    }
     
-    if (!current_frame) {
+    NDIlib_video_frame_v2_t video_frame;
+    NDIlib_framesync_capture_video(framesync, &video_frame, NDIlib_frame_format_type_progressive);
+    // Sin timestamp del emisor no se distingue una repetición: cada frame cuenta como nuevo
+    bool repeated = video_frame.timecode == last_pulled_timecode
+                    && video_frame.timestamp == last_pulled_timestamp
+                    && video_frame.timestamp != NDIlib_recv_timestamp_undefined;
+    if (!video_frame.p_data || video_frame.xres <= 0 || video_frame.yres <= 0 || repeated) {
+        NDIlib_framesync_free_video(framesync, &video_frame); // Todo ceros sin video: liberarlo no hace nada
+        returnLease(index);
         return 0;
     }
-    
-    return current_frame->width;
+    last_pulled_timestamp = video_frame.timestamp;
+    last_pulled_timecode = video_frame.timecode;
+    
+    FrameLease& lease = frame_leases[index];
+    lease.frame = video_frame;
+    lease.recv = recv;
+    lease.framesync = framesync;
+    lease.sequence = ++lease_sequence & 0x7FFFFFFF;
+    jlong handle = leaseHandle(index, lease.sequence);
+    lease.handle.store(handle, std::memory_order_release);
+    lease_stats.leased++;
+    
+    env->SetIntField(descriptor, frame_descriptor_fields.width, video_frame.xres);
+    env->SetIntField(descriptor, frame_descriptor_fields.height, video_frame.yres);
+    env->SetIntField(descriptor, frame_descriptor_fields.stride, video_frame.line_stride_in_bytes);
+    env->SetIntField(descriptor, frame_descriptor_fields.fourCC, static_cast<jint>(video_frame.FourCC));
+    env->SetLongField(descriptor, frame_descriptor_fields.timecode, video_frame.timecode);
+    env->SetLongField(descriptor, frame_descriptor_fields.timestamp, video_frame.timestamp);
+    return handle;
 }
 
+// Modo pull: samples de audio remuestreados por FrameSync al ritmo al que se piden, entrelazados
+// en out (samples * channels floats). Con silencio si no llega audio; 0 sin FrameSync
 extern "C" JNIEXPORT jint JNICALL
-Java_ndiplayer_oto_service_NDIRenderService_nativeGetFrameHeight(JNIEnv *env, jobject thiz) {
-    static thread_local std::unique_ptr<FrameData> current_frame;
+Java_ndiplayer_oto_service_NDIRenderService_nativePullAudio(JNIEnv *env, jobject thiz, jfloatArray out,
+                                                             jint sampleRate, jint channels, jint samples) {
+    if (!out || sampleRate <= 0 || channels <= 0 || samples <= 0
+            || env->GetArrayLength(out) < static_cast<jsize>(channels) * samples) {
+        return 0;
+    }
     
-    if (!current_frame) {
+    std::shared_lock<std::shared_mutex> recv_lock(recv_lifetime_mutex);
+    NDIlib_framesync_instance_t framesync = ndi_framesync.load();
+    if (!framesync) {
         return 0;
     }
     
-    return current_frame->height;
+    NDIlib_audio_frame_v2_t audio_frame;
+    NDIlib_framesync_capture_audio(framesync, &audio_frame, sampleRate, channels, samples);
+    int count = std::min(static_cast<int>(samples), audio_frame.no_samples);
+    int available_channels = std::min(static_cast<int>(channels), audio_frame.no_channels);
+    if (audio_frame.p_data && count > 0) {
+        auto* dst = static_cast<float*>(env->GetPrimitiveArrayCritical(out, nullptr));
+        if (dst) {
+            // FrameSync entrega planos por canal; AudioTrack espera samples entrelazados
+            for (int c = 0; c < channels; c++) {
+                const float* plane = c < available_channels
+                    ? reinterpret_cast<const float*>(reinterpret_cast<const uint8_t*>(audio_frame.p_data)
+                                                     + static_cast<size_t>(c) * audio_frame.channel_stride_in_bytes)
+                    : nullptr;
+                for (int i = 0; i < count; i++) {
+                    dst[static_cast<size_t>(i) * channels + c] = plane ? plane[i] : 0.0f;
+                }
+            }
+            env->ReleasePrimitiveArrayCritical(out, dst, 0);
+        } else {
+            count = 0;
+        }
+    } else {
+        count = 0;
+    }
+    NDIlib_framesync_free_audio(framesync, &audio_frame);
+    return count;
 }
 
+// Convierte y escala las filas [rowStart, rowEnd) del destino leyendo el frame prestado
+// Se puede llamar a la vez desde varios threads con bandas distintas del mismo préstamo,
+// siempre antes de nativeReleaseLease. false si el préstamo ya no existe o el formato no se soporta
 extern "C" JNIEXPORT jboolean JNICALL
-Java_ndiplayer_oto_service_NDIRenderService_nativeDisconnect(JNIEnv *env, jobject thiz) {
-    LOGI("Desconectando de fuente NDI");
+Java_ndiplayer_oto_service_NDIRenderService_nativeConvertLeaseRows(JNIEnv *env, jobject thiz, jlong handle,
+                                                                    jintArray dst, jint dstWidth, jint dstHeight,
+                                                                    jint rowStart, jint rowEnd) {
+    using namespace pixel_kernels;
+    
+    int index = leaseIndex(handle);
+    if (index < 0 || !dst || dstWidth <= 0 || dstHeight <= 0 || rowStart < 0 || rowEnd > dstHeight
+            || rowStart >= rowEnd || env->GetArrayLength(dst) < static_cast<jsize>(dstWidth) * dstHeight) {
+        return JNI_FALSE;
+    }
     
-    try {
-        // Detener captura
-        capture_running = false;
-        if (capture_thread.joinable()) {
-            capture_thread.join();
-        }
-        
-        // Limpiar receiver
-        NDIlib_recv_instance_t recv = ndi_recv.exchange(nullptr);
-        if (recv) {
-            NDIlib_recv_destroy(recv);
-        }
-        
-        // Limpiar cache
-        frame_cache.clear();
-        
-        LOGI("Desconexión NDI completada");
-        return JNI_TRUE;
-        
-    } catch (const std::exception& e) {
-        LOGE("Excepción durante desconexión: %s", e.what());
+    // El modo compartido impide que destroyReceiver devuelva el frame mientras se lee
+    std::shared_lock<std::shared_mutex> recv_lock(recv_lifetime_mutex);
+    const FrameLease& lease = frame_leases[index];
+    if (lease.handle.load(std::memory_order_acquire) != handle) {
         return JNI_FALSE;
-    } catch (...) {
-        LOGE("Excepción desconocida durante desconexión");
+    }
+    const NDIlib_video_frame_v2_t& frame = lease.frame;
+    
+    SourceFormat format;
+    switch (frame.FourCC) {
+        case NDIlib_FourCC_type_BGRA: format = SourceFormat::Bgra; break;
+        case NDIlib_FourCC_type_BGRX: format = SourceFormat::Bgrx; break;
+        case NDIlib_FourCC_type_RGBA: format = SourceFormat::Rgba; break;
+        case NDIlib_FourCC_type_RGBX: format = SourceFormat::Rgbx; break;
+        case NDIlib_FourCC_type_UYVY: format = SourceFormat::Uyvy; break;
+        default: return JNI_FALSE;
+    }
+    
+    // Una fila de trabajo por thread, crece una vez con la primera resolución grande
+    thread_local std::vector<uint32_t> scratch;
+    auto* pixels = static_cast<uint32_t*>(env->GetPrimitiveArrayCritical(dst, nullptr));
+    if (!pixels) {
         return JNI_FALSE;
     }
+    convert_rows_argb(frame.p_data, frame.line_stride_in_bytes, frame.xres, frame.yres, format,
+                      pixels, dstWidth, dstHeight, rowStart, rowEnd, scratch);
+    env->ReleasePrimitiveArrayCritical(dst, pixels, 0);
+    return JNI_TRUE;
+}
+
+// Devuelve el frame al SDK; un handle ya soltado (p. ej. por una desconexión) se ignora
+// Sin locks salvo el modo compartido del receiver, que solo espera a una destrucción en curso
+extern "C" JNIEXPORT void JNICALL
+Java_ndiplayer_oto_service_NDIRenderService_nativeReleaseLease(JNIEnv *env, jobject thiz, jlong handle) {
+    int index = leaseIndex(handle);
+    if (index < 0) {
+        return;
+    }
+    std::shared_lock<std::shared_mutex> recv_lock(recv_lifetime_mutex);
+    freeLease(index, handle);
 }
 
-// Nuevas funciones nativas para optimización de conversión
+// Préstamos pendientes como máximo; bajarlo no suelta los que ya están fuera
 extern "C" JNIEXPORT void JNICALL
-Java_ndiplayer_oto_MainActivity_nativeConvertBGRAToARGB(JNIEnv *env, jobject thiz, 
-    jbyteArray bgraData, jintArray argbPixels, jint width, jint height) {
+Java_ndiplayer_oto_service_NDIRenderService_nativeSetLeaseCap(JNIEnv *env, jobject thiz, jint cap) {
+    lease_cap = std::max(1, std::min(MAX_FRAME_LEASES, static_cast<int>(cap)));
+    lease_released.notify();
+}
+
+// Cambia el ancho de banda sin cortar la conexión: el receiver nuevo se crea y conecta mientras
+// el actual sigue entregando frames, y solo entonces lo sustituye. false deja el actual intacto
+extern "C" JNIEXPORT jboolean JNICALL
+Java_ndiplayer_oto_service_NDIRenderService_nativeSetReceiveBandwidth(JNIEnv *env, jobject thiz, jint bandwidth) {
+    std::lock_guard<std::mutex> config_lock(receiver_config_mutex);
+    NDIlib_recv_bandwidth_e new_bandwidth = toBandwidth(bandwidth);
+    if (!ndi_recv.load()) {
+        return JNI_FALSE;
+    }
+    if (new_bandwidth == recv_bandwidth) {
+        return JNI_TRUE;
+    }
     
-    jbyte* bgra = env->GetByteArrayElements(bgraData, nullptr);
-    jint* argb = env->GetIntArrayElements(argbPixels, nullptr);
+    auto start = std::chrono::steady_clock::now();
+    NDIlib_source_t source;
+    source.p_ndi_name = connected_ndi_name.c_str();
+    source.p_url_address = connected_url_address.empty() ? nullptr : connected_url_address.c_str();
+    NDIlib_recv_instance_t new_recv = createReceiver(source, new_bandwidth);
+    if (!new_recv) {
+        LOGE("Error creando receiver para ancho de banda %d", new_bandwidth);
+        return JNI_FALSE;
+    }
     
-    if (bgra && argb) {
-        int pixel_count = width * height;
-        
-        // Conversión optimizada con loop unrolling
-        for (int i = 0; i < pixel_count; i += 4) {
-            // Procesar 4 pixels a la vez
-            for (int j = 0; j < 4 && (i + j) < pixel_count; j++) {
-                int idx = (i + j) * 4;
-                int b = bgra[idx] & 0xFF;
-                int g = bgra[idx + 1] & 0xFF;
-                int r = bgra[idx + 2] & 0xFF;
-                int a = bgra[idx + 3] & 0xFF;
-                
-                argb[i + j] = (a << 24) | (r << 16) | (g << 8) | b;
-            }
+    // Hasta que el emisor acepte la conexión el receiver actual sigue siendo el único
+    auto deadline = start + std::chrono::milliseconds(BANDWIDTH_SWITCH_TIMEOUT_MS);
+    while (NDIlib_recv_get_no_connections(new_recv) == 0) {
+        if (std::chrono::steady_clock::now() >= deadline) {
+            LOGE("El receiver con ancho de banda %d no conectó en %dms, se mantiene el %d",
+                 new_bandwidth, BANDWIDTH_SWITCH_TIMEOUT_MS, recv_bandwidth);
+            NDIlib_recv_destroy(new_recv);
+            return JNI_FALSE;
+        }
+        std::this_thread::sleep_for(std::chrono::milliseconds(10));
+    }
+    
+    // Mismo modo de captura que la conexión actual: sin FrameSync el modo pull no recibiría nada
+    NDIlib_framesync_instance_t new_framesync = nullptr;
+    if (ndi_framesync.load()) {
+        new_framesync = NDIlib_framesync_create(new_recv);
+        if (!new_framesync) {
+            LOGE("Error creando FrameSync para ancho de banda %d, se mantiene el %d", new_bandwidth, recv_bandwidth);
+            NDIlib_recv_destroy(new_recv);
+            return JNI_FALSE;
+        }
+    }
+    
+    NDIlib_recv_instance_t old_recv;
+    NDIlib_framesync_instance_t old_framesync;
+    {
+        std::unique_lock<std::shared_mutex> lock(recv_lifetime_mutex);
+        old_recv = ndi_recv.load();
+        if (!old_recv) {
+            // Desconectado mientras conectaba el nuevo: no debe quedar un receiver vivo
+            destroyReceiverLocked(new_recv, new_framesync);
+            return JNI_FALSE;
+        }
+        ndi_recv = new_recv;
+        old_framesync = ndi_framesync.exchange(new_framesync);
+        last_pulled_timestamp = 0;
+        last_pulled_timecode = 0;
+    }
+    recv_bandwidth = new_bandwidth;
+    
+    // Los frames ya prestados del receiver anterior terminan de convertirse si les da tiempo;
+    // los que sigan fuera se devuelven antes de destruirlo y su conversión falla sin más
+    auto grace = std::chrono::steady_clock::now() + std::chrono::milliseconds(BANDWIDTH_LEASE_GRACE_MS);
+    while (true) {
+        uint32_t epoch = lease_released.prepare();
+        if (leasesFrom(old_recv) == 0) {
+            break;
+        }
+        auto remaining = grace - std::chrono::steady_clock::now();
+        if (remaining.count() <= 0) {
+            break;
         }
+        lease_released.wait(epoch, std::chrono::duration_cast<std::chrono::nanoseconds>(remaining));
+    }
+    {
+        std::unique_lock<std::shared_mutex> lock(recv_lifetime_mutex);
+        destroyReceiverLocked(old_recv, old_framesync);
     }
     
-    if (bgra) env->ReleaseByteArrayElements(bgraData, bgra, JNI_ABORT);
-    if (argb) env->ReleaseIntArrayElements(argbPixels, argb, 0);
+    LOGI("Ancho de banda de recepción %d en %lldms, sin cortar la conexión", new_bandwidth,
+         static_cast<long long>(std::chrono::duration_cast<std::chrono::milliseconds>(
+             std::chrono::steady_clock::now() - start).count()));
+    return JNI_TRUE;
 }
 
-extern "C" JNIEXPORT void JNICALL
-Java_ndiplayer_oto_MainActivity_nativeConvertUYVYToARGB(JNIEnv *env, jobject thiz,
-    jbyteArray uyvyData, jintArray argbPixels, jint width, jint height) {
-    
-    jbyte* uyvy = env->GetByteArrayElements(uyvyData, nullptr);
-    jint* argb = env->GetIntArrayElements(argbPixels, nullptr);
+extern "C" JNIEXPORT jboolean JNICALL
+Java_ndiplayer_oto_service_NDIRenderService_nativeDisconnect(JNIEnv *env, jobject thiz) {
+    LOGI("Desconectando de fuente NDI");
     
-    if (uyvy && argb) {
-        int pixel_count = width * height;
+    try {
+        // Detrás de una conexión o un cambio de ancho de banda en curso, nunca entre medias
+        std::lock_guard<std::mutex> config_lock(receiver_config_mutex);
         
-        // Lookup tables para conversión YUV optimizada
-        static bool lookup_initialized = false;
-        static int yuv_to_rgb_r[256];
-        static int yuv_to_rgb_g_u[256];
-        static int yuv_to_rgb_g_v[256];
-        static int yuv_to_rgb_b[256];
+        // Limpiar receiver, esperando a las capturas en curso
+        destroyReceiver();
         
-        if (!lookup_initialized) {
-            for (int i = 0; i < 256; i++) {
-                int c = i - 128;
-                yuv_to_rgb_r[i] = (int)(1.402f * c);
-                yuv_to_rgb_g_u[i] = (int)(-0.344f * c);
-                yuv_to_rgb_g_v[i] = (int)(-0.714f * c);
-                yuv_to_rgb_b[i] = (int)(1.772f * c);
-            }
-            lookup_initialized = true;
-        }
+        LOGI("Desconexión NDI completada");
+        return JNI_TRUE;
         
-        // Conversión UYVY optimizada
-        for (int i = 0; i < pixel_count; i += 2) {
-            int uyvy_idx = i * 2; // 2 bytes por pixel en UYVY
-            
-            int u = uyvy[uyvy_idx] & 0xFF;
-            int y1 = uyvy[uyvy_idx + 1] & 0xFF;
-            int v = uyvy[uyvy_idx + 2] & 0xFF;
-            int y2 = uyvy[uyvy_idx + 3] & 0xFF;
-            
-            // Primer pixel
-            int r1 = y1 + yuv_to_rgb_r[v];
-            int g1 = y1 + yuv_to_rgb_g_u[u] + yuv_to_rgb_g_v[v];
-            int b1 = y1 + yuv_to_rgb_b[u];
-            
-            // Clamp con operaciones bit optimizadas
-            r1 = (r1 & 0xFFFFFF00) == 0 ? r1 : r1 < 0 ? 0 : 255;
-            g1 = (g1 & 0xFFFFFF00) == 0 ? g1 : g1 < 0 ? 0 : 255;
-            b1 = (b1 & 0xFFFFFF00) == 0 ? b1 : b1 < 0 ? 0 : 255;
-            
-            argb[i] = (0xFF << 24) | (r1 << 16) | (g1 << 8) | b1;
-            
-            // Segundo pixel (si existe)
-            if (i + 1 < pixel_count) {
-                int r2 = y2 + yuv_to_rgb_r[v];
-                int g2 = y2 + yuv_to_rgb_g_u[u] + yuv_to_rgb_g_v[v];
-                int b2 = y2 + yuv_to_rgb_b[u];
-                
-                r2 = (r2 & 0xFFFFFF00) == 0 ? r2 : r2 < 0 ? 0 : 255;
-                g2 = (g2 & 0xFFFFFF00) == 0 ? g2 : g2 < 0 ? 0 : 255;
-                b2 = (b2 & 0xFFFFFF00) == 0 ? b2 : b2 < 0 ? 0 : 255;
-                
-                argb[i + 1] = (0xFF << 24) | (r2 << 16) | (g2 << 8) | b2;
-            }
-        }
+    } catch (const std::exception& e) {
+        LOGE("Excepción durante desconexión: %s", e.what());
+        return JNI_FALSE;
+    } catch (...) {
+        LOGE("Excepción desconocida durante desconexión");
+        return JNI_FALSE;
     }
-    
-    if (uyvy) env->ReleaseByteArrayElements(uyvyData, uyvy, JNI_ABORT);
-    if (argb) env->ReleaseIntArrayElements(argbPixels, argb, 0);
 }
 
+// Conversión de píxeles: ver pixel_converter.cpp y pixel_kernels.h
+
 extern "C" JNIEXPORT jobject JNICALL
 Java_ndiplayer_oto_MainActivity_nativeCreateOptimizedBitmap(JNIEnv *env, jobject thiz,
     jintArray pixels, jint width, jint height) {
@@ -867,7 +1271,7 @@ Java_ndiplayer_oto_MainActivity_nativeGetSourceName(JNIEnv *env, jobject thiz, j
 }
 
 extern "C" JNIEXPORT jboolean JNICALL
-Java_ndiplayer_oto_MainActivity_nativeConnectToSource(JNIEnv *env, jobject thiz, jint index) {
+Java_ndiplayer_oto_MainActivity_nativeConnectToSource(JNIEnv *env, jobject thiz, jint index, jint bandwidth) {
     LOGI("Connecting to NDI source - FULL MODE");
     
     if (!ndi_find || !current_sources || index < 0 || index >= (jint)num_sources) {
@@ -876,30 +1280,29 @@ Java_ndiplayer_oto_MainActivity_nativeConnectToSource(JNIEnv *env, jobject thiz,
     }
     
     try {
-        // Disconnect from any existing receiver
-        if (ndi_recv) {
-            if (has_video_frame) {
-                NDIlib_recv_free_video_v2(ndi_recv, &current_video_frame);
-                has_video_frame = false;
-            }
-            NDIlib_recv_destroy(ndi_recv);
-            ndi_recv = nullptr;
-        }
+        std::lock_guard<std::mutex> config_lock(receiver_config_mutex);
+        
+        // Disconnect from any existing receiver: leases, FrameSync and current frame included
+        destroyReceiver();
         
         // Create new receiver with optimized settings for low-performance devices
         NDIlib_recv_create_v3_t recv_desc;
+        memset(&recv_desc, 0, sizeof(recv_desc));
         recv_desc.source_to_connect_to = current_sources[index];
         recv_desc.color_format = NDIlib_recv_color_format_UYVY_RGBA;  // Optimized format
-        recv_desc.bandwidth = NDIlib_recv_bandwidth_lowest;           // Lowest bandwidth for performance
+        recv_desc.bandwidth = toBandwidth(bandwidth);                // Chosen from device class and view size
         recv_desc.allow_video_fields = false;                        // Disable fields for simplicity
         recv_desc.p_ndi_recv_name = "NDI Android Receiver";
         
-        ndi_recv = NDIlib_recv_create_v3(&recv_desc);
-        
-        if (!ndi_recv) {
+        NDIlib_recv_instance_t new_recv = NDIlib_recv_create_v3(&recv_desc);
+        if (!new_recv) {
             LOGE("Failed to create NDI receiver");
             return JNI_FALSE;
         }
+        {
+            std::unique_lock<std::shared_mutex> lock(recv_lifetime_mutex);
+            ndi_recv = new_recv;
+        }
         
         LOGI("Connected to NDI source: %s", current_sources[index].p_ndi_name);
         return JNI_TRUE;
@@ -914,15 +1317,9 @@ extern "C" JNIEXPORT void JNICALL
 Java_ndiplayer_oto_MainActivity_nativeDisconnect(JNIEnv *env, jobject thiz) {
     LOGI("Disconnecting from NDI source");
     
-    if (ndi_recv) {
-        if (has_video_frame) {
-            NDIlib_recv_free_video_v2(ndi_recv, &current_video_frame);
-            has_video_frame = false;
-        }
-        
-        NDIlib_recv_destroy(ndi_recv);
-        ndi_recv = nullptr;
-    }
+    // Espera a la captura en curso y devuelve el frame actual antes de destruir el receiver
+    std::lock_guard<std::mutex> config_lock(receiver_config_mutex);
+    destroyReceiver();
     
     LOGI("Disconnected from NDI source");
 }
@@ -932,8 +1329,10 @@ Java_ndiplayer_oto_MainActivity_nativeIsConnected(JNIEnv *env, jobject thiz) {
     return (ndi_recv != nullptr) ? JNI_TRUE : JNI_FALSE;
 }
 
-extern "C" JNIEXPORT jobject JNICALL
-Java_ndiplayer_oto_MainActivity_nativeGetFrame(JNIEnv *env, jobject thiz) {
+// Captura el siguiente frame en current_video_frame y lo vuelca en reuse si sirve
+// media_time (opcional, long[1]): recibe el tiempo de medios del frame en unidades de 100ns
+static jobject captureFrameToBitmap(JNIEnv *env, jobject reuse, jlongArray media_time) {
+    std::shared_lock<std::shared_mutex> recv_lock(recv_lifetime_mutex);
     if (!ndi_recv) {
         LOGE("No NDI receiver connected");
         return nullptr;
@@ -942,14 +1341,24 @@ Java_ndiplayer_oto_MainActivity_nativeGetFrame(JNIEnv *env, jobject thiz) {
     try {
         // Free previous frame if exists
         if (has_video_frame) {
-            NDIlib_recv_free_video_v2(ndi_recv, &current_video_frame);
+            NDIlib_recv_free_video_v2(current_video_recv, &current_video_frame);
             has_video_frame = false;
         }
         
         // Capture new frame with timeout
-        switch (NDIlib_recv_capture_v2(ndi_recv, &current_video_frame, nullptr, nullptr, 100)) {
+        NDIlib_recv_instance_t recv = ndi_recv.load();
+        switch (NDIlib_recv_capture_v2(recv, &current_video_frame, nullptr, nullptr, 100)) {
             case NDIlib_frame_type_video:
+                current_video_recv = recv;
                 has_video_frame = true;
+                // timestamp si el emisor lo rellena; si no, timecode (sintetizado por el SDK)
+                if (media_time) {
+                    jlong media = current_video_frame.timestamp;
+                    if (media == NDIlib_recv_timestamp_undefined || media == 0) {
+                        media = current_video_frame.timecode;
+                    }
+                    env->SetLongArrayRegion(media_time, 0, 1, &media);
+                }
                 
                 if (current_video_frame.p_data) {
                     // Log format only occasionally
@@ -960,8 +1369,7 @@ Java_ndiplayer_oto_MainActivity_nativeGetFrame(JNIEnv *env, jobject thiz) {
                     }
                     frame_counter++;
                     
-                    jobject bitmap = createBitmapFromVideoFrame(env, &current_video_frame);
-                    return bitmap;
+                    return createBitmapFromVideoFrame(env, &current_video_frame, reuse);
                 } else {
                     LOGE("Video frame data is null");
                     return nullptr;
@@ -982,6 +1390,11 @@ Java_ndiplayer_oto_MainActivity_nativeGetFrame(JNIEnv *env, jobject thiz) {
     }
 }
 
+extern "C" JNIEXPORT jobject JNICALL
+Java_ndiplayer_oto_MainActivity_nativeGetFrame(JNIEnv *env, jobject thiz) {
+    return captureFrameToBitmap(env, nullptr, nullptr);
+}
+
 extern "C" JNIEXPORT jboolean JNICALL
 Java_ndiplayer_oto_MainActivity_nativeHasFrame(JNIEnv *env, jobject thiz) {
     bool result = has_video_frame;
@@ -1017,179 +1430,91 @@ Java_ndiplayer_oto_MainActivity_nativeGetFrameRate(JNIEnv *env, jobject thiz) {
     return 0;
 }
 
-// Función auxiliar para crear bitmap desde frame de video
-jobject createBitmapFromVideoFrame(JNIEnv *env, NDIlib_video_frame_v2_t* frame) {
+// Convierte el frame directamente sobre los píxeles bloqueados de un Bitmap ARGB_8888
+// En memoria son bytes R, G, B, A premultiplicados, con filas de info.stride bytes
+static bool fillBitmapFromVideoFrame(JNIEnv *env, jobject bitmap, const NDIlib_video_frame_v2_t* frame) {
+    AndroidBitmapInfo info;
+    if (AndroidBitmap_getInfo(env, bitmap, &info) != ANDROID_BITMAP_RESULT_SUCCESS
+            || info.format != ANDROID_BITMAP_FORMAT_RGBA_8888
+            || static_cast<int>(info.width) != frame->xres || static_cast<int>(info.height) != frame->yres) {
+        return false;
+    }
+    
+    void* pixels = nullptr;
+    if (AndroidBitmap_lockPixels(env, bitmap, &pixels) != ANDROID_BITMAP_RESULT_SUCCESS || !pixels) {
+        LOGE("No se pudieron bloquear los píxeles del Bitmap");
+        return false;
+    }
+    
+    const uint8_t* src = static_cast<const uint8_t*>(frame->p_data);
+    uint8_t* dst = static_cast<uint8_t*>(pixels);
+    int width = frame->xres;
+    int height = frame->yres;
+    int src_stride = frame->line_stride_in_bytes;
+    int dst_stride = static_cast<int>(info.stride);
+    
+    switch (frame->FourCC) {
+        case NDIlib_FourCC_video_type_BGRX:
+            pixel_kernels::swizzle_frame(src, src_stride, dst, dst_stride, width, height,
+                pixel_kernels::kBitmapShuffleBGRA, pixel_kernels::kAlphaOpaque);
+            break;
+            
+        case NDIlib_FourCC_video_type_RGBA:
+            pixel_kernels::swizzle_frame(src, src_stride, dst, dst_stride, width, height,
+                pixel_kernels::kBitmapShuffleRGBA, pixel_kernels::kAlphaFromSource);
+            pixel_kernels::premultiply_rgba(dst, dst_stride, width, height);
+            break;
+            
+        case NDIlib_FourCC_video_type_RGBX:
+            pixel_kernels::swizzle_frame(src, src_stride, dst, dst_stride, width, height,
+                pixel_kernels::kBitmapShuffleRGBA, pixel_kernels::kAlphaOpaque);
+            break;
+            
+        case NDIlib_FourCC_video_type_UYVY:
+            // BT.601 rango limitado (16-235), como la conversión anterior
+            pixel_kernels::uyvy_frame(src, src_stride, dst, dst_stride, width, height,
+                pixel_kernels::PixelOrder::Rgba, pixel_kernels::kBt601Limited);
+            break;
+            
+        default:
+            LOGE("Formato desconocido FourCC=0x%08X, usando BGRA", frame->FourCC);
+            // fall through
+        case NDIlib_FourCC_video_type_BGRA:
+            pixel_kernels::swizzle_frame(src, src_stride, dst, dst_stride, width, height,
+                pixel_kernels::kBitmapShuffleBGRA, pixel_kernels::kAlphaFromSource);
+            pixel_kernels::premultiply_rgba(dst, dst_stride, width, height);
+            break;
+    }
+    
+    AndroidBitmap_unlockPixels(env, bitmap);
+    return true;
+}
+
+// Rellena reuse si tiene el tamaño del frame; si no (primer frame o cambio de resolución)
+// crea un Bitmap nuevo que Java incorpora a su anillo en lugar del anterior
+jobject createBitmapFromVideoFrame(JNIEnv *env, NDIlib_video_frame_v2_t* frame, jobject reuse) {
     if (!frame || !frame->p_data) {
         LOGE("Invalid frame data");
         return nullptr;
     }
     
-    try {
-        // Find Bitmap class and createBitmap method
-        jclass bitmapClass = env->FindClass("android/graphics/Bitmap");
-        if (!bitmapClass) {
-            LOGE("Could not find Bitmap class");
-            return nullptr;
-        }
-        
-        jmethodID createBitmapMethod = env->GetStaticMethodID(bitmapClass, "createBitmap", 
-                                                             "([IIILandroid/graphics/Bitmap$Config;)Landroid/graphics/Bitmap;");
-        if (!createBitmapMethod) {
-            LOGE("Could not find createBitmap method");
-            return nullptr;
-        }
-        
-        // Find Bitmap.Config.ARGB_8888
-        jclass configClass = env->FindClass("android/graphics/Bitmap$Config");
-        if (!configClass) {
-            LOGE("Could not find Bitmap.Config class");
-            return nullptr;
-        }
-        
-        jfieldID argb8888Field = env->GetStaticFieldID(configClass, "ARGB_8888", "Landroid/graphics/Bitmap$Config;");
-        if (!argb8888Field) {
-            LOGE("Could not find ARGB_8888 field");
-            return nullptr;
-        }
-        
-        jobject config = env->GetStaticObjectField(configClass, argb8888Field);
-        if (!config) {
-            LOGE("Could not get ARGB_8888 config");
-            return nullptr;
-        }
-        
-        // Convert frame data to ARGB format
-        int width = frame->xres;
-        int height = frame->yres;
-        int stride = frame->line_stride_in_bytes;
-        
-        jintArray pixels = env->NewIntArray(width * height);
-        if (!pixels) {
-            LOGE("Could not create pixel array");
-            return nullptr;
-        }
-        
-        jint* pixelData = env->GetIntArrayElements(pixels, nullptr);
-        if (!pixelData) {
-            LOGE("Could not get pixel data");
-            return nullptr;
-        }
-        
-        // Smart color conversion based on NDI format
-        uint8_t* srcData = (uint8_t*)frame->p_data;
-        
-        // Log detailed format information
-        __android_log_print(ANDROID_LOG_WARN, LOG_TAG, "=== COLOR DEBUG === FourCC=0x%08X (%d), Size=%dx%d, Stride=%d", 
-                           frame->FourCC, frame->FourCC, width, height, stride);
-        
-        // Detect format and convert appropriately
-        switch (frame->FourCC) {
-            case NDIlib_FourCC_video_type_BGRX:
-            case NDIlib_FourCC_video_type_BGRA:
-                __android_log_print(ANDROID_LOG_WARN, LOG_TAG, "=== COLOR === Using BGRA/BGRX conversion");
-                // BGRA to ARGB conversion
-                for (int y = 0; y < height; y++) {
-                    uint8_t* srcRow = srcData + (y * stride);
-                    for (int x = 0; x < width; x++) {
-                        uint8_t b = srcRow[x * 4 + 0];
-                        uint8_t g = srcRow[x * 4 + 1];
-                        uint8_t r = srcRow[x * 4 + 2];
-                        uint8_t a = (frame->FourCC == NDIlib_FourCC_video_type_BGRA) ? srcRow[x * 4 + 3] : 255;
-                        
-                        pixelData[y * width + x] = (a << 24) | (r << 16) | (g << 8) | b;
-                    }
-                }
-                break;
-                
-            case NDIlib_FourCC_video_type_RGBA:
-            case NDIlib_FourCC_video_type_RGBX:
-                __android_log_print(ANDROID_LOG_WARN, LOG_TAG, "=== COLOR === Using RGBA/RGBX conversion");
-                // RGBA to ARGB conversion (swap R and B)
-                for (int y = 0; y < height; y++) {
-                    uint8_t* srcRow = srcData + (y * stride);
-                    for (int x = 0; x < width; x++) {
-                        uint8_t r = srcRow[x * 4 + 0];
-                        uint8_t g = srcRow[x * 4 + 1];
-                        uint8_t b = srcRow[x * 4 + 2];
-                        uint8_t a = (frame->FourCC == NDIlib_FourCC_video_type_RGBA) ? srcRow[x * 4 + 3] : 255;
-                        
-                        pixelData[y * width + x] = (a << 24) | (r << 16) | (g << 8) | b;
-                    }
-                }
-                break;
-                
-            case NDIlib_FourCC_video_type_UYVY:
-                __android_log_print(ANDROID_LOG_WARN, LOG_TAG, "=== COLOR === Using UYVY conversion");
-                // UYVY to RGB conversion
-                for (int y = 0; y < height; y++) {
-                    uint8_t* srcRow = srcData + (y * stride);
-                    for (int x = 0; x < width; x += 2) {
-                        // UYVY: U Y V Y (2 pixels per 4 bytes)
-                        uint8_t u = srcRow[x * 2 + 0];
-                        uint8_t y1 = srcRow[x * 2 + 1];
-                        uint8_t v = srcRow[x * 2 + 2];
-                        uint8_t y2 = (x + 1 < width) ? srcRow[x * 2 + 3] : y1;
-                        
-                        // Convert YUV to RGB (BT.601)
-                        int c1 = y1 - 16;
-                        int c2 = (x + 1 < width) ? (y2 - 16) : c1;
-                        int d = u - 128;
-                        int e = v - 128;
-                        
-                        // First pixel
-                        int r1 = (298 * c1 + 409 * e + 128) >> 8;
-                        int g1 = (298 * c1 - 100 * d - 208 * e + 128) >> 8;
-                        int b1 = (298 * c1 + 516 * d + 128) >> 8;
-                        
-                        // Clamp values
-                        r1 = r1 < 0 ? 0 : (r1 > 255 ? 255 : r1);
-                        g1 = g1 < 0 ? 0 : (g1 > 255 ? 255 : g1);
-                        b1 = b1 < 0 ? 0 : (b1 > 255 ? 255 : b1);
-                        
-                        pixelData[y * width + x] = (255 << 24) | (r1 << 16) | (g1 << 8) | b1;
-                        
-                        // Second pixel (if exists)
-                        if (x + 1 < width) {
-                            int r2 = (298 * c2 + 409 * e + 128) >> 8;
-                            int g2 = (298 * c2 - 100 * d - 208 * e + 128) >> 8;
-                            int b2 = (298 * c2 + 516 * d + 128) >> 8;
-                            
-                            r2 = r2 < 0 ? 0 : (r2 > 255 ? 255 : r2);
-                            g2 = g2 < 0 ? 0 : (g2 > 255 ? 255 : g2);
-                            b2 = b2 < 0 ? 0 : (b2 > 255 ? 255 : b2);
-                            
-                            pixelData[y * width + x + 1] = (255 << 24) | (r2 << 16) | (g2 << 8) | b2;
-                        }
-                    }
-                }
-                break;
-                
-            default:
-                __android_log_print(ANDROID_LOG_ERROR, LOG_TAG, "=== COLOR === UNKNOWN FORMAT! FourCC=0x%08X (%d) - Using default BGRA", 
-                                   frame->FourCC, frame->FourCC);
-                // Fallback: assume BGRA
-                for (int y = 0; y < height; y++) {
-                    uint8_t* srcRow = srcData + (y * stride);
-                    for (int x = 0; x < width; x++) {
-                        uint8_t b = srcRow[x * 4 + 0];
-                        uint8_t g = srcRow[x * 4 + 1];
-                        uint8_t r = srcRow[x * 4 + 2];
-                        uint8_t a = srcRow[x * 4 + 3];
-                        
-                        pixelData[y * width + x] = (a << 24) | (r << 16) | (g << 8) | b;
-                    }
-                }
-                break;
-        }
-        
-        env->ReleaseIntArrayElements(pixels, pixelData, 0);
-        
-        return env->CallStaticObjectMethod(bitmapClass, createBitmapMethod, pixels, width, height, config);
-        
-    } catch (...) {
-        LOGE("Exception creating bitmap from frame");
+    if (reuse && fillBitmapFromVideoFrame(env, reuse, frame)) {
+        return reuse;
+    }
+    
+    jobject bitmap = env->CallStaticObjectMethod(bitmap_ids.bitmap_class, bitmap_ids.create_bitmap,
+                                                 frame->xres, frame->yres, bitmap_ids.argb_8888);
+    if (!bitmap || env->ExceptionCheck()) {
+        env->ExceptionClear();
+        LOGE("No se pudo crear Bitmap de %dx%d", frame->xres, frame->yres);
         return nullptr;
     }
+    
+    if (!fillBitmapFromVideoFrame(env, bitmap, frame)) {
+        env->DeleteLocalRef(bitmap);
+        return nullptr;
+    }
+    return bitmap;
 }
 
 // Funciones adicionales del archivo original para compatibilidad
@@ -1307,10 +1632,9 @@ Java_ndiplayer_oto_MainActivityOptimized_nativeShutdownNDI(JNIEnv *env, jobject
     LOGI("Cerrando NDI SDK...");
     
     // Liberar receiver si existe
-    NDIlib_recv_instance_t recv = ndi_recv.exchange(nullptr);
-    if (recv) {
-        NDIlib_recv_destroy(recv);
-        LOGI("Receiver destruido");
+    {
+        std::lock_guard<std::mutex> config_lock(receiver_config_mutex);
+        destroyReceiver();
     }
     
     // Liberar finder si existe
@@ -1350,8 +1674,8 @@ Java_ndiplayer_oto_MainActivityOptimized_nativeGetSourceName(JNIEnv *env, jobjec
 }
 
 extern "C" JNIEXPORT jboolean JNICALL
-Java_ndiplayer_oto_MainActivityOptimized_nativeConnectToSource(JNIEnv *env, jobject thiz, jint index) {
-    return Java_ndiplayer_oto_MainActivity_nativeConnectToSource(env, thiz, index);
+Java_ndiplayer_oto_MainActivityOptimized_nativeConnectToSource(JNIEnv *env, jobject thiz, jint index, jint bandwidth) {
+    return Java_ndiplayer_oto_MainActivity_nativeConnectToSource(env, thiz, index, bandwidth);
 }
 
 extern "C" JNIEXPORT void JNICALL
@@ -1364,9 +1688,11 @@ Java_ndiplayer_oto_MainActivityOptimized_nativeIsConnected(JNIEnv *env, jobject
     return Java_ndiplayer_oto_MainActivity_nativeIsConnected(env, thiz);
 }
 
+// reuse: Bitmap libre de Java. Si coincide en tamaño se rellena y se devuelve el mismo
+// media_time: long[1] reutilizado por Java; el timestamp va en la misma llamada que el frame
 extern "C" JNIEXPORT jobject JNICALL
-Java_ndiplayer_oto_MainActivityOptimized_nativeGetFrame(JNIEnv *env, jobject thiz) {
-    return Java_ndiplayer_oto_MainActivity_nativeGetFrame(env, thiz);
+Java_ndiplayer_oto_MainActivityOptimized_nativeGetFrame(JNIEnv *env, jobject thiz, jobject reuse, jlongArray media_time) {
+    return captureFrameToBitmap(env, reuse, media_time);
 }
 
 extern "C" JNIEXPORT jboolean JNICALL
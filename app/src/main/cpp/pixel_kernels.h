@@ -0,0 +1,619 @@
+#ifndef NDIPLAYER_PIXEL_KERNELS_H
+#define NDIPLAYER_PIXEL_KERNELS_H
+
+// Kernels de conversión de píxeles a ARGB_8888 de Android, sin dependencias de JNI
+// Un entero ARGB en memoria little-endian son los bytes B, G, R, A
+// Los píxeles de un Bitmap bloqueado (RGBA_8888) son los bytes R, G, B, A
+//
+// Cada kernel tiene una versión escalar de referencia y versiones vectoriales:
+//   - arm64: NEON con vqtbl1q_u8 / vld4_u8
+//   - x86/x86_64: SSSE3 (pshufb) y AVX2, elegidas en tiempo de ejecución
+// Las versiones vectoriales producen exactamente los mismos bytes que la escalar
+
+#include <cstdint>
+#include <cstring>
+#include <utility>
+
+#if defined(__aarch64__)
+#include <arm_neon.h>
+#define PIXEL_KERNELS_NEON 1
+#elif defined(__x86_64__) || defined(__i386__)
+#include <immintrin.h>
+#define PIXEL_KERNELS_X86 1
+#endif
+
+namespace pixel_kernels {
+
+enum class Isa {
+    Scalar,
+    Neon,
+    Ssse3,
+    Avx2
+};
+
+inline const char* isa_name(Isa isa) {
+    switch (isa) {
+        case Isa::Neon: return "NEON";
+        case Isa::Ssse3: return "SSSE3";
+        case Isa::Avx2: return "AVX2";
+        default: return "scalar";
+    }
+}
+
+// Mejor conjunto de instrucciones disponible en este dispositivo
+inline Isa best_isa() {
+#if defined(PIXEL_KERNELS_NEON)
+    return Isa::Neon;
+#elif defined(PIXEL_KERNELS_X86)
+    static const Isa isa = __builtin_cpu_supports("avx2") ? Isa::Avx2
+                         : __builtin_cpu_supports("ssse3") ? Isa::Ssse3
+                         : Isa::Scalar;
+    return isa;
+#else
+    return Isa::Scalar;
+#endif
+}
+
+// Máscaras de reordenación de 4 píxeles: el byte destino i sale del byte origen mask[i]
+alignas(16) inline constexpr uint8_t kShuffleBGRA[16] = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15};
+alignas(16) inline constexpr uint8_t kShuffleRGBA[16] = {2, 1, 0, 3, 6, 5, 4, 7, 10, 9, 8, 11, 14, 13, 12, 15};
+
+// Destino Bitmap (bytes R, G, B, A): las mismas máscaras con los papeles cambiados
+inline constexpr const uint8_t* kBitmapShuffleBGRA = kShuffleRGBA; // Intercambia R y B
+inline constexpr const uint8_t* kBitmapShuffleRGBA = kShuffleBGRA; // Copia directa
+
+// Orden de bytes del destino
+enum class PixelOrder {
+    Argb, // int[] de Java: bytes B, G, R, A
+    Rgba  // Píxeles de Bitmap: bytes R, G, B, A
+};
+
+constexpr uint32_t kAlphaFromSource = 0x00000000;
+constexpr uint32_t kAlphaOpaque = 0xFF000000; // Formatos X: el cuarto byte es relleno
+
+// Matriz YUV -> RGB en punto fijo compatible con pmulhrsw / vqrdmulh:
+// mulhrs(a, b) = (a * b + 2^14) >> 15
+// Luma:     y' = mulhrs((y - y_offset) << 5, y_gain)   (y_gain en Q10)
+// Croma:    c' = mulhrs((c - 128) << 2, coef)           (coef en Q13)
+struct YuvMatrix {
+    int16_t y_offset;
+    int16_t y_gain;
+    int16_t v_to_r;
+    int16_t u_to_g;
+    int16_t v_to_g;
+    int16_t u_to_b;
+};
+
+// BT.601 rango completo, igual que PixelConverter en Java (1.402, 0.344, 0.714, 1.772)
+inline constexpr YuvMatrix kBt601Full = {0, 1024, 11485, -2818, -5849, 14516};
+// BT.601 rango limitado 16-235 (1.164, 1.596, 0.392, 0.813, 2.017)
+inline constexpr YuvMatrix kBt601Limited = {16, 1192, 13074, -3211, -6660, 16523};
+
+inline int mulhrs(int a, int b) {
+    return (a * b + 0x4000) >> 15;
+}
+
+inline uint8_t clamp_u8(int value) {
+    return value < 0 ? 0 : (value > 255 ? 255 : static_cast<uint8_t>(value));
+}
+
+// ======================================
+// Referencia escalar
+// ======================================
+
+inline void swizzle_row_scalar(const uint8_t* src, uint32_t* dst, int width, const uint8_t* mask, uint32_t alpha) {
+    for (int x = 0; x < width; x++, src += 4) {
+        uint32_t b = src[mask[0]];
+        uint32_t g = src[mask[1]];
+        uint32_t r = src[mask[2]];
+        uint32_t a = src[mask[3]];
+        dst[x] = alpha | (a << 24) | (r << 16) | (g << 8) | b;
+    }
+}
+
+template <bool SwapRB = false>
+inline uint32_t yuv_to_argb_scalar(int y, int cr, int cg, int cb, const YuvMatrix& m) {
+    int luma = mulhrs((y - m.y_offset) << 5, m.y_gain);
+    uint32_t r = clamp_u8(luma + cr);
+    uint32_t b = clamp_u8(luma + cb);
+    return 0xFF000000u
+         | ((SwapRB ? b : r) << 16)
+         | (static_cast<uint32_t>(clamp_u8(luma + cg)) << 8)
+         | (SwapRB ? r : b);
+}
+
+template <bool SwapRB = false>
+inline void uyvy_row_scalar(const uint8_t* src, uint32_t* dst, int width, const YuvMatrix& m) {
+    for (int x = 0; x < width; x += 2, src += 4) {
+        int u = (src[0] - 128) << 2;
+        int v = (src[2] - 128) << 2;
+        int cr = mulhrs(v, m.v_to_r);
+        int cg = mulhrs(u, m.u_to_g) + mulhrs(v, m.v_to_g);
+        int cb = mulhrs(u, m.u_to_b);
+
+        dst[x] = yuv_to_argb_scalar<SwapRB>(src[1], cr, cg, cb, m);
+        if (x + 1 < width) {
+            dst[x + 1] = yuv_to_argb_scalar<SwapRB>(src[3], cr, cg, cb, m);
+        }
+    }
+}
+
+// ======================================
+// arm64 NEON
+// ======================================
+
+#if defined(PIXEL_KERNELS_NEON)
+inline void swizzle_row_neon(const uint8_t* src, uint32_t* dst, int width, const uint8_t* mask, uint32_t alpha) {
+    const uint8x16_t table = vld1q_u8(mask);
+    const uint8x16_t alpha_bits = vreinterpretq_u8_u32(vdupq_n_u32(alpha));
+    int x = 0;
+    for (; x + 4 <= width; x += 4) {
+        uint8x16_t pixels = vqtbl1q_u8(vld1q_u8(src + x * 4), table);
+        vst1q_u8(reinterpret_cast<uint8_t*>(dst + x), vorrq_u8(pixels, alpha_bits));
+    }
+    swizzle_row_scalar(src + x * 4, dst + x, width - x, mask, alpha);
+}
+
+template <bool SwapRB = false>
+inline void uyvy_row_neon(const uint8_t* src, uint32_t* dst, int width, const YuvMatrix& m) {
+    const int16x8_t y_offset = vdupq_n_s16(m.y_offset);
+    const int16x8_t y_gain = vdupq_n_s16(m.y_gain);
+    const int16x8_t v_to_r = vdupq_n_s16(m.v_to_r);
+    const int16x8_t u_to_g = vdupq_n_s16(m.u_to_g);
+    const int16x8_t v_to_g = vdupq_n_s16(m.v_to_g);
+    const int16x8_t u_to_b = vdupq_n_s16(m.u_to_b);
+    const int16x8_t bias = vdupq_n_s16(128);
+    const uint8x16_t alpha = vdupq_n_u8(0xFF);
+
+    int x = 0;
+    for (; x + 16 <= width; x += 16) {
+        // 8 pares UYVY desentrelazados: U, Y par, V, Y impar
+        uint8x8x4_t in = vld4_u8(src + x * 2);
+        int16x8_t u = vshlq_n_s16(vsubq_s16(vreinterpretq_s16_u16(vmovl_u8(in.val[0])), bias), 2);
+        int16x8_t v = vshlq_n_s16(vsubq_s16(vreinterpretq_s16_u16(vmovl_u8(in.val[2])), bias), 2);
+        int16x8_t cr = vqrdmulhq_s16(v, v_to_r);
+        int16x8_t cg = vaddq_s16(vqrdmulhq_s16(u, u_to_g), vqrdmulhq_s16(v, v_to_g));
+        int16x8_t cb = vqrdmulhq_s16(u, u_to_b);
+
+        int16x8_t y0 = vshlq_n_s16(vsubq_s16(vreinterpretq_s16_u16(vmovl_u8(in.val[1])), y_offset), 5);
+        int16x8_t y1 = vshlq_n_s16(vsubq_s16(vreinterpretq_s16_u16(vmovl_u8(in.val[3])), y_offset), 5);
+        y0 = vqrdmulhq_s16(y0, y_gain);
+        y1 = vqrdmulhq_s16(y1, y_gain);
+
+        // vqmovun satura a [0, 255] igual que clamp_u8
+        uint8x8x2_t r = vzip_u8(vqmovun_s16(vaddq_s16(y0, cr)), vqmovun_s16(vaddq_s16(y1, cr)));
+        uint8x8x2_t g = vzip_u8(vqmovun_s16(vaddq_s16(y0, cg)), vqmovun_s16(vaddq_s16(y1, cg)));
+        uint8x8x2_t b = vzip_u8(vqmovun_s16(vaddq_s16(y0, cb)), vqmovun_s16(vaddq_s16(y1, cb)));
+
+        uint8x16x4_t out;
+        out.val[SwapRB ? 2 : 0] = vcombine_u8(b.val[0], b.val[1]);
+        out.val[1] = vcombine_u8(g.val[0], g.val[1]);
+        out.val[SwapRB ? 0 : 2] = vcombine_u8(r.val[0], r.val[1]);
+        out.val[3] = alpha;
+        vst4q_u8(reinterpret_cast<uint8_t*>(dst + x), out);
+    }
+    uyvy_row_scalar<SwapRB>(src + x * 2, dst + x, width - x, m);
+}
+#endif
+
+// ======================================
+// x86 SSSE3 / AVX2
+// ======================================
+
+#if defined(PIXEL_KERNELS_X86)
+__attribute__((target("ssse3")))
+inline void swizzle_row_ssse3(const uint8_t* src, uint32_t* dst, int width, const uint8_t* mask, uint32_t alpha) {
+    const __m128i table = _mm_load_si128(reinterpret_cast<const __m128i*>(mask));
+    const __m128i alpha_bits = _mm_set1_epi32(static_cast<int>(alpha));
+    int x = 0;
+    for (; x + 4 <= width; x += 4) {
+        __m128i pixels = _mm_shuffle_epi8(_mm_loadu_si128(reinterpret_cast<const __m128i*>(src + x * 4)), table);
+        _mm_storeu_si128(reinterpret_cast<__m128i*>(dst + x), _mm_or_si128(pixels, alpha_bits));
+    }
+    swizzle_row_scalar(src + x * 4, dst + x, width - x, mask, alpha);
+}
+
+__attribute__((target("avx2")))
+inline void swizzle_row_avx2(const uint8_t* src, uint32_t* dst, int width, const uint8_t* mask, uint32_t alpha) {
+    const __m256i table = _mm256_broadcastsi128_si256(_mm_load_si128(reinterpret_cast<const __m128i*>(mask)));
+    const __m256i alpha_bits = _mm256_set1_epi32(static_cast<int>(alpha));
+    int x = 0;
+    for (; x + 8 <= width; x += 8) {
+        __m256i pixels = _mm256_shuffle_epi8(_mm256_loadu_si256(reinterpret_cast<const __m256i*>(src + x * 4)), table);
+        _mm256_storeu_si256(reinterpret_cast<__m256i*>(dst + x), _mm256_or_si256(pixels, alpha_bits));
+    }
+    swizzle_row_scalar(src + x * 4, dst + x, width - x, mask, alpha);
+}
+
+template <bool SwapRB = false>
+__attribute__((target("ssse3")))
+inline void uyvy_row_ssse3(const uint8_t* src, uint32_t* dst, int width, const YuvMatrix& m) {
+    // Replicar U y V de cada par en los dos píxeles, ya extendidos a 16 bits
+    const __m128i take_u = _mm_setr_epi8(0, -1, 0, -1, 4, -1, 4, -1, 8, -1, 8, -1, 12, -1, 12, -1);
+    const __m128i take_v = _mm_setr_epi8(2, -1, 2, -1, 6, -1, 6, -1, 10, -1, 10, -1, 14, -1, 14, -1);
+    const __m128i y_offset = _mm_set1_epi16(m.y_offset);
+    const __m128i y_gain = _mm_set1_epi16(m.y_gain);
+    const __m128i v_to_r = _mm_set1_epi16(m.v_to_r);
+    const __m128i u_to_g = _mm_set1_epi16(m.u_to_g);
+    const __m128i v_to_g = _mm_set1_epi16(m.v_to_g);
+    const __m128i u_to_b = _mm_set1_epi16(m.u_to_b);
+    const __m128i bias = _mm_set1_epi16(128);
+    const __m128i alpha = _mm_set1_epi8(-1);
+
+    int x = 0;
+    for (; x + 8 <= width; x += 8) {
+        __m128i in = _mm_loadu_si128(reinterpret_cast<const __m128i*>(src + x * 2));
+        __m128i y = _mm_mulhrs_epi16(_mm_slli_epi16(_mm_sub_epi16(_mm_srli_epi16(in, 8), y_offset), 5), y_gain);
+        __m128i u = _mm_slli_epi16(_mm_sub_epi16(_mm_shuffle_epi8(in, take_u), bias), 2);
+        __m128i v = _mm_slli_epi16(_mm_sub_epi16(_mm_shuffle_epi8(in, take_v), bias), 2);
+
+        __m128i r = _mm_add_epi16(y, _mm_mulhrs_epi16(v, v_to_r));
+        __m128i g = _mm_add_epi16(y, _mm_add_epi16(_mm_mulhrs_epi16(u, u_to_g), _mm_mulhrs_epi16(v, v_to_g)));
+        __m128i b = _mm_add_epi16(y, _mm_mulhrs_epi16(u, u_to_b));
+
+        if (SwapRB) {
+            std::swap(r, b);
+        }
+
+        // packus satura a [0, 255] igual que clamp_u8
+        __m128i bg = _mm_unpacklo_epi8(_mm_packus_epi16(b, b), _mm_packus_epi16(g, g));
+        __m128i ra = _mm_unpacklo_epi8(_mm_packus_epi16(r, r), alpha);
+        _mm_storeu_si128(reinterpret_cast<__m128i*>(dst + x), _mm_unpacklo_epi16(bg, ra));
+        _mm_storeu_si128(reinterpret_cast<__m128i*>(dst + x + 4), _mm_unpackhi_epi16(bg, ra));
+    }
+    uyvy_row_scalar<SwapRB>(src + x * 2, dst + x, width - x, m);
+}
+
+template <bool SwapRB = false>
+__attribute__((target("avx2")))
+inline void uyvy_row_avx2(const uint8_t* src, uint32_t* dst, int width, const YuvMatrix& m) {
+    // pshufb trabaja por carril de 128 bits: cada carril contiene 4 pares completos
+    const __m256i take_u = _mm256_broadcastsi128_si256(
+        _mm_setr_epi8(0, -1, 0, -1, 4, -1, 4, -1, 8, -1, 8, -1, 12, -1, 12, -1));
+    const __m256i take_v = _mm256_broadcastsi128_si256(
+        _mm_setr_epi8(2, -1, 2, -1, 6, -1, 6, -1, 10, -1, 10, -1, 14, -1, 14, -1));
+    const __m256i y_offset = _mm256_set1_epi16(m.y_offset);
+    const __m256i y_gain = _mm256_set1_epi16(m.y_gain);
+    const __m256i v_to_r = _mm256_set1_epi16(m.v_to_r);
+    const __m256i u_to_g = _mm256_set1_epi16(m.u_to_g);
+    const __m256i v_to_g = _mm256_set1_epi16(m.v_to_g);
+    const __m256i u_to_b = _mm256_set1_epi16(m.u_to_b);
+    const __m256i bias = _mm256_set1_epi16(128);
+    const __m256i alpha = _mm256_set1_epi8(-1);
+
+    int x = 0;
+    for (; x + 16 <= width; x += 16) {
+        __m256i in = _mm256_loadu_si256(reinterpret_cast<const __m256i*>(src + x * 2));
+        __m256i y = _mm256_mulhrs_epi16(_mm256_slli_epi16(_mm256_sub_epi16(_mm256_srli_epi16(in, 8), y_offset), 5), y_gain);
+        __m256i u = _mm256_slli_epi16(_mm256_sub_epi16(_mm256_shuffle_epi8(in, take_u), bias), 2);
+        __m256i v = _mm256_slli_epi16(_mm256_sub_epi16(_mm256_shuffle_epi8(in, take_v), bias), 2);
+
+        __m256i r = _mm256_add_epi16(y, _mm256_mulhrs_epi16(v, v_to_r));
+        __m256i g = _mm256_add_epi16(y, _mm256_add_epi16(_mm256_mulhrs_epi16(u, u_to_g), _mm256_mulhrs_epi16(v, v_to_g)));
+        __m256i b = _mm256_add_epi16(y, _mm256_mulhrs_epi16(u, u_to_b));
+        if (SwapRB) {
+            std::swap(r, b);
+        }
+
+        __m256i bg = _mm256_unpacklo_epi8(_mm256_packus_epi16(b, b), _mm256_packus_epi16(g, g));
+        __m256i ra = _mm256_unpacklo_epi8(_mm256_packus_epi16(r, r), alpha);
+        __m256i lo = _mm256_unpacklo_epi16(bg, ra); // Píxeles 0-3 | 8-11
+        __m256i hi = _mm256_unpackhi_epi16(bg, ra); // Píxeles 4-7 | 12-15
+        _mm256_storeu_si256(reinterpret_cast<__m256i*>(dst + x), _mm256_permute2x128_si256(lo, hi, 0x20));
+        _mm256_storeu_si256(reinterpret_cast<__m256i*>(dst + x + 8), _mm256_permute2x128_si256(lo, hi, 0x31));
+    }
+    uyvy_row_ssse3<SwapRB>(src + x * 2, dst + x, width - x, m);
+}
+#endif
+
+// ======================================
+// Promedio de caja 2x2 en el formato de origen
+// ======================================
+
+// Cada grupo de 8 bytes de dos filas (2 píxeles de 4 bytes, o 2 pares UYVY = 4 píxeles) se reduce
+// a 4 bytes del mismo formato: el byte j es la media redondeada de los bytes pair[j] y pair[j + 4]
+// de ambas filas. En UYVY la luma de cada píxel de salida sale de los dos Y de un mismo par
+alignas(16) inline constexpr uint8_t kBoxPairs4[16] = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15};
+alignas(16) inline constexpr uint8_t kBoxPairsUyvy[16] = {0, 1, 2, 5, 4, 3, 6, 7, 8, 9, 10, 13, 12, 11, 14, 15};
+
+inline void box2_row_scalar(const uint8_t* row0, const uint8_t* row1, uint8_t* out, int groups, const uint8_t* pairs) {
+    for (int k = 0; k < groups; k++, row0 += 8, row1 += 8, out += 4) {
+        for (int j = 0; j < 4; j++) {
+            int a = pairs[j], b = pairs[j + 4];
+            out[j] = static_cast<uint8_t>((row0[a] + row0[b] + row1[a] + row1[b] + 2) >> 2);
+        }
+    }
+}
+
+#if defined(PIXEL_KERNELS_NEON)
+inline void box2_row_neon(const uint8_t* row0, const uint8_t* row1, uint8_t* out, int groups, const uint8_t* pairs) {
+    const uint8x16_t table = vld1q_u8(pairs);
+    int k = 0;
+    for (; k + 4 <= groups; k += 4) {
+        // Tras reordenar, cada grupo son dos mitades de 4 bytes que se suman carril a carril
+        uint8x16_t a0 = vqtbl1q_u8(vld1q_u8(row0 + k * 8), table);
+        uint8x16_t a1 = vqtbl1q_u8(vld1q_u8(row0 + k * 8 + 16), table);
+        uint8x16_t b0 = vqtbl1q_u8(vld1q_u8(row1 + k * 8), table);
+        uint8x16_t b1 = vqtbl1q_u8(vld1q_u8(row1 + k * 8 + 16), table);
+        uint16x8_t s0 = vaddl_u8(vget_low_u8(a0), vget_low_u8(b0));
+        uint16x8_t s1 = vaddl_u8(vget_high_u8(a0), vget_high_u8(b0));
+        uint16x8_t s2 = vaddl_u8(vget_low_u8(a1), vget_low_u8(b1));
+        uint16x8_t s3 = vaddl_u8(vget_high_u8(a1), vget_high_u8(b1));
+        uint16x8_t g01 = vcombine_u16(vadd_u16(vget_low_u16(s0), vget_high_u16(s0)),
+                                      vadd_u16(vget_low_u16(s1), vget_high_u16(s1)));
+        uint16x8_t g23 = vcombine_u16(vadd_u16(vget_low_u16(s2), vget_high_u16(s2)),
+                                      vadd_u16(vget_low_u16(s3), vget_high_u16(s3)));
+        // vrshrn: (suma + 2) >> 2, igual que la escalar
+        vst1q_u8(out + k * 4, vcombine_u8(vrshrn_n_u16(g01, 2), vrshrn_n_u16(g23, 2)));
+    }
+    box2_row_scalar(row0 + k * 8, row1 + k * 8, out + k * 4, groups - k, pairs);
+}
+#endif
+
+#if defined(PIXEL_KERNELS_X86)
+// Limitado por memoria: AVX2 no aporta sobre SSSE3
+__attribute__((target("ssse3")))
+inline void box2_row_ssse3(const uint8_t* row0, const uint8_t* row1, uint8_t* out, int groups, const uint8_t* pairs) {
+    const __m128i table = _mm_load_si128(reinterpret_cast<const __m128i*>(pairs));
+    const __m128i zero = _mm_setzero_si128();
+    const __m128i round = _mm_set1_epi16(2);
+    int k = 0;
+    for (; k + 4 <= groups; k += 4) {
+        __m128i a0 = _mm_shuffle_epi8(_mm_loadu_si128(reinterpret_cast<const __m128i*>(row0 + k * 8)), table);
+        __m128i a1 = _mm_shuffle_epi8(_mm_loadu_si128(reinterpret_cast<const __m128i*>(row0 + k * 8 + 16)), table);
+        __m128i b0 = _mm_shuffle_epi8(_mm_loadu_si128(reinterpret_cast<const __m128i*>(row1 + k * 8)), table);
+        __m128i b1 = _mm_shuffle_epi8(_mm_loadu_si128(reinterpret_cast<const __m128i*>(row1 + k * 8 + 16)), table);
+        __m128i s0 = _mm_add_epi16(_mm_unpacklo_epi8(a0, zero), _mm_unpacklo_epi8(b0, zero));
+        __m128i s1 = _mm_add_epi16(_mm_unpackhi_epi8(a0, zero), _mm_unpackhi_epi8(b0, zero));
+        __m128i s2 = _mm_add_epi16(_mm_unpacklo_epi8(a1, zero), _mm_unpacklo_epi8(b1, zero));
+        __m128i s3 = _mm_add_epi16(_mm_unpackhi_epi8(a1, zero), _mm_unpackhi_epi8(b1, zero));
+        __m128i g01 = _mm_add_epi16(_mm_unpacklo_epi64(s0, s1), _mm_unpackhi_epi64(s0, s1));
+        __m128i g23 = _mm_add_epi16(_mm_unpacklo_epi64(s2, s3), _mm_unpackhi_epi64(s2, s3));
+        g01 = _mm_srli_epi16(_mm_add_epi16(g01, round), 2);
+        g23 = _mm_srli_epi16(_mm_add_epi16(g23, round), 2);
+        _mm_storeu_si128(reinterpret_cast<__m128i*>(out + k * 4), _mm_packus_epi16(g01, g23));
+    }
+    box2_row_scalar(row0 + k * 8, row1 + k * 8, out + k * 4, groups - k, pairs);
+}
+#endif
+
+inline void box2_row(const uint8_t* row0, const uint8_t* row1, uint8_t* out, int groups, const uint8_t* pairs, Isa isa) {
+    switch (isa) {
+#if defined(PIXEL_KERNELS_NEON)
+        case Isa::Neon: box2_row_neon(row0, row1, out, groups, pairs); break;
+#endif
+#if defined(PIXEL_KERNELS_X86)
+        case Isa::Avx2:
+        case Isa::Ssse3: box2_row_ssse3(row0, row1, out, groups, pairs); break;
+#endif
+        default: box2_row_scalar(row0, row1, out, groups, pairs); break;
+    }
+}
+
+// ======================================
+// Conversión de frames completos con stride
+// ======================================
+
+inline bool is_identity(const uint8_t* mask, uint32_t alpha) {
+    return alpha == kAlphaFromSource && std::memcmp(mask, kShuffleBGRA, sizeof(kShuffleBGRA)) == 0;
+}
+
+// Formatos de 4 bytes (BGRA/BGRX/RGBA/RGBX) según mask y alpha
+// dst_stride en bytes: permite escribir directamente en filas de Bitmap con padding
+inline void swizzle_frame(const uint8_t* src, int src_stride, uint8_t* dst, int dst_stride, int width, int height,
+                          const uint8_t* mask, uint32_t alpha, Isa isa = best_isa()) {
+    // Si la máscara es la identidad basta copiar cada fila (p. ej. BGRA a int[] ARGB)
+    if (is_identity(mask, alpha)) {
+        for (int y = 0; y < height; y++) {
+            std::memcpy(dst + static_cast<size_t>(y) * dst_stride, src + static_cast<size_t>(y) * src_stride, width * 4);
+        }
+        return;
+    }
+
+    for (int y = 0; y < height; y++) {
+        const uint8_t* row = src + static_cast<size_t>(y) * src_stride;
+        uint32_t* out = reinterpret_cast<uint32_t*>(dst + static_cast<size_t>(y) * dst_stride);
+        switch (isa) {
+#if defined(PIXEL_KERNELS_NEON)
+            case Isa::Neon: swizzle_row_neon(row, out, width, mask, alpha); break;
+#endif
+#if defined(PIXEL_KERNELS_X86)
+            case Isa::Avx2: swizzle_row_avx2(row, out, width, mask, alpha); break;
+            case Isa::Ssse3: swizzle_row_ssse3(row, out, width, mask, alpha); break;
+#endif
+            default: swizzle_row_scalar(row, out, width, mask, alpha); break;
+        }
+    }
+}
+
+template <bool SwapRB>
+inline void uyvy_frame(const uint8_t* src, int src_stride, uint8_t* dst, int dst_stride, int width, int height,
+                       const YuvMatrix& matrix, Isa isa) {
+    for (int y = 0; y < height; y++) {
+        const uint8_t* row = src + static_cast<size_t>(y) * src_stride;
+        uint32_t* out = reinterpret_cast<uint32_t*>(dst + static_cast<size_t>(y) * dst_stride);
+        switch (isa) {
+#if defined(PIXEL_KERNELS_NEON)
+            case Isa::Neon: uyvy_row_neon<SwapRB>(row, out, width, matrix); break;
+#endif
+#if defined(PIXEL_KERNELS_X86)
+            case Isa::Avx2: uyvy_row_avx2<SwapRB>(row, out, width, matrix); break;
+            case Isa::Ssse3: uyvy_row_ssse3<SwapRB>(row, out, width, matrix); break;
+#endif
+            default: uyvy_row_scalar<SwapRB>(row, out, width, matrix); break;
+        }
+    }
+}
+
+inline void uyvy_frame(const uint8_t* src, int src_stride, uint8_t* dst, int dst_stride, int width, int height,
+                       PixelOrder order, const YuvMatrix& matrix = kBt601Full, Isa isa = best_isa()) {
+    if (order == PixelOrder::Rgba) {
+        uyvy_frame<true>(src, src_stride, dst, dst_stride, width, height, matrix, isa);
+    } else {
+        uyvy_frame<false>(src, src_stride, dst, dst_stride, width, height, matrix, isa);
+    }
+}
+
+inline void swizzle_to_argb(const uint8_t* src, int src_stride, uint32_t* dst, int width, int height,
+                            const uint8_t* mask, uint32_t alpha, Isa isa = best_isa()) {
+    swizzle_frame(src, src_stride, reinterpret_cast<uint8_t*>(dst), width * 4, width, height, mask, alpha, isa);
+}
+
+inline void uyvy_to_argb(const uint8_t* src, int src_stride, uint32_t* dst, int width, int height,
+                         const YuvMatrix& matrix = kBt601Full, Isa isa = best_isa()) {
+    uyvy_frame(src, src_stride, reinterpret_cast<uint8_t*>(dst), width * 4, width, height,
+               PixelOrder::Argb, matrix, isa);
+}
+
+// ======================================
+// Frames con escalado hacia int[] ARGB (préstamos del SDK sin copia)
+// ======================================
+
+enum class SourceFormat {
+    Bgra,
+    Bgrx,
+    Rgba,
+    Rgbx,
+    Uyvy
+};
+
+// Una fila completa del origen a ARGB, con la misma matriz que PixelConverter en Java
+inline void row_to_argb(const uint8_t* row, uint32_t* out, int width, SourceFormat format, Isa isa) {
+    switch (format) {
+        case SourceFormat::Uyvy: uyvy_to_argb(row, 0, out, width, 1, kBt601Full, isa); break;
+        case SourceFormat::Bgrx: swizzle_to_argb(row, 0, out, width, 1, kShuffleBGRA, kAlphaOpaque, isa); break;
+        case SourceFormat::Rgba: swizzle_to_argb(row, 0, out, width, 1, kShuffleRGBA, kAlphaFromSource, isa); break;
+        case SourceFormat::Rgbx: swizzle_to_argb(row, 0, out, width, 1, kShuffleRGBA, kAlphaOpaque, isa); break;
+        default: swizzle_to_argb(row, 0, out, width, 1, kShuffleBGRA, kAlphaFromSource, isa); break;
+    }
+}
+
+// Columna de origen de cada píxel destino; se calcula una vez por llamada y no una división por píxel
+inline void nearest_columns(uint32_t* columns, int src_width, int dst_width) {
+    for (int x = 0; x < dst_width; x++) {
+        columns[x] = static_cast<uint32_t>(static_cast<int64_t>(x) * src_width / dst_width);
+    }
+}
+
+inline void nearest_row(const uint32_t* row, const uint32_t* columns, uint32_t* out, int dst_width) {
+    for (int x = 0; x < dst_width; x++) {
+        out[x] = row[columns[x]];
+    }
+}
+
+// Escalado por vecino más próximo: una fila completa del origen convertida por fila destino
+template <typename Scratch>
+inline void nearest_rows_argb(const uint8_t* src, int src_stride, int src_width, int src_height, SourceFormat format,
+                              uint32_t* dst, int dst_width, int dst_height, int row_start, int row_end,
+                              Scratch& scratch, Isa isa = best_isa()) {
+    // scratch: fila ARGB convertida + columna de origen de cada píxel destino
+    size_t words = static_cast<size_t>(src_width) + dst_width;
+    if (scratch.size() < words) {
+        scratch.resize(words);
+    }
+    uint32_t* row = scratch.data();
+    uint32_t* columns = row + src_width;
+    nearest_columns(columns, src_width, dst_width);
+    for (int y = row_start; y < row_end; y++) {
+        int sy = static_cast<int>(static_cast<int64_t>(y) * src_height / dst_height);
+        row_to_argb(src + static_cast<size_t>(sy) * src_stride, row, src_width, format, isa);
+        nearest_row(row, columns, dst + static_cast<size_t>(y) * dst_width, dst_width);
+    }
+}
+
+// Caja 2x2 si el origen promediado aún cubre el destino: su ancho y alto quedan en box_width/box_height
+// En UYVY el ancho promediado se redondea a pares completos (se pierden como mucho 3 columnas)
+inline bool box_fits(int src_width, int src_height, SourceFormat format, int dst_width, int dst_height,
+                     int* box_width, int* box_height) {
+    *box_width = format == SourceFormat::Uyvy ? (src_width / 4) * 2 : src_width / 2;
+    *box_height = src_height / 2;
+    return *box_width >= dst_width && *box_height >= dst_height;
+}
+
+// Escalado con caja 2x2 en el formato de origen y vecino más próximo desde ahí: cada fila destino
+// promedia dos filas de origen y convierte a ARGB solo la fila promediada (mitad de ancho)
+// Con factores de 1/4 o menos la caja sigue siendo 2x2: filtra lo más fino sin leer más filas
+template <typename Scratch>
+inline void box_rows_argb(const uint8_t* src, int src_stride, SourceFormat format, int box_width, int box_height,
+                          uint32_t* dst, int dst_width, int dst_height, int row_start, int row_end,
+                          Scratch& scratch, Isa isa = best_isa()) {
+    const uint8_t* pairs = format == SourceFormat::Uyvy ? kBoxPairsUyvy : kBoxPairs4;
+    int bpp = format == SourceFormat::Uyvy ? 2 : 4;
+    int groups = box_width * bpp / 4; // Grupos de 4 bytes de salida
+
+    // scratch: fila ARGB promediada + fila promediada en bytes de origen + columnas del vecino más próximo
+    size_t boxed_words = static_cast<size_t>(groups);
+    size_t words = box_width + boxed_words + dst_width;
+    if (scratch.size() < words) {
+        scratch.resize(words);
+    }
+    uint32_t* row = scratch.data();
+    uint8_t* boxed = reinterpret_cast<uint8_t*>(row + box_width);
+    uint32_t* columns = row + box_width + boxed_words;
+    if (box_width != dst_width) {
+        nearest_columns(columns, box_width, dst_width);
+    }
+
+    for (int y = row_start; y < row_end; y++) {
+        int sy = static_cast<int>(static_cast<int64_t>(y) * box_height / dst_height) * 2;
+        const uint8_t* r0 = src + static_cast<size_t>(sy) * src_stride;
+        box2_row(r0, r0 + src_stride, boxed, groups, pairs, isa);
+
+        uint32_t* out = dst + static_cast<size_t>(y) * dst_width;
+        if (box_width == dst_width) {
+            row_to_argb(boxed, out, box_width, format, isa);
+        } else {
+            row_to_argb(boxed, row, box_width, format, isa);
+            nearest_row(row, columns, out, dst_width);
+        }
+    }
+}
+
+// Filas destino [row_start, row_end) de un frame src_width x src_height escalado a dst_width x dst_height
+// Mismo tamaño: conversión directa. Destino de la mitad o menos: caja 2x2 en el formato de origen
+// y vecino más próximo desde ahí, que quita el aliasing del muestreo puntual (texto, rejillas)
+// a cambio de leer dos filas de origen por fila destino. Resto: vecino más próximo
+// scratch guarda filas intermedias; crece una vez por tamaño y luego se reutiliza
+template <typename Scratch>
+inline void convert_rows_argb(const uint8_t* src, int src_stride, int src_width, int src_height, SourceFormat format,
+                              uint32_t* dst, int dst_width, int dst_height, int row_start, int row_end,
+                              Scratch& scratch, Isa isa = best_isa()) {
+    if (src_width == dst_width && src_height == dst_height) {
+        for (int y = row_start; y < row_end; y++) {
+            row_to_argb(src + static_cast<size_t>(y) * src_stride, dst + static_cast<size_t>(y) * dst_width,
+                        src_width, format, isa);
+        }
+        return;
+    }
+
+    int box_width, box_height;
+    if (box_fits(src_width, src_height, format, dst_width, dst_height, &box_width, &box_height)) {
+        box_rows_argb(src, src_stride, format, box_width, box_height,
+                      dst, dst_width, dst_height, row_start, row_end, scratch, isa);
+        return;
+    }
+    nearest_rows_argb(src, src_stride, src_width, src_height, format, dst, dst_width, dst_height,
+                      row_start, row_end, scratch, isa);
+}
+
+// Los Bitmap de Android guardan el color premultiplicado por alfa
+// Los píxeles opacos, el caso habitual en vídeo, se saltan sin tocarlos
+inline void premultiply_rgba(uint8_t* dst, int dst_stride, int width, int height) {
+    for (int y = 0; y < height; y++) {
+        uint8_t* p = dst + static_cast<size_t>(y) * dst_stride;
+        for (int x = 0; x < width; x++, p += 4) {
+            uint32_t a = p[3];
+            if (a != 255) {
+                // round(c * a / 255) exacto sin división
+                uint32_t r = p[0] * a + 128, g = p[1] * a + 128, b = p[2] * a + 128;
+                p[0] = static_cast<uint8_t>((r + (r >> 8)) >> 8);
+                p[1] = static_cast<uint8_t>((g + (g >> 8)) >> 8);
+                p[2] = static_cast<uint8_t>((b + (b >> 8)) >> 8);
+            }
+        }
+    }
+}
+
+} // namespace pixel_kernels
+
+#endif // NDIPLAYER_PIXEL_KERNELS_H
@@ -29,6 +29,11 @@ import java.util.Arrays;
 
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import ndiplayer.oto.service.FrameDescriptor;
+import ndiplayer.oto.utils.FrameCadence;
+import ndiplayer.oto.utils.TaskScheduler;
+import ndiplayer.oto.utils.TripleBuffer;
 
 public class MainActivity extends Activity {
     private static final String TAG = "NDIPlayer";
@@ -48,24 +53,21 @@ public class MainActivity extends Activity {
     // Connection state variables
     private boolean isConnected = false;
     private String connectedSourceName = "";
-    private Thread captureThread;
+    private TaskScheduler.Task captureTask;
     private ImageView videoView;
     
     // Performance optimization variables
-    private long lastFrameTime = 0;
+    private final FrameCadence frameCadence = new FrameCadence(30); // ~30 FPS on a fixed slot grid
     private int droppedFrames = 0;
-    private static final long TARGET_FRAME_TIME = 33; // ~30 FPS (33ms per frame)
     
     // Object pooling for performance optimization
     private final Pool<Bitmap> bitmapPool = new Pool<>(3); // Pool of 3 bitmaps
     private final Pool<int[]> pixelPool = new Pool<>(3);   // Pool of 3 pixel arrays
     private int currentWidth = 0, currentHeight = 0;
     
-    // Async processing
-    private Thread processingThread;
-    private final Object frameLock = new Object();
-    private volatile byte[] pendingFrameData;
-    private volatile int pendingWidth, pendingHeight;
+    // Async processing on the shared scheduler; released in onDestroy
+    private TaskScheduler scheduler;
+    private TaskScheduler.Task processingTask;
     
     // UI state variables
     private boolean isFullscreen = false;
@@ -96,13 +98,20 @@ public class MainActivity extends Activity {
     private native void nativeCleanup();
     private native byte[] nativeGetFrameData();
     private native int nativeGetFrameFourCC();
+    private native int nativeGetFrameStride();
     
     // Optimized native methods for performance
-    private native void nativeConvertBGRAToARGB(byte[] bgraData, int[] argbPixels, int width, int height);
-    private native void nativeConvertUYVYToARGB(byte[] uyvyData, int[] argbPixels, int width, int height);
+    private native void nativeConvertBGRAToARGB(byte[] bgraData, int stride, int[] argbPixels, int width, int height);
+    private native void nativeConvertUYVYToARGB(byte[] uyvyData, int stride, int[] argbPixels, int width, int height);
     private native Bitmap nativeCreateOptimizedBitmap(int[] pixels, int width, int height);
     
     // Object pooling class for memory efficiency
+    // Frame handed from capture to processing; format captured with the frame, not at processing time
+    private static class PendingFrame {
+        byte[] data;
+        int width, height, stride, fourCC;
+    }
+    
     private static class Pool<T> {
         private final BlockingQueue<T> pool;
         
@@ -131,6 +140,8 @@ public class MainActivity extends Activity {
         
         Log.d(TAG, "MainActivity onCreate started - NDI FULLSCREEN VERSION");
         
+        scheduler = TaskScheduler.acquire();
+        
         try {
             // Layout principal
             mainLayout = new LinearLayout(this);
@@ -172,7 +183,7 @@ public class MainActivity extends Activity {
     private void initializeNDI() {
         Log.d(TAG, "Initializing NDI SDK...");
         
-        new Thread(() -> {
+        scheduler.execute(TaskScheduler.Pool.BACKGROUND, () -> {
             try {
                 boolean success = nativeInitializeNDI();
                 
@@ -196,14 +207,14 @@ public class MainActivity extends Activity {
                     statusText.setText("❌ Error inicializando NDI SDK");
                 });
             }
-        }).start();
+        });
     }
     
     private void performNDIDiscovery() {
         Log.d(TAG, "Starting NDI discovery...");
         statusText.setText("🔍 Buscando fuentes NDI...");
         
-        new Thread(() -> {
+        scheduler.execute(TaskScheduler.Pool.BACKGROUND, () -> {
             try {
                 // Limpiar fuentes anteriores
                 runOnUiThread(() -> {
@@ -313,7 +324,7 @@ public class MainActivity extends Activity {
                     searchAgainButton.setVisibility(View.VISIBLE); // Mostrar botón en caso de error
                 });
             }
-        }).start();
+        });
     }
     
     private void showNetworkInfo() {
@@ -560,7 +571,7 @@ public class MainActivity extends Activity {
         
         Log.d(TAG, "Cleaned source name: '" + selectedSourceName + "'");
         
-        new Thread(() -> {
+        scheduler.execute(TaskScheduler.Pool.BACKGROUND, () -> {
             try {
                 // Use the full source name as NDI name, empty URL lets SDK resolve it
                 boolean success = nativeConnectToSource(selectedSourceName, selectedSourceUrl);
@@ -600,13 +611,13 @@ public class MainActivity extends Activity {
                     Toast.makeText(this, "❌ Excepción al conectar: " + e.getMessage(), Toast.LENGTH_LONG).show();
                 });
             }
-        }).start();
+        });
     }
     
     private void disconnectFromSource() {
         Log.d(TAG, "Disconnecting from NDI source");
         
-        new Thread(() -> {
+        scheduler.execute(TaskScheduler.Pool.BACKGROUND, () -> {
             try {
                 // Stop frame capture thread
                 stopFrameCapture();
@@ -635,29 +646,29 @@ public class MainActivity extends Activity {
                     Toast.makeText(this, "❌ Error al desconectar: " + e.getMessage(), Toast.LENGTH_LONG).show();
                 });
             }
-        }).start();
+        });
     }
     
     private void startFrameCapture() {
         Log.d(TAG, "Starting optimized frame capture with async processing");
         
+        // Latest frame wins, no locks between threads; released with the threads on stop
+        TripleBuffer<PendingFrame> mailbox = new TripleBuffer<>(PendingFrame::new);
+        
         // Start frame processing thread
-        processingThread = new Thread(() -> {
-            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_DISPLAY);
-            
+        processingTask = scheduler.execute(TaskScheduler.Pool.REALTIME, () -> {
             while (isConnected && !Thread.currentThread().isInterrupted()) {
                 try {
-                    synchronized (frameLock) {
-                        if (pendingFrameData != null) {
-                            // Process the pending frame
-                            Bitmap bitmap = createBitmapFromFrameData(pendingFrameData, pendingWidth, pendingHeight);
-                            if (bitmap != null) {
-                                runOnUiThread(() -> videoView.setImageBitmap(bitmap));
-                            }
-                            pendingFrameData = null; // Clear processed frame
+                    // Park until capture publishes; always picks up the newest frame
+                    if (mailbox.awaitFetch(TimeUnit.MILLISECONDS.toNanos(100))) {
+                        PendingFrame pending = mailbox.readable();
+                        Bitmap bitmap = createBitmapFromFrameData(pending.data, pending.width, pending.height,
+                                pending.stride, pending.fourCC);
+                        pending.data = null; // Release the frame buffer once converted
+                        if (bitmap != null) {
+                            runOnUiThread(() -> videoView.setImageBitmap(bitmap));
                         }
                     }
-                    Thread.sleep(16); // ~60 FPS processing
                 } catch (InterruptedException e) {
                     break;
                 } catch (Exception e) {
@@ -665,13 +676,9 @@ public class MainActivity extends Activity {
                 }
             }
         });
-        processingThread.start();
         
-        // Start frame capture thread
-        captureThread = new Thread(() -> {
-            // Set high priority for video capture
-            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_DISPLAY);
-            
+        // Start frame capture thread (real-time pool, urgent display priority)
+        captureTask = scheduler.execute(TaskScheduler.Pool.REALTIME, () -> {
             int frameCount = 0;
             int[] dimensions = new int[2]; // [width, height]
             
@@ -687,30 +694,28 @@ public class MainActivity extends Activity {
                         final int width = dimensions[0];
                         final int height = dimensions[1];
                         
-                        // Frame rate control - skip frames if processing is behind
-                        long currentTime = System.currentTimeMillis();
-                        long timeSinceLastFrame = currentTime - lastFrameTime;
-                        
-                        boolean shouldProcessFrame = true;
-                        if (timeSinceLastFrame < TARGET_FRAME_TIME) {
-                            shouldProcessFrame = false;
+                        // Frame rate control: first frame of each 1/30 s slot, so 59.94 keeps every other frame
+                        boolean shouldProcessFrame = frameCadence.admit(System.nanoTime());
+                        if (!shouldProcessFrame) {
                             droppedFrames++;
-                        } else {
-                            lastFrameTime = currentTime;
                         }
                         
                         if (shouldProcessFrame) {
                             // Get frame data from native code
                             byte[] frameData = nativeGetFrameData();
+                            int stride = nativeGetFrameStride();
+                            int fourCC = nativeGetFrameFourCC();
                             
                             if (frameData != null && frameData.length > 0) {
-                                // Queue frame for async processing
-                                synchronized (frameLock) {
-                                    if (pendingFrameData == null) { // Only queue if no pending frame
-                                        pendingFrameData = frameData;
-                                        pendingWidth = width;
-                                        pendingHeight = height;
-                                    }
+                                // Publish for async processing, replacing any frame not yet picked up
+                                PendingFrame pending = mailbox.writable();
+                                pending.data = frameData;
+                                pending.width = width;
+                                pending.height = height;
+                                pending.stride = stride > 0 ? stride : FrameDescriptor.packedStride(width, fourCC);
+                                pending.fourCC = fourCC;
+                                if (mailbox.publish(pending)) {
+                                    droppedFrames++;
                                 }
                                 
                                 // Log performance stats every 5 seconds (150 frames at 30fps)
@@ -744,37 +749,28 @@ public class MainActivity extends Activity {
             Log.d(TAG, "Frame capture thread ended");
         });
         
-        captureThread.start();
+        if (processingTask == null || captureTask == null) {
+            Log.e(TAG, "No real-time threads available for frame capture: " + scheduler.describe(TaskScheduler.Pool.REALTIME));
+        }
     }
     
     private void stopFrameCapture() {
         Log.d(TAG, "Stopping optimized frame capture threads");
         
         // Stop capture thread
-        if (captureThread != null && captureThread.isAlive()) {
-            captureThread.interrupt();
-            try {
-                captureThread.join(1000); // Wait up to 1 second
-            } catch (InterruptedException e) {
-                Log.w(TAG, "Interrupted while waiting for capture thread to stop");
+        if (captureTask != null) {
+            if (!captureTask.cancelAndAwait(1000)) { // Wait up to 1 second
+                Log.w(TAG, "Capture thread did not stop in time");
             }
-            captureThread = null;
+            captureTask = null;
         }
         
         // Stop processing thread
-        if (processingThread != null && processingThread.isAlive()) {
-            processingThread.interrupt();
-            try {
-                processingThread.join(1000); // Wait up to 1 second
-            } catch (InterruptedException e) {
-                Log.w(TAG, "Interrupted while waiting for processing thread to stop");
+        if (processingTask != null) {
+            if (!processingTask.cancelAndAwait(1000)) { // Wait up to 1 second
+                Log.w(TAG, "Processing thread did not stop in time");
             }
-            processingThread = null;
-        }
-        
-        // Clear pending frame data
-        synchronized (frameLock) {
-            pendingFrameData = null;
+            processingTask = null;
         }
         
         // Clear object pools
@@ -782,7 +778,7 @@ public class MainActivity extends Activity {
         pixelPool.clear();
         
         // Reset performance counters
-        lastFrameTime = 0;
+        frameCadence.reset();
         droppedFrames = 0;
         
         Log.d(TAG, "All frame capture threads stopped and resources cleared");
@@ -810,6 +806,9 @@ public class MainActivity extends Activity {
             Log.e(TAG, "Error during NDI cleanup", e);
         }
         
+        // Interrupts any discovery or connection still running for this activity
+        TaskScheduler.release();
+        
         super.onDestroy();
     }
     
@@ -826,26 +825,24 @@ public class MainActivity extends Activity {
         }
     }
     
-    private Bitmap createBitmapFromFrameData(byte[] frameData, int width, int height) {
+    private Bitmap createBitmapFromFrameData(byte[] frameData, int width, int height, int stride, int fourCC) {
         try {
-            // Get the FourCC format of the current frame
-            int fourCC = nativeGetFrameFourCC();
-            Log.d(TAG, String.format("Converting frame: %dx%d, FourCC=0x%08X, data size=%d", 
-                                    width, height, fourCC, frameData.length));
+            Log.d(TAG, String.format("Converting frame: %dx%d, stride=%d, FourCC=0x%08X, data size=%d", 
+                                    width, height, stride, fourCC, frameData.length));
             
-            // Handle different formats
+            // Handle different formats; rows are read at their real stride, padding included
             switch (fourCC) {
                 case NDI_FOURCC_BGRA:
-                    return createBitmapFromBGRA(frameData, width, height);
+                    return createBitmapFromBGRA(frameData, width, height, stride);
                 case NDI_FOURCC_RGBA:
-                    return createBitmapFromRGBA(frameData, width, height);
+                    return createBitmapFromRGBA(frameData, width, height, stride);
                 case NDI_FOURCC_BGRX:
-                    return createBitmapFromBGRX(frameData, width, height);
+                    return createBitmapFromBGRX(frameData, width, height, stride);
                 case NDI_FOURCC_UYVY:
-                    return createBitmapFromUYVY(frameData, width, height);
+                    return createBitmapFromUYVY(frameData, width, height, stride);
                 default:
                     Log.w(TAG, String.format("Unsupported FourCC format: 0x%08X, trying BGRA fallback", fourCC));
-                    return createBitmapFromBGRA(frameData, width, height);
+                    return createBitmapFromBGRA(frameData, width, height, stride);
             }
             
         } catch (Exception e) {
@@ -854,9 +851,9 @@ public class MainActivity extends Activity {
         }
     }
     
-    private Bitmap createBitmapFromBGRA(byte[] frameData, int width, int height) {
+    private Bitmap createBitmapFromBGRA(byte[] frameData, int width, int height, int stride) {
         try {
-            int expectedSize = width * height * 4;
+            int expectedSize = (height - 1) * stride + width * 4;
             if (frameData.length < expectedSize) {
                 Log.w(TAG, "BGRA frame data too small: " + frameData.length + " expected: " + expectedSize);
                 return null;
@@ -874,9 +871,10 @@ public class MainActivity extends Activity {
                 frameData[0] & 0xFF, frameData[1] & 0xFF, 
                 frameData[2] & 0xFF, frameData[3] & 0xFF));
             
-            for (int i = 0; i < width * height; i++) {
-                int byteIndex = i * 4;
-                if (byteIndex + 3 < frameData.length) {
+            for (int y = 0; y < height; y++) {
+                int byteIndex = y * stride;
+                int i = y * width;
+                for (int x = 0; x < width; x++, i++, byteIndex += 4) {
                     // BGRA format from NDI
                     int b = frameData[byteIndex] & 0xFF;
                     int g = frameData[byteIndex + 1] & 0xFF;
@@ -900,9 +898,9 @@ public class MainActivity extends Activity {
         }
     }
     
-    private Bitmap createBitmapFromRGBA(byte[] frameData, int width, int height) {
+    private Bitmap createBitmapFromRGBA(byte[] frameData, int width, int height, int stride) {
         try {
-            int expectedSize = width * height * 4;
+            int expectedSize = (height - 1) * stride + width * 4;
             if (frameData.length < expectedSize) {
                 Log.w(TAG, "RGBA frame data too small: " + frameData.length + " expected: " + expectedSize);
                 return null;
@@ -911,9 +909,10 @@ public class MainActivity extends Activity {
             Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
             int[] pixels = new int[width * height];
             
-            for (int i = 0; i < pixels.length; i++) {
-                int byteIndex = i * 4;
-                if (byteIndex + 3 < frameData.length) {
+            for (int y = 0; y < height; y++) {
+                int byteIndex = y * stride;
+                int i = y * width;
+                for (int x = 0; x < width; x++, i++, byteIndex += 4) {
                     // RGBA format from NDI
                     int r = frameData[byteIndex] & 0xFF;
                     int g = frameData[byteIndex + 1] & 0xFF;
@@ -934,9 +933,9 @@ public class MainActivity extends Activity {
         }
     }
     
-    private Bitmap createBitmapFromBGRX(byte[] frameData, int width, int height) {
+    private Bitmap createBitmapFromBGRX(byte[] frameData, int width, int height, int stride) {
         try {
-            int expectedSize = width * height * 4;
+            int expectedSize = (height - 1) * stride + width * 4;
             if (frameData.length < expectedSize) {
                 Log.w(TAG, "BGRX frame data too small: " + frameData.length + " expected: " + expectedSize);
                 return null;
@@ -945,9 +944,10 @@ public class MainActivity extends Activity {
             Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
             int[] pixels = new int[width * height];
             
-            for (int i = 0; i < pixels.length; i++) {
-                int byteIndex = i * 4;
-                if (byteIndex + 3 < frameData.length) {
+            for (int y = 0; y < height; y++) {
+                int byteIndex = y * stride;
+                int i = y * width;
+                for (int x = 0; x < width; x++, i++, byteIndex += 4) {
                     // BGRX format from NDI (X = ignored)
                     int b = frameData[byteIndex] & 0xFF;
                     int g = frameData[byteIndex + 1] & 0xFF;
@@ -968,10 +968,10 @@ public class MainActivity extends Activity {
         }
     }
     
-    private Bitmap createBitmapFromUYVY(byte[] frameData, int width, int height) {
+    private Bitmap createBitmapFromUYVY(byte[] frameData, int width, int height, int stride) {
         try {
             // UYVY is YUV 4:2:2 format - 2 bytes per pixel
-            int expectedSize = width * height * 2;
+            int expectedSize = (height - 1) * stride + width * 2;
             if (frameData.length < expectedSize) {
                 Log.w(TAG, "UYVY frame data too small: " + frameData.length + " expected: " + expectedSize);
                 return null;
@@ -984,7 +984,7 @@ public class MainActivity extends Activity {
             }
             
             // Use optimized native conversion
-            nativeConvertUYVYToARGB(frameData, pixels, width, height);
+            nativeConvertUYVYToARGB(frameData, stride, pixels, width, height);
             
             // Create bitmap using optimized native method
             Bitmap bitmap = nativeCreateOptimizedBitmap(pixels, width, height);
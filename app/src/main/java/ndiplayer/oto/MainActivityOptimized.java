@@ -21,10 +21,17 @@ import android.widget.*;
 import android.net.wifi.WifiManager;
 import android.net.wifi.WifiInfo;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import ndiplayer.oto.service.ReceiveBandwidth;
+import ndiplayer.oto.utils.ChoreographerClock;
 import ndiplayer.oto.utils.FrameMetrics;
+import ndiplayer.oto.utils.FrameRing;
 import ndiplayer.oto.utils.PerformanceManager;
+import ndiplayer.oto.utils.PipelineBenchmark;
+import ndiplayer.oto.utils.PresentationScheduler;
+import ndiplayer.oto.utils.TaskScheduler;
 
 /**
  * MainActivity ultra-optimizada para dispositivos de bajo rendimiento
@@ -47,10 +54,11 @@ public class MainActivityOptimized extends Activity {
     private native boolean nativeStartDiscovery();
     private native int nativeGetSourceCount();
     private native String nativeGetSourceName(int index);
-    private native boolean nativeConnectToSource(int index);
+    private native boolean nativeConnectToSource(int index, int bandwidth);
     private native void nativeDisconnect();
     private native boolean nativeIsConnected();
-    private native Bitmap nativeGetFrame();
+    // mediaTime[0]: tiempo de medios del frame devuelto en unidades de 100ns (0 si el emisor no lo envía)
+    private native Bitmap nativeGetFrame(Bitmap reuse, long[] mediaTime);
     private native boolean nativeHasFrame();
     private native String nativeGetConnectionInfo();
     private native int nativeGetFrameRate();
@@ -72,8 +80,17 @@ public class MainActivityOptimized extends Activity {
     private final AtomicBoolean isConnected = new AtomicBoolean(false);
     private final AtomicBoolean isFullscreen = new AtomicBoolean(false);
     private volatile String connectedSource = "";
-    private Thread frameThread;
+    private TaskScheduler taskScheduler; // Compartido con los servicios; se suelta en onDestroy
+    private TaskScheduler.Task frameTask;
     private int frameCheckCounter = 0;
+    private int bitmapAllocations = 0;
+    
+    // Presentación al ritmo de la pantalla: cada Bitmap se muestra en el vsync que toca
+    // según su timestamp NDI; los que salen de pantalla vuelven a freeBitmaps para reutilizarse
+    private static final int PRESENT_QUEUE_FRAMES = 3;
+    private static final long PRESENT_LATENCY_NANOS = 20_000_000L;
+    private final FrameRing<Bitmap> freeBitmaps = new FrameRing<>(PRESENT_QUEUE_FRAMES * 2 + 2);
+    private PresentationScheduler<Bitmap> presentationScheduler; // Solo en el thread de UI
     
     // UI Thread Handler
     private final Handler uiHandler = new Handler(Looper.getMainLooper());
@@ -98,6 +115,8 @@ public class MainActivityOptimized extends Activity {
         
         Log.d(TAG, "=== NDI Player Optimizado Iniciando ===");
         
+        taskScheduler = TaskScheduler.acquire();
+        
         try {
             // Inicializar gestor de rendimiento
             performanceManager = new PerformanceManager(this);
@@ -236,7 +255,7 @@ public class MainActivityOptimized extends Activity {
         sourcesAdapter.notifyDataSetChanged();
         
         // Usar función nativa directamente
-        new Thread(() -> {
+        taskScheduler.execute(TaskScheduler.Pool.BACKGROUND, () -> {
             if (nativeStartDiscovery()) {
                 // Esperar un poco para que la búsqueda se complete
                 try {
@@ -275,7 +294,7 @@ public class MainActivityOptimized extends Activity {
                     searchButton.setEnabled(true);
                 });
             }
-        }).start();
+        });
     }
     
     private void onSourceSelected(AdapterView<?> parent, View view, int position, long id) {
@@ -297,8 +316,13 @@ public class MainActivityOptimized extends Activity {
         
         statusText.setText("🔗 Conectando a: " + sourceName);
         
+        // El vídeo se muestra a pantalla completa: proxy del emisor en gama baja o pantallas pequeñas
+        ReceiveBandwidth bandwidth = ReceiveBandwidth.choose(performanceManager.getDeviceClass(),
+            getResources().getDisplayMetrics().widthPixels, getResources().getDisplayMetrics().heightPixels);
+        Log.d(TAG, "Ancho de banda de recepción: " + bandwidth);
+        
         // Buscar el índice de la fuente
-        new Thread(() -> {
+        taskScheduler.execute(TaskScheduler.Pool.BACKGROUND, () -> {
             int sourceIndex = -1;
             int sourceCount = nativeGetSourceCount();
             
@@ -311,7 +335,7 @@ public class MainActivityOptimized extends Activity {
             }
             
             if (sourceIndex >= 0) {
-                if (nativeConnectToSource(sourceIndex)) {
+                if (nativeConnectToSource(sourceIndex, bandwidth.nativeValue)) {
                     uiHandler.post(() -> {
                         isConnected.set(true);
                         connectedSource = sourceName;
@@ -335,32 +359,45 @@ public class MainActivityOptimized extends Activity {
                     statusText.setText("❌ Fuente no encontrada: " + sourceName);
                 });
             }
-        }).start();
+        });
     }
     
     private void startFrameCapture() {
         Log.d(TAG, "Iniciando hilo de captura de frames");
-        frameThread = new Thread(() -> {
+        final PresentationScheduler<Bitmap> scheduler = createPresentationScheduler();
+        scheduler.start();
+        frameTask = taskScheduler.execute(TaskScheduler.Pool.REALTIME, () -> {
             Log.d(TAG, "Hilo de captura iniciado, isConnected=" + isConnected.get());
+            long[] mediaTime = new long[1]; // Reutilizado: nativo lo rellena con cada frame
             while (isConnected.get() && !Thread.currentThread().isInterrupted()) {
                 try {
-                    Bitmap frame = nativeGetFrame();
-                    if (frame != null) {
+                    // Nativo espera el frame (hasta 100ms) y escribe en un Bitmap libre;
+                    // solo crea uno si no hay libres o cambia el tamaño
+                    Bitmap reuse = freeBitmaps.poll();
+                    Bitmap frame = nativeGetFrame(reuse, mediaTime);
+                    if (frame == null) {
+                        if (reuse != null) {
+                            freeBitmaps.offer(reuse);
+                        }
+                    } else {
+                        if (frame != reuse) {
+                            bitmapAllocations++;
+                        }
+                        
                         // Log solo cada 300 frames para ver el formato sin spam
                         frameCheckCounter++;
                         if (frameCheckCounter % 300 == 0) {
-                            Log.d(TAG, "Frame #" + frameCheckCounter + " obtenido: " + frame.getWidth() + "x" + frame.getHeight());
+                            Log.d(TAG, "Frame #" + frameCheckCounter + " obtenido: " + frame.getWidth() + "x" + frame.getHeight()
+                                + ", bitmaps creados: " + bitmapAllocations
+                                + ", presentados: " + scheduler.getPresentedFrames()
+                                + ", saltados: " + scheduler.getSkippedFrames()
+                                + ", vsync repetidos: " + scheduler.getRepeatedTicks());
                         }
-                        uiHandler.post(() -> {
-                            if (videoView != null && isConnected.get()) {
-                                videoView.setImageBitmap(frame);
-                            }
-                        });
+                        
+                        // Timestamp NDI en unidades de 100ns; sin él, la hora de llegada
+                        long timestamp = mediaTime[0];
+                        scheduler.offer(frame, timestamp != 0 ? timestamp * 100 : System.nanoTime());
                     }
-                    Thread.sleep(16); // ~60fps max
-                } catch (InterruptedException e) {
-                    Log.d(TAG, "Hilo de captura interrumpido");
-                    break;
                 } catch (Exception e) {
                     Log.e(TAG, "Error en captura de frames", e);
                     try {
@@ -371,8 +408,36 @@ public class MainActivityOptimized extends Activity {
                 }
             }
             Log.d(TAG, "Hilo de captura terminado");
-        }, "FrameCaptureThread");
-        frameThread.start();
+        });
+        if (frameTask == null) {
+            Log.e(TAG, "Sin thread libre para la captura: " + taskScheduler.describe(TaskScheduler.Pool.REALTIME));
+        }
+    }
+    
+    // Debe llamarse en el thread de UI: el reloj se engancha al Choreographer de este Looper
+    private PresentationScheduler<Bitmap> createPresentationScheduler() {
+        if (presentationScheduler != null) {
+            presentationScheduler.stop();
+        }
+        float refreshRate = getWindowManager().getDefaultDisplay().getRefreshRate();
+        presentationScheduler = new PresentationScheduler<>(new ChoreographerClock(refreshRate),
+            PRESENT_QUEUE_FRAMES, PRESENT_LATENCY_NANOS, new PresentationScheduler.Listener<Bitmap>() {
+                @Override
+                public void onPresent(Bitmap frame, long frameTimeNanos) {
+                    if (videoView != null && isConnected.get()) {
+                        videoView.setImageBitmap(frame);
+                    }
+                }
+                
+                @Override
+                public void onRelease(Bitmap frame) {
+                    if (!freeBitmaps.offer(frame)) {
+                        frame.recycle(); // Sobra: la captura ya tiene bastantes libres
+                    }
+                }
+            });
+        Log.d(TAG, "Presentación sincronizada a " + refreshRate + " Hz");
+        return presentationScheduler;
     }
     
     private void updatePerformanceStats(FrameMetrics metrics) {
@@ -485,7 +550,10 @@ public class MainActivityOptimized extends Activity {
                 "⚖️ Calidad Media (854x480 @ 25 FPS)", 
                 "🔥 Calidad Alta (1280x720 @ 30 FPS)",
                 "🤖 Configuración Automática",
-                "📊 Mostrar/Ocultar estadísticas"
+                "📊 Mostrar/Ocultar estadísticas",
+                "🧪 Benchmark de conversión",
+                "🧵 Benchmark paralelo (720p/1080p/2160p)",
+                "🔁 Benchmark de entrega entre threads"
             };
             
             builder.setItems(options, (dialog, which) -> {
@@ -511,6 +579,15 @@ public class MainActivityOptimized extends Activity {
                         case 4: // Toggle stats
                             togglePerformanceStats();
                             break;
+                        case 5: // Benchmark
+                            runConversionBenchmark();
+                            break;
+                        case 6: // Benchmark por bandas
+                            runParallelBenchmark();
+                            break;
+                        case 7: // Benchmark de entrega
+                            runHandoffBenchmark();
+                            break;
                     }
                 } catch (Exception e) {
                     Log.e(TAG, "Error aplicando configuración seleccionada: " + which, e);
@@ -641,6 +718,41 @@ public class MainActivityOptimized extends Activity {
         }
     }
     
+    private void runConversionBenchmark() {
+        runBenchmark("🧪 Benchmark de conversión", () -> PipelineBenchmark.runUyvyBenchmark(1920, 1080, 30));
+    }
+    
+    private void runParallelBenchmark() {
+        runBenchmark("🧵 Benchmark paralelo", () -> PipelineBenchmark.runParallelBenchmark(20));
+    }
+    
+    private void runHandoffBenchmark() {
+        runBenchmark("🔁 Benchmark de entrega", () -> PipelineBenchmark.runHandoffBenchmark(200_000));
+    }
+    
+    private void runBenchmark(String title, Callable<String> benchmark) {
+        Toast.makeText(this, "🧪 Ejecutando benchmark...", Toast.LENGTH_SHORT).show();
+        
+        taskScheduler.execute(TaskScheduler.Pool.BACKGROUND, () -> {
+            String report;
+            try {
+                report = benchmark.call();
+            } catch (Throwable t) {
+                Log.e(TAG, "Error ejecutando benchmark", t);
+                report = "Error: " + t;
+            }
+            String message = report;
+            
+            uiHandler.post(() -> {
+                AlertDialog.Builder builder = new AlertDialog.Builder(this);
+                builder.setTitle(title);
+                builder.setMessage(message);
+                builder.setNegativeButton("Cerrar", null);
+                builder.show();
+            });
+        });
+    }
+    
     private void showNetworkInfo() {
         try {
             WifiManager wifiManager = (WifiManager) getSystemService(Context.WIFI_SERVICE);
@@ -698,14 +810,11 @@ public class MainActivityOptimized extends Activity {
             isConnected.set(false);
             
             // Detener thread de captura
-            if (frameThread != null) {
-                frameThread.interrupt();
-                try {
-                    frameThread.join(1000);
-                } catch (InterruptedException e) {
+            if (frameTask != null) {
+                if (!frameTask.cancelAndAwait(1000)) {
                     Log.w(TAG, "Timeout esperando thread de captura");
                 }
-                frameThread = null;
+                frameTask = null;
             }
             
             // Desconectar nativo
@@ -715,6 +824,14 @@ public class MainActivityOptimized extends Activity {
                 if (videoView != null) {
                     videoView.setImageBitmap(null);
                 }
+                if (presentationScheduler != null) {
+                    presentationScheduler.stop();
+                    presentationScheduler = null;
+                }
+                Bitmap unused;
+                while ((unused = freeBitmaps.poll()) != null) {
+                    unused.recycle();
+                }
                 statusText.setText("🔌 Desconectado");
                 connectedSource = null;
             });
@@ -738,6 +855,8 @@ public class MainActivityOptimized extends Activity {
         // Cleanup nativo
         nativeShutdownNDI();
         
+        TaskScheduler.release();
+        
         super.onDestroy();
     }
     
@@ -0,0 +1,13 @@
+package ndiplayer.oto.service;
+
+/**
+ * Qué hace una etapa del pipeline cuando su cola de entrada está llena
+ */
+public enum BackpressurePolicy {
+    /** La etapa anterior espera hueco: no se pierde nada pero la latencia crece */
+    BLOCK,
+    /** Sale el frame más antiguo de la cola: gana siempre el más reciente */
+    DROP_OLDEST,
+    /** Se descarta el frame que llega: la cola conserva los que ya esperaban */
+    DROP_NEWEST
+}
@@ -0,0 +1,11 @@
+package ndiplayer.oto.service;
+
+/**
+ * Cómo pasan los frames del receiver NDI al procesador; se elige por conexión
+ */
+public enum CaptureMode {
+    /** Cada frame cuando el SDK lo entrega (NDIlib_recv_capture_v2), a la cadencia del emisor */
+    PUSH,
+    /** Cada vsync de la pantalla pide a FrameSync el frame que toca: la cadencia es la del display aunque el reloj del emisor derive */
+    PULL
+}
@@ -0,0 +1,202 @@
+package ndiplayer.oto.service;
+
+import android.util.Log;
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Pool fijo de ByteBuffers directos donde la capa nativa copia cada frame NDI
+ * Los buffers son bloques del arena nativo para la clase de tamaño del frame negociado
+ * (resolución, stride y FourCC) y se reutilizan indefinidamente: el frame se copia
+ * una sola vez desde el SDK y ni Java ni nativo reservan memoria por frame
+ */
+public final class DirectFramePool {
+    private static final String TAG = "DirectFramePool";
+
+    /**
+     * Buffer del pool. Quien lo recibe de {@link #acquire()} lo devuelve con {@link #release()}
+     */
+    public static final class Slot {
+        public final int index;
+        public final ByteBuffer buffer;
+        final DirectFramePool owner;
+        int generation; // Protegidos por el pool
+        boolean leased;
+
+        // Vista heap del buffer directo (ART los respalda con un array no movible)
+        final byte[] array;
+        final int arrayOffset;
+        final byte[] staging; // Solo si el buffer no expone array: copia de respaldo
+
+        Slot(DirectFramePool owner, int generation, int index, ByteBuffer buffer) {
+            this.owner = owner;
+            this.generation = generation;
+            this.index = index;
+            this.buffer = buffer;
+            int capacity = buffer.capacity();
+
+            if (buffer.hasArray()) {
+                this.array = buffer.array();
+                this.arrayOffset = buffer.arrayOffset();
+                this.staging = null;
+            } else {
+                this.array = null;
+                this.arrayOffset = 0;
+                this.staging = new byte[capacity];
+            }
+        }
+
+        /**
+         * Array y offset desde los que leer {@code length} bytes del frame
+         * Sin vista heap copia al array de respaldo, reutilizado entre frames
+         */
+        public byte[] bytes(int length) {
+            if (array != null) {
+                return array;
+            }
+            buffer.clear();
+            buffer.get(staging, 0, length);
+            return staging;
+        }
+
+        public int bytesOffset() {
+            return array != null ? arrayOffset : 0;
+        }
+
+        public int capacity() {
+            return buffer.capacity();
+        }
+
+        public void release() {
+            owner.release(this);
+        }
+    }
+
+    private final int slotCount;
+    private final ArrayBlockingQueue<Slot> freeSlots;
+    private volatile Slot[] slots = new Slot[0];
+    private volatile int generation = 0;
+    private volatile int slotCapacity = 0;
+    // Un Slot por bloque del arena: el arena devuelve los mismos bloques al volver a una clase,
+    // y un bloque aún prestado de la generación anterior no puede volver a la captura hasta liberarse
+    private final IdentityHashMap<ByteBuffer, Slot> knownSlots = new IdentityHashMap<>();
+    // Clase de tamaño de los slots actuales
+    private int classWidth;
+    private int classHeight;
+    private int classStride;
+    private int classFourCC;
+
+    public DirectFramePool(int slotCount) {
+        this.slotCount = Math.max(2, slotCount);
+        this.freeSlots = new ArrayBlockingQueue<>(this.slotCount);
+    }
+
+    /**
+     * true si los slots actuales son de la clase de tamaño del frame descrito
+     */
+    public synchronized boolean matches(FrameDescriptor descriptor) {
+        return slots.length > 0 && descriptor.width == classWidth && descriptor.height == classHeight
+            && descriptor.stride == classStride && descriptor.fourCC == classFourCC;
+    }
+
+    /**
+     * Sustituye los slots por {@code buffers}, los bloques que el arena nativo devolvió
+     * para la clase de {@code descriptor}. Los slots en uso de la clase anterior se descartan al liberarse;
+     * si su bloque vuelve en esta clase, pasa a estar libre cuando se libere
+     */
+    public synchronized void adopt(FrameDescriptor descriptor, ByteBuffer[] buffers) {
+        int newGeneration = generation + 1;
+        int count = Math.min(slotCount, buffers.length);
+        Slot[] newSlots = new Slot[count];
+        int capacity = Integer.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            Slot slot = knownSlots.get(buffers[i]);
+            if (slot == null || slot.index != i) {
+                slot = new Slot(this, newGeneration, i, buffers[i]);
+                knownSlots.put(buffers[i], slot);
+            }
+            slot.generation = newGeneration;
+            newSlots[i] = slot;
+            capacity = Math.min(capacity, buffers[i].capacity());
+        }
+
+        // Olvidar los bloques que ya no son de esta clase ni están prestados (el arena pudo soltarlos)
+        Iterator<Slot> known = knownSlots.values().iterator();
+        while (known.hasNext()) {
+            Slot slot = known.next();
+            if (slot.generation != newGeneration && !slot.leased) {
+                known.remove();
+            }
+        }
+
+        freeSlots.clear();
+        generation = newGeneration;
+        slots = newSlots;
+        slotCapacity = count > 0 ? capacity : 0;
+        classWidth = descriptor.width;
+        classHeight = descriptor.height;
+        classStride = descriptor.stride;
+        classFourCC = descriptor.fourCC;
+        for (Slot slot : newSlots) {
+            if (!slot.leased) {
+                freeSlots.offer(slot);
+            }
+        }
+
+        Log.d(TAG, "Pool de " + count + " buffers de " + descriptor.width + "x" + descriptor.height
+            + " (" + slotCapacity + " bytes, generación " + newGeneration + ")");
+    }
+
+    /**
+     * Slot libre o null si todos están en uso (el consumidor va retrasado)
+     */
+    public synchronized Slot acquire() {
+        Slot slot = freeSlots.poll();
+        if (slot != null) {
+            slot.leased = true;
+        }
+        return slot;
+    }
+
+    synchronized void release(Slot slot) {
+        if (slot == null || !slot.leased) {
+            return;
+        }
+        slot.leased = false;
+        if (slot.generation == generation) {
+            freeSlots.offer(slot);
+        } else if (knownSlots.get(slot.buffer) == slot) {
+            knownSlots.remove(slot.buffer); // De una clase anterior: ya no vuelve a la captura
+        }
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    public int getSlotCapacity() {
+        return slotCapacity;
+    }
+
+    public int getFreeCount() {
+        return freeSlots.size();
+    }
+
+    /**
+     * Bytes de los slots actuales prestados al pipeline
+     */
+    public long getBytesInUse() {
+        Slot[] current = slots;
+        return (long) Math.max(0, current.length - freeSlots.size()) * slotCapacity;
+    }
+
+    public synchronized void clear() {
+        freeSlots.clear();
+        knownSlots.clear();
+        generation++;
+        slots = new Slot[0];
+        slotCapacity = 0;
+    }
+}
@@ -0,0 +1,44 @@
+package ndiplayer.oto.service;
+
+import java.util.Locale;
+
+/**
+ * Contadores del arena nativo de buffers de frame junto con lo que el pool tiene prestado
+ * En régimen estable {@code allocations} no crece: solo sube al ver una clase de tamaño nueva
+ * En modo préstamo los frames no pasan por el arena y cuentan en los campos lease*
+ */
+public final class FrameArenaStats {
+    static final int NATIVE_FIELDS = 9;
+
+    public long bytesReserved;  // Todos los bloques retenidos por el arena, de cualquier clase
+    public long bytesActive;    // Bloques de la clase que recibe la captura
+    public long bytesInUse;     // De esos, prestados al pipeline ahora mismo
+    public long allocations;    // Bloques creados desde el arranque
+    public long reuses;         // Reservas servidas sin crear bloques (clase ya retenida)
+    public long trimmedBytes;   // Soltado al superar las clases retenidas
+    public int classes;
+    public int leasesOutstanding; // Frames del SDK prestados al procesador ahora mismo
+    public long framesLeased;     // Frames prestados sin copia desde el arranque
+    public long leaseStalls;      // Capturas que esperaron sin conseguir préstamo libre
+
+    void set(long[] values, long bytesInUse) {
+        this.bytesReserved = values[0];
+        this.bytesActive = values[1];
+        this.allocations = values[2];
+        this.reuses = values[3];
+        this.trimmedBytes = values[4];
+        this.classes = (int) values[5];
+        this.leasesOutstanding = (int) values[6];
+        this.framesLeased = values[7];
+        this.leaseStalls = values[8];
+        this.bytesInUse = bytesInUse;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "Arena: %.1f/%.1f MB en uso, %.1f MB reservados en %d clases, %d bloques creados, %d reutilizaciones; "
+            + "préstamos: %d pendientes, %d frames, %d esperas agotadas",
+            bytesInUse / 1048576.0, bytesActive / 1048576.0, bytesReserved / 1048576.0, classes, allocations, reuses,
+            leasesOutstanding, framesLeased, leaseStalls);
+    }
+}
@@ -0,0 +1,79 @@
+package ndiplayer.oto.service;
+
+/**
+ * Descriptor de un frame de video NDI tal como llega del receptor
+ * Conserva el stride real de cada fila para que los conversores lean
+ * filas con padding directamente, sin reempaquetar el buffer
+ */
+public class FrameDescriptor {
+    public static final int FOURCC_BGRA = ('B' << 0) | ('G' << 8) | ('R' << 16) | ('A' << 24);
+    public static final int FOURCC_BGRX = ('B' << 0) | ('G' << 8) | ('R' << 16) | ('X' << 24);
+    public static final int FOURCC_RGBA = ('R' << 0) | ('G' << 8) | ('B' << 16) | ('A' << 24);
+    public static final int FOURCC_RGBX = ('R' << 0) | ('G' << 8) | ('B' << 16) | ('X' << 24);
+    public static final int FOURCC_UYVY = ('U' << 0) | ('Y' << 8) | ('V' << 16) | ('Y' << 24);
+
+    public int width;
+    public int height;
+    public int stride; // Bytes por fila, incluido el padding
+    public int fourCC;
+    public long timecode;  // Timecode NDI en unidades de 100ns
+    public long timestamp; // Marca de tiempo del emisor en 100ns, o Long.MAX_VALUE si no la envía
+
+    public void set(int width, int height, int stride, int fourCC) {
+        this.width = width;
+        this.height = height;
+        this.fourCC = fourCC;
+        this.stride = stride > 0 ? stride : packedStride(width, fourCC);
+    }
+
+    public void set(FrameDescriptor other) {
+        set(other.width, other.height, other.stride, other.fourCC);
+        this.timecode = other.timecode;
+        this.timestamp = other.timestamp;
+    }
+
+    public void clear() {
+        this.width = 0;
+        this.height = 0;
+        this.stride = 0;
+        this.fourCC = 0;
+        this.timecode = 0;
+        this.timestamp = 0;
+    }
+
+    /**
+     * Bytes que ocupa el frame en el receptor, con el padding de la última fila
+     */
+    public int frameBytes() {
+        return height * stride;
+    }
+
+    /**
+     * Bytes mínimos que debe tener el buffer: la última fila no necesita padding
+     */
+    public int requiredBytes() {
+        if (height <= 0) return 0;
+        return (height - 1) * stride + width * bytesPerPixel(fourCC);
+    }
+
+    /**
+     * Tiempo de medios en ns: timestamp del emisor, si no timecode, si no {@code fallbackNanos}
+     */
+    public long mediaTimeNanos(long fallbackNanos) {
+        if (timestamp != 0 && timestamp != Long.MAX_VALUE) {
+            return timestamp * 100;
+        }
+        if (timecode != 0 && timecode != Long.MAX_VALUE) {
+            return timecode * 100;
+        }
+        return fallbackNanos;
+    }
+
+    public static int bytesPerPixel(int fourCC) {
+        return fourCC == FOURCC_UYVY ? 2 : 4;
+    }
+
+    public static int packedStride(int width, int fourCC) {
+        return width * bytesPerPixel(fourCC);
+    }
+}
@@ -0,0 +1,407 @@
+package ndiplayer.oto.service;
+
+import android.os.Process;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import ndiplayer.oto.utils.FrameRing;
+
+/**
+ * Pipeline de etapas para frames: cada etapa tiene su cola acotada, sus workers
+ * y su política de backpressure, y publica profundidad de cola, tiempo de servicio y descartes
+ * Una etapa con 0 workers se ejecuta en el thread que le entrega el frame, sin cola ni salto
+ */
+public final class FramePipeline<T> {
+    private static final String TAG = "FramePipeline";
+    private static final long POLL_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int SERVICE_TIME_GAIN = 8; // Media exponencial del tiempo de servicio reciente
+    private static final long JOIN_TIMEOUT_MS = 2000;
+    private static final long INTERRUPTED_JOIN_TIMEOUT_MS = 1000;
+
+    /**
+     * Trabajo de una etapa. Devuelve false para retirar el frame del pipeline
+     */
+    public interface StageWorker<T> {
+        boolean process(T item) throws Exception;
+    }
+
+    /**
+     * Destino de los frames que salen del pipeline, completados o no
+     */
+    public interface Listener<T> {
+        /** El frame sale del pipeline por cualquier motivo: devolverlo a su pool */
+        void recycle(T item);
+
+        /** La etapa descartó el frame por backpressure, antes de recycle */
+        void onDropped(Stage<T> stage, T item);
+
+        /** El worker de la etapa lanzó una excepción, antes de recycle */
+        void onError(Stage<T> stage, T item, Exception error);
+    }
+
+    /**
+     * Etapa en ejecución con sus contadores
+     */
+    public static final class Stage<T> {
+        private final String name;
+        private final StageWorker<T> worker;
+        private final int workers;
+        private final int priority;
+        private final BackpressurePolicy policy;
+        private final FrameRing<T> queue; // null en etapas sin workers
+        private final Consumer<T> dropper = this::drop; // Sin lambda nueva por frame descartado
+        private Stage<T> next;
+        private FramePipeline<T> pipeline;
+
+        private final AtomicLong processed = new AtomicLong(0);
+        private final AtomicLong dropped = new AtomicLong(0);
+        private final AtomicLong discarded = new AtomicLong(0);
+        private final AtomicLong serviceNanos = new AtomicLong(0);
+        private final AtomicInteger active = new AtomicInteger(0); // Frames dentro del worker ahora mismo
+        private volatile long recentServiceNanos;
+
+        Stage(String name, StageWorker<T> worker, int workers, int capacity, BackpressurePolicy policy, int priority) {
+            this.name = name;
+            this.worker = worker;
+            this.workers = Math.max(0, workers);
+            this.priority = priority;
+            this.policy = policy;
+            this.queue = this.workers > 0 ? new FrameRing<>(Math.max(1, capacity)) : null;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getWorkers() {
+            return workers;
+        }
+
+        public BackpressurePolicy getPolicy() {
+            return policy;
+        }
+
+        public int getQueueDepth() {
+            return queue != null ? queue.size() : 0;
+        }
+
+        public int getCapacity() {
+            return queue != null ? queue.capacity() : 0;
+        }
+
+        public long getProcessed() {
+            return processed.get();
+        }
+
+        /** Frames descartados por backpressure al entrar en la etapa */
+        public long getDropped() {
+            return dropped.get();
+        }
+
+        /** Frames que el worker retiró devolviendo false */
+        public long getDiscarded() {
+            return discarded.get();
+        }
+
+        /** Frames esperando en la cola o dentro de un worker */
+        public int getBacklog() {
+            return getQueueDepth() + active.get();
+        }
+
+        public long getRecentServiceTimeNanos() {
+            return recentServiceNanos;
+        }
+
+        /**
+         * Tiempo estimado hasta que un frame que entra ahora sale de esta etapa:
+         * lo que hay delante repartido entre los workers más su propio servicio
+         */
+        public long estimateDelayNanos() {
+            long service = recentServiceNanos;
+            if (queue == null) {
+                return service;
+            }
+            return service + (long) getBacklog() * service / workers;
+        }
+
+        public double getAverageServiceTimeMs() {
+            long count = processed.get() + discarded.get();
+            return count > 0 ? serviceNanos.get() / 1_000_000.0 / count : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s[%dW %s cola %d/%d, %.2fms, proc %d, drop %d, desc %d]",
+                name, workers, policy, getQueueDepth(), getCapacity(), getAverageServiceTimeMs(),
+                getProcessed(), getDropped(), getDiscarded());
+        }
+
+        /**
+         * Entrega el frame a esta etapa según su política; false si no llegó a entrar
+         */
+        boolean accept(T item) {
+            if (queue == null) {
+                run(item); // Sin workers: en el thread que entrega
+                return true;
+            }
+            if (!pipeline.running.get()) {
+                // Parado mientras una etapa en línea lo procesaba: la cola quizá ya se vació
+                pipeline.listener.recycle(item);
+                return false;
+            }
+
+            switch (policy) {
+                case DROP_OLDEST:
+                    queue.offerOverwrite(item, dropper);
+                    return true;
+                case DROP_NEWEST:
+                    if (queue.offer(item)) {
+                        return true;
+                    }
+                    drop(item);
+                    return false;
+                case BLOCK:
+                default:
+                    try {
+                        while (pipeline.running.get()) {
+                            if (queue.offer(item, POLL_TIMEOUT_NANOS)) {
+                                return true;
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    pipeline.listener.recycle(item); // Pipeline detenido mientras esperaba
+                    return false;
+            }
+        }
+
+        private void drop(T item) {
+            dropped.incrementAndGet();
+            pipeline.listener.onDropped(this, item);
+            pipeline.listener.recycle(item);
+        }
+
+        void run(T item) {
+            long start = System.nanoTime();
+            active.incrementAndGet();
+            boolean keep;
+            try {
+                keep = worker.process(item);
+            } catch (Exception e) {
+                recordService(System.nanoTime() - start);
+                discarded.incrementAndGet();
+                pipeline.listener.onError(this, item, e);
+                pipeline.listener.recycle(item);
+                return;
+            }
+            recordService(System.nanoTime() - start);
+
+            if (!keep) {
+                discarded.incrementAndGet();
+                pipeline.listener.recycle(item);
+                return;
+            }
+            processed.incrementAndGet();
+
+            if (next != null) {
+                next.accept(item);
+            } else {
+                pipeline.listener.recycle(item); // Última etapa: el frame terminó
+            }
+        }
+
+        private void recordService(long nanos) {
+            active.decrementAndGet();
+            serviceNanos.addAndGet(nanos);
+            long recent = recentServiceNanos;
+            recentServiceNanos = recent == 0 ? nanos : recent + (nanos - recent) / SERVICE_TIME_GAIN;
+        }
+
+        void workLoop() {
+            Process.setThreadPriority(priority);
+            try {
+                while (pipeline.running.get()) {
+                    T item = queue.poll(POLL_TIMEOUT_NANOS);
+                    if (item != null) {
+                        run(item);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void drain() {
+            if (queue == null) {
+                return;
+            }
+            T item;
+            while ((item = queue.poll()) != null) {
+                pipeline.listener.recycle(item);
+            }
+        }
+    }
+
+    /**
+     * Describe las etapas en orden. Cada una elige workers, capacidad y política
+     */
+    public static final class Builder<T> {
+        private final List<Stage<T>> stages = new ArrayList<>();
+
+        public Builder<T> addStage(String name, StageWorker<T> worker, int workers, int capacity,
+                                   BackpressurePolicy policy) {
+            return addStage(name, worker, workers, capacity, policy, Process.THREAD_PRIORITY_DISPLAY);
+        }
+
+        public Builder<T> addStage(String name, StageWorker<T> worker, int workers, int capacity,
+                                   BackpressurePolicy policy, int threadPriority) {
+            stages.add(new Stage<>(name, worker, workers, capacity, policy, threadPriority));
+            return this;
+        }
+
+        public FramePipeline<T> build(Listener<T> listener) {
+            if (stages.isEmpty()) {
+                throw new IllegalStateException("El pipeline necesita al menos una etapa");
+            }
+            return new FramePipeline<>(new ArrayList<>(stages), listener);
+        }
+    }
+
+    private final List<Stage<T>> stages;
+    private final Listener<T> listener;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final List<Thread> threads = new ArrayList<>();
+
+    private FramePipeline(List<Stage<T>> stages, Listener<T> listener) {
+        this.stages = stages;
+        this.listener = listener;
+        for (int i = 0; i < stages.size(); i++) {
+            Stage<T> stage = stages.get(i);
+            stage.pipeline = this;
+            stage.next = i + 1 < stages.size() ? stages.get(i + 1) : null;
+        }
+    }
+
+    public synchronized void start() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        for (Stage<T> stage : stages) {
+            for (int i = 0; i < stage.workers; i++) {
+                Thread thread = new Thread(stage::workLoop, "NDI-" + stage.name + "-" + i);
+                threads.add(thread);
+                thread.start();
+            }
+        }
+        Log.i(TAG, "Pipeline iniciado: " + describe());
+    }
+
+    /**
+     * Detiene los workers y recicla los frames que quedaban en las colas
+     * Las colas solo se vacían con todos los workers muertos: uno vivo aún podría pasar
+     * un frame a la etapa siguiente después del vaciado y ese frame no volvería a su pool
+     */
+    public void stop() {
+        stop(true);
+    }
+
+    /**
+     * Con {@code drainQueues} a false los frames encolados se quedan donde están; para cuando
+     * un thread externo que llama a submit() sigue vivo y podría encolar tras el vaciado
+     * Los procesan los workers del próximo start()
+     */
+    public synchronized void stop(boolean drainQueues) {
+        if (!running.compareAndSet(true, false)) {
+            return;
+        }
+        boolean interrupted = joinWorkers(JOIN_TIMEOUT_MS);
+        for (Thread thread : threads) {
+            if (thread.isAlive()) {
+                thread.interrupt(); // Bloqueado dentro de la etapa: que salga de la espera
+            }
+        }
+        interrupted |= joinWorkers(INTERRUPTED_JOIN_TIMEOUT_MS);
+
+        List<Thread> stuck = new ArrayList<>();
+        for (Thread thread : threads) {
+            if (thread.isAlive()) {
+                stuck.add(thread);
+            }
+        }
+        threads.clear();
+        if (stuck.isEmpty()) {
+            if (drainQueues) {
+                for (Stage<T> stage : stages) {
+                    stage.drain();
+                }
+            }
+        } else {
+            // Los frames encolados se quedan donde están: vaciar ahora podría reciclarlos dos veces
+            threads.addAll(stuck); // El próximo stop() vuelve a esperarlos antes de vaciar
+            for (Thread thread : stuck) {
+                Log.e(TAG, "Worker " + thread.getName() + " sigue vivo tras interrumpirlo; colas sin vaciar: "
+                    + describe(), stackTrace(thread));
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Espera a cada worker hasta timeoutMs; true si interrumpieron a quien espera
+    private boolean joinWorkers(long timeoutMs) {
+        boolean interrupted = false;
+        for (Thread thread : threads) {
+            try {
+                thread.join(timeoutMs);
+            } catch (InterruptedException e) {
+                interrupted = true; // Seguir esperando al resto: no se puede vaciar con workers vivos
+            }
+        }
+        return interrupted;
+    }
+
+    private static Throwable stackTrace(Thread thread) {
+        Throwable trace = new Throwable("Pila de " + thread.getName());
+        trace.setStackTrace(thread.getStackTrace());
+        return trace;
+    }
+
+    /**
+     * Entrega un frame a la primera etapa desde el thread que llama
+     * Devuelve false si el pipeline está parado o la primera etapa lo rechazó
+     */
+    public boolean submit(T item) {
+        if (!running.get()) {
+            listener.recycle(item);
+            return false;
+        }
+        return stages.get(0).accept(item);
+    }
+
+    public List<Stage<T>> getStages() {
+        return stages;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    public String describe() {
+        StringBuilder builder = new StringBuilder();
+        for (Stage<T> stage : stages) {
+            if (builder.length() > 0) {
+                builder.append(" -> ");
+            }
+            builder.append(stage);
+        }
+        return builder.toString();
+    }
+}
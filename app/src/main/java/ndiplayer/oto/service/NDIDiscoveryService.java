@@ -4,10 +4,10 @@ import android.app.Service;
 import android.content.Intent;
 import android.os.Binder;
 import android.os.IBinder;
-import android.os.Process;
 import android.util.Log;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import ndiplayer.oto.utils.TaskScheduler;
 
 /**
  * Servicio de descubrimiento NDI optimizado que ejecuta en background
@@ -24,7 +24,8 @@ public class NDIDiscoveryService extends Service {
     }
     
     private final IBinder binder = new NDIDiscoveryBinder();
-    private Thread discoveryThread;
+    private TaskScheduler scheduler;
+    private TaskScheduler.Task discoveryTask;
     private final AtomicBoolean isDiscovering = new AtomicBoolean(false);
     private final AtomicReference<String[]> lastDiscoveredSources = new AtomicReference<>();
     private volatile DiscoveryCallback callback;
@@ -46,16 +47,17 @@ public class NDIDiscoveryService extends Service {
         super.onCreate();
         Log.d(TAG, "Servicio NDI Discovery creado");
         
-        // Inicializar NDI en thread separado
-        new Thread(() -> {
-            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        scheduler = TaskScheduler.acquire();
+        
+        // Inicializar NDI en background
+        scheduler.execute(TaskScheduler.Pool.BACKGROUND, () -> {
             try {
                 boolean success = nativeInitializeNDI();
                 Log.d(TAG, "NDI SDK inicializado en servicio: " + success);
             } catch (Exception e) {
                 Log.e(TAG, "Error inicializando NDI SDK en servicio", e);
             }
-        }).start();
+        });
     }
     
     @Override
@@ -80,6 +82,7 @@ public class NDIDiscoveryService extends Service {
             Log.e(TAG, "Error limpiando NDI SDK", e);
         }
         
+        TaskScheduler.release();
         super.onDestroy();
     }
     
@@ -87,9 +90,14 @@ public class NDIDiscoveryService extends Service {
         if (isDiscovering.compareAndSet(false, true)) {
             this.callback = callback;
             
-            discoveryThread = new Thread(this::performDiscovery, "NDI-Discovery");
-            discoveryThread.setPriority(Thread.NORM_PRIORITY - 1); // Prioridad baja
-            discoveryThread.start();
+            discoveryTask = scheduler.execute(TaskScheduler.Pool.BACKGROUND, this::performDiscovery);
+            if (discoveryTask == null) {
+                isDiscovering.set(false);
+                if (callback != null) {
+                    callback.onDiscoveryError("Discovery no disponible: planificador ocupado");
+                }
+                return;
+            }
             
             Log.d(TAG, "Discovery iniciado en servicio");
         }
@@ -97,23 +105,16 @@ public class NDIDiscoveryService extends Service {
     
     public void stopDiscovery() {
         if (isDiscovering.compareAndSet(true, false)) {
-            if (discoveryThread != null && discoveryThread.isAlive()) {
-                discoveryThread.interrupt();
-                try {
-                    discoveryThread.join(2000); // Esperar máximo 2 segundos
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
+            if (discoveryTask != null) {
+                discoveryTask.cancelAndAwait(2000); // Esperar máximo 2 segundos
             }
-            discoveryThread = null;
+            discoveryTask = null;
             callback = null;
             Log.d(TAG, "Discovery detenido en servicio");
         }
     }
     
     private void performDiscovery() {
-        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
-        
         try {
             // Múltiples intentos de discovery optimizado
             for (int attempt = 1; attempt <= 6 && isDiscovering.get(); attempt++) {
@@ -2,14 +2,25 @@ package ndiplayer.oto.service;
 
 import android.app.Service;
 import android.content.Intent;
-import android.graphics.Bitmap;
+import android.hardware.display.DisplayManager;
 import android.os.Binder;
+import android.os.Handler;
 import android.os.IBinder;
-import android.os.Process;
+import android.os.Looper;
 import android.util.Log;
+import android.view.Display;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import ndiplayer.oto.utils.BitmapLeasePool;
+import ndiplayer.oto.utils.ChoreographerClock;
+import ndiplayer.oto.utils.DisplayClock;
 import ndiplayer.oto.utils.FrameMetrics;
+import ndiplayer.oto.utils.PerformanceManager;
+import ndiplayer.oto.utils.PresentationScheduler;
+import ndiplayer.oto.utils.TaskScheduler;
 
 /**
  * Servicio de renderizado NDI ultra-optimizado
@@ -18,6 +29,24 @@ import ndiplayer.oto.utils.FrameMetrics;
 public class NDIRenderService extends Service {
     private static final String TAG = "NDIRenderService";
     
+    // Resultados de nativeCaptureFrame (negativo = error)
+    private static final int CAPTURE_NO_FRAME = 0;
+    private static final int CAPTURE_COPIED = 1;
+    private static final int CAPTURE_NOT_COPIED = 2; // Sin slot libre o slot pequeño: el frame se descarta
+    
+    // Resultados de nativeCaptureLease además de un handle > 0
+    private static final long LEASE_NO_FRAME = 0;
+    private static final long LEASE_CAP_REACHED = -2; // Todos los préstamos fuera: el frame sigue en el SDK
+    
+    // Cola del procesador (3) + frame en conversión + frame en captura, más el búfer de jitter
+    private static final int DIRECT_BUFFER_COUNT = 5;
+    private static final int MAX_FRAME_LEASES = 16; // MAX_FRAME_LEASES nativo
+    
+    // Frames convertidos esperando su vsync y margen desde el primero hasta su presentación
+    private static final int PRESENT_QUEUE_FRAMES = 2;
+    private static final long PRESENT_LATENCY_NANOS = 20_000_000L;
+    private static final long PULL_TICK_TIMEOUT_NANOS = 100_000_000L; // Sin vsync en este tiempo: revisar el estado
+    
     // Binder para comunicación
     public class NDIRenderBinder extends Binder {
         public NDIRenderService getService() {
@@ -27,7 +56,15 @@ public class NDIRenderService extends Service {
     
     private final IBinder binder = new NDIRenderBinder();
     private NDIStreamProcessor streamProcessor;
-    private Thread captureThread;
+    private DirectFramePool directFramePool;
+    private TaskScheduler scheduler;
+    private Executor controlExecutor; // Conectar y desconectar en orden, sin bloquear a quien llama
+    private TaskScheduler.Task captureTask;
+    private Handler mainHandler; // Thread del reloj de pantalla: ticks, start() y stop() de la presentación
+    private DisplayClock displayClock;
+    private PresentationScheduler<BitmapLeasePool.Lease> presentationScheduler;
+    private DisplayClock pullClock; // Modo pull: un FrameSync por vsync, en el mismo reloj que la presentación
+    private final VsyncTicks pullTicks = new VsyncTicks();
     
     // Estado del servicio
     private final AtomicBoolean isConnected = new AtomicBoolean(false);
@@ -36,18 +73,40 @@ public class NDIRenderService extends Service {
     
     private volatile RenderCallback renderCallback;
     private volatile String connectedSource = "";
+    // Ancho de banda de recepción: el más restrictivo entre el techo (dispositivo, vista) y el control de calidad
+    private PerformanceManager.DeviceClass deviceClass = PerformanceManager.DeviceClass.MID_RANGE;
+    private volatile int displayWidth;  // 0 hasta que la vista informe de su tamaño
+    private volatile int displayHeight;
+    private volatile boolean videoVisible = true;
+    private volatile ReceiveBandwidth controllerBandwidth = ReceiveBandwidth.HIGHEST;
+    private volatile ReceiveBandwidth appliedBandwidth = ReceiveBandwidth.HIGHEST; // El del receiver actual
+    private volatile boolean leaseFrames = true; // Frames del SDK prestados al procesador, sin copiarlos
+    private volatile CaptureMode captureMode = CaptureMode.PUSH; // El de la conexión actual
+    private final NDIStreamProcessor.LeasedFrameSource leasedFrames = new NativeLeasedFrames();
     
     // Native methods
-    private native boolean nativeConnectToSource(String sourceName, String sourceUrl);
+    private native boolean nativeConnectToSource(String sourceName, String sourceUrl, int bandwidth, boolean pullMode);
+    private native boolean nativeSetReceiveBandwidth(int bandwidth);
+    private native boolean nativeHasFrameSync();
     private native boolean nativeDisconnect();
-    private native int nativeCaptureFrame(int[] widthHeight, int timeoutMs);
-    private native byte[] nativeGetFrameData();
-    private native int nativeGetFrameFourCC();
-    private native int nativeGetFrameWidth();
-    private native int nativeGetFrameHeight();
+    private native ByteBuffer[] nativeReserveFrameBuffers(int width, int height, int stride, int fourCC, int count);
+    private native void nativeReleaseFrameBuffers();
+    private native void nativeGetArenaStats(long[] out);
+    private native int nativeCaptureFrame(FrameDescriptor descriptor, int slot, int timeoutMs);
+    private native long nativeCaptureLease(FrameDescriptor descriptor, int timeoutMs);
+    private native long nativePullLease(FrameDescriptor descriptor);
+    private native int nativePullAudio(float[] out, int sampleRate, int channels, int samples);
+    private native boolean nativeConvertLeaseRows(long lease, int[] dst, int dstWidth, int dstHeight, int rowStart, int rowEnd);
+    private native void nativeReleaseLease(long lease);
+    private native void nativeSetLeaseCap(int cap);
     
+    /**
+     * onFrameReady llega en el thread de UI, en el vsync en que toca mostrar el frame según su timestamp
+     * Recibe un préstamo del pool del procesador: quien lo muestre fuera de la llamada
+     * debe hacer {@code frame.retain()} y luego {@code frame.release()}
+     */
     public interface RenderCallback {
-        void onFrameReady(Bitmap bitmap, FrameMetrics metrics);
+        void onFrameReady(BitmapLeasePool.Lease frame, FrameMetrics metrics);
         void onConnectionStatusChanged(boolean connected, String source);
         void onRenderError(String error);
     }
@@ -57,8 +116,43 @@ public class NDIRenderService extends Service {
         super.onCreate();
         Log.d(TAG, "Servicio NDI Render creado");
         
-        // Inicializar procesador de streams
-        streamProcessor = new NDIStreamProcessor();
+        scheduler = TaskScheduler.acquire();
+        controlExecutor = scheduler.newSerialExecutor(TaskScheduler.Pool.BACKGROUND);
+        
+        // Inicializar procesador de streams con la configuración del dispositivo
+        PerformanceManager performanceManager = new PerformanceManager(this);
+        performanceManager.loadSavedConfig();
+        deviceClass = performanceManager.getDeviceClass();
+        streamProcessor = new NDIStreamProcessor(performanceManager);
+        
+        // onCreate corre en el thread de UI: el reloj se engancha a su Choreographer
+        mainHandler = new Handler(Looper.getMainLooper());
+        float refreshRate = getDisplayRefreshRate();
+        displayClock = new ChoreographerClock(refreshRate);
+        pullClock = new ChoreographerClock(refreshRate);
+        presentationScheduler = new PresentationScheduler<>(displayClock, PRESENT_QUEUE_FRAMES, PRESENT_LATENCY_NANOS,
+            new PresentationScheduler.Listener<BitmapLeasePool.Lease>() {
+                @Override
+                public void onPresent(BitmapLeasePool.Lease frame, long frameTimeNanos) {
+                    RenderCallback callback = renderCallback;
+                    if (callback != null) {
+                        callback.onFrameReady(frame, streamProcessor.getMetrics());
+                    }
+                }
+                
+                @Override
+                public void onRelease(BitmapLeasePool.Lease frame) {
+                    frame.release(); // Referencia tomada en onFrameReady del procesador
+                }
+            });
+        streamProcessor.setBandwidthListener(bandwidth -> {
+            controllerBandwidth = ReceiveBandwidth.from(bandwidth);
+            Log.i(TAG, "Ancho de banda de recepción pedido: " + bandwidth);
+            updateReceiveBandwidth();
+        });
+        directFramePool = new DirectFramePool(DIRECT_BUFFER_COUNT + streamProcessor.getJitterCapacity());
+        // Tantos préstamos como slots directos: el SDK conserva el resto de su cola para seguir recibiendo
+        nativeSetLeaseCap(Math.min(MAX_FRAME_LEASES, directFramePool.getSlotCount()));
     }
     
     @Override
@@ -90,17 +184,46 @@ public class NDIRenderService extends Service {
     public void onDestroy() {
         Log.d(TAG, "Destruyendo servicio NDI Render");
         
-        stopCapture();
-        disconnect();
-        
-        if (streamProcessor != null) {
-            streamProcessor.stopProcessing();
-        }
-        
+        // En la cola de control, detrás de una conexión o un cambio de ancho de banda en curso;
+        // el main thread no espera a que termine
+        controlExecutor.execute(this::releaseResources);
         super.onDestroy();
     }
     
+    // Última tarea de la cola de control: nada nativo se libera mientras otra tarea lo usa
+    private void releaseResources() {
+        try {
+            stopCapture();
+            if (isConnected.get()) {
+                disconnectNow();
+            }
+            streamProcessor.release();
+            mainHandler.post(presentationScheduler::stop);
+            
+            // Soltar los bloques del arena nativo
+            Log.d(TAG, getFrameArenaStats().toString());
+            nativeReleaseFrameBuffers();
+            directFramePool.clear();
+        } catch (Exception e) {
+            Log.e(TAG, "Error liberando recursos del servicio", e);
+        } finally {
+            Log.d(TAG, "Planificador: " + scheduler.describe());
+            TaskScheduler.release(); // Mantenido hasta aquí: la cola de control corre sobre él
+        }
+    }
+    
+    /**
+     * Encola la conexión; el resultado llega por onConnectionStatusChanged u onRenderError
+     */
     public boolean connectToSource(String sourceName, RenderCallback callback) {
+        return connectToSource(sourceName, callback, CaptureMode.PUSH);
+    }
+    
+    /**
+     * Como {@link #connectToSource(String, RenderCallback)} eligiendo cómo se capturan los frames
+     * de esta conexión; si FrameSync no se puede crear se queda en PUSH
+     */
+    public boolean connectToSource(String sourceName, RenderCallback callback, CaptureMode mode) {
         if (isConnected.get()) {
             Log.w(TAG, "Ya hay una conexión activa");
             return false;
@@ -108,21 +231,31 @@ public class NDIRenderService extends Service {
         
         this.renderCallback = callback;
         
-        return executeInBackground(() -> {
+        executeInBackground(() -> {
             try {
-                boolean success = nativeConnectToSource(sourceName, "");
+                // Workers, pools y buffers siguen vivos: solo se invalidan los frames de la fuente anterior
+                streamProcessor.retarget();
+                long connectStart = System.nanoTime();
+                ReceiveBandwidth bandwidth = getTargetBandwidth();
+                boolean success = nativeConnectToSource(sourceName, "", bandwidth.nativeValue, mode == CaptureMode.PULL);
                 
                 if (success) {
+                    appliedBandwidth = bandwidth;
+                    captureMode = nativeHasFrameSync() ? CaptureMode.PULL : CaptureMode.PUSH;
+                    // FrameSync ya reparte los frames a ritmo constante: el búfer de jitter sobra
+                    streamProcessor.setJitterBypass(captureMode == CaptureMode.PULL);
                     isConnected.set(true);
                     connectedSource = sourceName;
+                    updateReceiveBandwidth(); // Por si la vista o el control cambiaron mientras se conectaba
+                    Log.d(TAG, "Receiver creado en " + (System.nanoTime() - connectStart) / 1_000_000 + "ms");
                     
-                    // Iniciar procesador de streams
+                    // Iniciar procesador de streams, o reanudarlo si ya estaba en marcha
+                    mainHandler.post(presentationScheduler::start);
                     streamProcessor.startProcessing(new NDIStreamProcessor.FrameCallback() {
                         @Override
-                        public void onFrameReady(Bitmap bitmap, FrameMetrics metrics) {
-                            if (renderCallback != null) {
-                                renderCallback.onFrameReady(bitmap, metrics);
-                            }
+                        public void onFrameReady(BitmapLeasePool.Lease frame, long mediaTimeNanos, FrameMetrics metrics) {
+                            // Se muestra en su vsync, no al salir de la etapa present
+                            presentationScheduler.offer(frame.retain(), mediaTimeNanos);
                         }
                         
                         @Override
@@ -155,6 +288,7 @@ public class NDIRenderService extends Service {
                 return false;
             }
         });
+        return true;
     }
     
     public void disconnect() {
@@ -162,27 +296,31 @@ public class NDIRenderService extends Service {
             return;
         }
         
-        executeInBackground(() -> {
-            try {
-                stopCapture();
-                
-                boolean success = nativeDisconnect();
-                isConnected.set(false);
-                String previousSource = connectedSource;
-                connectedSource = "";
-                
-                if (renderCallback != null) {
-                    renderCallback.onConnectionStatusChanged(false, previousSource);
-                }
-                
-                Log.d(TAG, "Desconectado de: " + previousSource);
-                return success;
-                
-            } catch (Exception e) {
-                Log.e(TAG, "Error desconectando", e);
-                return false;
+        executeInBackground(this::disconnectNow);
+    }
+    
+    private boolean disconnectNow() {
+        try {
+            stopCapture();
+            streamProcessor.pause(); // Se mantiene caliente para la próxima fuente
+            mainHandler.post(presentationScheduler::stop); // Suelta lo pendiente y el frame en pantalla
+            
+            boolean success = nativeDisconnect();
+            isConnected.set(false);
+            String previousSource = connectedSource;
+            connectedSource = "";
+            
+            if (renderCallback != null) {
+                renderCallback.onConnectionStatusChanged(false, previousSource);
             }
-        });
+            
+            Log.d(TAG, "Desconectado de: " + previousSource);
+            return success;
+            
+        } catch (Exception e) {
+            Log.e(TAG, "Error desconectando", e);
+            return false;
+        }
     }
     
     public void startCapture() {
@@ -192,9 +330,12 @@ public class NDIRenderService extends Service {
                 return;
             }
             
-            captureThread = new Thread(this::captureLoop, "NDI-Capture-Service");
-            captureThread.setPriority(Thread.MAX_PRIORITY);
-            captureThread.start();
+            captureTask = scheduler.execute(TaskScheduler.Pool.REALTIME, this::captureLoop);
+            if (captureTask == null) {
+                isCapturing.set(false);
+                Log.e(TAG, "Sin thread libre para la captura");
+                return;
+            }
             
             Log.d(TAG, "Captura iniciada");
         }
@@ -202,53 +343,76 @@ public class NDIRenderService extends Service {
     
     public void stopCapture() {
         if (isCapturing.compareAndSet(true, false)) {
-            if (captureThread != null && captureThread.isAlive()) {
-                captureThread.interrupt();
-                try {
-                    captureThread.join(2000);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
+            if (captureTask != null && !captureTask.cancelAndAwait(2000)) {
+                Log.w(TAG, "El loop de captura no terminó a tiempo");
             }
-            captureThread = null;
+            captureTask = null;
             
             Log.d(TAG, "Captura detenida");
         }
     }
     
     private void captureLoop() {
-        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_DISPLAY);
+        if (captureMode == CaptureMode.PULL) {
+            pullLoop();
+            return;
+        }
         
-        int[] dimensions = new int[2];
+        FrameDescriptor captured = new FrameDescriptor(); // Reutilizado: nativo lo rellena en cada captura
         int frameCount = 0;
         
         while (isCapturing.get() && isConnected.get() && !Thread.currentThread().isInterrupted()) {
+            if (leaseFrames) {
+                try {
+                    if (captureLease(captured) && ++frameCount % 150 == 0) {
+                        Log.d(TAG, String.format("Frame #%d (préstamo): %dx%d, FPS: %d",
+                            frameCount, captured.width, captured.height, streamProcessor.getMetrics().getCurrentFPS()));
+                    }
+                } catch (InterruptedException e) {
+                    Log.d(TAG, "Thread de captura interrumpido");
+                    break;
+                }
+                continue;
+            }
+            
+            DirectFramePool.Slot slot = directFramePool.acquire();
             try {
-                // Capturar frame con timeout corto
-                int result = nativeCaptureFrame(dimensions, 33); // 33ms para ~30fps
+                // Una sola llamada JNI: descriptor completo y copia directa al buffer del pool
+                int result = nativeCaptureFrame(captured, slot != null ? slot.index : -1, 33); // 33ms para ~30fps
                 
-                if (result == 1) { // Frame de video recibido
+                if (result == CAPTURE_COPIED) { // Frame de video recibido
                     frameCount++;
                     
-                    // Obtener datos del frame
-                    byte[] frameData = nativeGetFrameData();
-                    if (frameData != null && frameData.length > 0) {
-                        int fourCC = nativeGetFrameFourCC();
-                        int width = dimensions[0];
-                        int height = dimensions[1];
-                        
-                        // Enviar frame al procesador
-                        streamProcessor.submitFrame(frameData, width, height, fourCC);
-                        
-                        // Log estadísticas cada 5 segundos
-                        if (frameCount % 150 == 0) {
-                            FrameMetrics metrics = streamProcessor.getMetrics();
-                            Log.d(TAG, String.format("Frame #%d: %dx%d, FPS: %d", 
-                                frameCount, width, height, metrics.getCurrentFPS()));
+                    // El procesador copia el descriptor y devuelve el slot al pool cuando termina con él
+                    streamProcessor.submitFrame(slot, captured);
+                    slot = null;
+                    
+                    // Log estadísticas cada 5 segundos
+                    if (frameCount % 150 == 0) {
+                        FrameMetrics metrics = streamProcessor.getMetrics();
+                        Log.d(TAG, String.format("Frame #%d: %dx%d, FPS: %d", 
+                            frameCount, captured.width, captured.height, metrics.getCurrentFPS()));
+                    }
+                    
+                } else if (result == CAPTURE_NOT_COPIED) {
+                    if (directFramePool.matches(captured)) {
+                        // Todos los slots ocupados: el procesador va retrasado, rechazado al entrar
+                        streamProcessor.getMetrics().incrementRejectedFrames();
+                    } else {
+                        // Primer frame o cambio de resolución/FourCC: bloques del arena para la nueva clase,
+                        // reutilizados sin reservar si esa clase ya se vio antes
+                        ByteBuffer[] buffers = nativeReserveFrameBuffers(captured.width, captured.height,
+                            captured.stride, captured.fourCC, directFramePool.getSlotCount());
+                        if (buffers != null) {
+                            directFramePool.adopt(captured, buffers);
+                            Log.d(TAG, getFrameArenaStats().toString());
+                        } else {
+                            Log.e(TAG, "Sin memoria para los buffers de " + captured.width + "x" + captured.height);
+                            streamProcessor.getMetrics().incrementRejectedFrames();
                         }
                     }
                     
-                } else if (result == 0) {
+                } else if (result == CAPTURE_NO_FRAME) {
                     // No hay frame, pausa breve
                     Thread.sleep(1);
                 } else {
@@ -267,28 +431,231 @@ public class NDIRenderService extends Service {
                 } catch (InterruptedException ie) {
                     break;
                 }
+            } finally {
+                if (slot != null) {
+                    slot.release();
+                }
             }
         }
         
         Log.d(TAG, "Loop de captura terminado");
     }
     
-    // Utilidad para ejecutar tareas en background
-    private boolean executeInBackground(java.util.concurrent.Callable<Boolean> task) {
+    // Modo pull: un pull en los vsync de la pantalla, uno de cada varios si los FPS objetivo del control
+    // de calidad son menores que el refresco; FrameSync siempre responde al momento, así que el thread
+    // nunca espera al SDK ni a la red, solo al siguiente vsync
+    private void pullLoop() {
+        FrameDescriptor pulled = new FrameDescriptor();
+        long halfRefreshNanos = pullClock.getRefreshPeriodNanos() / 2;
+        long lastTick = 0;
+        long lastPull = 0;
+        int frameCount = 0;
+        int repeats = 0;
+        
+        pullTicks.attach(Thread.currentThread());
+        mainHandler.post(() -> pullClock.start(pullTicks));
         try {
-            return java.util.concurrent.Executors.newSingleThreadExecutor().submit(() -> {
-                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
-                try {
-                    return task.call();
-                } catch (Exception e) {
-                    Log.e(TAG, "Error en tarea background", e);
-                    return false;
+            while (isCapturing.get() && isConnected.get() && !Thread.currentThread().isInterrupted()) {
+                long tick = pullTicks.awaitAfter(lastTick, PULL_TICK_TIMEOUT_NANOS);
+                if (tick == lastTick) {
+                    continue; // Sin vsync (p. ej. pantalla apagada): volver a comprobar si seguir
                 }
-            }).get();
-        } catch (Exception e) {
-            Log.e(TAG, "Error ejecutando tarea background", e);
+                lastTick = tick;
+                
+                // Con 30 FPS en una pantalla de 60 Hz se salta un vsync de cada dos
+                long periodNanos = 1_000_000_000L / Math.max(1, streamProcessor.getTargetFps());
+                if (lastPull != 0 && tick - lastPull < periodNanos - halfRefreshNanos) {
+                    continue;
+                }
+                lastPull = tick;
+                
+                long lease = nativePullLease(pulled);
+                if (lease > 0) {
+                    // El préstamo es del FrameSync: se suelta igual que uno del receiver
+                    streamProcessor.submitLease(lease, pulled, leasedFrames);
+                    if (++frameCount % 150 == 0) {
+                        Log.d(TAG, String.format("Frame #%d (pull): %dx%d, FPS: %d, repetidos: %d",
+                            frameCount, pulled.width, pulled.height, streamProcessor.getMetrics().getCurrentFPS(), repeats));
+                    }
+                } else if (lease == LEASE_NO_FRAME) {
+                    repeats++; // Aún sin video, o el emisor va más lento que la pantalla: sigue el frame mostrado
+                } else if (lease != LEASE_CAP_REACHED) {
+                    Log.w(TAG, "Error en pull de frame: " + lease);
+                }
+            }
+        } finally {
+            mainHandler.post(pullClock::stop);
+            pullTicks.attach(null);
+        }
+        
+        Log.d(TAG, "Loop de pull terminado");
+    }
+    
+    /**
+     * Ticks del reloj de pantalla hacia el thread de pull: guarda el último vsync y lo despierta
+     * onVsync corre en el thread de UI y no espera nunca
+     */
+    private static final class VsyncTicks implements DisplayClock.VsyncListener {
+        private volatile long latest;
+        private volatile Thread waiter;
+        
+        void attach(Thread thread) {
+            waiter = thread;
+        }
+        
+        @Override
+        public void onVsync(long frameTimeNanos) {
+            latest = frameTimeNanos;
+            Thread thread = waiter;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+        
+        // Primer vsync posterior a {@code previous}, o {@code previous} si no llega ninguno a tiempo
+        long awaitAfter(long previous, long timeoutNanos) {
+            long deadline = System.nanoTime() + timeoutNanos;
+            long tick;
+            while ((tick = latest) == previous) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+            return tick;
+        }
+    }
+    
+    /**
+     * Modo pull: rellena {@code interleaved} con audio remuestreado por FrameSync a {@code sampleRate}
+     * y {@code channels}, al ritmo al que se llame (p. ej. desde la escritura a un AudioTrack)
+     * Devuelve los samples por canal escritos; 0 en modo push o sin conexión
+     */
+    public int pullAudio(float[] interleaved, int sampleRate, int channels) {
+        if (captureMode != CaptureMode.PULL || !isConnected.get() || channels <= 0) {
+            return 0;
+        }
+        return nativePullAudio(interleaved, sampleRate, channels, interleaved.length / channels);
+    }
+    
+    public CaptureMode getCaptureMode() {
+        return captureMode;
+    }
+    
+    /**
+     * Tamaño en píxeles al que se muestra el vídeo; una vista pequeña se conforma con el proxy del emisor
+     * Se aplica en caliente, sin cortar la conexión
+     */
+    public void setDisplaySize(int width, int height) {
+        displayWidth = width;
+        displayHeight = height;
+        updateReceiveBandwidth();
+    }
+    
+    /**
+     * Sin vídeo visible (p. ej. la activity en segundo plano) se recibe solo audio
+     */
+    public void setVideoVisible(boolean visible) {
+        videoVisible = visible;
+        updateReceiveBandwidth();
+    }
+    
+    public ReceiveBandwidth getReceiveBandwidth() {
+        return appliedBandwidth;
+    }
+    
+    // El techo por dispositivo y vista acota lo que pida el control de calidad, que nunca pide solo audio
+    private ReceiveBandwidth getTargetBandwidth() {
+        ReceiveBandwidth ceiling = videoVisible
+            ? ReceiveBandwidth.choose(deviceClass, displayWidth, displayHeight)
+            : ReceiveBandwidth.AUDIO_ONLY;
+        return ReceiveBandwidth.narrower(ceiling, controllerBandwidth);
+    }
+    
+    // En la cola de control, detrás de conectar y desconectar; varios cambios seguidos aplican solo el último
+    private void updateReceiveBandwidth() {
+        if (isConnected.get() && getTargetBandwidth() != appliedBandwidth) {
+            executeInBackground(this::applyReceiveBandwidth);
+        }
+    }
+    
+    private boolean applyReceiveBandwidth() {
+        ReceiveBandwidth target = getTargetBandwidth();
+        if (!isConnected.get() || target == appliedBandwidth) {
+            return true;
+        }
+        long switchStart = System.nanoTime();
+        if (!nativeSetReceiveBandwidth(target.nativeValue)) {
+            Log.w(TAG, "No se pudo cambiar el ancho de banda a " + target + ", sigue en " + appliedBandwidth);
             return false;
         }
+        Log.i(TAG, "Ancho de banda de recepción " + appliedBandwidth + " -> " + target + " en "
+            + (System.nanoTime() - switchStart) / 1_000_000 + "ms");
+        appliedBandwidth = target;
+        return true;
+    }
+    
+    // Un frame en modo préstamo: ninguna copia, el procesador convierte desde el frame del SDK
+    private boolean captureLease(FrameDescriptor captured) throws InterruptedException {
+        long lease = nativeCaptureLease(captured, 33); // 33ms para ~30fps
+        if (lease > 0) {
+            streamProcessor.submitLease(lease, captured, leasedFrames);
+            return true;
+        }
+        if (lease == LEASE_NO_FRAME || lease == LEASE_CAP_REACHED) {
+            // Sin frame, o el procesador retiene todos los préstamos: el SDK guarda los frames mientras tanto
+            Thread.sleep(1);
+        } else {
+            Log.w(TAG, "Error en captura de frame: " + lease);
+            Thread.sleep(10);
+        }
+        return false;
+    }
+    
+    /**
+     * Modo préstamo (por defecto): los frames no se copian y el SDK los recupera al convertirlos
+     * Desactivado, cada frame se copia una vez a un buffer del arena. Se aplica en el siguiente frame
+     * El modo pull siempre presta: FrameSync no copia a buffers del arena
+     */
+    public void setLeaseMode(boolean enabled) {
+        leaseFrames = enabled;
+        Log.i(TAG, "Captura " + (enabled ? "por préstamo, sin copia" : "con copia al arena"));
+    }
+    
+    public boolean isLeaseMode() {
+        return leaseFrames;
+    }
+    
+    private final class NativeLeasedFrames implements NDIStreamProcessor.LeasedFrameSource {
+        @Override
+        public boolean convertRows(long lease, int[] dst, int dstWidth, int dstHeight, int rowStart, int rowEnd) {
+            return nativeConvertLeaseRows(lease, dst, dstWidth, dstHeight, rowStart, rowEnd);
+        }
+        
+        @Override
+        public void release(long lease) {
+            nativeReleaseLease(lease);
+        }
+    }
+    
+    // Utilidad para ejecutar tareas en background: en serie sobre el pool compartido
+    private void executeInBackground(java.util.concurrent.Callable<Boolean> task) {
+        controlExecutor.execute(() -> {
+            try {
+                if (!task.call()) {
+                    Log.w(TAG, "Tarea background sin éxito");
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error en tarea background", e);
+            }
+        });
+    }
+    
+    private float getDisplayRefreshRate() {
+        DisplayManager displayManager = (DisplayManager) getSystemService(DISPLAY_SERVICE);
+        Display display = displayManager != null ? displayManager.getDisplay(Display.DEFAULT_DISPLAY) : null;
+        return display != null ? display.getRefreshRate() : 60f;
     }
     
     // Getters de estado
@@ -308,6 +675,17 @@ public class NDIRenderService extends Service {
         return streamProcessor != null ? streamProcessor.getMetrics() : null;
     }
     
+    /**
+     * Memoria de frames: bytes reservados y prestados, y bloques creados en el arena nativo
+     */
+    public FrameArenaStats getFrameArenaStats() {
+        long[] values = new long[FrameArenaStats.NATIVE_FIELDS];
+        nativeGetArenaStats(values);
+        FrameArenaStats stats = new FrameArenaStats();
+        stats.set(values, directFramePool.getBytesInUse());
+        return stats;
+    }
+    
     public void setStreamQuality(int quality) {
         if (streamProcessor != null) {
             streamProcessor.setQuality(quality);
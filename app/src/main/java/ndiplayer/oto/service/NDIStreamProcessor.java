@@ -1,14 +1,24 @@
 package ndiplayer.oto.service;
 
-import android.graphics.Bitmap;
 import android.os.Process;
 import android.util.Log;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import ndiplayer.oto.utils.AdaptiveQualityController;
+import ndiplayer.oto.utils.BitmapLeasePool;
 import ndiplayer.oto.utils.ObjectPool;
+import ndiplayer.oto.utils.FrameCadence;
 import ndiplayer.oto.utils.FrameMetrics;
+import ndiplayer.oto.utils.FrameRing;
+import ndiplayer.oto.utils.JitterBuffer;
+import ndiplayer.oto.utils.ParallelPixelConverter;
+import ndiplayer.oto.utils.PerformanceManager;
+import ndiplayer.oto.utils.PixelConverter;
+import ndiplayer.oto.utils.TaskScheduler;
 
 /**
  * Procesador de streams NDI ultra-optimizado para dispositivos de bajo rendimiento
@@ -20,24 +30,44 @@ public class NDIStreamProcessor {
     // Configuración de rendimiento
     private static final int MAX_WORKER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
     private static final int FRAME_QUEUE_SIZE = 3; // Búfer mínimo para evitar latencia
+    private static final int OUTPUT_BITMAPS = 5; // Uno en conversión, uno en pantalla, dos esperando su vsync y uno de margen
     private static final int TARGET_FPS = 30;
-    private static final long TARGET_FRAME_TIME_MS = 1000 / TARGET_FPS;
+    private static final int DEFAULT_MAX_PIXELS = 1920 * 1080; // Sin resolución máxima configurada
+    private static final long PLAYOUT_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
     
-    // Thread pools optimizados
-    private ThreadPoolExecutor captureExecutor;
-    private ThreadPoolExecutor processingExecutor;
-    private ScheduledExecutorService statsExecutor;
+    // Estadísticas periódicas y salida del búfer de jitter en el planificador compartido
+    private final TaskScheduler scheduler;
+    private ScheduledFuture<?> statsTask;
     
-    // Gestión de frames
-    private final BlockingQueue<FrameData> frameQueue;
-    private final ObjectPool<FrameData> framePool;
+    // Conversión por bandas de filas, dimensionada según PerformanceConfig.processingThreads
+    private final ParallelPixelConverter pixelConverter;
+    private final int maxOutputWidth;  // 0 = sin límite
+    private final int maxOutputHeight;
+    
+    // Gestión de frames: etapas ingest -> scale -> convert -> [postprocess] -> present
+    private final FramePipeline<FrameData> pipeline;
+    private final FrameRing<FrameData> freeFrames; // FrameData reutilizables, vuelven al salir del pipeline
     private final ObjectPool<int[]> pixelPool;
-    private final ObjectPool<Bitmap> bitmapPool;
+    private volatile int pixelBufferSize; // Tamaño de los arrays que crea el pool; crece si un frame no cabe
+    private final BitmapLeasePool bitmapPool;
+    private final PixelPostProcessor postProcessor;
+    private final JitterBuffer<FrameData> jitterBuffer; // null = los frames entran al pipeline al capturarse
+    private volatile int jitterLatencyMs;
+    private volatile boolean jitterBypass;
+    private TaskScheduler.Task playoutTask;
+    private volatile boolean playoutActive; // false: sin thread de salida, los frames van directos al pipeline
     
     // Estado del procesador
     private final AtomicBoolean isRunning = new AtomicBoolean(false);
-    private final AtomicInteger activeCaptures = new AtomicInteger(0);
-    private final AtomicLong lastFrameTime = new AtomicLong(0);
+    private final AtomicBoolean isReleased = new AtomicBoolean(false);
+    private volatile boolean paused; // Workers y pools vivos, pero no entran frames
+    private final AtomicInteger generation = new AtomicInteger(0); // Sube con cada cambio de fuente: frames anteriores quedan obsoletos
+    private volatile long switchStartNanos;
+    private final AtomicBoolean awaitingFirstFrame = new AtomicBoolean(false);
+    private final FrameCadence frameCadence; // Solo desde la etapa ingest
+    private volatile int targetFps;
+    private volatile long deadlineNanos; // Un frame debe llegar a pantalla antes de un periodo objetivo
+    private volatile boolean fpsCapped; // El control de calidad bajó los FPS: limitar con la cadencia
     
     // Métricas de rendimiento
     private final FrameMetrics frameMetrics;
@@ -46,374 +76,598 @@ public class NDIStreamProcessor {
     // Configuración adaptativa
     private volatile int currentQuality = 100; // 100% calidad inicial
     private volatile boolean adaptiveMode = true;
+    private final PerformanceManager performanceManager; // null: sin control de calidad
+    private volatile BandwidthListener bandwidthListener;
+    private AdaptiveQualityController.Bandwidth appliedBandwidth = AdaptiveQualityController.Bandwidth.HIGHEST;
     
+    /**
+     * El préstamo solo es válido durante onFrameReady; para mostrarlo después
+     * hay que llamar a {@code frame.retain()} y a {@code frame.release()} al reemplazarlo
+     */
     public interface FrameCallback {
-        void onFrameReady(Bitmap bitmap, FrameMetrics metrics);
+        /** {@code mediaTimeNanos}: timestamp NDI del frame en ns, o su hora de llegada si el emisor no lo da */
+        void onFrameReady(BitmapLeasePool.Lease frame, long mediaTimeNanos, FrameMetrics metrics);
         void onError(String error);
     }
     
+    /**
+     * El controlador de calidad pidió otro ancho de banda de recepción: solo lo puede aplicar
+     * quien gestiona el receiver NDI
+     */
+    public interface BandwidthListener {
+        void onBandwidthChanged(AdaptiveQualityController.Bandwidth bandwidth);
+    }
+    
+    /**
+     * Frames que siguen en manos de quien los capturó (p. ej. el SDK de NDI) y se convierten
+     * desde allí sin copiarlos; cada préstamo se suelta una sola vez, convertido o descartado
+     */
+    public interface LeasedFrameSource {
+        /** Puede llamarse a la vez desde varios threads con bandas distintas; false si el préstamo ya no vale */
+        boolean convertRows(long lease, int[] dst, int dstWidth, int dstHeight, int rowStart, int rowEnd);
+        void release(long lease);
+    }
+    
+    /**
+     * Post-proceso opcional sobre los píxeles ARGB ya escalados, antes de presentarlos
+     */
+    public interface PixelPostProcessor {
+        void process(int[] pixels, int width, int height);
+    }
+    
+    /**
+     * Reparto de workers, colas y backpressure por etapa. 0 workers = la etapa corre
+     * en el thread que le entrega el frame, sin cola intermedia
+     * Por defecto: ingesta y planificación en el thread de captura, una cola de
+     * FRAME_QUEUE_SIZE frames hacia la conversión y dos hacia la presentación
+     * Antes de la ingesta, un búfer de jitter de hasta jitterLatencyMs (0 = sin búfer)
+     */
+    public static class PipelineLayout {
+        public int jitterLatencyMs = 60;
+        public int jitterCapacity = 6; // Frames retenidos como máximo, cubre 60ms a 60fps sin vaciarse
+        
+        public int scaleWorkers = 0;
+        public int scaleCapacity = FRAME_QUEUE_SIZE;
+        public BackpressurePolicy scalePolicy = BackpressurePolicy.DROP_OLDEST;
+        
+        public int convertWorkers = 1; // ParallelPixelConverter ya reparte cada frame en bandas
+        public int convertCapacity = FRAME_QUEUE_SIZE;
+        public BackpressurePolicy convertPolicy = BackpressurePolicy.DROP_OLDEST;
+        
+        public PixelPostProcessor postProcessor; // null = sin etapa de post-proceso
+        public int postProcessWorkers = 0;
+        public int postProcessCapacity = 2;
+        public BackpressurePolicy postProcessPolicy = BackpressurePolicy.DROP_OLDEST;
+        
+        public int presentWorkers = 1;
+        public int presentCapacity = 2;
+        public BackpressurePolicy presentPolicy = BackpressurePolicy.DROP_OLDEST;
+        
+        // Frames que pueden estar a la vez en colas y workers, más el que entra por captura
+        int framesInFlight() {
+            int frames = 1;
+            frames += jitterLatencyMs > 0 ? jitterCapacity * 2 + 1 : 0;
+            frames += scaleWorkers > 0 ? scaleCapacity + scaleWorkers : 0;
+            frames += convertWorkers > 0 ? convertCapacity + convertWorkers : 0;
+            frames += postProcessor != null && postProcessWorkers > 0 ? postProcessCapacity + postProcessWorkers : 0;
+            frames += presentWorkers > 0 ? presentCapacity + presentWorkers : 0;
+            return frames;
+        }
+        
+        // Arrays de píxeles vivos: desde la conversión hasta la presentación
+        int pixelBuffersInFlight() {
+            int buffers = Math.max(1, convertWorkers);
+            buffers += postProcessor != null && postProcessWorkers > 0 ? postProcessCapacity + postProcessWorkers : 0;
+            buffers += presentWorkers > 0 ? presentCapacity + presentWorkers : 0;
+            return buffers;
+        }
+    }
+    
     public NDIStreamProcessor() {
-        // Inicializar colas con tamaño optimizado
-        this.frameQueue = new ArrayBlockingQueue<>(FRAME_QUEUE_SIZE);
+        this(null);
+    }
+    
+    /**
+     * Con performanceManager la configuración y el control de calidad salen de él;
+     * sin él se usan valores por defecto y la calidad no se adapta
+     */
+    public NDIStreamProcessor(PerformanceManager performanceManager) {
+        this(performanceManager, new PipelineLayout());
+    }
+    
+    public NDIStreamProcessor(PerformanceManager performanceManager, PipelineLayout layout) {
+        this.scheduler = TaskScheduler.acquire(); // Se suelta en release()
+        this.performanceManager = performanceManager;
+        PerformanceManager.PerformanceConfig config = performanceManager != null
+            ? performanceManager.getCurrentConfig() : null;
         
         // Pools de objetos para evitar GC
-        this.framePool = new ObjectPool<>(
-            () -> new FrameData(),
-            FrameData::reset,
-            FRAME_QUEUE_SIZE * 2
-        );
+        int frames = layout.framesInFlight();
+        this.freeFrames = new FrameRing<>(frames);
+        for (int i = 0; i < frames; i++) {
+            freeFrames.offer(new FrameData());
+        }
         
+        // La salida nunca pasa de la resolución máxima (planOutput la acota)
+        this.pixelBufferSize = config != null && config.maxResolutionWidth > 0 && config.maxResolutionHeight > 0
+            ? config.maxResolutionWidth * config.maxResolutionHeight
+            : DEFAULT_MAX_PIXELS;
         this.pixelPool = new ObjectPool<>(
-            () -> new int[1920 * 1080], // Máximo Full HD
+            () -> new int[pixelBufferSize],
             null, // No necesita reset
-            4
+            layout.pixelBuffersInFlight()
         );
         
-        this.bitmapPool = new ObjectPool<>(
-            () -> Bitmap.createBitmap(1920, 1080, Bitmap.Config.ARGB_8888),
-            bitmap -> bitmap.eraseColor(0),
-            3
-        );
+        // Bitmaps de salida prestados al consumidor, creados al tamaño real del primer frame
+        this.bitmapPool = new BitmapLeasePool(OUTPUT_BITMAPS);
         
         this.frameMetrics = new FrameMetrics();
         
-        initializeThreadPools();
-    }
-    
-    private void initializeThreadPools() {
-        // Executor para captura de frames - alta prioridad
-        captureExecutor = new ThreadPoolExecutor(
-            1, 1, // Un solo thread de captura
-            60L, TimeUnit.SECONDS,
-            new LinkedBlockingQueue<>(1),
-            r -> {
-                Thread t = new Thread(r, "NDI-Capture");
-                t.setPriority(Thread.MAX_PRIORITY);
-                return t;
-            },
-            new ThreadPoolExecutor.DiscardOldestPolicy()
-        );
-        
-        // Executor para procesamiento - prioridad media
-        processingExecutor = new ThreadPoolExecutor(
-            MAX_WORKER_THREADS, MAX_WORKER_THREADS,
-            60L, TimeUnit.SECONDS,
-            new LinkedBlockingQueue<>(FRAME_QUEUE_SIZE),
-            r -> {
-                Thread t = new Thread(r, "NDI-Process");
-                t.setPriority(Thread.NORM_PRIORITY + 1);
-                return t;
-            },
-            new ThreadPoolExecutor.DiscardOldestPolicy()
-        );
+        int conversionThreads = config != null ? config.processingThreads : MAX_WORKER_THREADS;
+        this.pixelConverter = new ParallelPixelConverter(conversionThreads);
+        this.maxOutputWidth = config != null ? config.maxResolutionWidth : 0;
+        this.maxOutputHeight = config != null ? config.maxResolutionHeight : 0;
+        this.postProcessor = layout.postProcessor;
+        int targetFps = config != null ? config.targetFPS : TARGET_FPS;
+        this.frameCadence = new FrameCadence(targetFps);
+        this.targetFps = targetFps;
+        this.deadlineNanos = framePeriodNanos(targetFps);
+        this.jitterLatencyMs = layout.jitterLatencyMs;
+        this.jitterBuffer = layout.jitterLatencyMs > 0
+            ? new JitterBuffer<>(layout.jitterCapacity, layout.jitterLatencyMs, this::recycleFrame)
+            : null;
         
-        // Executor para estadísticas
-        statsExecutor = Executors.newSingleThreadScheduledExecutor(
-            r -> {
-                Thread t = new Thread(r, "NDI-Stats");
-                t.setPriority(Thread.MIN_PRIORITY);
-                return t;
-            }
-        );
+        FramePipeline.Builder<FrameData> builder = new FramePipeline.Builder<FrameData>()
+            .addStage("ingest", this::ingestFrame, 0, 0, BackpressurePolicy.DROP_NEWEST)
+            .addStage("scale", this::planOutput, layout.scaleWorkers, layout.scaleCapacity, layout.scalePolicy)
+            .addStage("convert", this::convertFrame, layout.convertWorkers, layout.convertCapacity, layout.convertPolicy,
+                Process.THREAD_PRIORITY_URGENT_DISPLAY);
+        if (postProcessor != null) {
+            builder.addStage("postprocess", this::postProcessFrame, layout.postProcessWorkers,
+                layout.postProcessCapacity, layout.postProcessPolicy);
+        }
+        builder.addStage("present", this::presentFrame, layout.presentWorkers, layout.presentCapacity, layout.presentPolicy,
+            Process.THREAD_PRIORITY_URGENT_DISPLAY);
+        this.pipeline = builder.build(new PipelineListener());
     }
     
+    /**
+     * Arranca workers y estadísticas; si ya está en marcha solo cambia el callback y reanuda
+     * Tras stopProcessing() se puede volver a arrancar
+     */
     public void startProcessing(FrameCallback callback) {
+        this.frameCallback = callback;
         if (isRunning.compareAndSet(false, true)) {
-            this.frameCallback = callback;
+            if (awaitingFirstFrame.compareAndSet(false, true)) {
+                switchStartNanos = System.nanoTime(); // Sin retarget() previo: medir desde el arranque
+            }
             
-            // Iniciar procesamiento de frames
-            processingExecutor.execute(this::processFrames);
+            // Iniciar los workers de cada etapa
+            pipeline.start();
             
-            // Iniciar estadísticas periódicas
-            statsExecutor.scheduleAtFixedRate(
-                this::updatePerformanceMetrics,
-                1, 1, TimeUnit.SECONDS
-            );
+            // Salida del búfer de jitter hacia la ingesta, a la cadencia del emisor
+            if (jitterBuffer != null) {
+                if (playoutTask != null && !playoutTask.isDone()) {
+                    // La salida anterior no terminó al parar: una segunda competiría por el búfer
+                    Log.e(TAG, "Salida del búfer de jitter anterior aún viva, frames directos al pipeline");
+                    playoutActive = false;
+                } else {
+                    playoutActive = true;
+                    playoutTask = scheduler.execute(TaskScheduler.Pool.REALTIME, this::playoutLoop);
+                }
+                if (playoutActive && playoutTask == null) {
+                    // Nadie vaciaría el búfer: seguir sin él hasta el próximo arranque
+                    Log.e(TAG, "Sin thread libre para la salida del búfer de jitter, frames directos al pipeline");
+                    playoutActive = false;
+                    jitterBuffer.clear(this::recycleFrame);
+                }
+            }
+            
+            // Iniciar estadísticas periódicas (la tarea anterior se canceló en stopProcessing)
+            statsTask = scheduler.scheduleAtFixedRate(this::updatePerformanceMetrics, 1000);
             
-            Log.i(TAG, "Stream processor iniciado con " + MAX_WORKER_THREADS + " threads");
+            Log.i(TAG, "Stream processor iniciado, conversión en " + pixelConverter.getThreads() + " bandas");
         }
+        resume();
     }
     
+    /**
+     * Deja de aceptar frames sin parar workers ni soltar pools: reanudar es inmediato
+     * Lo que ya estaba en el pipeline se termina de presentar
+     */
+    public void pause() {
+        paused = true;
+    }
+    
+    public void resume() {
+        paused = false;
+    }
+    
+    /**
+     * Cambio de fuente: pausa, invalida los frames de la fuente anterior que sigan en el
+     * pipeline y reinicia cadencia y búfer de jitter; workers, pools y Bitmaps siguen calientes
+     * El tiempo hasta el primer frame se mide desde aquí hasta la presentación; llamar a
+     * resume() (o startProcessing) cuando el nuevo receiver esté listo
+     */
+    public void retarget() {
+        paused = true;
+        generation.incrementAndGet(); // retarget() puede llegar a la vez desde la UI y el executor de control
+        frameCadence.reset();
+        if (jitterBuffer != null) {
+            jitterBuffer.requestReset();
+        }
+        switchStartNanos = System.nanoTime();
+        awaitingFirstFrame.set(true);
+    }
+    
+    public boolean isPaused() {
+        return paused;
+    }
+    
+    /**
+     * Para workers y estadísticas y vacía los pools. El conversor por bandas sigue
+     * disponible para un nuevo startProcessing(); release() lo cierra del todo
+     */
     public void stopProcessing() {
         if (isRunning.compareAndSet(true, false)) {
-            // Detener executors
-            captureExecutor.shutdown();
-            processingExecutor.shutdown();
-            statsExecutor.shutdown();
-            
-            try {
-                if (!captureExecutor.awaitTermination(2, TimeUnit.SECONDS)) {
-                    captureExecutor.shutdownNow();
-                }
-                if (!processingExecutor.awaitTermination(2, TimeUnit.SECONDS)) {
-                    processingExecutor.shutdownNow();
-                }
-                if (!statsExecutor.awaitTermination(1, TimeUnit.SECONDS)) {
-                    statsExecutor.shutdownNow();
+            // Detener la salida del búfer de jitter, las etapas y los executors
+            boolean playoutStopped = true;
+            if (playoutTask != null) {
+                // Sale sola al ver isRunning a false; la interrupción la saca antes de take()
+                playoutStopped = playoutTask.cancelAndAwait(1000);
+                if (playoutStopped) {
+                    playoutTask = null;
+                } else {
+                    // Aún puede entregar un frame: ni vaciar colas ni el búfer, se reciclarían dos veces
+                    Log.e(TAG, "La salida del búfer de jitter sigue viva; colas y búfer sin vaciar");
                 }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+            }
+            playoutActive = false;
+            pipeline.stop(playoutStopped);
+            if (statsTask != null) {
+                statsTask.cancel(false);
+                statsTask = null;
             }
             
             // Limpiar recursos
+            if (jitterBuffer != null && playoutStopped) {
+                jitterBuffer.clear(this::recycleFrame);
+            }
             clearQueues();
             Log.i(TAG, "Stream processor detenido");
         }
     }
     
+    /**
+     * Cierre definitivo: después no se puede volver a arrancar
+     */
+    public void release() {
+        stopProcessing();
+        if (isReleased.compareAndSet(false, true)) {
+            pixelConverter.shutdown();
+            TaskScheduler.release();
+        }
+    }
+    
     public void submitFrame(byte[] frameData, int width, int height, int fourCC) {
-        if (!isRunning.get() || activeCaptures.get() > FRAME_QUEUE_SIZE) {
-            return; // Skip si hay demasiados frames pendientes
+        submitFrame(frameData, width, height, FrameDescriptor.packedStride(width, fourCC), fourCC);
+    }
+    
+    /**
+     * Encola un frame cuyas filas ocupan {@code stride} bytes (puede incluir padding)
+     * Se publica en el thread que llama, igual que los slots directos
+     */
+    public void submitFrame(byte[] frameData, int width, int height, int stride, int fourCC) {
+        long captureTime = System.nanoTime();
+        if (paused) {
+            return; // Cambio de fuente en curso: se ignora sin contar como rechazo
+        }
+        if (!isRunning.get() || frameData == null || width <= 0 || height <= 0
+                || frameData.length < (long) stride * (height - 1) + (long) width * FrameDescriptor.bytesPerPixel(fourCC)) {
+            frameMetrics.incrementRejectedFrames();
+            return;
         }
         
-        captureExecutor.execute(() -> {
-            long startTime = System.nanoTime();
-            activeCaptures.incrementAndGet();
-            
-            try {
-                FrameData frame = framePool.acquire();
-                if (frame == null) {
-                    frame = new FrameData();
-                }
-                
-                frame.setData(frameData, width, height, fourCC);
-                frame.captureTime = startTime;
-                
-                // Control de framerate adaptativo
-                long currentTime = System.currentTimeMillis();
-                long timeSinceLastFrame = currentTime - lastFrameTime.get();
-                
-                if (adaptiveMode && timeSinceLastFrame < TARGET_FRAME_TIME_MS) {
-                    // Skip frame para mantener framerate objetivo
-                    frameMetrics.incrementSkippedFrames();
-                    framePool.release(frame);
-                    return;
-                }
-                
-                lastFrameTime.set(currentTime);
-                
-                // Intentar agregar a la cola (non-blocking)
-                if (!frameQueue.offer(frame)) {
-                    // Cola llena, descartar frame más antiguo
-                    FrameData oldFrame = frameQueue.poll();
-                    if (oldFrame != null) {
-                        framePool.release(oldFrame);
-                        frameMetrics.incrementDroppedFrames();
-                    }
-                    frameQueue.offer(frame);
-                }
-                
-            } finally {
-                activeCaptures.decrementAndGet();
-            }
-        });
+        FrameData frame = acquireFrame();
+        frame.setData(frameData, width, height, stride, fourCC);
+        frame.captureTime = captureTime;
+        enqueue(frame);
     }
     
-    private void processFrames() {
-        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_DISPLAY);
+    /**
+     * Encola un frame ya copiado por nativo en un buffer directo del pool
+     * Se encola en el thread que llama, sin tareas intermedias ni allocaciones;
+     * el slot vuelve al pool en cuanto el frame está convertido o se descarta
+     */
+    public void submitFrame(DirectFramePool.Slot slot, FrameDescriptor descriptor) {
+        if (paused) {
+            slot.release();
+            return;
+        }
+        if (!isRunning.get() || descriptor.width <= 0 || descriptor.height <= 0
+                || slot.capacity() < descriptor.requiredBytes()) {
+            frameMetrics.incrementRejectedFrames();
+            slot.release();
+            return;
+        }
         
-        while (isRunning.get()) {
-            try {
-                FrameData frame = frameQueue.poll(100, TimeUnit.MILLISECONDS);
-                if (frame == null) continue;
-                
-                long processingStart = System.nanoTime();
-                
-                // Procesar frame de manera optimizada
-                Bitmap bitmap = processFrameOptimized(frame);
-                
-                if (bitmap != null && frameCallback != null) {
-                    // Actualizar métricas
-                    long processingTime = System.nanoTime() - processingStart;
-                    long totalTime = System.nanoTime() - frame.captureTime;
-                    
-                    frameMetrics.addFrameTime(totalTime / 1_000_000); // Convert to ms
-                    frameMetrics.addProcessingTime(processingTime / 1_000_000);
-                    frameMetrics.incrementProcessedFrames();
-                    
-                    // Callback en thread de UI
-                    frameCallback.onFrameReady(bitmap, frameMetrics);
-                }
-                
-                // Devolver frame al pool
-                framePool.release(frame);
-                
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
-            } catch (Exception e) {
-                Log.e(TAG, "Error procesando frame", e);
-                if (frameCallback != null) {
-                    frameCallback.onError("Error procesando frame: " + e.getMessage());
-                }
-            }
+        FrameData frame = acquireFrame();
+        frame.setSlot(slot, descriptor);
+        frame.captureTime = System.nanoTime();
+        enqueue(frame);
+    }
+    
+    /**
+     * Encola un frame prestado: no se copia, la etapa convert lee directamente de {@code source}
+     * y suelta el préstamo en cuanto termina, igual que un slot directo
+     */
+    public void submitLease(long lease, FrameDescriptor descriptor, LeasedFrameSource source) {
+        if (paused) {
+            source.release(lease);
+            return;
+        }
+        if (!isRunning.get() || descriptor.width <= 0 || descriptor.height <= 0) {
+            frameMetrics.incrementRejectedFrames();
+            source.release(lease);
+            return;
+        }
+        
+        FrameData frame = acquireFrame();
+        frame.setLease(lease, source, descriptor);
+        frame.captureTime = System.nanoTime();
+        enqueue(frame);
+    }
+    
+    // Directo al pipeline o al búfer de jitter, que lo entrega cuando le toca
+    private void enqueue(FrameData frame) {
+        if (jitterBuffer == null || !playoutActive) {
+            frame.releaseTime = frame.captureTime;
+            pipeline.submit(frame);
+        } else if (!jitterBuffer.offer(frame, frame.mediaTimeNanos(frame.captureTime), frame.captureTime)) {
+            frameMetrics.incrementRejectedFrames(); // Búfer lleno: la salida va retrasada
+            recycleFrame(frame);
         }
     }
     
-    private Bitmap processFrameOptimized(FrameData frame) {
+    private void playoutLoop() {
         try {
-            // Calcular dimensiones con calidad adaptativa
-            int targetWidth = (int) (frame.width * currentQuality / 100.0f);
-            int targetHeight = (int) (frame.height * currentQuality / 100.0f);
-            
-            // Asegurar dimensiones pares para optimización
-            targetWidth = (targetWidth + 1) & ~1;
-            targetHeight = (targetHeight + 1) & ~1;
-            
-            // Obtener arrays del pool
-            int[] pixels = pixelPool.acquire();
-            if (pixels == null || pixels.length < targetWidth * targetHeight) {
-                pixels = new int[targetWidth * targetHeight];
-            }
-            
-            Bitmap bitmap = null;
-            
-            // Conversión optimizada según formato
-            switch (frame.fourCC) {
-                case FrameData.FOURCC_BGRA:
-                    bitmap = convertBGRAOptimized(frame.data, pixels, frame.width, frame.height, targetWidth, targetHeight);
-                    break;
-                case FrameData.FOURCC_UYVY:
-                    bitmap = convertUYVYOptimized(frame.data, pixels, frame.width, frame.height, targetWidth, targetHeight);
-                    break;
-                case FrameData.FOURCC_RGBA:
-                    bitmap = convertRGBAOptimized(frame.data, pixels, frame.width, frame.height, targetWidth, targetHeight);
-                    break;
-                default:
-                    Log.w(TAG, "Formato no soportado: " + Integer.toHexString(frame.fourCC));
-                    bitmap = convertBGRAOptimized(frame.data, pixels, frame.width, frame.height, targetWidth, targetHeight);
-                    break;
+            while (isRunning.get() && !Thread.currentThread().isInterrupted()) {
+                FrameData frame = jitterBuffer.take(PLAYOUT_POLL_NANOS);
+                if (frame != null) {
+                    frame.releaseTime = System.nanoTime();
+                    pipeline.submit(frame);
+                }
             }
-            
-            // Devolver array al pool
-            pixelPool.release(pixels);
-            
-            return bitmap;
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error en processFrameOptimized", e);
-            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // Sin salida el búfer se llenaría y no pasaría ningún frame: seguir sin él
+            Log.e(TAG, "Error en la salida del búfer de jitter, frames directos al pipeline", e);
+            playoutActive = false;
+            jitterBuffer.clear(this::recycleFrame);
+        }
+    }
+    
+    private FrameData acquireFrame() {
+        FrameData frame = freeFrames.poll();
+        if (frame == null) {
+            frame = new FrameData(); // Solo si hay más frames en vuelo que los previstos
         }
+        frame.generation = generation.get();
+        return frame;
+    }
+    
+    // Frame de una fuente anterior a retarget(): sale del pipeline sin gastar más trabajo
+    private boolean isStale(FrameData frame) {
+        return frame.generation != generation.get();
     }
     
-    private Bitmap convertBGRAOptimized(byte[] data, int[] pixels, int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
-        // Implementación optimizada con sampling inteligente
-        float xRatio = (float) srcWidth / dstWidth;
-        float yRatio = (float) srcHeight / dstHeight;
+    private void recycleFrame(FrameData frame) {
+        if (frame.pixels != null) {
+            pixelPool.release(frame.pixels);
+        }
+        frame.reset(); // Devuelve también el slot directo
+        freeFrames.offer(frame);
+    }
+    
+    // Salida del pipeline: completado, descartado por una etapa o por backpressure
+    private class PipelineListener implements FramePipeline.Listener<FrameData> {
+        @Override
+        public void recycle(FrameData frame) {
+            recycleFrame(frame);
+        }
         
-        for (int y = 0; y < dstHeight; y++) {
-            int srcY = (int) (y * yRatio);
-            int srcRowOffset = srcY * srcWidth * 4;
-            int dstRowOffset = y * dstWidth;
-            
-            for (int x = 0; x < dstWidth; x++) {
-                int srcX = (int) (x * xRatio);
-                int srcPixelOffset = srcRowOffset + srcX * 4;
-                
-                if (srcPixelOffset + 3 < data.length) {
-                    int b = data[srcPixelOffset] & 0xFF;
-                    int g = data[srcPixelOffset + 1] & 0xFF;
-                    int r = data[srcPixelOffset + 2] & 0xFF;
-                    int a = data[srcPixelOffset + 3] & 0xFF;
-                    
-                    pixels[dstRowOffset + x] = (a << 24) | (r << 16) | (g << 8) | b;
-                }
+        @Override
+        public void onDropped(FramePipeline.Stage<FrameData> stage, FrameData frame) {
+            frameMetrics.incrementDroppedFrames();
+        }
+        
+        @Override
+        public void onError(FramePipeline.Stage<FrameData> stage, FrameData frame, Exception error) {
+            Log.e(TAG, "Error en la etapa " + stage.getName(), error);
+            FrameCallback callback = frameCallback;
+            if (callback != null) {
+                callback.onError("Error procesando frame: " + error.getMessage());
             }
         }
+    }
+    
+    /**
+     * Etapa ingest: admisión por presupuesto, a la salida del búfer de jitter
+     * Entra el frame si, con lo que ya hay en cada etapa y su tiempo de servicio reciente,
+     * puede presentarse antes de su deadline; con el pipeline vacío entra siempre
+     * Si el control de calidad bajó los FPS, además se limita la cadencia por tiempo de medios
+     */
+    private boolean ingestFrame(FrameData frame) {
+        if (isStale(frame)) {
+            return false;
+        }
+        if (!adaptiveMode) {
+            return true;
+        }
         
-        return Bitmap.createBitmap(pixels, dstWidth, dstHeight, Bitmap.Config.ARGB_8888);
+        if (fpsCapped && !frameCadence.admit(frame.mediaTimeNanos(frame.captureTime))) {
+            // Skip frame para mantener framerate objetivo
+            frameMetrics.incrementSkippedFrames();
+            return false;
+        }
+        
+        List<FramePipeline.Stage<FrameData>> stages = pipeline.getStages();
+        int backlog = 0;
+        long estimate = 0;
+        for (int i = 1; i < stages.size(); i++) { // La 0 es esta etapa
+            FramePipeline.Stage<FrameData> stage = stages.get(i);
+            backlog += stage.getBacklog();
+            estimate += stage.estimateDelayNanos();
+        }
+        if (backlog > 0 && System.nanoTime() + estimate - frame.releaseTime > deadlineNanos) {
+            // No llegaría a tiempo: saltarlo antes de gastar conversión en él
+            frameMetrics.incrementDeadlineSkippedFrames();
+            return false;
+        }
+        return true;
     }
     
-    private Bitmap convertUYVYOptimized(byte[] data, int[] pixels, int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
-        // Conversión UYVY optimizada con lookup tables
-        float xRatio = (float) srcWidth / dstWidth;
-        float yRatio = (float) srcHeight / dstHeight;
+    /**
+     * Etapa scale: fija el tamaño de salida según calidad y resolución máxima
+     * El remuestreo en sí va fusionado con la conversión de formato
+     */
+    private boolean planOutput(FrameData frame) {
+        // Calcular dimensiones con calidad adaptativa
+        int targetWidth = (int) (frame.width * currentQuality / 100.0f);
+        int targetHeight = (int) (frame.height * currentQuality / 100.0f);
         
-        for (int y = 0; y < dstHeight; y++) {
-            int srcY = (int) (y * yRatio);
-            int srcRowOffset = srcY * srcWidth * 2; // UYVY es 2 bytes por pixel
-            int dstRowOffset = y * dstWidth;
-            
-            for (int x = 0; x < dstWidth; x += 2) { // Procesar 2 pixels a la vez para UYVY
-                int srcX = (int) (x * xRatio);
-                int srcPixelOffset = srcRowOffset + (srcX & ~1) * 2; // Asegurar offset par
-                
-                if (srcPixelOffset + 3 < data.length) {
-                    int u = data[srcPixelOffset] & 0xFF;
-                    int y1 = data[srcPixelOffset + 1] & 0xFF;
-                    int v = data[srcPixelOffset + 2] & 0xFF;
-                    int y2 = data[srcPixelOffset + 3] & 0xFF;
-                    
-                    // Convertir YUV a RGB usando lookup optimizado
-                    int[] rgb1 = convertYUVToRGBFast(y1, u, v);
-                    int[] rgb2 = convertYUVToRGBFast(y2, u, v);
-                    
-                    pixels[dstRowOffset + x] = (0xFF << 24) | (rgb1[0] << 16) | (rgb1[1] << 8) | rgb1[2];
-                    if (x + 1 < dstWidth) {
-                        pixels[dstRowOffset + x + 1] = (0xFF << 24) | (rgb2[0] << 16) | (rgb2[1] << 8) | rgb2[2];
-                    }
-                }
-            }
+        // Respetar la resolución máxima del dispositivo manteniendo el aspecto
+        if (maxOutputWidth > 0 && maxOutputHeight > 0
+                && (targetWidth > maxOutputWidth || targetHeight > maxOutputHeight)) {
+            float scale = Math.min((float) maxOutputWidth / targetWidth, (float) maxOutputHeight / targetHeight);
+            // Pares hacia abajo: el redondeo de después no debe pasar del tope
+            targetWidth = (int) (targetWidth * scale) & ~1;
+            targetHeight = (int) (targetHeight * scale) & ~1;
         }
         
-        return Bitmap.createBitmap(pixels, dstWidth, dstHeight, Bitmap.Config.ARGB_8888);
+        // Asegurar dimensiones pares para optimización
+        targetWidth = Math.max(2, (targetWidth + 1) & ~1);
+        targetHeight = Math.max(2, (targetHeight + 1) & ~1);
+        
+        frame.targetWidth = targetWidth;
+        frame.targetHeight = targetHeight;
+        return true;
     }
     
-    private Bitmap convertRGBAOptimized(byte[] data, int[] pixels, int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
-        float xRatio = (float) srcWidth / dstWidth;
-        float yRatio = (float) srcHeight / dstHeight;
+    /**
+     * Etapa convert: formato y escala en una sola pasada hacia un array del pool
+     * El buffer de origen (slot directo) se libera aquí, sin esperar a la presentación
+     */
+    private boolean convertFrame(FrameData frame) {
+        if (isStale(frame)) {
+            return false;
+        }
+        frame.processingStart = System.nanoTime();
         
-        for (int y = 0; y < dstHeight; y++) {
-            int srcY = (int) (y * yRatio);
-            int srcRowOffset = srcY * srcWidth * 4;
-            int dstRowOffset = y * dstWidth;
-            
-            for (int x = 0; x < dstWidth; x++) {
-                int srcX = (int) (x * xRatio);
-                int srcPixelOffset = srcRowOffset + srcX * 4;
-                
-                if (srcPixelOffset + 3 < data.length) {
-                    int r = data[srcPixelOffset] & 0xFF;
-                    int g = data[srcPixelOffset + 1] & 0xFF;
-                    int b = data[srcPixelOffset + 2] & 0xFF;
-                    int a = data[srcPixelOffset + 3] & 0xFF;
-                    
-                    pixels[dstRowOffset + x] = (a << 24) | (r << 16) | (g << 8) | b;
-                }
-            }
+        if (frame.leaseSource != null) {
+            return convertLease(frame);
+        }
+        
+        // El buffer debe cubrir todas las filas según su stride real
+        int available = frame.availableBytes();
+        if (available < frame.requiredBytes()) {
+            Log.w(TAG, "Frame incompleto: " + available + " bytes, esperados " + frame.requiredBytes());
+            return false;
+        }
+        
+        if (!PixelConverter.isSupported(frame.fourCC)) {
+            Log.w(TAG, "Formato no soportado: " + Integer.toHexString(frame.fourCC));
         }
         
-        return Bitmap.createBitmap(pixels, dstWidth, dstHeight, Bitmap.Config.ARGB_8888);
+        // Obtener arrays del pool
+        int[] pixels = acquirePixels(frame.targetWidth * frame.targetHeight);
+        frame.pixels = pixels; // Desde aquí recycleFrame lo devuelve al pool
+        
+        // Conversión por bandas de filas en paralelo (BGRA por defecto)
+        byte[] source = frame.sourceBytes();
+        pixelConverter.convert(frame.fourCC, source, frame.sourceOffset(), frame.stride, frame.width, frame.height,
+            pixels, frame.targetWidth, frame.targetHeight);
+        frame.releaseSource();
+        return true;
     }
     
-    // Conversión YUV a RGB optimizada con lookup tables
-    private static final int[] YUV_TO_RGB_LOOKUP_R = new int[256];
-    private static final int[] YUV_TO_RGB_LOOKUP_G_U = new int[256];
-    private static final int[] YUV_TO_RGB_LOOKUP_G_V = new int[256];
-    private static final int[] YUV_TO_RGB_LOOKUP_B = new int[256];
+    // Sin copia: las bandas leen del frame prestado y el préstamo se suelta al terminar
+    private boolean convertLease(FrameData frame) {
+        int[] pixels = acquirePixels(frame.targetWidth * frame.targetHeight);
+        frame.pixels = pixels;
+        
+        frame.leaseValid = true;
+        pixelConverter.convert(frame, pixels, frame.targetWidth, frame.targetHeight);
+        boolean converted = frame.leaseValid;
+        frame.releaseSource();
+        if (!converted) {
+            Log.w(TAG, "Préstamo no convertible: soltado por el receiver o formato no soportado");
+        }
+        return converted;
+    }
     
-    static {
-        // Precalcular lookup tables para conversión YUV
-        for (int i = 0; i < 256; i++) {
-            int c = i - 128;
-            YUV_TO_RGB_LOOKUP_R[i] = (int) (1.402f * c);
-            YUV_TO_RGB_LOOKUP_G_U[i] = (int) (-0.344f * c);
-            YUV_TO_RGB_LOOKUP_G_V[i] = (int) (-0.714f * c);
-            YUV_TO_RGB_LOOKUP_B[i] = (int) (1.772f * c);
+    /**
+     * Array del pool con sitio para {@code pixelCount} píxeles
+     * Si el frame no cabe, el pool pasa a crear arrays de su tamaño; los pequeños vuelven al pool
+     * y el nuevo entra en él al reciclar el frame
+     */
+    private int[] acquirePixels(int pixelCount) {
+        if (pixelCount > pixelBufferSize) {
+            Log.w(TAG, "Frame de " + pixelCount + " píxeles, mayor que los arrays del pool (" + pixelBufferSize + ")");
+            pixelBufferSize = pixelCount;
+        }
+        for (int tries = pixelPool.size(); tries >= 0; tries--) {
+            int[] pixels = pixelPool.acquire(); // Con el pool vacío lo crea a pixelBufferSize
+            if (pixels.length >= pixelCount) {
+                return pixels;
+            }
+            pixelPool.release(pixels);
         }
+        return new int[pixelCount];
+    }
+    
+    private boolean postProcessFrame(FrameData frame) {
+        postProcessor.process(frame.pixels, frame.targetWidth, frame.targetHeight);
+        return true;
     }
     
-    private int[] convertYUVToRGBFast(int y, int u, int v) {
-        int r = y + YUV_TO_RGB_LOOKUP_R[v];
-        int g = y + YUV_TO_RGB_LOOKUP_G_U[u] + YUV_TO_RGB_LOOKUP_G_V[v];
-        int b = y + YUV_TO_RGB_LOOKUP_B[u];
+    /**
+     * Etapa present: copia a un Bitmap del pool y lo entrega al consumidor
+     * Si el consumidor aún retiene todos los Bitmaps el frame se descarta
+     */
+    private boolean presentFrame(FrameData frame) {
+        FrameCallback callback = frameCallback;
+        if (callback == null || isStale(frame)) {
+            return false;
+        }
         
-        // Clamp con operaciones bit a bit (más rápido)
-        r = (r & 0xFFFFFF00) == 0 ? r : r < 0 ? 0 : 255;
-        g = (g & 0xFFFFFF00) == 0 ? g : g < 0 ? 0 : 255;
-        b = (b & 0xFFFFFF00) == 0 ? b : b < 0 ? 0 : 255;
+        BitmapLeasePool.Lease output = bitmapPool.acquire(frame.targetWidth, frame.targetHeight);
+        if (output == null) {
+            frameMetrics.incrementDroppedFrames();
+            return false;
+        }
         
-        return new int[]{r, g, b};
+        try {
+            output.getBitmap().setPixels(frame.pixels, 0, frame.targetWidth, 0, 0, frame.targetWidth, frame.targetHeight);
+            
+            // Actualizar métricas
+            long now = System.nanoTime();
+            // Desde que sale del búfer de jitter: el retardo del búfer se publica aparte
+            frameMetrics.addFrameTime((now - frame.releaseTime) / 1_000_000); // Convert to ms
+            frameMetrics.addProcessingTime((now - frame.processingStart) / 1_000_000);
+            frameMetrics.incrementProcessedFrames();
+            if (awaitingFirstFrame.compareAndSet(true, false)) {
+                long ttffMs = (now - switchStartNanos) / 1_000_000;
+                frameMetrics.recordTimeToFirstFrame(ttffMs);
+                Log.i(TAG, "Primer frame de la fuente en " + ttffMs + "ms");
+            }
+            
+            callback.onFrameReady(output, frame.mediaTimeNanos(frame.captureTime), frameMetrics);
+        } finally {
+            output.release(); // Referencia del procesador; el consumidor retiene la suya
+        }
+        return true;
     }
     
     private void updatePerformanceMetrics() {
@@ -422,36 +676,62 @@ public class NDIStreamProcessor {
             double avgProcessingTime = frameMetrics.getAverageProcessingTime();
             int currentFPS = frameMetrics.getCurrentFPS();
             
-            // Ajuste adaptativo de calidad
-            if (adaptiveMode) {
-                if (avgFrameTime > TARGET_FRAME_TIME_MS * 1.5) {
-                    // Rendimiento bajo, reducir calidad
-                    currentQuality = Math.max(50, currentQuality - 10);
-                    Log.d(TAG, "Reduciendo calidad a " + currentQuality + "%");
-                } else if (avgFrameTime < TARGET_FRAME_TIME_MS * 0.8 && currentQuality < 100) {
-                    // Buen rendimiento, aumentar calidad
-                    currentQuality = Math.min(100, currentQuality + 5);
-                    Log.d(TAG, "Aumentando calidad a " + currentQuality + "%");
+            if (jitterBuffer != null) {
+                frameMetrics.updateJitterBuffer(jitterBuffer.getDepth(), jitterBuffer.getDelayMs(),
+                    jitterBuffer.getJitterMs(), jitterBuffer.getLateFrames());
+            }
+            
+            // Ajuste adaptativo de calidad: un paso del controlador con la ventana del último segundo
+            if (adaptiveMode && performanceManager != null) {
+                int queueDepth = 0;
+                int queueCapacity = 0;
+                for (FramePipeline.Stage<FrameData> stage : pipeline.getStages()) {
+                    queueDepth += stage.getQueueDepth();
+                    queueCapacity += stage.getCapacity();
+                }
+                AdaptiveQualityController.Event event =
+                    performanceManager.adaptiveOptimization(frameMetrics, queueDepth, queueCapacity);
+                if (event != null) {
+                    applyQualityState(event.state, performanceManager.getQualityController().getLimits().maxFps);
                 }
             }
             
             Log.d(TAG, String.format("Rendimiento: %d FPS, Frame: %.1fms, Proc: %.1fms, Cal: %d%%",
                 currentFPS, avgFrameTime, avgProcessingTime, currentQuality));
+            Log.d(TAG, "Etapas: " + pipeline.describe());
+            if (jitterBuffer != null) {
+                Log.d(TAG, String.format("Jitter: %.1fms, búfer %d frames / %.1fms, tarde %d",
+                    jitterBuffer.getJitterMs(), jitterBuffer.getDepth(), jitterBuffer.getDelayMs(),
+                    jitterBuffer.getLateFrames()));
+            }
                 
         } catch (Exception e) {
             Log.e(TAG, "Error actualizando métricas", e);
         }
     }
     
-    private void clearQueues() {
-        // Limpiar cola de frames
-        FrameData frame;
-        while ((frame = frameQueue.poll()) != null) {
-            framePool.release(frame);
+    private void applyQualityState(AdaptiveQualityController.State state, int maxFps) {
+        currentQuality = state.scalePercent;
+        frameCadence.setTargetFps(state.targetFps);
+        targetFps = state.targetFps;
+        deadlineNanos = framePeriodNanos(state.targetFps); // El plazo sigue a los FPS que fija el controlador
+        fpsCapped = state.targetFps < maxFps;
+        if (state.bandwidth != appliedBandwidth) {
+            appliedBandwidth = state.bandwidth;
+            BandwidthListener listener = bandwidthListener;
+            if (listener != null) {
+                listener.onBandwidthChanged(state.bandwidth);
+            }
         }
-        
+    }
+    
+    private static long framePeriodNanos(int fps) {
+        return TimeUnit.SECONDS.toNanos(1) / Math.max(1, fps);
+    }
+    
+    private void clearQueues() {
+        // Las colas de las etapas ya se vaciaron en pipeline.stop()
         // Limpiar pools
-        framePool.clear();
         pixelPool.clear();
         bitmapPool.clear();
     }
@@ -461,6 +741,64 @@ public class NDIStreamProcessor {
         return frameMetrics;
     }
     
+    /**
+     * Frames descartados por backpressure en cualquier etapa
+     */
+    public long getStageDrops() {
+        long dropped = 0;
+        for (FramePipeline.Stage<FrameData> stage : pipeline.getStages()) {
+            dropped += stage.getDropped();
+        }
+        return dropped;
+    }
+    
+    /**
+     * Etapas con su profundidad de cola, tiempo de servicio y descartes
+     */
+    public List<? extends FramePipeline.Stage<?>> getPipelineStages() {
+        return Collections.unmodifiableList(pipeline.getStages());
+    }
+    
+    /**
+     * Frames de origen que puede retener el búfer de jitter (0 sin búfer),
+     * para dimensionar los buffers de captura
+     */
+    public int getJitterCapacity() {
+        return jitterBuffer != null ? jitterBuffer.getMaxRetained() : 0;
+    }
+    
+    /**
+     * Techo del retardo del búfer de jitter; por debajo se ajusta solo según el jitter medido
+     */
+    public void setJitterLatency(int latencyMs) {
+        jitterLatencyMs = latencyMs;
+        if (jitterBuffer != null && !jitterBypass) {
+            jitterBuffer.setLatencyTarget(latencyMs);
+        }
+    }
+    
+    /**
+     * Con frames ya retemporizados (FrameSync en modo pull) el búfer de jitter solo añadiría retardo:
+     * con bypass cada frame sale al momento; sin él vuelve el techo de setJitterLatency()
+     */
+    public void setJitterBypass(boolean bypass) {
+        jitterBypass = bypass;
+        if (jitterBuffer != null) {
+            jitterBuffer.setLatencyTarget(bypass ? 0 : jitterLatencyMs);
+        }
+    }
+    
+    /**
+     * FPS objetivo actual, el de la configuración hasta que el control de calidad lo cambie
+     */
+    public int getTargetFps() {
+        return targetFps;
+    }
+    
+    public void setBandwidthListener(BandwidthListener listener) {
+        this.bandwidthListener = listener;
+    }
+    
     public void setAdaptiveMode(boolean enabled) {
         this.adaptiveMode = enabled;
     }
@@ -469,31 +807,83 @@ public class NDIStreamProcessor {
         this.currentQuality = Math.max(25, Math.min(100, quality));
     }
     
-    // Clase interna para datos de frame
-    private static class FrameData {
-        static final int FOURCC_BGRA = ('B' << 0) | ('G' << 8) | ('R' << 16) | ('A' << 24);
-        static final int FOURCC_UYVY = ('U' << 0) | ('Y' << 8) | ('V' << 16) | ('Y' << 24);
-        static final int FOURCC_RGBA = ('R' << 0) | ('G' << 8) | ('B' << 16) | ('A' << 24);
-        
+    // Datos de frame: array Java, slot del pool directo o préstamo, más el resultado de cada etapa
+    private static class FrameData extends FrameDescriptor implements ParallelPixelConverter.RowSource {
         byte[] data;
-        int width;
-        int height;
-        int fourCC;
+        DirectFramePool.Slot slot;
+        long lease;
+        LeasedFrameSource leaseSource;
+        volatile boolean leaseValid; // Lo baja cualquier banda que no pudo convertir
+        int generation; // Fuente a la que pertenece, ver retarget()
         long captureTime;
+        long releaseTime; // Salida del búfer de jitter
+        long processingStart;
+        int targetWidth;
+        int targetHeight;
+        int[] pixels; // Salida de la etapa convert
         
-        void setData(byte[] data, int width, int height, int fourCC) {
+        void setData(byte[] data, int width, int height, int stride, int fourCC) {
             this.data = data;
-            this.width = width;
-            this.height = height;
-            this.fourCC = fourCC;
+            this.slot = null;
+            set(width, height, stride, fourCC);
         }
         
-        void reset() {
+        void setSlot(DirectFramePool.Slot slot, FrameDescriptor descriptor) {
+            this.data = null;
+            this.slot = slot;
+            set(descriptor);
+        }
+        
+        void setLease(long lease, LeasedFrameSource source, FrameDescriptor descriptor) {
+            this.data = null;
+            this.slot = null;
+            this.lease = lease;
+            this.leaseSource = source;
+            set(descriptor);
+        }
+        
+        @Override
+        public void convertRows(int[] dst, int dstWidth, int dstHeight, int rowStart, int rowEnd) {
+            if (!leaseSource.convertRows(lease, dst, dstWidth, dstHeight, rowStart, rowEnd)) {
+                leaseValid = false;
+            }
+        }
+        
+        int availableBytes() {
+            return slot != null ? slot.capacity() : data.length;
+        }
+        
+        byte[] sourceBytes() {
+            return slot != null ? slot.bytes(requiredBytes()) : data;
+        }
+        
+        int sourceOffset() {
+            return slot != null ? slot.bytesOffset() : 0;
+        }
+        
+        // Suelta el origen en cuanto está convertido
+        void releaseSource() {
+            if (slot != null) {
+                slot.release(); // Devolver el buffer directo al pool
+            }
+            if (leaseSource != null) {
+                leaseSource.release(lease); // Devolver el frame a quien lo prestó
+            }
             this.data = null;
-            this.width = 0;
-            this.height = 0;
-            this.fourCC = 0;
+            this.slot = null;
+            this.lease = 0;
+            this.leaseSource = null;
+        }
+        
+        void reset() {
+            releaseSource();
             this.captureTime = 0;
+            this.releaseTime = 0;
+            this.processingStart = 0;
+            this.targetWidth = 0;
+            this.targetHeight = 0;
+            this.pixels = null;
+            clear();
         }
     }
 }
@@ -0,0 +1,52 @@
+package ndiplayer.oto.service;
+
+import ndiplayer.oto.utils.AdaptiveQualityController;
+import ndiplayer.oto.utils.PerformanceManager;
+
+/**
+ * Ancho de banda de recepción NDI, de menos a más; se puede cambiar con la conexión abierta
+ */
+public enum ReceiveBandwidth {
+    /** Solo audio y metadata: sin vídeo que decodificar */
+    AUDIO_ONLY(10),
+    /** Stream proxy del emisor: resolución reducida, bastante menos red y decodificación */
+    LOWEST(0),
+    /** Stream completo */
+    HIGHEST(100);
+    
+    // Por debajo de esto el proxy (típicamente 640x360) se ve igual que el stream completo escalado
+    private static final int PROXY_MAX_WIDTH = 960;
+    private static final int PROXY_MAX_HEIGHT = 540;
+    
+    /** Valor de NDIlib_recv_bandwidth_e */
+    public final int nativeValue;
+    
+    ReceiveBandwidth(int nativeValue) {
+        this.nativeValue = nativeValue;
+    }
+    
+    /**
+     * Techo según el dispositivo y el tamaño al que se muestra el vídeo
+     * Gama baja siempre proxy; una vista pequeña no necesita más que el proxy;
+     * tamaño desconocido (0) no limita
+     */
+    public static ReceiveBandwidth choose(PerformanceManager.DeviceClass deviceClass, int viewWidth, int viewHeight) {
+        if (deviceClass == PerformanceManager.DeviceClass.LOW_END) {
+            return LOWEST;
+        }
+        if (viewWidth > 0 && viewHeight > 0 && viewWidth <= PROXY_MAX_WIDTH && viewHeight <= PROXY_MAX_HEIGHT) {
+            return LOWEST;
+        }
+        return HIGHEST;
+    }
+    
+    /** Lo que pide el control de calidad */
+    public static ReceiveBandwidth from(AdaptiveQualityController.Bandwidth bandwidth) {
+        return bandwidth == AdaptiveQualityController.Bandwidth.LOWEST ? LOWEST : HIGHEST;
+    }
+    
+    /** El más restrictivo de los dos */
+    public static ReceiveBandwidth narrower(ReceiveBandwidth a, ReceiveBandwidth b) {
+        return a.ordinal() <= b.ordinal() ? a : b;
+    }
+}
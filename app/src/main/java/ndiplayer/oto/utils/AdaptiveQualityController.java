@@ -0,0 +1,312 @@
+package ndiplayer.oto.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Control de calidad en lazo cerrado (AIMD con histéresis) sobre la ventana reciente
+ * de tiempo de frame, tasa de descartes y ocupación de colas
+ * Con sobrecarga sostenida baja multiplicativamente escala, luego FPS y por último
+ * el ancho de banda de recepción; con margen sostenido recupera en orden inverso y en pasos fijos
+ * Cada muestra produce un evento; el registro de eventos se puede reproducir con
+ * {@link #replay} para probar el controlador fuera del dispositivo
+ */
+public final class AdaptiveQualityController {
+    private static final int EVENT_LOG_SIZE = 256;
+
+    // Umbrales sobre el presupuesto de frame (1000 / fps): entre ambos no se actúa
+    private static final double OVERLOAD_FRAME_RATIO = 1.2;
+    private static final double HEALTHY_FRAME_RATIO = 0.75;
+    private static final double OVERLOAD_DROP_PERCENT = 5.0;
+    private static final double HEALTHY_DROP_PERCENT = 1.0;
+    private static final double OVERLOAD_QUEUE_FILL = 0.75;
+    private static final double HEALTHY_QUEUE_FILL = 0.25;
+
+    private static final int OVERLOAD_SAMPLES = 2;  // Muestras seguidas antes de bajar
+    private static final int HEALTHY_SAMPLES = 5;   // Muestras seguidas antes de subir
+    private static final int COOLDOWN_SAMPLES = 2;  // Espera tras un cambio para ver su efecto
+
+    private static final double DECREASE_FACTOR = 0.75;
+    private static final int SCALE_STEP = 5;
+    private static final int FPS_STEP = 5;
+
+    public enum Bandwidth {
+        HIGHEST,
+        LOWEST
+    }
+
+    public enum Action {
+        HOLD,
+        DECREASE_SCALE,
+        DECREASE_FPS,
+        LOWER_BANDWIDTH,
+        RAISE_BANDWIDTH,
+        INCREASE_FPS,
+        INCREASE_SCALE
+    }
+
+    /**
+     * Límites del controlador; el estado inicial es la escala inicial a FPS y ancho de banda máximos
+     */
+    public static final class Limits {
+        public final int minScale;
+        public final int maxScale;
+        public final int initialScale;
+        public final int minFps;
+        public final int maxFps;
+
+        public Limits(int minScale, int maxScale, int initialScale, int minFps, int maxFps) {
+            this.minScale = Math.max(1, minScale);
+            this.maxScale = Math.max(this.minScale, maxScale);
+            this.initialScale = Math.max(this.minScale, Math.min(this.maxScale, initialScale));
+            this.minFps = Math.max(1, minFps);
+            this.maxFps = Math.max(this.minFps, maxFps);
+        }
+
+        public static Limits from(PerformanceManager.PerformanceConfig config) {
+            int fps = config != null ? config.targetFPS : 30;
+            int quality = config != null ? config.initialQuality : 100;
+            return new Limits(25, 100, quality, Math.max(10, fps / 2), fps);
+        }
+    }
+
+    /**
+     * Medidas de una ventana: tiempo de frame medio reciente, % de descartes y colas
+     */
+    public static final class Sample {
+        public final double frameTimeMs;
+        public final double dropPercent;
+        public final int queueDepth;
+        public final int queueCapacity;
+
+        public Sample(double frameTimeMs, double dropPercent, int queueDepth, int queueCapacity) {
+            this.frameTimeMs = frameTimeMs;
+            this.dropPercent = dropPercent;
+            this.queueDepth = queueDepth;
+            this.queueCapacity = queueCapacity;
+        }
+
+        double queueFill() {
+            return queueCapacity > 0 ? (double) queueDepth / queueCapacity : 0.0;
+        }
+    }
+
+    /**
+     * Configuración que el pipeline debe aplicar
+     */
+    public static final class State {
+        public final int scalePercent;
+        public final int targetFps;
+        public final Bandwidth bandwidth;
+
+        State(int scalePercent, int targetFps, Bandwidth bandwidth) {
+            this.scalePercent = scalePercent;
+            this.targetFps = targetFps;
+            this.bandwidth = bandwidth;
+        }
+    }
+
+    /**
+     * Una decisión: la muestra de entrada, la acción y el estado resultante
+     */
+    public static final class Event {
+        public final long sequence;
+        public final Sample sample;
+        public final Action action;
+        public final State state;
+
+        Event(long sequence, Sample sample, Action action, State state) {
+            this.sequence = sequence;
+            this.sample = sample;
+            this.action = action;
+            this.state = state;
+        }
+
+        /**
+         * Una línea por evento: seq,frameMs,drop%,cola,capacidad,acción,escala,fps,ancho de banda
+         */
+        public String toLine() {
+            return String.format(Locale.US, "%d,%.3f,%.3f,%d,%d,%s,%d,%d,%s",
+                sequence, sample.frameTimeMs, sample.dropPercent, sample.queueDepth, sample.queueCapacity,
+                action, state.scalePercent, state.targetFps, state.bandwidth);
+        }
+
+        public static Event parse(String line) {
+            String[] fields = line.trim().split(",");
+            if (fields.length != 9) {
+                throw new IllegalArgumentException("Evento mal formado: " + line);
+            }
+            Sample sample = new Sample(Double.parseDouble(fields[1]), Double.parseDouble(fields[2]),
+                Integer.parseInt(fields[3]), Integer.parseInt(fields[4]));
+            State state = new State(Integer.parseInt(fields[6]), Integer.parseInt(fields[7]),
+                Bandwidth.valueOf(fields[8]));
+            return new Event(Long.parseLong(fields[0]), sample, Action.valueOf(fields[5]), state);
+        }
+
+        @Override
+        public String toString() {
+            return toLine();
+        }
+    }
+
+    private final Limits limits;
+    private final ArrayDeque<Event> eventLog = new ArrayDeque<>(EVENT_LOG_SIZE);
+
+    // Estado del lazo; update() se llama desde un único thread
+    private int scale;
+    private int fps;
+    private Bandwidth bandwidth = Bandwidth.HIGHEST;
+    private int overloadStreak;
+    private int healthyStreak;
+    private int cooldown;
+    private long sequence;
+    private volatile State state;
+
+    // Contadores de FrameMetrics en la muestra anterior, para la tasa de descartes de la ventana
+    private long lastProcessed;
+    private long lastDropped;
+
+    public AdaptiveQualityController(Limits limits) {
+        this.limits = limits;
+        this.scale = limits.initialScale;
+        this.fps = limits.maxFps;
+        this.state = new State(scale, fps, bandwidth);
+    }
+
+    public AdaptiveQualityController(PerformanceManager.PerformanceConfig config) {
+        this(Limits.from(config));
+    }
+
+    /**
+     * Muestra de la ventana desde la anterior: descartes, rechazos y saltos por deadline
+     * (falta de capacidad) sobre los frames que llegaron a la salida o se perdieron en el camino
+     */
+    public Sample sample(FrameMetrics metrics, int queueDepth, int queueCapacity) {
+        long processed = metrics.getProcessedFrames();
+        long dropped = (long) metrics.getDroppedFrames() + metrics.getRejectedFrames()
+            + metrics.getDeadlineSkippedFrames();
+        long windowProcessed = Math.max(0, processed - lastProcessed);
+        long windowDropped = Math.max(0, dropped - lastDropped);
+        lastProcessed = processed;
+        lastDropped = dropped;
+
+        long total = windowProcessed + windowDropped;
+        double dropPercent = total > 0 ? windowDropped * 100.0 / total : 0.0;
+        return new Sample(metrics.getRecentAverageFrameTime(), dropPercent, queueDepth, queueCapacity);
+    }
+
+    /**
+     * Un paso del lazo. Determinista: la misma secuencia de muestras da los mismos eventos
+     */
+    public Event update(Sample sample) {
+        Action action = Action.HOLD;
+        double budgetMs = 1000.0 / fps;
+
+        boolean overloaded = sample.frameTimeMs > budgetMs * OVERLOAD_FRAME_RATIO
+            || sample.dropPercent > OVERLOAD_DROP_PERCENT
+            || sample.queueFill() >= OVERLOAD_QUEUE_FILL;
+        boolean healthy = sample.frameTimeMs < budgetMs * HEALTHY_FRAME_RATIO
+            && sample.dropPercent < HEALTHY_DROP_PERCENT
+            && sample.queueFill() <= HEALTHY_QUEUE_FILL;
+
+        if (cooldown > 0) {
+            cooldown--;
+        }
+
+        if (overloaded) {
+            healthyStreak = 0;
+            if (++overloadStreak >= OVERLOAD_SAMPLES && cooldown == 0) {
+                action = decrease();
+            }
+        } else if (healthy) {
+            overloadStreak = 0;
+            if (++healthyStreak >= HEALTHY_SAMPLES && cooldown == 0) {
+                action = increase();
+            }
+        } else {
+            // Banda de histéresis: ni bajar ni subir, y las rachas vuelven a empezar
+            overloadStreak = 0;
+            healthyStreak = 0;
+        }
+
+        if (action != Action.HOLD) {
+            overloadStreak = 0;
+            healthyStreak = 0;
+            cooldown = COOLDOWN_SAMPLES;
+            state = new State(scale, fps, bandwidth);
+        }
+
+        Event event = new Event(++sequence, sample, action, state);
+        synchronized (eventLog) {
+            if (eventLog.size() == EVENT_LOG_SIZE) {
+                eventLog.pollFirst();
+            }
+            eventLog.addLast(event);
+        }
+        return event;
+    }
+
+    private Action decrease() {
+        if (scale > limits.minScale) {
+            scale = Math.max(limits.minScale, (int) (scale * DECREASE_FACTOR));
+            return Action.DECREASE_SCALE;
+        }
+        if (fps > limits.minFps) {
+            fps = Math.max(limits.minFps, (int) (fps * DECREASE_FACTOR));
+            return Action.DECREASE_FPS;
+        }
+        if (bandwidth == Bandwidth.HIGHEST) {
+            bandwidth = Bandwidth.LOWEST;
+            return Action.LOWER_BANDWIDTH;
+        }
+        return Action.HOLD;
+    }
+
+    private Action increase() {
+        if (bandwidth == Bandwidth.LOWEST) {
+            bandwidth = Bandwidth.HIGHEST;
+            return Action.RAISE_BANDWIDTH;
+        }
+        if (fps < limits.maxFps) {
+            fps = Math.min(limits.maxFps, fps + FPS_STEP);
+            return Action.INCREASE_FPS;
+        }
+        if (scale < limits.maxScale) {
+            scale = Math.min(limits.maxScale, scale + SCALE_STEP);
+            return Action.INCREASE_SCALE;
+        }
+        return Action.HOLD;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public Limits getLimits() {
+        return limits;
+    }
+
+    /**
+     * Últimos eventos, del más antiguo al más reciente
+     */
+    public List<Event> getEvents() {
+        synchronized (eventLog) {
+            return new ArrayList<>(eventLog);
+        }
+    }
+
+    /**
+     * Pasa las muestras de {@code events} por un controlador nuevo con {@code limits};
+     * con los mismos límites y el registro desde el primer evento reproduce las mismas acciones
+     */
+    public static List<Event> replay(Limits limits, List<Event> events) {
+        AdaptiveQualityController controller = new AdaptiveQualityController(limits);
+        List<Event> replayed = new ArrayList<>(events.size());
+        for (Event event : events) {
+            replayed.add(controller.update(event.sample));
+        }
+        return replayed;
+    }
+}
@@ -0,0 +1,189 @@
+package ndiplayer.oto.utils;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool acotado de Bitmaps ARGB_8888 entregados como préstamos con contador de referencias
+ * Un Bitmap libre se reconfigura al tamaño pedido si su memoria alcanza; solo se crea
+ * uno nuevo al crecer la resolución, así el heap se mantiene plano en régimen estable
+ * (cada préstamo solo añade un handle de pocos bytes)
+ */
+public final class BitmapLeasePool {
+    private static final String TAG = "BitmapLeasePool";
+
+    /**
+     * Préstamo de un Bitmap del pool. Vuelve al pool cuando la última referencia
+     * llama a {@link #release()}; quien necesite el Bitmap más allá de la llamada
+     * en la que lo recibió debe tomar su propia referencia con {@link #retain()}
+     * Cada acquire() entrega un handle nuevo con la generación del slot: un handle de un préstamo
+     * ya devuelto no puede retener ni soltar el Bitmap aunque el pool lo haya vuelto a prestar
+     */
+    public static final class Lease {
+        private final Slot slot;
+        private final int generation;
+
+        Lease(Slot slot, int generation) {
+            this.slot = slot;
+            this.generation = generation;
+        }
+
+        /** null si este préstamo ya se devolvió al pool */
+        public Bitmap getBitmap() {
+            long state = slot.state.get();
+            return Slot.generation(state) == generation && Slot.references(state) > 0 ? slot.bitmap : null;
+        }
+
+        public Lease retain() {
+            long state;
+            do {
+                state = slot.state.get();
+                if (Slot.generation(state) != generation || Slot.references(state) <= 0) {
+                    throw new IllegalStateException("Bitmap ya devuelto al pool");
+                }
+            } while (!slot.state.compareAndSet(state, state + 1));
+            return this;
+        }
+
+        public void release() {
+            long state;
+            do {
+                state = slot.state.get();
+                if (Slot.generation(state) != generation) {
+                    throw new IllegalStateException("Préstamo caducado: el Bitmap ya volvió al pool");
+                }
+                if (Slot.references(state) <= 0) {
+                    throw new IllegalStateException("Bitmap liberado más veces de las retenidas");
+                }
+            } while (!slot.state.compareAndSet(state, state - 1));
+            if (Slot.references(state) == 1) {
+                slot.owner.recycle(slot);
+            }
+        }
+    }
+
+    // Bitmap reutilizable; generación en los 32 bits altos de state y referencias en los bajos
+    static final class Slot {
+        final BitmapLeasePool owner;
+        final AtomicLong state = new AtomicLong(0);
+        Bitmap bitmap;
+
+        Slot(BitmapLeasePool owner) {
+            this.owner = owner;
+        }
+
+        static int generation(long state) {
+            return (int) (state >>> 32);
+        }
+
+        static int references(long state) {
+            return (int) state;
+        }
+
+        // Solo con el slot fuera de la cola de libres y sin referencias
+        Lease issue() {
+            int next = generation(state.get()) + 1;
+            state.set(((long) next << 32) | 1);
+            return new Lease(this, next);
+        }
+    }
+
+    private final int maxBitmaps;
+    private final ArrayBlockingQueue<Slot> freeSlots;
+    private final AtomicInteger created = new AtomicInteger(0);
+    private final AtomicInteger allocations = new AtomicInteger(0);
+    private final AtomicInteger reconfigurations = new AtomicInteger(0);
+
+    public BitmapLeasePool(int maxBitmaps) {
+        this.maxBitmaps = Math.max(2, maxBitmaps);
+        this.freeSlots = new ArrayBlockingQueue<>(this.maxBitmaps);
+    }
+
+    /**
+     * Bitmap de {@code width}x{@code height} con una referencia para quien lo pide,
+     * o null si todos están prestados (el consumidor no ha devuelto los anteriores)
+     * El contenido es el del último uso: quien lo recibe debe sobrescribirlo entero
+     */
+    public Lease acquire(int width, int height) {
+        Slot slot = freeSlots.poll();
+        if (slot == null) {
+            if (created.incrementAndGet() > maxBitmaps) {
+                created.decrementAndGet();
+                return null;
+            }
+            slot = new Slot(this);
+        }
+
+        try {
+            prepare(slot, width, height);
+        } catch (RuntimeException e) {
+            discard(slot);
+            throw e;
+        }
+        return slot.issue();
+    }
+
+    private void prepare(Slot slot, int width, int height) {
+        Bitmap bitmap = slot.bitmap;
+        if (bitmap != null && !bitmap.isRecycled()) {
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                return;
+            }
+            if (bitmap.getAllocationByteCount() >= width * height * 4) {
+                bitmap.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+                reconfigurations.incrementAndGet();
+                return;
+            }
+            bitmap.recycle(); // Demasiado pequeño para el nuevo tamaño
+        }
+
+        slot.bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        allocations.incrementAndGet();
+        Log.d(TAG, "Bitmap " + width + "x" + height + " creado (" + allocations.get() + " en total)");
+    }
+
+    void recycle(Slot slot) {
+        if (!freeSlots.offer(slot)) {
+            discard(slot);
+        }
+    }
+
+    private void discard(Slot slot) {
+        if (slot.bitmap != null) {
+            slot.bitmap.recycle();
+            slot.bitmap = null;
+        }
+        created.decrementAndGet();
+    }
+
+    /**
+     * Bitmaps creados desde el inicio: deja de crecer una vez estable la resolución
+     */
+    public int getAllocations() {
+        return allocations.get();
+    }
+
+    public int getReconfigurations() {
+        return reconfigurations.get();
+    }
+
+    /**
+     * Bitmaps fuera del pool en este momento
+     */
+    public int getLeasedCount() {
+        return created.get() - freeSlots.size();
+    }
+
+    /**
+     * Libera los Bitmaps libres; los prestados vuelven al pool al soltarse
+     */
+    public void clear() {
+        Slot slot;
+        while ((slot = freeSlots.poll()) != null) {
+            discard(slot);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package ndiplayer.oto.utils;
+
+import android.view.Choreographer;
+
+/**
+ * DisplayClock sobre Choreographer: un tick por vsync en el thread del Looper que lo crea
+ * (el de UI), con los frameTimeNanos del propio Choreographer en la base de System.nanoTime()
+ */
+public final class ChoreographerClock implements DisplayClock, Choreographer.FrameCallback {
+    private final Choreographer choreographer;
+    private final long refreshPeriodNanos;
+    private VsyncListener listener;
+    private boolean running;
+
+    /**
+     * Debe crearse en el thread de UI; {@code refreshRate} de Display.getRefreshRate()
+     */
+    public ChoreographerClock(float refreshRate) {
+        this.choreographer = Choreographer.getInstance();
+        this.refreshPeriodNanos = (long) (1_000_000_000L / (refreshRate > 1f ? refreshRate : 60f));
+    }
+
+    @Override
+    public long nowNanos() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public long getRefreshPeriodNanos() {
+        return refreshPeriodNanos;
+    }
+
+    @Override
+    public void start(VsyncListener listener) {
+        this.listener = listener;
+        if (!running) {
+            running = true;
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        choreographer.removeFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!running) {
+            return;
+        }
+        choreographer.postFrameCallback(this); // Pedir el siguiente antes de trabajar en este
+        listener.onVsync(frameTimeNanos);
+    }
+}
@@ -0,0 +1,27 @@
+package ndiplayer.oto.utils;
+
+/**
+ * Reloj de refresco de pantalla que marca cuándo se puede presentar un frame
+ * Es una interfaz para poder sustituir Choreographer por un reloj simulado y
+ * reproducir cadencias (59.94, 29.97, 25...) de forma determinista
+ */
+public interface DisplayClock {
+
+    interface VsyncListener {
+        /**
+         * Un tick de refresco; {@code frameTimeNanos} en la base de {@link #nowNanos()}
+         */
+        void onVsync(long frameTimeNanos);
+    }
+
+    long nowNanos();
+
+    long getRefreshPeriodNanos();
+
+    /**
+     * Empieza a entregar ticks en el thread del reloj hasta {@link #stop()}
+     */
+    void start(VsyncListener listener);
+
+    void stop();
+}
@@ -0,0 +1,70 @@
+package ndiplayer.oto.utils;
+
+/**
+ * Reduce un stream a una cadencia objetivo según el tiempo de medios de cada frame
+ * La rejilla de ranuras de 1/fps se ancla en el primer frame: se acepta el primer frame
+ * de cada ranura, así 59.94 -> 30 toma exactamente uno de cada dos sin importar
+ * cuándo llegó cada frame. Para un solo thread productor; setTargetFps() desde cualquiera
+ */
+public final class FrameCadence {
+    private static final long DISCONTINUITY_NANOS = 1_000_000_000L;
+
+    private long periodNanos;
+    private long toleranceNanos; // Margen por redondeo de timestamps en cadencias iguales
+    private volatile long requestedPeriodNanos;
+    private long nextSlotNanos;
+    private boolean started;
+
+    public FrameCadence(int targetFps) {
+        setTargetFps(targetFps);
+        applyPeriod();
+    }
+
+    /**
+     * Cambia la cadencia; se aplica en el siguiente admit(), reanclando la rejilla
+     */
+    public void setTargetFps(int targetFps) {
+        requestedPeriodNanos = 1_000_000_000L / Math.max(1, targetFps);
+    }
+
+    private void applyPeriod() {
+        periodNanos = requestedPeriodNanos;
+        toleranceNanos = periodNanos / 8;
+        started = false;
+    }
+
+    /**
+     * true si el frame abre una ranura nueva y debe procesarse
+     */
+    public boolean admit(long mediaTimeNanos) {
+        if (requestedPeriodNanos != periodNanos) {
+            applyPeriod();
+        }
+        long ahead = mediaTimeNanos - nextSlotNanos;
+        if (!started || ahead < -periodNanos - toleranceNanos || ahead > DISCONTINUITY_NANOS) {
+            // Primer frame o salto de timestamps: reanclar la rejilla aquí
+            started = true;
+            nextSlotNanos = mediaTimeNanos + periodNanos;
+            return true;
+        }
+
+        if (ahead < -toleranceNanos) {
+            return false;
+        }
+
+        // Saltar las ranuras vacías (frames perdidos en origen) y reservar la siguiente
+        if (ahead >= periodNanos) {
+            nextSlotNanos += (ahead / periodNanos) * periodNanos;
+        }
+        nextSlotNanos += periodNanos;
+        return true;
+    }
+
+    public void reset() {
+        started = false;
+    }
+
+    public long getPeriodNanos() {
+        return periodNanos;
+    }
+}
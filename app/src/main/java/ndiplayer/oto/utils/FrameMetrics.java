@@ -10,7 +10,19 @@ import java.util.concurrent.atomic.AtomicLong;
 public class FrameMetrics {
     private final AtomicInteger processedFrames = new AtomicInteger(0);
     private final AtomicInteger droppedFrames = new AtomicInteger(0);
-    private final AtomicInteger skippedFrames = new AtomicInteger(0);
+    private final AtomicInteger skippedFrames = new AtomicInteger(0); // Saltados a propósito en la admisión
+    private final AtomicInteger deadlineSkippedFrames = new AtomicInteger(0); // De ellos, por no llegar a su deadline
+    private final AtomicInteger rejectedFrames = new AtomicInteger(0); // Rechazados al entrar al procesador
+    
+    // Búfer de jitter: profundidad y retardo actuales, frames que llegaron tarde
+    private volatile int jitterBufferDepth = 0;
+    private volatile double jitterBufferDelayMs = 0.0;
+    private volatile double networkJitterMs = 0.0;
+    private volatile long lateFrames = 0;
+    
+    // Cambio de fuente: tiempo hasta el primer frame presentado
+    private volatile long lastTimeToFirstFrameMs = -1;
+    private final AtomicInteger sourceSwitches = new AtomicInteger(0);
     
     private final AtomicLong totalFrameTime = new AtomicLong(0);
     private final AtomicLong totalProcessingTime = new AtomicLong(0);
@@ -47,6 +59,30 @@ public class FrameMetrics {
         skippedFrames.incrementAndGet();
     }
     
+    /**
+     * Saltado en la admisión porque no terminaría antes de su deadline; cuenta también como skipped
+     */
+    public void incrementDeadlineSkippedFrames() {
+        deadlineSkippedFrames.incrementAndGet();
+        skippedFrames.incrementAndGet();
+    }
+    
+    public void incrementRejectedFrames() {
+        rejectedFrames.incrementAndGet();
+    }
+    
+    public void updateJitterBuffer(int depth, double delayMs, double jitterMs, long late) {
+        jitterBufferDepth = depth;
+        jitterBufferDelayMs = delayMs;
+        networkJitterMs = jitterMs;
+        lateFrames = late;
+    }
+    
+    public void recordTimeToFirstFrame(long timeMs) {
+        lastTimeToFirstFrameMs = timeMs;
+        sourceSwitches.incrementAndGet();
+    }
+    
     public void addFrameTime(long timeMs) {
         totalFrameTime.addAndGet(timeMs);
         
@@ -76,6 +112,41 @@ public class FrameMetrics {
         return skippedFrames.get();
     }
     
+    public int getDeadlineSkippedFrames() {
+        return deadlineSkippedFrames.get();
+    }
+    
+    public int getRejectedFrames() {
+        return rejectedFrames.get();
+    }
+    
+    public int getJitterBufferDepth() {
+        return jitterBufferDepth;
+    }
+    
+    public double getJitterBufferDelayMs() {
+        return jitterBufferDelayMs;
+    }
+    
+    public double getNetworkJitterMs() {
+        return networkJitterMs;
+    }
+    
+    public long getLateFrames() {
+        return lateFrames;
+    }
+    
+    /**
+     * Desde retarget()/startProcessing hasta el primer frame presentado; -1 si aún no hubo
+     */
+    public long getLastTimeToFirstFrameMs() {
+        return lastTimeToFirstFrameMs;
+    }
+    
+    public int getSourceSwitches() {
+        return sourceSwitches.get();
+    }
+    
     public int getCurrentFPS() {
         return currentFPS;
     }
@@ -136,6 +207,12 @@ public class FrameMetrics {
         processedFrames.set(0);
         droppedFrames.set(0);
         skippedFrames.set(0);
+        deadlineSkippedFrames.set(0);
+        rejectedFrames.set(0);
+        jitterBufferDepth = 0;
+        jitterBufferDelayMs = 0.0;
+        networkJitterMs = 0.0;
+        lateFrames = 0;
         totalFrameTime.set(0);
         totalProcessingTime.set(0);
         currentFPS = 0;
@@ -154,11 +231,14 @@ public class FrameMetrics {
     @Override
     public String toString() {
         return String.format(
-            "FrameMetrics{FPS=%d, Processed=%d, Dropped=%d (%.1f%%), Skipped=%d (%.1f%%), AvgFrame=%.1fms, AvgProc=%.1fms}",
+            "FrameMetrics{FPS=%d, Processed=%d, Dropped=%d (%.1f%%), Skipped=%d (%.1f%%, deadline %d), Rejected=%d, Jitter=%.1fms (buffer %d, %.1fms, late %d), TTFF=%dms, AvgFrame=%.1fms, AvgProc=%.1fms}",
             getCurrentFPS(),
             getProcessedFrames(),
             getDroppedFrames(), getDropRate(),
-            getSkippedFrames(), getSkipRate(),
+            getSkippedFrames(), getSkipRate(), getDeadlineSkippedFrames(),
+            getRejectedFrames(),
+            getNetworkJitterMs(), getJitterBufferDepth(), getJitterBufferDelayMs(), getLateFrames(),
+            getLastTimeToFirstFrameMs(),
             getRecentAverageFrameTime(),
             getRecentAverageProcessingTime()
         );
@@ -0,0 +1,251 @@
+package ndiplayer.oto.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Anillo acotado sin locks para pasar frames entre threads (secuencia por celda)
+ * Pensado para un productor y un consumidor: con {@link #offerOverwrite} el productor
+ * descarta el frame más antiguo en vez de esperar y cuenta cada sobrescritura
+ * Las celdas se crean una vez; entregar y recoger un frame no crea objetos
+ * offer, offerOverwrite y poll siguen siendo correctos con varios threads, así sirve también
+ * de lista libre y de cola entre etapas con varios workers; las esperas aparcan sin locks
+ */
+public final class FrameRing<T> {
+    private static final int MAX_WAITERS = 8;
+    private static final long UNANNOUNCED_PARK_NANOS = 1_000_000; // Sin hueco para anunciarse: reintento cada 1ms
+
+    private static final class Cell<T> {
+        volatile long sequence;
+        T item; // Publicado por la escritura volatile de sequence
+    }
+
+    /**
+     * Threads aparcados esperando al anillo, sin nodos por espera
+     * Quien cambia el estado despierta a uno; si no hay hueco para anunciarse
+     * el thread aparca con un límite corto y vuelve a comprobar
+     */
+    private static final class Waiters {
+        private final AtomicReferenceArray<Thread> threads = new AtomicReferenceArray<>(MAX_WAITERS);
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        int announce(Thread thread) {
+            for (int i = 0; i < MAX_WAITERS; i++) {
+                if (threads.compareAndSet(i, null, thread)) {
+                    count.incrementAndGet();
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        void withdraw(int index, Thread thread) {
+            if (index >= 0 && threads.compareAndSet(index, thread, null)) {
+                count.decrementAndGet();
+            }
+        }
+
+        void wakeOne() {
+            if (count.get() == 0) {
+                return;
+            }
+            for (int i = 0; i < MAX_WAITERS; i++) {
+                Thread thread = threads.get(i);
+                if (thread != null && threads.compareAndSet(i, thread, null)) {
+                    count.decrementAndGet();
+                    LockSupport.unpark(thread);
+                    return;
+                }
+            }
+        }
+    }
+
+    private final Cell<T>[] cells;
+    private final int capacity;
+    private final AtomicLong enqueuePosition = new AtomicLong(0);
+    private final AtomicLong dequeuePosition = new AtomicLong(0);
+    private final AtomicLong overwrites = new AtomicLong(0);
+    private final Waiters waitingConsumers = new Waiters();
+    private final Waiters waitingProducers = new Waiters();
+
+    @SuppressWarnings("unchecked")
+    public FrameRing(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.cells = new Cell[this.capacity];
+        for (int i = 0; i < this.capacity; i++) {
+            cells[i] = new Cell<>();
+            cells[i].sequence = i;
+        }
+    }
+
+    /**
+     * Encola sin esperar. Devuelve false si el anillo está lleno
+     */
+    public boolean offer(T item) {
+        while (true) {
+            long position = enqueuePosition.get();
+            Cell<T> cell = cells[(int) (position % capacity)];
+            long difference = cell.sequence - position;
+
+            if (difference == 0) {
+                if (enqueuePosition.compareAndSet(position, position + 1)) {
+                    publish(cell, item, position);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false; // La celda aún guarda el frame de la vuelta anterior
+            }
+            // difference > 0: otro productor avanzó, releer la posición
+        }
+    }
+
+    /**
+     * Como {@link #offer(Object)} pero aparca al productor hasta {@code timeoutNanos}
+     * esperando hueco. Devuelve false si se agotó el tiempo
+     */
+    public boolean offer(T item, long timeoutNanos) throws InterruptedException {
+        if (offer(item)) {
+            return true;
+        }
+        if (timeoutNanos <= 0) {
+            return false;
+        }
+
+        Thread current = Thread.currentThread();
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (true) {
+            int index = waitingProducers.announce(current);
+            try {
+                if (offer(item)) { // Reintentar tras anunciarse para no perder un unpark
+                    return true;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                LockSupport.parkNanos(this, index >= 0 ? remaining : Math.min(remaining, UNANNOUNCED_PARK_NANOS));
+            } finally {
+                waitingProducers.withdraw(index, current);
+            }
+        }
+    }
+
+    /**
+     * Encola siempre: mientras esté lleno saca el frame más antiguo y se lo pasa a {@code evicted}
+     * para que el productor lo recicle. Con varios productores otro puede ocupar el hueco
+     * liberado, así que puede descartar más de uno. Devuelve cuántos descartó
+     */
+    public int offerOverwrite(T item, Consumer<? super T> evicted) {
+        int count = 0;
+        while (true) {
+            long position = enqueuePosition.get();
+            Cell<T> cell = cells[(int) (position % capacity)];
+            long difference = cell.sequence - position;
+
+            if (difference == 0) {
+                if (enqueuePosition.compareAndSet(position, position + 1)) {
+                    publish(cell, item, position);
+                    return count;
+                }
+            } else if (difference < 0) {
+                T oldest = poll();
+                if (oldest != null) {
+                    overwrites.incrementAndGet();
+                    count++;
+                    evicted.accept(oldest);
+                } else {
+                    // Un consumidor o productor está a mitad de mover la celda: cede y reintenta
+                    Thread.yield();
+                }
+            }
+        }
+    }
+
+    private void publish(Cell<T> cell, T item, long position) {
+        cell.item = item;
+        cell.sequence = position + 1;
+        waitingConsumers.wakeOne();
+    }
+
+    /**
+     * Saca el frame más antiguo o null si está vacío
+     */
+    public T poll() {
+        while (true) {
+            long position = dequeuePosition.get();
+            Cell<T> cell = cells[(int) (position % capacity)];
+            long difference = cell.sequence - (position + 1);
+
+            if (difference == 0) {
+                if (dequeuePosition.compareAndSet(position, position + 1)) {
+                    T item = cell.item;
+                    cell.item = null;
+                    cell.sequence = position + capacity; // Libre para la siguiente vuelta
+                    waitingProducers.wakeOne();
+                    return item;
+                }
+            } else if (difference < 0) {
+                return null;
+            }
+            // difference > 0: otro consumidor (o el productor descartando) se adelantó
+        }
+    }
+
+    /**
+     * Como {@link #poll()} pero aparca al consumidor hasta {@code timeoutNanos}
+     * Cada frame publicado despierta a un consumidor en espera
+     */
+    public T poll(long timeoutNanos) throws InterruptedException {
+        T item = poll();
+        if (item != null || timeoutNanos <= 0) {
+            return item;
+        }
+
+        Thread current = Thread.currentThread();
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (true) {
+            int index = waitingConsumers.announce(current);
+            try {
+                item = poll(); // Releer tras anunciarse para no perder un unpark
+                if (item != null) {
+                    if (size() > 0) {
+                        waitingConsumers.wakeOne(); // El aviso pudo ser para este thread: pasarlo a otro
+                    }
+                    return item;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                LockSupport.parkNanos(this, index >= 0 ? remaining : Math.min(remaining, UNANNOUNCED_PARK_NANOS));
+            } finally {
+                waitingConsumers.withdraw(index, current);
+            }
+        }
+    }
+
+    /**
+     * Frames descartados por {@link #offerOverwrite} desde la creación
+     */
+    public long getOverwrites() {
+        return overwrites.get();
+    }
+
+    public int size() {
+        long size = enqueuePosition.get() - dequeuePosition.get();
+        return (int) Math.max(0, Math.min(capacity, size));
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,321 @@
+package ndiplayer.oto.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Búfer de jitter por tiempo de medios: cada frame sale en
+ * {@code timestamp + tránsito mínimo + retardo}, así las ráfagas de la red se reparten
+ * a la cadencia del emisor
+ * El retardo sigue al jitter medido entre llegadas (sube al momento, baja despacio) y
+ * nunca pasa del objetivo de latencia: en cable se queda casi en 0, en Wi-Fi crece hasta el objetivo
+ * offer() y requestReset() desde cualquier thread; take()/poll()/clear() desde un único thread de salida
+ */
+public final class JitterBuffer<T> {
+    private static final long DISCONTINUITY_NANOS = 1_000_000_000L; // Salto de timestamps: reiniciar
+    private static final int TRANSIT_HISTORY = 128; // ~2s a 60fps para el tránsito mínimo
+    private static final int JITTER_MULTIPLIER = 3;
+    private static final int JITTER_GAIN = 16;    // Media exponencial del jitter (como RFC 3550)
+    private static final int DECAY_FRAMES = 64;   // El retardo baja 1/64 de la diferencia por frame
+
+    private static final class Entry<T> {
+        T item;
+        long mediaTimeNanos;
+        long arrivalNanos;
+    }
+
+    private final FrameRing<Entry<T>> intake;      // Captura -> thread de salida
+    private final FrameRing<Entry<T>> freeEntries; // Tantas como huecos en intake y ventana
+    private final Consumer<T> discard;             // Frames que ya no van a salir
+
+    // Solo en el thread de salida
+    private final Entry<T>[] window; // Pendientes ordenados por tiempo de medios
+    private int windowCount;
+    private final long[] transits = new long[TRANSIT_HISTORY];
+    private int transitCount;
+    private int transitIndex;
+    private long baseTransitNanos;
+    private long lastTransitNanos;
+    private long lastReleasedMediaNanos;
+    private boolean started;
+    private boolean released;
+
+    private volatile boolean resetRequested;
+    private volatile long latencyTargetNanos;
+    private volatile long delayNanos;
+    private volatile long jitterNanos;
+    private volatile int depth;
+    private volatile long lateFrames;
+    private volatile long discardedFrames;
+
+    /**
+     * @param capacity        frames que puede ordenar la ventana; llena, sale el más antiguo aunque no toque
+     *                        (otros tantos pueden esperar en la entrada, ver {@link #getMaxRetained()})
+     * @param latencyTargetMs techo del retardo añadido
+     * @param discard         recibe los frames desordenados y los que descartan requestReset()
+     *                        o un salto de timestamps
+     */
+    @SuppressWarnings("unchecked")
+    public JitterBuffer(int capacity, int latencyTargetMs, Consumer<T> discard) {
+        int slots = Math.max(1, capacity);
+        this.window = new Entry[slots];
+        this.intake = new FrameRing<>(slots);
+        int entries = slots * 2; // Intake + ventana
+        this.freeEntries = new FrameRing<>(entries);
+        for (int i = 0; i < entries; i++) {
+            freeEntries.offer(new Entry<>());
+        }
+        this.discard = discard;
+        setLatencyTarget(latencyTargetMs);
+    }
+
+    public void setLatencyTarget(int latencyTargetMs) {
+        this.latencyTargetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, latencyTargetMs));
+    }
+
+    /**
+     * Entrega un frame con su tiempo de medios en ns. false si el búfer está lleno y
+     * el frame sigue siendo de quien llama
+     */
+    public boolean offer(T item, long mediaTimeNanos) {
+        return offer(item, mediaTimeNanos, System.nanoTime());
+    }
+
+    public boolean offer(T item, long mediaTimeNanos, long arrivalNanos) {
+        Entry<T> entry = freeEntries.poll();
+        if (entry == null) {
+            return false;
+        }
+        entry.item = item;
+        entry.mediaTimeNanos = mediaTimeNanos;
+        entry.arrivalNanos = arrivalNanos;
+        if (!intake.offer(entry)) {
+            // La salida va retrasada y la entrada está llena: el frame vuelve a quien llama
+            entry.item = null;
+            freeEntries.offer(entry);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Cambio de fuente: el thread de salida descarta lo que ya estaba en la ventana
+     * y vuelve a medir tránsito y jitter desde el siguiente frame
+     */
+    public void requestReset() {
+        resetRequested = true;
+    }
+
+    /**
+     * Espera hasta {@code timeoutNanos} al siguiente frame que toque; null si no llega a tiempo
+     */
+    public T take(long timeoutNanos) throws InterruptedException {
+        long now = System.nanoTime();
+        long deadline = now + timeoutNanos;
+        while (true) {
+            T item = poll(now);
+            if (item != null) {
+                return item;
+            }
+
+            long wait = deadline - now;
+            if (windowCount > 0) {
+                wait = Math.min(wait, playoutTime(window[0]) - now);
+            }
+            if (wait <= 0 && now - deadline >= 0) {
+                return null;
+            }
+            if (wait > 0 && windowCount < window.length) {
+                Entry<T> entry = intake.poll(wait);
+                if (entry != null) {
+                    insert(entry);
+                }
+            }
+            now = System.nanoTime();
+        }
+    }
+
+    /**
+     * El frame más antiguo si ya toca en {@code nowNanos}; null si aún no
+     */
+    public T poll(long nowNanos) {
+        if (resetRequested) {
+            resetRequested = false;
+            flushWindow(discard);
+            restart();
+        }
+
+        // Solo lo que cabe en la ventana; el resto espera en la entrada al siguiente poll
+        Entry<T> entry;
+        while (windowCount < window.length && (entry = intake.poll()) != null) {
+            insert(entry);
+        }
+        if (windowCount == 0) {
+            return null;
+        }
+        if (windowCount < window.length && playoutTime(window[0]) - nowNanos > 0) {
+            return null;
+        }
+
+        Entry<T> head = removeHead();
+        lastReleasedMediaNanos = head.mediaTimeNanos;
+        released = true;
+        T item = head.item;
+        head.item = null;
+        freeEntries.offer(head);
+        return item;
+    }
+
+    /**
+     * Vacía el búfer y olvida las estadísticas. Solo con el thread de salida parado
+     */
+    public void clear(Consumer<T> sink) {
+        Entry<T> entry;
+        while ((entry = intake.poll()) != null) {
+            sink.accept(entry.item);
+            entry.item = null;
+            freeEntries.offer(entry);
+        }
+        flushWindow(sink);
+        restart();
+    }
+
+    private void flushWindow(Consumer<T> sink) {
+        for (int i = 0; i < windowCount; i++) {
+            sink.accept(window[i].item);
+            window[i].item = null;
+            freeEntries.offer(window[i]);
+            window[i] = null;
+        }
+        windowCount = 0;
+        depth = 0;
+    }
+
+    private long playoutTime(Entry<T> entry) {
+        return entry.mediaTimeNanos + baseTransitNanos + delayNanos;
+    }
+
+    // Solo con hueco en la ventana: poll() y take() no sacan de la entrada si está llena
+    private void insert(Entry<T> entry) {
+        long transit = entry.arrivalNanos - entry.mediaTimeNanos;
+        if (!started || Math.abs(transit - baseTransitNanos) > DISCONTINUITY_NANOS) {
+            // Primer frame o cambio de fuente: el búfer vuelve a medir desde aquí
+            // Lo que queda en la ventana es de la línea de tiempo anterior y no se puede ordenar con este
+            flushWindow(discard);
+            restart();
+            started = true;
+            baseTransitNanos = transit;
+            lastTransitNanos = transit;
+        }
+
+        if (released && entry.mediaTimeNanos <= lastReleasedMediaNanos) {
+            // Llegó detrás de uno ya entregado: no puede salir en orden
+            lateFrames++;
+            discardedFrames++;
+            T item = entry.item;
+            entry.item = null;
+            freeEntries.offer(entry);
+            discard.accept(item);
+            return;
+        }
+
+        updateEstimates(transit);
+        if (transit - baseTransitNanos > delayNanos) {
+            lateFrames++; // Llegó después de su hora de salida
+        }
+
+        int position = windowCount;
+        while (position > 0 && window[position - 1].mediaTimeNanos > entry.mediaTimeNanos) {
+            window[position] = window[position - 1];
+            position--;
+        }
+        window[position] = entry;
+        windowCount++;
+        depth = windowCount;
+    }
+
+    private Entry<T> removeHead() {
+        Entry<T> head = window[0];
+        for (int i = 1; i < windowCount; i++) {
+            window[i - 1] = window[i];
+        }
+        window[--windowCount] = null;
+        depth = windowCount;
+        return head;
+    }
+
+    private void updateEstimates(long transit) {
+        // Jitter entre llegadas: variación del tránsito de un frame al siguiente
+        long variation = Math.abs(transit - lastTransitNanos);
+        lastTransitNanos = transit;
+        long jitter = jitterNanos + (variation - jitterNanos) / JITTER_GAIN;
+        jitterNanos = jitter;
+
+        // Tránsito mínimo reciente: el frame que llega más rápido sale con el retardo justo
+        long evicted = transits[transitIndex];
+        transits[transitIndex] = transit;
+        transitIndex = (transitIndex + 1) % TRANSIT_HISTORY;
+        if (transitCount < TRANSIT_HISTORY) {
+            transitCount++;
+        }
+        if (transit < baseTransitNanos) {
+            baseTransitNanos = transit;
+        } else if (transitCount == TRANSIT_HISTORY && evicted == baseTransitNanos) {
+            long min = Long.MAX_VALUE;
+            for (long value : transits) {
+                min = Math.min(min, value);
+            }
+            baseTransitNanos = min; // Sigue la deriva entre el reloj del emisor y el nuestro
+        }
+
+        long desired = Math.min(latencyTargetNanos, jitter * JITTER_MULTIPLIER);
+        long delay = delayNanos;
+        if (desired > delay) {
+            delay = desired;
+        } else {
+            delay -= (delay - desired) / DECAY_FRAMES;
+        }
+        delayNanos = Math.min(delay, latencyTargetNanos);
+    }
+
+    private void restart() {
+        started = false;
+        released = false;
+        transitCount = 0;
+        transitIndex = 0;
+        jitterNanos = 0;
+        delayNanos = 0;
+    }
+
+    /** Frames retenidos esperando su hora de salida */
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getCapacity() {
+        return window.length;
+    }
+
+    /** Frames que puede tener a la vez entre la entrada y la ventana */
+    public int getMaxRetained() {
+        return window.length + intake.capacity();
+    }
+
+    public double getDelayMs() {
+        return delayNanos / 1_000_000.0;
+    }
+
+    public double getJitterMs() {
+        return jitterNanos / 1_000_000.0;
+    }
+
+    /** Frames que llegaron después de su hora de salida, incluidos los descartados */
+    public long getLateFrames() {
+        return lateFrames;
+    }
+
+    /** Frames descartados por llegar detrás de uno ya entregado */
+    public long getDiscardedFrames() {
+        return discardedFrames;
+    }
+}
@@ -1,6 +1,6 @@
 package ndiplayer.oto.utils;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
@@ -8,16 +8,17 @@ import java.util.function.Supplier;
 /**
  * Pool de objetos thread-safe para evitar allocaciones constantes
  * Optimizado para alto rendimiento en dispositivos de bajo recursos
+ * La cola es un array fijo: devolver un objeto no crea nodos por llamada
  */
 public class ObjectPool<T> {
-    private final ConcurrentLinkedQueue<T> pool;
+    private final ArrayBlockingQueue<T> pool;
     private final Supplier<T> factory;
     private final Consumer<T> resetFunction;
     private final AtomicInteger size;
     private final int maxSize;
     
     public ObjectPool(Supplier<T> factory, Consumer<T> resetFunction, int maxSize) {
-        this.pool = new ConcurrentLinkedQueue<>();
+        this.pool = new ArrayBlockingQueue<>(Math.max(1, maxSize));
         this.factory = factory;
         this.resetFunction = resetFunction;
         this.size = new AtomicInteger(0);
@@ -62,8 +63,7 @@ public class ObjectPool<T> {
         }
         
         // Solo agregar si no hemos excedido el tamaño máximo
-        if (size.get() < maxSize) {
-            pool.offer(object);
+        if (size.get() < maxSize && pool.offer(object)) {
             size.incrementAndGet();
         }
         // Si el pool está lleno, dejar que el GC maneje el objeto
@@ -0,0 +1,208 @@
+package ndiplayer.oto.utils;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Conversión de un frame repartida en bandas de filas sobre el pool COMPUTE de {@link TaskScheduler}
+ * El thread que llama convierte la primera banda y después las que ningún worker haya empezado,
+ * así un pool ocupado o cerrado solo hace el frame más lento, nunca lo deja a medias
+ * Un fallo en cualquier banda se relanza en el thread que llama, nunca se devuelve un frame a medias
+ */
+public final class ParallelPixelConverter {
+    // Por debajo de este alto de banda el coste de despertar workers supera la ganancia
+    private static final int MIN_ROWS_PER_BAND = 32;
+    private static final long WAIT_SLICE_NANOS = 2_000_000L; // Por si el último unpark llega antes del park
+
+    /**
+     * Origen que sabe convertir sus propias filas (p. ej. un frame nativo prestado);
+     * se llama a la vez desde varios threads con bandas distintas
+     */
+    public interface RowSource {
+        void convertRows(int[] dst, int dstWidth, int dstHeight, int rowStart, int rowEnd);
+    }
+
+    private final int threads;
+    private final TaskScheduler scheduler; // null con un solo thread
+    private final AtomicBoolean released = new AtomicBoolean(false);
+    private final Band[] bands;
+    private final AtomicInteger pendingBands = new AtomicInteger(0);
+    private final AtomicReference<Throwable> bandError = new AtomicReference<>();
+    private volatile Thread waiter;
+
+    // Frame en curso, publicado a los workers por execute()
+    private RowSource rowSource; // null = convertir desde src con PixelConverter
+    private int fourCC;
+    private byte[] src;
+    private int srcOffset;
+    private int srcStride;
+    private int srcWidth;
+    private int srcHeight;
+    private int[] dst;
+    private int dstWidth;
+    private int dstHeight;
+
+    public ParallelPixelConverter(int threads) {
+        this.threads = Math.max(1, threads);
+        this.bands = new Band[this.threads];
+        for (int i = 0; i < this.threads; i++) {
+            bands[i] = new Band();
+        }
+
+        // Se suelta en shutdown()
+        this.scheduler = this.threads > 1 ? TaskScheduler.acquire() : null;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Convierte el frame completo y vuelve cuando todas las bandas han terminado
+     */
+    public void convert(int fourCC, byte[] src, int srcStride, int srcWidth, int srcHeight,
+                        int[] dst, int dstWidth, int dstHeight) {
+        convert(fourCC, src, 0, srcStride, srcWidth, srcHeight, dst, dstWidth, dstHeight);
+    }
+
+    /**
+     * Variante con el frame empezando en {@code srcOffset} dentro de {@code src}
+     */
+    public synchronized void convert(int fourCC, byte[] src, int srcOffset, int srcStride, int srcWidth, int srcHeight,
+                                     int[] dst, int dstWidth, int dstHeight) {
+        int bandCount = Math.min(threads, Math.max(1, dstHeight / MIN_ROWS_PER_BAND));
+        if (bandCount == 1 || scheduler == null || released.get()) {
+            PixelConverter.convertRows(fourCC, src, srcOffset, srcStride, srcWidth, srcHeight,
+                dst, dstWidth, dstHeight, 0, dstHeight);
+            return;
+        }
+
+        // Validar y preparar tablas antes de repartir: los fallos de entrada salen sin despertar workers
+        PixelConverter.checkBuffers(fourCC, src, srcOffset, srcStride, srcWidth, srcHeight, dst, dstWidth, dstHeight);
+        ScaleTables.obtain(srcWidth, srcHeight, dstWidth, dstHeight);
+
+        this.rowSource = null;
+        this.fourCC = fourCC;
+        this.src = src;
+        this.srcOffset = srcOffset;
+        this.srcStride = srcStride;
+        this.srcWidth = srcWidth;
+        this.srcHeight = srcHeight;
+        this.dst = dst;
+        this.dstWidth = dstWidth;
+        this.dstHeight = dstHeight;
+        runBands(bandCount);
+    }
+
+    /**
+     * Convierte todas las filas de {@code dst} desde {@code source}, repartidas igual que un array
+     */
+    public synchronized void convert(RowSource source, int[] dst, int dstWidth, int dstHeight) {
+        int bandCount = Math.min(threads, Math.max(1, dstHeight / MIN_ROWS_PER_BAND));
+        if (bandCount == 1 || scheduler == null || released.get()) {
+            source.convertRows(dst, dstWidth, dstHeight, 0, dstHeight);
+            return;
+        }
+
+        this.rowSource = source;
+        this.dst = dst;
+        this.dstWidth = dstWidth;
+        this.dstHeight = dstHeight;
+        runBands(bandCount);
+    }
+
+    private void runBands(int bandCount) {
+        int rowsPerBand = dstHeight / bandCount;
+        for (int i = 0; i < bandCount; i++) {
+            bands[i].rowStart = i * rowsPerBand;
+            bands[i].rowEnd = i == bandCount - 1 ? dstHeight : (i + 1) * rowsPerBand;
+        }
+
+        waiter = Thread.currentThread();
+        bandError.set(null);
+        pendingBands.set(bandCount - 1);
+        for (int i = 0; i < bandCount; i++) {
+            bands[i].claimed.set(false);
+        }
+        for (int i = 1; i < bandCount; i++) {
+            if (!scheduler.tryExecute(TaskScheduler.Pool.COMPUTE, bands[i])) {
+                break; // Pool lleno o cerrado: el resto lo convierte este thread
+            }
+        }
+
+        try {
+            bands[0].convert();
+        } catch (Throwable t) {
+            bandError.compareAndSet(null, t); // Relanzar solo cuando ningún worker escriba ya en dst
+        }
+
+        // Bandas que siguen en la cola del pool (o que el cierre descartó): mejor hacerlas aquí que esperar
+        for (int i = 1; i < bandCount; i++) {
+            bands[i].run();
+        }
+
+        // Esperar a las que ya empezó un worker sin bloquear en un monitor
+        while (pendingBands.get() > 0) {
+            LockSupport.parkNanos(this, WAIT_SLICE_NANOS);
+        }
+
+        this.rowSource = null;
+        this.src = null;
+        this.dst = null;
+
+        Throwable error = bandError.getAndSet(null);
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+        if (error != null) {
+            throw new IllegalStateException("Error convirtiendo una banda", error);
+        }
+    }
+
+    /**
+     * Suelta el planificador; las conversiones siguientes usan solo el thread que llama
+     */
+    public void shutdown() {
+        if (scheduler != null && released.compareAndSet(false, true)) {
+            TaskScheduler.release();
+        }
+    }
+
+    // Una banda que se quedó en la cola del pool puede correr en un frame posterior:
+    // si la reclama antes que la nueva entrada convierte ese frame, y si no, no hace nada
+    private final class Band implements Runnable {
+        final AtomicBoolean claimed = new AtomicBoolean(false); // La ejecuta una sola vez un worker o quien espera
+        int rowStart;
+        int rowEnd;
+
+        void convert() {
+            if (rowSource != null) {
+                rowSource.convertRows(dst, dstWidth, dstHeight, rowStart, rowEnd);
+                return;
+            }
+            PixelConverter.convertRows(fourCC, src, srcOffset, srcStride, srcWidth, srcHeight,
+                dst, dstWidth, dstHeight, rowStart, rowEnd);
+        }
+
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                convert();
+            } catch (Throwable t) {
+                bandError.compareAndSet(null, t); // El primero; quien espera lo relanza
+            } finally {
+                if (pendingBands.decrementAndGet() == 0) {
+                    LockSupport.unpark(waiter);
+                }
+            }
+        }
+    }
+}
@@ -81,7 +81,8 @@ public class PerformanceManager {
     private final Context context;
     private final SharedPreferences prefs;
     private DeviceClass deviceClass;
-    private PerformanceConfig currentConfig;
+    private volatile PerformanceConfig currentConfig; // Leída también desde el thread de métricas del procesador
+    private volatile AdaptiveQualityController qualityController;
     
     public PerformanceManager(Context context) {
         this.context = context;
@@ -90,6 +91,7 @@ public class PerformanceManager {
         // Detectar clase de dispositivo
         this.deviceClass = detectDeviceClass();
         this.currentConfig = getConfigForDeviceClass(deviceClass);
+        this.qualityController = new AdaptiveQualityController(currentConfig);
         
         Log.i(TAG, "Dispositivo clasificado como: " + deviceClass);
         Log.i(TAG, "Configuración aplicada: " + configToString(currentConfig));
@@ -193,6 +195,7 @@ public class PerformanceManager {
               " @ " + customConfig.targetFPS + " FPS");
         
         this.currentConfig = customConfig;
+        this.qualityController = new AdaptiveQualityController(customConfig);
         
         // Guardar configuración personalizada
         SharedPreferences.Editor editor = prefs.edit();
@@ -217,6 +220,7 @@ public class PerformanceManager {
         Log.d(TAG, "Restaurando configuración automática para dispositivo: " + deviceClass);
         
         this.currentConfig = getConfigForDeviceClass(deviceClass);
+        this.qualityController = new AdaptiveQualityController(currentConfig);
         
         SharedPreferences.Editor editor = prefs.edit();
         editor.putBoolean("custom_config", false);
@@ -245,26 +249,32 @@ public class PerformanceManager {
             );
             
             this.currentConfig = savedConfig;
+            this.qualityController = new AdaptiveQualityController(savedConfig);
             Log.i(TAG, "Configuración personalizada cargada");
         }
     }
     
+    /**
+     * Controlador de calidad de la configuración actual (se recrea al cambiarla)
+     */
+    public AdaptiveQualityController getQualityController() {
+        return qualityController;
+    }
+    
     /**
      * Optimización adaptativa basada en métricas en tiempo real
+     * Un paso del controlador con la ventana desde la llamada anterior; devuelve la
+     * decisión a aplicar (escala, FPS objetivo y ancho de banda) o null sin calidad adaptativa
      */
-    public void adaptiveOptimization(FrameMetrics metrics) {
-        if (!currentConfig.useAdaptiveQuality) return;
-        
-        double avgFrameTime = metrics.getRecentAverageFrameTime();
-        double targetFrameTime = 1000.0 / currentConfig.targetFPS;
-        double dropRate = metrics.getDropRate();
+    public AdaptiveQualityController.Event adaptiveOptimization(FrameMetrics metrics, int queueDepth, int queueCapacity) {
+        if (!currentConfig.useAdaptiveQuality) return null;
         
-        // Si el rendimiento está por debajo del objetivo
-        if (avgFrameTime > targetFrameTime * 1.3 || dropRate > 10.0) {
-            // Reducir calidad o resolución
-            Log.d(TAG, "Rendimiento bajo detectado, optimizando...");
-            // Implementar lógica de optimización automática
+        AdaptiveQualityController controller = qualityController;
+        AdaptiveQualityController.Event event = controller.update(controller.sample(metrics, queueDepth, queueCapacity));
+        if (event.action != AdaptiveQualityController.Action.HOLD) {
+            Log.d(TAG, "Rendimiento: " + event.action + " -> " + event.toLine());
         }
+        return event;
     }
     
     private String configToString(PerformanceConfig config) {
@@ -0,0 +1,387 @@
+package ndiplayer.oto.utils;
+
+import android.os.Debug;
+import android.util.Log;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import ndiplayer.oto.service.FrameDescriptor;
+
+/**
+ * Benchmarks de la ruta de conversión ejecutables en el propio dispositivo
+ * Miden throughput y allocaciones por frame del thread que ejecuta el kernel
+ */
+public final class PipelineBenchmark {
+    private static final String TAG = "PipelineBenchmark";
+    private static final int WARMUP_FRAMES = 5;
+    private static final int HANDOFF_CAPACITY = 3; // Igual que FRAME_QUEUE_SIZE de NDIStreamProcessor
+
+    /**
+     * Resultado de un kernel medido
+     */
+    public static final class Result {
+        public final String name;
+        public final int frames;
+        public final double msPerFrame;
+        public final double allocationsPerFrame;
+
+        Result(String name, int frames, double msPerFrame, double allocationsPerFrame) {
+            this.name = name;
+            this.frames = frames;
+            this.msPerFrame = msPerFrame;
+            this.allocationsPerFrame = allocationsPerFrame;
+        }
+
+        public double framesPerSecond() {
+            return msPerFrame > 0 ? 1000.0 / msPerFrame : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s: %.2f ms/frame (%.1f FPS), %.1f allocs/frame",
+                name, msPerFrame, framesPerSecond(), allocationsPerFrame);
+        }
+    }
+
+    private PipelineBenchmark() {
+    }
+
+    /**
+     * Compara el kernel UYVY actual con la implementación anterior (int[3] por píxel)
+     */
+    public static String runUyvyBenchmark(int width, int height, int frames) {
+        byte[] source = createUyvyPattern(width, height);
+        int[] pixels = new int[width * height];
+
+        Result legacy = measure("UYVY legacy", frames,
+            () -> legacyUyvyToArgb(source, pixels, width, height, width, height));
+        Result current = measure("UYVY PixelConverter", frames,
+            () -> PixelConverter.uyvyToArgb(source, width * 2, width, height, pixels, width, height));
+
+        double speedup = current.msPerFrame > 0 ? legacy.msPerFrame / current.msPerFrame : 0.0;
+        String report = String.format(Locale.US, "UYVY %dx%d, %d frames\n%s\n%s\nMejora: %.2fx",
+            width, height, frames, legacy, current, speedup);
+
+        Log.i(TAG, report.replace('\n', ' '));
+        return report;
+    }
+
+    /**
+     * Escalado de la conversión por bandas: 720p, 1080p y 2160p con 1, 2, 4 y 8 threads
+     */
+    public static String runParallelBenchmark(int frames) {
+        int[][] resolutions = {{1280, 720}, {1920, 1080}, {3840, 2160}};
+        int[] threadCounts = {1, 2, 4, 8};
+        int[] formats = {FrameDescriptor.FOURCC_UYVY, FrameDescriptor.FOURCC_BGRA};
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "Conversión por bandas, %d frames, %d cores\n",
+            frames, Runtime.getRuntime().availableProcessors()));
+
+        for (int[] resolution : resolutions) {
+            int width = resolution[0];
+            int height = resolution[1];
+            int[] pixels = new int[width * height];
+
+            for (int fourCC : formats) {
+                int stride = FrameDescriptor.packedStride(width, fourCC);
+                byte[] source = fourCC == FrameDescriptor.FOURCC_UYVY
+                    ? createUyvyPattern(width, height)
+                    : createBgraPattern(width, height);
+                report.append(String.format(Locale.US, "%s %dp:", fourCC == FrameDescriptor.FOURCC_UYVY ? "UYVY" : "BGRA", height));
+
+                double baseline = 0;
+                for (int threads : threadCounts) {
+                    ParallelPixelConverter converter = new ParallelPixelConverter(threads);
+                    try {
+                        Result result = measure(threads + "T", frames,
+                            () -> converter.convert(fourCC, source, stride, width, height, pixels, width, height));
+                        if (threads == 1) {
+                            baseline = result.msPerFrame;
+                        }
+                        report.append(String.format(Locale.US, " %dT %.1fms (%.2fx)", threads, result.msPerFrame,
+                            result.msPerFrame > 0 ? baseline / result.msPerFrame : 0.0));
+                    } finally {
+                        converter.shutdown();
+                    }
+                }
+                report.append('\n');
+            }
+        }
+
+        String result = report.toString().trim();
+        Log.i(TAG, result.replace('\n', ' '));
+        return result;
+    }
+
+    /**
+     * Entrega captura -> procesamiento con un productor y un consumidor compitiendo:
+     * cola bloqueante + ObjectPool (implementación anterior) frente a FrameRing
+     * El productor no espera nunca; al llenarse se descarta el frame más antiguo
+     */
+    public static String runHandoffBenchmark(int handoffs) {
+        String report = String.format(Locale.US, "Entrega entre threads, %d frames, capacidad %d\n%s\n%s",
+            handoffs, HANDOFF_CAPACITY,
+            measureHandoff(new QueueHandoff(HANDOFF_CAPACITY), handoffs),
+            measureHandoff(new RingHandoff(HANDOFF_CAPACITY), handoffs));
+
+        Log.i(TAG, report.replace('\n', ' '));
+        return report;
+    }
+
+    // Frame mínimo: solo el número de secuencia para comprobar el orden de llegada
+    private static final class Token {
+        long sequence;
+    }
+
+    private interface Handoff {
+        String name();
+        void produce(long sequence);
+        Token consume(long timeoutNanos) throws InterruptedException;
+        void recycle(Token token);
+        long dropped();
+    }
+
+    private static final class QueueHandoff implements Handoff {
+        private final ArrayBlockingQueue<Token> queue;
+        private final ObjectPool<Token> pool = new ObjectPool<>(Token::new, null, HANDOFF_CAPACITY * 2);
+        private long dropped;
+
+        QueueHandoff(int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        @Override
+        public String name() {
+            return "ArrayBlockingQueue";
+        }
+
+        @Override
+        public void produce(long sequence) {
+            Token token = pool.acquire();
+            token.sequence = sequence;
+            if (!queue.offer(token)) {
+                Token oldest = queue.poll();
+                if (oldest != null) {
+                    pool.release(oldest);
+                    dropped++;
+                }
+                if (!queue.offer(token)) {
+                    pool.release(token);
+                }
+            }
+        }
+
+        @Override
+        public Token consume(long timeoutNanos) throws InterruptedException {
+            return queue.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void recycle(Token token) {
+            pool.release(token);
+        }
+
+        @Override
+        public long dropped() {
+            return dropped;
+        }
+    }
+
+    private static final class RingHandoff implements Handoff {
+        private final FrameRing<Token> ring;
+        private final FrameRing<Token> free;
+        private final Consumer<Token> recycle;
+
+        RingHandoff(int capacity) {
+            this.ring = new FrameRing<>(capacity);
+            this.free = new FrameRing<>(capacity * 2);
+            for (int i = 0; i < capacity * 2; i++) {
+                free.offer(new Token());
+            }
+            this.recycle = free::offer;
+        }
+
+        @Override
+        public String name() {
+            return "FrameRing";
+        }
+
+        @Override
+        public void produce(long sequence) {
+            Token token = free.poll();
+            if (token == null) {
+                token = new Token();
+            }
+            token.sequence = sequence;
+            ring.offerOverwrite(token, recycle);
+        }
+
+        @Override
+        public Token consume(long timeoutNanos) throws InterruptedException {
+            return ring.poll(timeoutNanos);
+        }
+
+        @Override
+        public void recycle(Token token) {
+            free.offer(token);
+        }
+
+        @Override
+        public long dropped() {
+            return ring.getOverwrites();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static String measureHandoff(Handoff handoff, int handoffs) {
+        AtomicBoolean producing = new AtomicBoolean(true);
+        long[] consumed = new long[1];
+        long[] outOfOrder = new long[1];
+
+        Thread consumer = new Thread(() -> {
+            long last = -1;
+            try {
+                while (true) {
+                    Token token = handoff.consume(TimeUnit.MILLISECONDS.toNanos(1));
+                    if (token == null) {
+                        if (!producing.get()) {
+                            break;
+                        }
+                        continue;
+                    }
+                    if (token.sequence <= last) {
+                        outOfOrder[0]++;
+                    }
+                    last = token.sequence;
+                    consumed[0]++;
+                    handoff.recycle(token);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "NDI-Benchmark-Consumer");
+        consumer.start();
+
+        // Contadores de allocación solo del thread productor (el de captura)
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+
+        for (int i = 0; i < handoffs; i++) {
+            handoff.produce(i);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+        int allocations = Debug.getThreadAllocCount();
+
+        producing.set(false);
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        return String.format(Locale.US, "%s: %.0f ns/frame, %d entregados, %d descartados, %d fuera de orden, %.2f allocs/frame",
+            handoff.name(), (double) elapsed / handoffs, consumed[0], handoff.dropped(), outOfOrder[0],
+            (double) allocations / handoffs);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Result measure(String name, int frames, Runnable kernel) {
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            kernel.run();
+        }
+
+        // Contadores de allocación del runtime limitados al thread actual
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+
+        for (int i = 0; i < frames; i++) {
+            kernel.run();
+        }
+
+        long elapsed = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+        int allocations = Debug.getThreadAllocCount();
+
+        return new Result(name, frames,
+            elapsed / 1_000_000.0 / frames,
+            (double) allocations / frames);
+    }
+
+    private static byte[] createUyvyPattern(int width, int height) {
+        byte[] data = new byte[width * height * 2];
+        for (int y = 0; y < height; y++) {
+            int row = y * width * 2;
+            for (int x = 0; x < width * 2; x += 4) {
+                data[row + x] = (byte) (x * 7 + y);         // U
+                data[row + x + 1] = (byte) (x + y * 3);     // Y1
+                data[row + x + 2] = (byte) (255 - x - y);   // V
+                data[row + x + 3] = (byte) (x + y * 3 + 1); // Y2
+            }
+        }
+        return data;
+    }
+
+    private static byte[] createBgraPattern(int width, int height) {
+        byte[] data = new byte[width * height * 4];
+        for (int i = 0; i < data.length; i += 4) {
+            int pixel = i >> 2;
+            data[i] = (byte) pixel;            // B
+            data[i + 1] = (byte) (pixel >> 8); // G
+            data[i + 2] = (byte) (pixel >> 4); // R
+            data[i + 3] = (byte) 0xFF;         // A
+        }
+        return data;
+    }
+
+    // Implementación anterior de NDIStreamProcessor, conservada solo como referencia
+    private static void legacyUyvyToArgb(byte[] data, int[] pixels, int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+        float xRatio = (float) srcWidth / dstWidth;
+        float yRatio = (float) srcHeight / dstHeight;
+
+        for (int y = 0; y < dstHeight; y++) {
+            int srcY = (int) (y * yRatio);
+            int srcRowOffset = srcY * srcWidth * 2;
+            int dstRowOffset = y * dstWidth;
+
+            for (int x = 0; x < dstWidth; x += 2) {
+                int srcX = (int) (x * xRatio);
+                int srcPixelOffset = srcRowOffset + (srcX & ~1) * 2;
+
+                if (srcPixelOffset + 3 < data.length) {
+                    int u = data[srcPixelOffset] & 0xFF;
+                    int y1 = data[srcPixelOffset + 1] & 0xFF;
+                    int v = data[srcPixelOffset + 2] & 0xFF;
+                    int y2 = data[srcPixelOffset + 3] & 0xFF;
+
+                    int[] rgb1 = legacyYuvToRgb(y1, u, v);
+                    int[] rgb2 = legacyYuvToRgb(y2, u, v);
+
+                    pixels[dstRowOffset + x] = (0xFF << 24) | (rgb1[0] << 16) | (rgb1[1] << 8) | rgb1[2];
+                    if (x + 1 < dstWidth) {
+                        pixels[dstRowOffset + x + 1] = (0xFF << 24) | (rgb2[0] << 16) | (rgb2[1] << 8) | rgb2[2];
+                    }
+                }
+            }
+        }
+    }
+
+    private static int[] legacyYuvToRgb(int y, int u, int v) {
+        int c = v - 128;
+        int d = u - 128;
+        int r = y + (int) (1.402f * c);
+        int g = y + (int) (-0.344f * d) + (int) (-0.714f * c);
+        int b = y + (int) (1.772f * d);
+
+        r = (r & 0xFFFFFF00) == 0 ? r : r < 0 ? 0 : 255;
+        g = (g & 0xFFFFFF00) == 0 ? g : g < 0 ? 0 : 255;
+        b = (b & 0xFFFFFF00) == 0 ? b : b < 0 ? 0 : 255;
+
+        return new int[]{r, g, b};
+    }
+}
@@ -0,0 +1,207 @@
+package ndiplayer.oto.utils;
+
+import ndiplayer.oto.service.FrameDescriptor;
+
+/**
+ * Kernels de conversión de píxeles sin allocaciones por frame
+ * Usa aritmética entera y tablas precalculadas compartidas por todos los threads
+ */
+public final class PixelConverter {
+
+    // Margen de la tabla de saturación: cubre y + 1.772 * (u - 128) en [-227, 480]
+    private static final int CLAMP_OFFSET = 256;
+    private static final int CLAMP_SIZE = 256 + CLAMP_OFFSET * 2;
+
+    // Contribución de crominancia por componente (BT.601 full range)
+    private static final int[] V_TO_R = new int[256];
+    private static final int[] U_TO_G = new int[256];
+    private static final int[] V_TO_G = new int[256];
+    private static final int[] U_TO_B = new int[256];
+
+    // Tablas de saturación con el canal ya desplazado a su posición ARGB
+    private static final int[] CLAMP_R = new int[CLAMP_SIZE];
+    private static final int[] CLAMP_G = new int[CLAMP_SIZE];
+    private static final int[] CLAMP_B = new int[CLAMP_SIZE];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int c = i - 128;
+            V_TO_R[i] = Math.round(1.402f * c);
+            U_TO_G[i] = Math.round(-0.344f * c);
+            V_TO_G[i] = Math.round(-0.714f * c);
+            U_TO_B[i] = Math.round(1.772f * c);
+        }
+
+        for (int i = 0; i < CLAMP_SIZE; i++) {
+            int value = Math.max(0, Math.min(255, i - CLAMP_OFFSET));
+            CLAMP_R[i] = value << 16;
+            CLAMP_G[i] = value << 8;
+            CLAMP_B[i] = value;
+        }
+    }
+
+    private PixelConverter() {
+    }
+
+    /**
+     * Convierte un frame completo según su FourCC (BGRA por defecto)
+     */
+    public static void convert(int fourCC, byte[] src, int srcStride, int srcWidth, int srcHeight,
+                               int[] dst, int dstWidth, int dstHeight) {
+        convertRows(fourCC, src, 0, srcStride, srcWidth, srcHeight, dst, dstWidth, dstHeight, 0, dstHeight);
+    }
+
+    /**
+     * Igual que {@link #convert} con el frame empezando en {@code srcOffset}
+     * Permite leer la vista heap de un ByteBuffer directo sin copiarlo
+     */
+    public static void convert(int fourCC, byte[] src, int srcOffset, int srcStride, int srcWidth, int srcHeight,
+                               int[] dst, int dstWidth, int dstHeight) {
+        convertRows(fourCC, src, srcOffset, srcStride, srcWidth, srcHeight, dst, dstWidth, dstHeight, 0, dstHeight);
+    }
+
+    /**
+     * Convierte solo las filas destino [rowStart, rowEnd)
+     * Cada fila destino es independiente, así que varias bandas pueden
+     * convertirse a la vez sobre el mismo array sin sincronización
+     */
+    public static void convertRows(int fourCC, byte[] src, int srcStride, int srcWidth, int srcHeight,
+                                   int[] dst, int dstWidth, int dstHeight, int rowStart, int rowEnd) {
+        convertRows(fourCC, src, 0, srcStride, srcWidth, srcHeight, dst, dstWidth, dstHeight, rowStart, rowEnd);
+    }
+
+    public static void convertRows(int fourCC, byte[] src, int srcOffset, int srcStride, int srcWidth, int srcHeight,
+                                   int[] dst, int dstWidth, int dstHeight, int rowStart, int rowEnd) {
+        // Validación única por llamada: los bucles internos ya no comprueban límites
+        checkBuffers(fourCC, src, srcOffset, srcStride, srcWidth, srcHeight, dst, dstWidth, dstHeight);
+
+        switch (fourCC) {
+            case FrameDescriptor.FOURCC_UYVY:
+                uyvyToArgb(src, srcOffset, srcStride, srcWidth, srcHeight, dst, dstWidth, dstHeight, rowStart, rowEnd);
+                break;
+            case FrameDescriptor.FOURCC_RGBA:
+                fourByteToArgb(src, srcOffset, srcStride, srcWidth, srcHeight, dst, dstWidth, dstHeight, rowStart, rowEnd, 0, 2, 0);
+                break;
+            case FrameDescriptor.FOURCC_RGBX:
+                fourByteToArgb(src, srcOffset, srcStride, srcWidth, srcHeight, dst, dstWidth, dstHeight, rowStart, rowEnd, 0, 2, 0xFF000000);
+                break;
+            case FrameDescriptor.FOURCC_BGRX:
+                fourByteToArgb(src, srcOffset, srcStride, srcWidth, srcHeight, dst, dstWidth, dstHeight, rowStart, rowEnd, 2, 0, 0xFF000000);
+                break;
+            case FrameDescriptor.FOURCC_BGRA:
+            default:
+                fourByteToArgb(src, srcOffset, srcStride, srcWidth, srcHeight, dst, dstWidth, dstHeight, rowStart, rowEnd, 2, 0, 0);
+                break;
+        }
+    }
+
+    static void checkBuffers(int fourCC, byte[] src, int srcOffset, int srcStride, int srcWidth, int srcHeight,
+                             int[] dst, int dstWidth, int dstHeight) {
+        int required = (srcHeight - 1) * srcStride + srcWidth * FrameDescriptor.bytesPerPixel(fourCC);
+        if (srcHeight <= 0 || srcOffset < 0 || src.length - srcOffset < required) {
+            throw new IllegalArgumentException("Buffer origen incompleto: " + (src.length - srcOffset)
+                + " bytes, esperados " + required);
+        }
+        if (dst.length < dstWidth * dstHeight) {
+            throw new IllegalArgumentException("Buffer destino demasiado pequeño: " + dst.length);
+        }
+    }
+
+    public static boolean isSupported(int fourCC) {
+        return fourCC == FrameDescriptor.FOURCC_UYVY
+            || fourCC == FrameDescriptor.FOURCC_BGRA || fourCC == FrameDescriptor.FOURCC_BGRX
+            || fourCC == FrameDescriptor.FOURCC_RGBA || fourCC == FrameDescriptor.FOURCC_RGBX;
+    }
+
+    /**
+     * Convierte UYVY a ARGB_8888 con escalado por vecino más cercano (ver ScaleTables)
+     * Las filas origen ocupan {@code srcStride} bytes, con o sin padding
+     */
+    public static void uyvyToArgb(byte[] src, int srcStride, int srcWidth, int srcHeight,
+                                  int[] dst, int dstWidth, int dstHeight) {
+        convertRows(FrameDescriptor.FOURCC_UYVY, src, 0, srcStride, srcWidth, srcHeight, dst, dstWidth, dstHeight, 0, dstHeight);
+    }
+
+    /**
+     * La crominancia se resuelve una vez por par de píxeles y cada píxel
+     * cuesta tres lecturas de tabla, sin arrays temporales
+     */
+    private static void uyvyToArgb(byte[] src, int srcOffset, int srcStride, int srcWidth, int srcHeight,
+                                   int[] dst, int dstWidth, int dstHeight, int rowStart, int rowEnd) {
+        if (srcWidth == dstWidth && srcHeight == dstHeight) {
+            // Sin escalado: recorrer pares UYVY de forma lineal (NDI garantiza ancho par)
+            int pairs = srcWidth >> 1;
+            for (int y = rowStart; y < rowEnd; y++) {
+                int s = srcOffset + y * srcStride;
+                int d = y * dstWidth;
+                for (int p = 0; p < pairs; p++, s += 4, d += 2) {
+                    int u = src[s] & 0xFF;
+                    int v = src[s + 2] & 0xFF;
+                    int rOff = V_TO_R[v] + CLAMP_OFFSET;
+                    int gOff = U_TO_G[u] + V_TO_G[v] + CLAMP_OFFSET;
+                    int bOff = U_TO_B[u] + CLAMP_OFFSET;
+
+                    int y1 = src[s + 1] & 0xFF;
+                    int y2 = src[s + 3] & 0xFF;
+                    dst[d] = 0xFF000000 | CLAMP_R[y1 + rOff] | CLAMP_G[y1 + gOff] | CLAMP_B[y1 + bOff];
+                    dst[d + 1] = 0xFF000000 | CLAMP_R[y2 + rOff] | CLAMP_G[y2 + gOff] | CLAMP_B[y2 + bOff];
+                }
+            }
+            return;
+        }
+
+        ScaleTables tables = ScaleTables.obtain(srcWidth, srcHeight, dstWidth, dstHeight);
+        int[] rows = tables.rows;
+        int[] pairBytes = tables.uyvyPairBytes;
+
+        for (int y = rowStart; y < rowEnd; y++) {
+            int srcRowOffset = srcOffset + rows[y] * srcStride;
+            int dstRowOffset = y * dstWidth;
+
+            for (int x = 0, p = 0; x < dstWidth; x += 2, p++) { // Un par UYVY produce dos píxeles destino
+                int srcPixelOffset = srcRowOffset + pairBytes[p];
+
+                int u = src[srcPixelOffset] & 0xFF;
+                int v = src[srcPixelOffset + 2] & 0xFF;
+                int rOff = V_TO_R[v] + CLAMP_OFFSET;
+                int gOff = U_TO_G[u] + V_TO_G[v] + CLAMP_OFFSET;
+                int bOff = U_TO_B[u] + CLAMP_OFFSET;
+
+                int y1 = src[srcPixelOffset + 1] & 0xFF;
+                dst[dstRowOffset + x] = 0xFF000000 | CLAMP_R[y1 + rOff] | CLAMP_G[y1 + gOff] | CLAMP_B[y1 + bOff];
+                if (x + 1 < dstWidth) {
+                    int y2 = src[srcPixelOffset + 3] & 0xFF;
+                    dst[dstRowOffset + x + 1] = 0xFF000000 | CLAMP_R[y2 + rOff] | CLAMP_G[y2 + gOff] | CLAMP_B[y2 + bOff];
+                }
+            }
+        }
+    }
+
+    /**
+     * Formatos de 4 bytes por píxel: solo cambia la posición de R y B
+     * {@code alphaMask} fuerza alfa opaco en las variantes X (byte de relleno)
+     */
+    private static void fourByteToArgb(byte[] src, int srcOffset, int srcStride, int srcWidth, int srcHeight,
+                                       int[] dst, int dstWidth, int dstHeight, int rowStart, int rowEnd,
+                                       int redIndex, int blueIndex, int alphaMask) {
+        ScaleTables tables = ScaleTables.obtain(srcWidth, srcHeight, dstWidth, dstHeight);
+        int[] rows = tables.rows;
+        int[] columnBytes = tables.columnBytes4;
+
+        for (int y = rowStart; y < rowEnd; y++) {
+            int srcRowOffset = srcOffset + rows[y] * srcStride;
+            int dstRowOffset = y * dstWidth;
+
+            for (int x = 0; x < dstWidth; x++) {
+                int srcPixelOffset = srcRowOffset + columnBytes[x];
+
+                int r = src[srcPixelOffset + redIndex] & 0xFF;
+                int g = src[srcPixelOffset + 1] & 0xFF;
+                int b = src[srcPixelOffset + blueIndex] & 0xFF;
+                int a = src[srcPixelOffset + 3] & 0xFF;
+
+                dst[dstRowOffset + x] = alphaMask | (a << 24) | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package ndiplayer.oto.utils;
+
+import android.util.Log;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Decide en cada tick de refresco qué frame mostrar según su tiempo de medios (timestamp NDI)
+ * El primer frame fija la correspondencia medios -> pantalla; desde ahí cada frame se muestra
+ * en el primer vsync que cubre su instante, así 59.94/29.97 mantienen su cadencia 1:1 o 2:2
+ * sin depender de cuándo llegó cada frame
+ * offer() se llama desde cualquier thread; los ticks y stop() desde el thread del reloj
+ */
+public final class PresentationScheduler<T> implements DisplayClock.VsyncListener {
+    private static final String TAG = "PresentationScheduler";
+    private static final long DISCONTINUITY_NANOS = 1_000_000_000L; // Salto de timestamps: reanclar
+    private static final int MAX_LATE_PERIODS = 4;
+
+    public interface Listener<T> {
+        /** Mostrar {@code frame} en el vsync {@code frameTimeNanos}. En el thread del reloj */
+        void onPresent(T frame, long frameTimeNanos);
+
+        /** El frame ya no se usa: sustituido en pantalla, saltado o descartado. Desde cualquier thread */
+        void onRelease(T frame);
+    }
+
+    private static final class Entry<T> {
+        T frame;
+        long mediaTimeNanos;
+    }
+
+    private final DisplayClock clock;
+    private final Listener<T> listener;
+    private final long latencyNanos;
+    private final FrameRing<Entry<T>> intake;      // Productor -> thread del reloj
+    private final FrameRing<Entry<T>> freeEntries; // Entradas reutilizables
+    private final Consumer<Entry<T>> skipEntry = this::skip;
+
+    // Solo en el thread del reloj
+    private final Entry<T>[] window; // Pendientes ordenados por tiempo de medios
+    private int windowCount;
+    private Entry<T> current;
+    private boolean anchored;
+    private long offsetNanos; // Tiempo de pantalla = tiempo de medios + offset
+
+    private final AtomicLong presented = new AtomicLong(0);
+    private final AtomicLong skipped = new AtomicLong(0);
+    private final AtomicLong repeatedTicks = new AtomicLong(0);
+    private final AtomicLong reanchors = new AtomicLong(0);
+
+    /**
+     * @param capacity     frames que pueden esperar su vsync
+     * @param latencyNanos margen entre la llegada del primer frame y su presentación
+     */
+    @SuppressWarnings("unchecked")
+    public PresentationScheduler(DisplayClock clock, int capacity, long latencyNanos, Listener<T> listener) {
+        this.clock = clock;
+        this.listener = listener;
+        this.latencyNanos = Math.max(0, latencyNanos);
+
+        int slots = Math.max(2, capacity);
+        this.intake = new FrameRing<>(slots);
+        this.window = new Entry[slots];
+        int entries = slots * 2 + 1; // Intake + ventana + el que está en pantalla
+        this.freeEntries = new FrameRing<>(entries);
+        for (int i = 0; i < entries; i++) {
+            freeEntries.offer(new Entry<>());
+        }
+    }
+
+    public void start() {
+        clock.start(this);
+    }
+
+    /**
+     * Para los ticks y libera todos los frames pendientes y el de pantalla
+     */
+    public void stop() {
+        clock.stop();
+        Entry<T> entry;
+        while ((entry = intake.poll()) != null) {
+            release(entry);
+        }
+        for (int i = 0; i < windowCount; i++) {
+            release(window[i]);
+            window[i] = null;
+        }
+        windowCount = 0;
+        if (current != null) {
+            release(current);
+            current = null;
+        }
+        anchored = false;
+    }
+
+    /**
+     * Entrega un frame con su tiempo de medios en ns. Si el thread del reloj va
+     * retrasado sale el frame más antiguo sin mostrarse
+     */
+    public void offer(T frame, long mediaTimeNanos) {
+        Entry<T> entry = freeEntries.poll();
+        if (entry == null) {
+            skipped.incrementAndGet();
+            listener.onRelease(frame);
+            return;
+        }
+        entry.frame = frame;
+        entry.mediaTimeNanos = mediaTimeNanos;
+
+        intake.offerOverwrite(entry, skipEntry);
+    }
+
+    private void skip(Entry<T> entry) {
+        skipped.incrementAndGet();
+        release(entry);
+    }
+
+    @Override
+    public void onVsync(long frameTimeNanos) {
+        Entry<T> entry;
+        while ((entry = intake.poll()) != null) {
+            insert(entry);
+        }
+
+        if (windowCount == 0) {
+            if (current != null) {
+                repeatedTicks.incrementAndGet();
+            }
+            return;
+        }
+
+        if (!anchored) {
+            anchorTo(window[0], frameTimeNanos + latencyNanos);
+        }
+
+        // El frame más reciente cuyo instante cae antes de la mitad de este periodo
+        long deadline = frameTimeNanos + clock.getRefreshPeriodNanos() / 2;
+        int due = -1;
+        while (due + 1 < windowCount && window[due + 1].mediaTimeNanos + offsetNanos <= deadline) {
+            due++;
+        }
+
+        if (due < 0) {
+            // Nada vence aún; si lo pendiente está demasiado lejos o no cabe más, reanclar
+            long earliest = window[0].mediaTimeNanos + offsetNanos;
+            if (earliest - frameTimeNanos > DISCONTINUITY_NANOS || windowCount == window.length) {
+                anchorTo(window[0], frameTimeNanos);
+                due = 0;
+            } else {
+                if (current != null) {
+                    repeatedTicks.incrementAndGet();
+                }
+                return;
+            }
+        }
+
+        for (int i = 0; i < due; i++) {
+            skipped.incrementAndGet();
+            release(window[i]);
+        }
+        Entry<T> next = window[due];
+        shift(due + 1);
+
+        listener.onPresent(next.frame, frameTimeNanos);
+        presented.incrementAndGet();
+        if (current != null) {
+            release(current);
+        }
+        current = next;
+
+        // Muy tarde (emisor parado, reloj a la deriva): reanclar sobre este frame
+        long lateness = frameTimeNanos - (next.mediaTimeNanos + offsetNanos);
+        if (lateness > MAX_LATE_PERIODS * clock.getRefreshPeriodNanos()) {
+            anchorTo(next, frameTimeNanos);
+        }
+    }
+
+    private void insert(Entry<T> entry) {
+        // Salto de timestamps (reinicio del emisor, cambio de fuente): empezar de cero
+        if (windowCount > 0 && Math.abs(entry.mediaTimeNanos - window[windowCount - 1].mediaTimeNanos) > DISCONTINUITY_NANOS) {
+            for (int i = 0; i < windowCount; i++) {
+                skipped.incrementAndGet();
+                release(window[i]);
+                window[i] = null;
+            }
+            windowCount = 0;
+            anchored = false;
+        } else if (windowCount == 0 && anchored && current != null
+                && Math.abs(entry.mediaTimeNanos - current.mediaTimeNanos) > DISCONTINUITY_NANOS) {
+            anchored = false;
+        }
+
+        // Llegó detrás del que ya está en pantalla: mostrarlo sería volver atrás
+        if (anchored && current != null && entry.mediaTimeNanos <= current.mediaTimeNanos) {
+            skipped.incrementAndGet();
+            release(entry);
+            return;
+        }
+
+        if (windowCount == window.length) {
+            skipped.incrementAndGet();
+            release(window[0]);
+            shift(1);
+        }
+
+        // Normalmente llegan en orden: inserción desde el final
+        int position = windowCount;
+        while (position > 0 && window[position - 1].mediaTimeNanos > entry.mediaTimeNanos) {
+            window[position] = window[position - 1];
+            position--;
+        }
+        window[position] = entry;
+        windowCount++;
+    }
+
+    private void shift(int count) {
+        for (int i = count; i < windowCount; i++) {
+            window[i - count] = window[i];
+        }
+        for (int i = windowCount - count; i < windowCount; i++) {
+            window[i] = null;
+        }
+        windowCount -= count;
+    }
+
+    private void anchorTo(Entry<T> entry, long displayTimeNanos) {
+        offsetNanos = displayTimeNanos - entry.mediaTimeNanos;
+        anchored = true;
+        if (reanchors.incrementAndGet() > 1) {
+            Log.d(TAG, "Reanclado tras " + presented.get() + " frames presentados");
+        }
+    }
+
+    private void release(Entry<T> entry) {
+        T frame = entry.frame;
+        entry.frame = null;
+        freeEntries.offer(entry);
+        listener.onRelease(frame);
+    }
+
+    public long getPresentedFrames() {
+        return presented.get();
+    }
+
+    /**
+     * Frames que nunca llegaron a pantalla (vencidos a la vez que uno más nuevo, o descartados)
+     */
+    public long getSkippedFrames() {
+        return skipped.get();
+    }
+
+    /**
+     * Ticks en los que se mantuvo el frame anterior por no haber otro que venciera
+     */
+    public long getRepeatedTicks() {
+        return repeatedTicks.get();
+    }
+
+    public long getReanchors() {
+        return reanchors.get();
+    }
+}
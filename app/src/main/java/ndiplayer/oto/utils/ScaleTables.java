@@ -0,0 +1,93 @@
+package ndiplayer.oto.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tablas de índices para escalado por vecino más cercano
+ * Se calculan una vez por par (tamaño origen, tamaño destino) y se guardan
+ * en un LRU pequeño, así los bucles internos solo hacen lecturas de tabla
+ * enteras y los cambios de calidad adaptativa reutilizan tablas ya hechas
+ */
+public final class ScaleTables {
+    private static final int CACHE_SIZE = 8; // Niveles de calidad distintos que suelen alternarse
+
+    private static final Map<Long, ScaleTables> cache = new LinkedHashMap<Long, ScaleTables>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, ScaleTables> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    // Último resultado: evita el boxing de la clave cuando el tamaño no cambia entre frames
+    private static volatile ScaleTables last;
+
+    public final int srcWidth;
+    public final int srcHeight;
+    public final int dstWidth;
+    public final int dstHeight;
+
+    public final int[] rows;          // Fila origen de cada fila destino
+    public final int[] columnBytes4;  // Offset en bytes de la columna origen, formatos de 4 bytes
+    public final int[] uyvyPairBytes; // Offset en bytes del par UYVY origen de cada par destino
+
+    private ScaleTables(int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+        this.srcWidth = srcWidth;
+        this.srcHeight = srcHeight;
+        this.dstWidth = dstWidth;
+        this.dstHeight = dstHeight;
+
+        rows = new int[dstHeight];
+        for (int y = 0; y < dstHeight; y++) {
+            rows[y] = sourceIndex(y, srcHeight, dstHeight);
+        }
+
+        columnBytes4 = new int[dstWidth];
+        for (int x = 0; x < dstWidth; x++) {
+            columnBytes4[x] = sourceIndex(x, srcWidth, dstWidth) * 4;
+        }
+
+        uyvyPairBytes = new int[(dstWidth + 1) >> 1];
+        for (int p = 0; p < uyvyPairBytes.length; p++) {
+            uyvyPairBytes[p] = (sourceIndex(p << 1, srcWidth, dstWidth) & ~1) * 2;
+        }
+    }
+
+    private static int sourceIndex(int dst, int srcSize, int dstSize) {
+        // Aritmética entera: nunca sale de [0, srcSize) por redondeo de float
+        return (int) ((long) dst * srcSize / dstSize);
+    }
+
+    public boolean matches(int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+        return this.srcWidth == srcWidth && this.srcHeight == srcHeight
+            && this.dstWidth == dstWidth && this.dstHeight == dstHeight;
+    }
+
+    /**
+     * Devuelve las tablas para el par de tamaños, calculándolas si no están en caché
+     */
+    public static ScaleTables obtain(int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+        ScaleTables tables = last;
+        if (tables != null && tables.matches(srcWidth, srcHeight, dstWidth, dstHeight)) {
+            return tables;
+        }
+
+        long key = ((long) srcWidth << 48) | ((long) srcHeight << 32) | ((long) dstWidth << 16) | dstHeight;
+        synchronized (cache) {
+            tables = cache.get(key);
+            if (tables == null) {
+                tables = new ScaleTables(srcWidth, srcHeight, dstWidth, dstHeight);
+                cache.put(key, tables);
+            }
+        }
+
+        last = tables;
+        return tables;
+    }
+
+    public static int cachedCount() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package ndiplayer.oto.utils;
+
+/**
+ * DisplayClock simulado: avanza un periodo fijo en cada {@link #tick()} y entrega el vsync
+ * en el thread que llama, sin Choreographer ni tiempo real
+ * Sirve para reproducir cadencias (59.94, 29.97, 25...) de forma determinista en pruebas y benchmarks
+ */
+public final class SimulatedDisplayClock implements DisplayClock {
+    private final long refreshPeriodNanos;
+    private long nowNanos;
+    private VsyncListener listener;
+
+    public SimulatedDisplayClock(long startNanos, long refreshPeriodNanos) {
+        this.nowNanos = startNanos;
+        this.refreshPeriodNanos = Math.max(1, refreshPeriodNanos);
+    }
+
+    /**
+     * Reloj a {@code refreshRate} Hz que empieza en 0
+     */
+    public static SimulatedDisplayClock atRefreshRate(double refreshRate) {
+        return new SimulatedDisplayClock(0, Math.round(1_000_000_000.0 / refreshRate));
+    }
+
+    @Override
+    public long nowNanos() {
+        return nowNanos;
+    }
+
+    @Override
+    public long getRefreshPeriodNanos() {
+        return refreshPeriodNanos;
+    }
+
+    @Override
+    public void start(VsyncListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void stop() {
+        listener = null;
+    }
+
+    /**
+     * Avanza un periodo y entrega el tick si está en marcha; devuelve el instante del tick
+     */
+    public long tick() {
+        nowNanos += refreshPeriodNanos;
+        VsyncListener target = listener;
+        if (target != null) {
+            target.onVsync(nowNanos);
+        }
+        return nowNanos;
+    }
+
+    public boolean isRunning() {
+        return listener != null;
+    }
+}
@@ -0,0 +1,409 @@
+package ndiplayer.oto.utils;
+
+import android.os.Process;
+import android.util.Log;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Planificador compartido por servicios y activities: un pool acotado por clase de prioridad
+ * en lugar de un Thread o un Executor nuevo por tarea
+ * Se obtiene con {@link #acquire()} al crear el componente y se suelta con {@link #release()}
+ * al destruirlo; con el último release() se cierran todos los pools
+ * Los threads ociosos mueren tras KEEP_ALIVE_SECONDS y se reutilizan mientras tanto
+ */
+public final class TaskScheduler {
+    private static final String TAG = "TaskScheduler";
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    private static final long SHUTDOWN_TIMEOUT_MS = 1000;
+    private static final long SERIAL_RETRY_MS = 20; // Reintento de una tarea en serie rechazada por pool lleno
+
+    public enum Pool {
+        /** Bucles de captura y salida de frames: un thread por tarea, sin cola */
+        REALTIME("NDI-RT", 6, 0, Process.THREAD_PRIORITY_URGENT_DISPLAY),
+        /** Trabajo de CPU corto: bandas de conversión de frames */
+        COMPUTE("NDI-Compute", Math.max(2, Runtime.getRuntime().availableProcessors()), 16,
+            Process.THREAD_PRIORITY_DISPLAY),
+        /** Inicialización, discovery, conexión y E/S; el discovery ocupa un thread durante segundos */
+        BACKGROUND("NDI-Bg", 4, 32, Process.THREAD_PRIORITY_BACKGROUND);
+
+        final String prefix;
+        final int maxThreads;
+        final int queueCapacity;
+        final int priority;
+
+        Pool(String prefix, int maxThreads, int queueCapacity, int priority) {
+            this.prefix = prefix;
+            this.maxThreads = maxThreads;
+            this.queueCapacity = queueCapacity;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * Tarea en curso o pendiente; cancel() interrumpe el thread que la ejecuta
+     */
+    public static final class Task implements Runnable {
+        private final Runnable body;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private Thread runner; // Protegido por this
+        private boolean cancelled;
+
+        Task(Runnable body) {
+            this.body = body;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (cancelled) {
+                    done.countDown();
+                    return;
+                }
+                runner = Thread.currentThread();
+            }
+            try {
+                body.run();
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                }
+                Thread.interrupted(); // Que un cancel() tardío no alcance a la siguiente tarea del thread
+                done.countDown();
+            }
+        }
+
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                if (runner != null) {
+                    runner.interrupt();
+                }
+            }
+        }
+
+        public synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        /**
+         * Espera a que termine; false si sigue en marcha tras {@code timeoutMs}
+         */
+        public boolean await(long timeoutMs) {
+            try {
+                return done.await(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return isDone();
+            }
+        }
+
+        /**
+         * cancel() y espera; para parar bucles antes de liberar lo que usan
+         */
+        public boolean cancelAndAwait(long timeoutMs) {
+            cancel();
+            return await(timeoutMs);
+        }
+
+        // No llegó a entrar en el pool: nadie la va a ejecutar
+        void abandon() {
+            synchronized (this) {
+                cancelled = true;
+            }
+            done.countDown();
+        }
+    }
+
+    private static final Object lock = new Object();
+    private static final ThreadLocal<ThreadPoolExecutor> currentExecutor = new ThreadLocal<>(); // Pool del thread actual
+    private static TaskScheduler instance;
+    private static int references;
+
+    private final ThreadPoolExecutor[] executors = new ThreadPoolExecutor[Pool.values().length];
+    private final AtomicInteger[] threadsCreated = new AtomicInteger[Pool.values().length];
+    private final AtomicLong[] rejected = new AtomicLong[Pool.values().length];
+    private final ScheduledThreadPoolExecutor timer;
+
+    /**
+     * Referencia al planificador compartido; lo crea si no existe o si ya se cerró
+     */
+    public static TaskScheduler acquire() {
+        synchronized (lock) {
+            if (instance == null) {
+                instance = new TaskScheduler();
+            }
+            references++;
+            return instance;
+        }
+    }
+
+    /**
+     * Suelta una referencia de acquire(); la última cierra los pools e interrumpe lo que quede
+     * Se puede llamar desde una tarea del propio planificador (p. ej. la última de una cola en serie)
+     */
+    public static void release() {
+        TaskScheduler closing = null;
+        synchronized (lock) {
+            if (references > 0 && --references == 0) {
+                closing = instance;
+                instance = null;
+            }
+        }
+        if (closing != null) {
+            closing.shutdown();
+        }
+    }
+
+    private TaskScheduler() {
+        for (Pool pool : Pool.values()) {
+            int index = pool.ordinal();
+            threadsCreated[index] = new AtomicInteger(0);
+            rejected[index] = new AtomicLong(0);
+            BlockingQueue<Runnable> queue = pool.queueCapacity > 0
+                ? new ArrayBlockingQueue<>(pool.queueCapacity)
+                : new SynchronousQueue<>();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                pool.maxThreads, pool.maxThreads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                queue,
+                r -> {
+                    Thread t = new Thread(() -> {
+                        Process.setThreadPriority(pool.priority);
+                        currentExecutor.set(executors[index]);
+                        r.run();
+                    }, pool.prefix + "-" + threadsCreated[index].incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            );
+            executor.allowCoreThreadTimeOut(true); // Sin trabajo no quedan threads vivos
+            executors[index] = executor;
+        }
+
+        timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                r.run();
+            }, "NDI-Timer");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Ejecuta {@code body} en el pool; null si el pool está lleno o cerrado
+     */
+    public Task execute(Pool pool, Runnable body) {
+        Task task = new Task(body);
+        try {
+            executors[pool.ordinal()].execute(task);
+            return task;
+        } catch (RejectedExecutionException e) {
+            rejected[pool.ordinal()].incrementAndGet();
+            task.abandon();
+            Log.e(TAG, "Tarea rechazada en " + pool + ": " + describe(pool));
+            return null;
+        }
+    }
+
+    /**
+     * Ejecuta {@code body} tal cual, sin Task ni log por rechazo; false si el pool está lleno o cerrado
+     * Para trabajo por frame que quien llama puede hacer él mismo si no cabe
+     */
+    public boolean tryExecute(Pool pool, Runnable body) {
+        try {
+            executors[pool.ordinal()].execute(body);
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejected[pool.ordinal()].incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Executor que ejecuta sus tareas de una en una y en orden sobre {@code pool},
+     * sin thread propio (p. ej. conectar y desconectar sin solaparse)
+     * Nunca corre en el thread que encola (puede ser el main thread y la tarea bloquear segundos):
+     * con el pool lleno la tarea sigue en cabeza y se reintenta cada SERIAL_RETRY_MS; con el
+     * planificador cerrado las que quedan corren en un thread propio, así una desconexión
+     * encolada llega a ejecutarse aunque el planificador se cierre
+     */
+    public Executor newSerialExecutor(Pool pool) {
+        return new SerialExecutor(pool);
+    }
+
+    /**
+     * Tarea periódica corta en el thread de temporización compartido
+     */
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable body, long periodMs) {
+        return timer.scheduleAtFixedRate(body, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void shutdown() {
+        timer.shutdownNow();
+        for (ThreadPoolExecutor executor : executors) {
+            List<Runnable> pending = executor.shutdownNow();
+            for (Runnable runnable : pending) {
+                if (runnable instanceof Task) {
+                    ((Task) runnable).abandon(); // Que nadie se quede esperando en await()
+                }
+            }
+            if (!pending.isEmpty()) {
+                Log.w(TAG, pending.size() + " tareas sin empezar descartadas al cerrar " + executor);
+            }
+        }
+        try {
+            for (ThreadPoolExecutor executor : executors) {
+                if (executor == currentExecutor.get()) {
+                    continue; // release() desde una tarea de este pool: no puede esperarse a sí mismo
+                }
+                if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    Log.w(TAG, "Pool sin terminar tras el cierre: " + executor);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Log.i(TAG, "Planificador cerrado: " + describe());
+    }
+
+    // Métricas por pool
+
+    public int getActiveThreads(Pool pool) {
+        return executors[pool.ordinal()].getActiveCount();
+    }
+
+    public int getPoolSize(Pool pool) {
+        return executors[pool.ordinal()].getPoolSize();
+    }
+
+    public int getQueueDepth(Pool pool) {
+        return executors[pool.ordinal()].getQueue().size();
+    }
+
+    public long getCompletedTasks(Pool pool) {
+        return executors[pool.ordinal()].getCompletedTaskCount();
+    }
+
+    /** Threads creados desde el arranque: si crece con las tareas hay rotación de threads */
+    public int getThreadsCreated(Pool pool) {
+        return threadsCreated[pool.ordinal()].get();
+    }
+
+    public long getRejectedTasks(Pool pool) {
+        return rejected[pool.ordinal()].get();
+    }
+
+    public String describe(Pool pool) {
+        return String.format(Locale.US, "%s[activos %d/%d, vivos %d, cola %d, hechas %d, creados %d, rechazadas %d]",
+            pool, getActiveThreads(pool), pool.maxThreads, getPoolSize(pool), getQueueDepth(pool),
+            getCompletedTasks(pool), getThreadsCreated(pool), getRejectedTasks(pool));
+    }
+
+    public String describe() {
+        StringBuilder builder = new StringBuilder();
+        for (Pool pool : Pool.values()) {
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            builder.append(describe(pool));
+        }
+        return builder.toString();
+    }
+
+    private final class SerialExecutor implements Executor {
+        private final Pool pool;
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private Runnable active;
+
+        SerialExecutor(Pool pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public void execute(Runnable body) {
+            Runnable next;
+            synchronized (this) {
+                tasks.add(() -> {
+                    try {
+                        body.run();
+                    } finally {
+                        scheduleNext();
+                    }
+                });
+                if (active != null) {
+                    return;
+                }
+                next = tasks.poll();
+                active = next; // Reservado dentro del lock: otro execute() no arranca una segunda
+            }
+            submit(next);
+        }
+
+        private void scheduleNext() {
+            Runnable next;
+            synchronized (this) {
+                next = tasks.poll();
+                active = next;
+            }
+            if (next != null) {
+                submit(next);
+            }
+        }
+
+        // active sigue reservado para next hasta que corra: el orden no se rompe mientras espera
+        private void submit(Runnable next) {
+            submit(next, false);
+        }
+
+        private void submit(Runnable next, boolean retry) {
+            ThreadPoolExecutor executor = executors[pool.ordinal()];
+            try {
+                executor.execute(next);
+                return;
+            } catch (RejectedExecutionException e) {
+                rejected[pool.ordinal()].incrementAndGet();
+            }
+
+            if (!executor.isShutdown()) {
+                try {
+                    if (!retry) {
+                        Log.w(TAG, "Tarea en serie en espera de un thread libre: " + describe(pool));
+                    }
+                    timer.schedule(() -> submit(next, true), SERIAL_RETRY_MS, TimeUnit.MILLISECONDS);
+                    return;
+                } catch (RejectedExecutionException e) {
+                    // El temporizador ya se cerró: igual que con el pool cerrado
+                }
+            }
+
+            // Planificador cerrado: ningún thread del pool volverá a quedar libre
+            Log.w(TAG, "Planificador cerrado, tarea en serie en un thread propio");
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(pool.priority);
+                next.run();
+            }, pool.prefix + "-Serial");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+}
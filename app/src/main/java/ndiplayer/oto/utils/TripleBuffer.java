@@ -0,0 +1,129 @@
+package ndiplayer.oto.utils;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Buzón de triple buffer entre un productor y un consumidor: gana siempre el último frame
+ * Productor y consumidor tienen cada uno su slot y el tercero se intercambia con un
+ * getAndSet, así publicar y recoger nunca esperan ni bloquean al otro lado
+ * El consumidor puede aparcarse hasta que haya un frame nuevo en vez de sondear con sleeps
+ */
+public final class TripleBuffer<T> {
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4; // El slot intermedio tiene un frame sin leer
+
+    private final Object[] slots = new Object[3];
+    private final AtomicInteger middle = new AtomicInteger(2);
+    private final AtomicLong overwritten = new AtomicLong(0);
+    private final AtomicReference<Thread> waitingConsumer = new AtomicReference<>();
+    private int writeIndex = 0; // Solo lo toca el productor
+    private int readIndex = 1;  // Solo lo toca el consumidor
+
+    public TripleBuffer() {
+    }
+
+    public TripleBuffer(Supplier<T> factory) {
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = factory.get();
+        }
+    }
+
+    /**
+     * Slot del productor: el consumidor no lo ve hasta {@link #publish}
+     */
+    @SuppressWarnings("unchecked")
+    public T writable() {
+        return (T) slots[writeIndex];
+    }
+
+    /**
+     * Publica {@code written} (el slot de {@link #writable()} o uno que lo sustituye)
+     * Devuelve true si reemplazó un frame que el consumidor aún no había recogido
+     */
+    public boolean publish(T written) {
+        slots[writeIndex] = written;
+        int previous = middle.getAndSet(writeIndex | FRESH);
+        writeIndex = previous & INDEX_MASK;
+
+        Thread consumer = waitingConsumer.get();
+        if (consumer != null && waitingConsumer.compareAndSet(consumer, null)) {
+            LockSupport.unpark(consumer);
+        }
+
+        boolean replaced = (previous & FRESH) != 0;
+        if (replaced) {
+            overwritten.incrementAndGet();
+        }
+        return replaced;
+    }
+
+    /**
+     * Recoge el frame más reciente si hay uno sin leer; queda en {@link #readable()}
+     */
+    public boolean fetch() {
+        if ((middle.get() & FRESH) == 0) {
+            return false;
+        }
+        int previous = middle.getAndSet(readIndex);
+        readIndex = previous & INDEX_MASK;
+        return true;
+    }
+
+    /**
+     * Como {@link #fetch()} pero aparca al consumidor hasta {@code timeoutNanos}
+     */
+    public boolean awaitFetch(long timeoutNanos) throws InterruptedException {
+        if (fetch()) {
+            return true;
+        }
+
+        Thread current = Thread.currentThread();
+        long deadline = System.nanoTime() + timeoutNanos;
+        try {
+            while (true) {
+                waitingConsumer.set(current);
+                if (fetch()) { // Releer tras anunciarse para no perder un unpark
+                    return true;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+        } finally {
+            waitingConsumer.compareAndSet(current, null);
+        }
+    }
+
+    /**
+     * Slot del consumidor con el último frame recogido
+     */
+    @SuppressWarnings("unchecked")
+    public T readable() {
+        return (T) slots[readIndex];
+    }
+
+    /**
+     * Frames publicados que se sustituyeron antes de que el consumidor los recogiera
+     */
+    public long getOverwritten() {
+        return overwritten.get();
+    }
+
+    /**
+     * Suelta los slots y el frame pendiente. Solo con productor y consumidor detenidos
+     */
+    public void clear() {
+        Arrays.fill(slots, null);
+        middle.set(middle.get() & INDEX_MASK);
+    }
+}
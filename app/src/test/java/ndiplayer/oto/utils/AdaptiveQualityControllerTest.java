@@ -0,0 +1,206 @@
+package ndiplayer.oto.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * AdaptiveQualityController fuera del dispositivo: una sesión grabada de muestras se reproduce con
+ * replay() y debe dar las mismas decisiones, pasos AIMD y admisión de frames que la ejecución en vivo
+ */
+public class AdaptiveQualityControllerTest {
+    private static final AdaptiveQualityController.Limits LIMITS =
+        new AdaptiveQualityController.Limits(25, 100, 100, 15, 30);
+    private static final long SOURCE_PERIOD_NANOS = 1_000_000_000L / 60; // Emisor a 60 fps
+
+    // Muy por encima del presupuesto con cualquier fps de LIMITS (1.2 * 1000/15 = 80ms)
+    private static AdaptiveQualityController.Sample overloaded() {
+        return new AdaptiveQualityController.Sample(100.0, 0.0, 1, 8);
+    }
+
+    // Muy por debajo del presupuesto, sin descartes ni cola
+    private static AdaptiveQualityController.Sample healthy() {
+        return new AdaptiveQualityController.Sample(5.0, 0.0, 0, 8);
+    }
+
+    // Banda de histéresis: descartes entre el umbral sano y el de sobrecarga
+    private static AdaptiveQualityController.Sample marginal() {
+        return new AdaptiveQualityController.Sample(5.0, 3.0, 2, 8);
+    }
+
+    // Sesión grabada: sobrecarga hasta el fondo, una racha sana cortada por histéresis y recuperación
+    private static List<AdaptiveQualityController.Sample> session() {
+        List<AdaptiveQualityController.Sample> samples = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            samples.add(overloaded());
+        }
+        for (int i = 0; i < 4; i++) {
+            samples.add(healthy());
+        }
+        samples.add(marginal());
+        for (int i = 0; i < 60; i++) {
+            samples.add(healthy());
+        }
+        return samples;
+    }
+
+    private static List<AdaptiveQualityController.Event> runLive() {
+        AdaptiveQualityController controller = new AdaptiveQualityController(LIMITS);
+        for (AdaptiveQualityController.Sample sample : session()) {
+            controller.update(sample);
+        }
+        return controller.getEvents();
+    }
+
+    // Admisión de la etapa ingest con los FPS de cada evento: frames de un segundo de emisor a 60 fps
+    private static List<Integer> admissions(List<AdaptiveQualityController.Event> events) {
+        FrameCadence cadence = new FrameCadence(LIMITS.maxFps);
+        List<Integer> admitted = new ArrayList<>();
+        long media = 0;
+        for (AdaptiveQualityController.Event event : events) {
+            cadence.setTargetFps(event.state.targetFps);
+            int count = 0;
+            for (int i = 0; i < 60; i++) {
+                if (cadence.admit(media)) {
+                    count++;
+                }
+                media += SOURCE_PERIOD_NANOS;
+            }
+            admitted.add(count);
+        }
+        return admitted;
+    }
+
+    private static List<AdaptiveQualityController.Action> changes(List<AdaptiveQualityController.Event> events) {
+        List<AdaptiveQualityController.Action> actions = new ArrayList<>();
+        for (AdaptiveQualityController.Event event : events) {
+            if (event.action != AdaptiveQualityController.Action.HOLD) {
+                actions.add(event.action);
+            }
+        }
+        return actions;
+    }
+
+    @Test
+    public void overloadDecreasesMultiplicativelyInOrder() {
+        List<AdaptiveQualityController.Event> events = runLive();
+
+        int scale = LIMITS.initialScale;
+        int fps = LIMITS.maxFps;
+        List<Integer> scales = new ArrayList<>();
+        List<Integer> fpsSteps = new ArrayList<>();
+        for (AdaptiveQualityController.Event event : events.subList(0, 20)) {
+            switch (event.action) {
+                case DECREASE_SCALE:
+                    assertEquals("Escala en el evento " + event.sequence,
+                        Math.max(LIMITS.minScale, (int) (scale * 0.75)), event.state.scalePercent);
+                    scales.add(event.state.scalePercent);
+                    break;
+                case DECREASE_FPS:
+                    assertEquals("El fps solo baja con la escala al mínimo", LIMITS.minScale, event.state.scalePercent);
+                    assertEquals(Math.max(LIMITS.minFps, (int) (fps * 0.75)), event.state.targetFps);
+                    fpsSteps.add(event.state.targetFps);
+                    break;
+                case LOWER_BANDWIDTH:
+                    assertEquals("El ancho de banda es lo último", LIMITS.minFps, event.state.targetFps);
+                    break;
+                case HOLD:
+                    break;
+                default:
+                    throw new AssertionError("Subida con sobrecarga: " + event);
+            }
+            scale = event.state.scalePercent;
+            fps = event.state.targetFps;
+        }
+
+        assertEquals(List.of(75, 56, 42, 31, 25), scales);
+        assertEquals(List.of(22, 16, 15), fpsSteps);
+        // La primera bajada necesita dos muestras seguidas; luego una cada dos por el enfriamiento
+        assertEquals(AdaptiveQualityController.Action.HOLD, events.get(0).action);
+        assertEquals(AdaptiveQualityController.Action.DECREASE_SCALE, events.get(1).action);
+        assertEquals(AdaptiveQualityController.Action.HOLD, events.get(2).action);
+        assertEquals(AdaptiveQualityController.Action.DECREASE_SCALE, events.get(3).action);
+        AdaptiveQualityController.State floor = events.get(19).state;
+        assertEquals(AdaptiveQualityController.Bandwidth.LOWEST, floor.bandwidth);
+        assertEquals(AdaptiveQualityController.Action.HOLD, events.get(19).action); // Nada más que bajar
+    }
+
+    @Test
+    public void healthyWindowsIncreaseAdditivelyAfterHysteresis() {
+        List<AdaptiveQualityController.Event> events = runLive();
+
+        // 4 sanas y una marginal no bastan: la racha vuelve a empezar
+        for (AdaptiveQualityController.Event event : events.subList(20, 29)) {
+            assertEquals("Evento " + event.sequence, AdaptiveQualityController.Action.HOLD, event.action);
+        }
+
+        List<AdaptiveQualityController.Action> recovery = changes(events.subList(20, events.size()));
+        assertEquals(AdaptiveQualityController.Action.RAISE_BANDWIDTH, recovery.get(0));
+        assertEquals(AdaptiveQualityController.Action.INCREASE_FPS, recovery.get(1));
+        assertEquals(AdaptiveQualityController.Action.INCREASE_FPS, recovery.get(2));
+        assertEquals(AdaptiveQualityController.Action.INCREASE_FPS, recovery.get(3));
+        for (AdaptiveQualityController.Action action : recovery.subList(4, recovery.size())) {
+            assertEquals(AdaptiveQualityController.Action.INCREASE_SCALE, action);
+        }
+
+        AdaptiveQualityController.State previous = events.get(19).state;
+        int sinceLast = 0;
+        for (AdaptiveQualityController.Event event : events.subList(25, events.size())) {
+            sinceLast++;
+            if (event.action == AdaptiveQualityController.Action.INCREASE_FPS) {
+                assertEquals(Math.min(LIMITS.maxFps, previous.targetFps + 5), event.state.targetFps);
+            } else if (event.action == AdaptiveQualityController.Action.INCREASE_SCALE) {
+                assertEquals(previous.scalePercent + 5, event.state.scalePercent);
+            }
+            if (event.action != AdaptiveQualityController.Action.HOLD) {
+                assertEquals("Una subida cada 5 muestras sanas", 5, sinceLast);
+                sinceLast = 0;
+            }
+            previous = event.state;
+        }
+        assertEquals(LIMITS.maxFps, previous.targetFps);
+        assertEquals(25 + 5 * (recovery.size() - 4), previous.scalePercent);
+    }
+
+    @Test
+    public void replayOfRecordedLogMatchesLiveRun() {
+        List<AdaptiveQualityController.Event> live = runLive();
+
+        // Como llega de un dispositivo: una línea CSV por evento
+        List<AdaptiveQualityController.Event> recorded = new ArrayList<>();
+        for (AdaptiveQualityController.Event event : live) {
+            recorded.add(AdaptiveQualityController.Event.parse(event.toLine()));
+        }
+        List<AdaptiveQualityController.Event> replayed = AdaptiveQualityController.replay(LIMITS, recorded);
+
+        assertEquals(live.size(), replayed.size());
+        for (int i = 0; i < live.size(); i++) {
+            AdaptiveQualityController.Event expected = live.get(i);
+            AdaptiveQualityController.Event actual = replayed.get(i);
+            assertEquals("Evento " + i, expected.toLine(), actual.toLine());
+            assertEquals(expected.action, actual.action);
+            assertEquals(expected.state.scalePercent, actual.state.scalePercent);
+            assertEquals(expected.state.targetFps, actual.state.targetFps);
+            assertEquals(expected.state.bandwidth, actual.state.bandwidth);
+        }
+    }
+
+    @Test
+    public void replayedStatesAdmitTheSameFrames() {
+        List<AdaptiveQualityController.Event> live = runLive();
+        List<AdaptiveQualityController.Event> replayed = AdaptiveQualityController.replay(LIMITS, live);
+
+        List<Integer> liveAdmitted = admissions(live);
+        assertEquals(liveAdmitted, admissions(replayed));
+        // La admisión sigue al presupuesto de cada estado: nunca más frames que su fps objetivo
+        for (int i = 0; i < live.size(); i++) {
+            int target = live.get(i).state.targetFps;
+            int admitted = liveAdmitted.get(i);
+            assertTrue("Evento " + i + ": " + admitted + " frames para " + target + " fps",
+                admitted <= target + 1 && admitted >= target - 1);
+        }
+    }
+}
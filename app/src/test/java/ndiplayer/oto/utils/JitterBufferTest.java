@@ -0,0 +1,144 @@
+package ndiplayer.oto.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * JitterBuffer con llegadas a mano: ráfagas mayores que la capacidad y salida retrasada,
+ * comprobando que cada frame aceptado sale, se descarta o se vacía, nunca se pierde
+ */
+public class JitterBufferTest {
+    private static final long BASE_MEDIA_NANOS = 1_000_000_000_000L; // Timestamps NDI lejos de 0
+    private static final long FRAME_NANOS = 16_666_667L;
+    private static final long TRANSIT_NANOS = 3_000_000L;
+    private static final int CAPACITY = 6;
+    private static final int LATENCY_MS = 60;
+
+    private final List<Long> discarded = new ArrayList<>();
+    private final JitterBuffer<Long> buffer = new JitterBuffer<>(CAPACITY, LATENCY_MS, discarded::add);
+
+    private static long media(long frame) {
+        return BASE_MEDIA_NANOS + frame * FRAME_NANOS;
+    }
+
+    private boolean offer(long frame) {
+        return buffer.offer(frame, media(frame), media(frame) + TRANSIT_NANOS);
+    }
+
+    // Todo lo que ya toca en nowNanos, en orden de salida
+    private List<Long> drain(long nowNanos) {
+        List<Long> out = new ArrayList<>();
+        Long frame;
+        while ((frame = buffer.poll(nowNanos)) != null) {
+            out.add(frame);
+        }
+        return out;
+    }
+
+    private static void assertInOrder(List<Long> frames) {
+        for (int i = 1; i < frames.size(); i++) {
+            assertTrue("Frame " + frames.get(i) + " después de " + frames.get(i - 1), frames.get(i) > frames.get(i - 1));
+        }
+    }
+
+    @Test
+    public void burstLargerThanCapacityReleasesOldestInsteadOfOverflowing() {
+        // 4 frames que aún no tocan: la ventana se queda con ellos
+        for (long frame = 0; frame < 4; frame++) {
+            assertTrue(offer(frame));
+        }
+        long beforeDue = media(0);
+        assertNull(buffer.poll(beforeDue));
+        assertEquals(4, buffer.getDepth());
+
+        // Ráfaga de Wi-Fi: 3 más no caben en la ventana de 6
+        for (long frame = 4; frame < 7; frame++) {
+            assertTrue(offer(frame));
+        }
+        assertEquals(Long.valueOf(0), buffer.poll(beforeDue)); // Llena: sale el más antiguo aunque no toque
+        assertEquals(CAPACITY - 1, buffer.getDepth()); // El 6 espera en la entrada
+
+        List<Long> out = drain(media(100));
+        assertEquals(6, out.size());
+        assertInOrder(out);
+        assertEquals(Long.valueOf(6), out.get(out.size() - 1));
+        assertEquals(0, buffer.getDepth());
+        assertTrue(discarded.isEmpty());
+    }
+
+    @Test
+    public void offerBeyondIntakeIsRejectedAndNeverLost() {
+        // Salida parada: la entrada se llena y el resto vuelve a quien llama
+        int accepted = 0;
+        for (long frame = 0; frame < 2 * CAPACITY; frame++) {
+            if (offer(frame)) {
+                accepted++;
+            }
+        }
+        assertEquals(CAPACITY, accepted);
+        assertFalse(offer(2 * CAPACITY));
+
+        List<Long> out = drain(media(100));
+        assertEquals(accepted, out.size() + discarded.size());
+        assertInOrder(out);
+    }
+
+    @Test
+    public void repeatedBurstsAccountForEveryAcceptedFrame() {
+        List<Long> out = new ArrayList<>();
+        int accepted = 0;
+        long frame = 0;
+        for (int burst = 0; burst < 200; burst++) {
+            // Ráfagas de 1 a 10 frames; la salida solo mira al final de cada una
+            int size = 1 + (burst * 7) % 10;
+            for (int i = 0; i < size; i++, frame++) {
+                if (offer(frame)) {
+                    accepted++;
+                }
+            }
+            out.addAll(drain(media(frame - size)));
+        }
+
+        List<Long> cleared = new ArrayList<>();
+        buffer.clear(cleared::add);
+        assertEquals(accepted, out.size() + discarded.size() + cleared.size());
+        assertInOrder(out);
+        assertEquals(0, buffer.getDepth());
+    }
+
+    @Test
+    public void timestampJumpFlushesFramesFromThePreviousTimeline() {
+        for (long frame = 0; frame < 3; frame++) {
+            assertTrue(offer(frame));
+        }
+        assertNull(buffer.poll(media(0))); // Aún no tocan: quedan en la ventana
+
+        // La fuente reinicia sus timestamps: el siguiente llega 10s "antes"
+        long jumped = media(0) - 10_000_000_000L;
+        assertTrue(buffer.offer(100L, jumped, media(3) + TRANSIT_NANOS));
+        List<Long> out = drain(media(3) + TRANSIT_NANOS + 1_000_000_000L);
+
+        assertEquals(3, discarded.size());
+        assertEquals(1, out.size());
+        assertEquals(Long.valueOf(100), out.get(0));
+        assertEquals(0, buffer.getDiscardedFrames()); // No son frames tardíos: los retira el reinicio
+    }
+
+    @Test
+    public void clearReturnsFramesStillInIntake() {
+        for (long frame = 0; frame < CAPACITY; frame++) {
+            assertTrue(offer(frame));
+        }
+        List<Long> cleared = new ArrayList<>();
+        buffer.clear(cleared::add);
+        assertEquals(CAPACITY, cleared.size());
+        assertNull(buffer.poll(media(100)));
+        assertEquals(2 * CAPACITY, buffer.getMaxRetained());
+    }
+}
@@ -0,0 +1,226 @@
+package ndiplayer.oto.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * PresentationScheduler con un reloj simulado: cadencias de emisor contra pantallas de 60 y 50 Hz,
+ * frames desordenados y saltos de timestamps, sin Choreographer ni tiempo real
+ */
+public class PresentationSchedulerTest {
+    private static final long BASE_MEDIA_NANOS = 1_000_000_000_000L; // Timestamps NDI lejos de 0
+    private static final long TRANSIT_NANOS = 3_000_000L;            // Red constante: llegada = medios + 3ms
+    private static final long LATENCY_NANOS = 20_000_000L;
+    private static final int CAPACITY = 4;
+
+    private SimulatedDisplayClock clock;
+    private PresentationScheduler<Long> scheduler;
+    private final List<Long> shown = new ArrayList<>();
+    private final List<Long> shownTicks = new ArrayList<>();
+    private int released;
+    private int nextFrame;
+
+    private void startDisplay(double refreshRate) {
+        clock = SimulatedDisplayClock.atRefreshRate(refreshRate);
+        scheduler = new PresentationScheduler<>(clock, CAPACITY, LATENCY_NANOS, new PresentationScheduler.Listener<Long>() {
+            @Override
+            public void onPresent(Long frame, long frameTimeNanos) {
+                shown.add(frame);
+                shownTicks.add(frameTimeNanos / clock.getRefreshPeriodNanos());
+            }
+
+            @Override
+            public void onRelease(Long frame) {
+                released++;
+            }
+        });
+        scheduler.start();
+    }
+
+    // Emisor a rateNum/rateDen fps: antes de cada tick entrega los frames que ya habrían llegado
+    private void play(long rateNum, long rateDen, int ticks) {
+        for (int t = 0; t < ticks; t++) {
+            long nextTick = clock.nowNanos() + clock.getRefreshPeriodNanos();
+            while (true) {
+                long media = nextFrame * rateDen * 1_000_000_000L / rateNum;
+                if (media + TRANSIT_NANOS >= nextTick) {
+                    break;
+                }
+                scheduler.offer((long) nextFrame, BASE_MEDIA_NANOS + media);
+                nextFrame++;
+            }
+            clock.tick();
+        }
+    }
+
+    // Ticks que cada frame estuvo en pantalla, sin el último (sigue en pantalla)
+    private List<Long> holds() {
+        List<Long> holds = new ArrayList<>();
+        for (int i = 1; i < shownTicks.size(); i++) {
+            holds.add(shownTicks.get(i) - shownTicks.get(i - 1));
+        }
+        return holds;
+    }
+
+    private void assertShownInOrder() {
+        for (int i = 1; i < shown.size(); i++) {
+            assertTrue("Frame " + shown.get(i) + " después de " + shown.get(i - 1), shown.get(i) > shown.get(i - 1));
+        }
+    }
+
+    @Test
+    public void source5994OnSixtyHzShowsEveryFrameOnce() {
+        startDisplay(60);
+        play(60000, 1001, 3000);
+
+        // 1:1; el emisor va un 0.1% más lento que la pantalla: un tick repetido cada ~1000
+        assertEquals(0, scheduler.getSkippedFrames());
+        assertEquals(3, scheduler.getRepeatedTicks());
+        assertEquals(1, scheduler.getReanchors());
+        assertEquals(nextFrame - 1, scheduler.getPresentedFrames()); // El último aún no vence
+        assertShownInOrder();
+        int doubled = 0;
+        for (long hold : holds()) {
+            assertTrue("Frame retenido " + hold + " ticks", hold == 1 || hold == 2);
+            doubled += hold == 2 ? 1 : 0;
+        }
+        assertEquals(3, doubled);
+    }
+
+    @Test
+    public void source2997OnSixtyHzKeepsTwoTwoCadence() {
+        startDisplay(60);
+        play(30000, 1001, 600);
+
+        // 2:2: un tick repetido por frame, más el de deriva
+        assertEquals(0, scheduler.getSkippedFrames());
+        assertEquals(300, scheduler.getRepeatedTicks());
+        assertEquals(1, scheduler.getReanchors());
+        assertShownInOrder();
+        int longer = 0;
+        for (long hold : holds()) {
+            assertTrue("Frame retenido " + hold + " ticks", hold == 2 || hold == 3);
+            longer += hold == 3 ? 1 : 0;
+        }
+        assertTrue("Ticks de deriva: " + longer, longer <= 1);
+    }
+
+    @Test
+    public void source25OnSixtyHzAlternatesTwoAndThree() {
+        startDisplay(60);
+        play(25, 1, 600);
+
+        // 2.4 ticks por frame: patrón 3:2:3:2:2, 12 ticks por cada 5 frames
+        assertEquals(0, scheduler.getSkippedFrames());
+        assertEquals(349, scheduler.getRepeatedTicks());
+        assertEquals(1, scheduler.getReanchors());
+        assertShownInOrder();
+        List<Long> holds = holds();
+        for (int i = 0; i + 5 <= holds.size(); i++) {
+            long ticks = 0;
+            for (int j = i; j < i + 5; j++) {
+                assertTrue(holds.get(j) == 2 || holds.get(j) == 3);
+                ticks += holds.get(j);
+            }
+            assertEquals("Ticks de los frames " + i + ".." + (i + 4), 12, ticks);
+        }
+    }
+
+    @Test
+    public void source5994OnFiftyHzSkipsOneInSix() {
+        startDisplay(50);
+        play(60000, 1001, 500);
+
+        // 10s: ~599 frames para 500 ticks; sale uno por tick y el resto se salta sin repetir
+        assertEquals(99, scheduler.getSkippedFrames());
+        assertEquals(0, scheduler.getRepeatedTicks());
+        assertEquals(1, scheduler.getReanchors());
+        assertEquals(499, scheduler.getPresentedFrames());
+        assertShownInOrder();
+    }
+
+    @Test
+    public void reorderedFrameInsideWindowIsShownInOrder() {
+        startDisplay(60);
+        long period = clock.getRefreshPeriodNanos();
+        long[] arrival = {0, 1, 2, 4, 3, 5, 6, 7}; // 3 y 4 llegan cambiados, antes de su vsync
+        for (long frame : arrival) {
+            scheduler.offer(frame, BASE_MEDIA_NANOS + frame * period);
+            clock.tick();
+        }
+        for (int t = 0; t < 4; t++) {
+            clock.tick();
+        }
+
+        assertEquals(8, shown.size());
+        assertShownInOrder();
+        assertEquals(0, scheduler.getSkippedFrames());
+        assertEquals(1, scheduler.getReanchors());
+    }
+
+    @Test
+    public void frameOlderThanTheOneOnScreenIsDropped() {
+        startDisplay(60);
+        long period = clock.getRefreshPeriodNanos();
+        for (long frame = 0; frame < 5; frame++) {
+            scheduler.offer(frame, BASE_MEDIA_NANOS + frame * period);
+            clock.tick();
+        }
+        scheduler.offer(6L, BASE_MEDIA_NANOS + 6 * period); // El 5 se retrasa
+        for (int t = 0; t < 4; t++) {
+            clock.tick();
+        }
+        scheduler.offer(5L, BASE_MEDIA_NANOS + 5 * period); // Llega con el 6 ya en pantalla
+        clock.tick();
+        clock.tick();
+        scheduler.offer(7L, BASE_MEDIA_NANOS + 7 * period);
+        clock.tick();
+        clock.tick();
+
+        assertShownInOrder();
+        assertTrue(!shown.contains(5L));
+        assertEquals(7L, (long) shown.get(shown.size() - 1));
+        assertEquals(1, scheduler.getSkippedFrames());
+        assertEquals(1, scheduler.getReanchors());
+    }
+
+    @Test
+    public void timestampJumpReanchorsWithoutStalling() {
+        startDisplay(60);
+        long period = clock.getRefreshPeriodNanos();
+        long jump = 10_000_000_000L; // El emisor se reinicia: sus timestamps saltan 10s
+        for (long frame = 0; frame < 120; frame++) {
+            long media = BASE_MEDIA_NANOS + frame * period + (frame >= 60 ? jump : 0);
+            scheduler.offer(frame, media);
+            clock.tick();
+        }
+        for (int t = 0; t < 4; t++) {
+            clock.tick();
+        }
+
+        assertEquals(2, scheduler.getReanchors());
+        // El frame que aún esperaba su vsync al llegar el salto se descarta con la ventana vieja
+        assertEquals(1, scheduler.getSkippedFrames());
+        assertTrue(!shown.contains(59L));
+        assertEquals(119, shown.size());
+        assertShownInOrder();
+        // Tras el salto sigue a un frame por tick: el reanclaje no deja huecos largos en pantalla
+        for (long hold : holds()) {
+            assertTrue("Frame retenido " + hold + " ticks", hold <= 2);
+        }
+    }
+
+    @Test
+    public void stopReleasesEveryFrame() {
+        startDisplay(60);
+        play(60000, 1001, 120);
+        scheduler.stop();
+
+        assertEquals(nextFrame, released);
+        assertTrue(!clock.isRunning());
+    }
+}